@@ -0,0 +1,30 @@
+package top.steve3184.dungeonstats.api;
+
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import top.steve3184.dungeonstats.utils.StatsEngine;
+import top.steve3184.dungeonstats.utils.RunAnalytics;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+
+public class AnalyticsHandler extends BaseHandler {
+
+    public AnalyticsHandler(StatsEngine dataManager, Gson gson) {
+        super(dataManager, gson);
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        if (rejectWhileWarmingUp(exchange)) return;
+        Map<String, String> params = parseQuery(exchange.getRequestURI().getQuery());
+        int windowHours = RunAnalytics.parseWindow(params.get("window"));
+
+        if (windowHours < 0) {
+            sendResponse(exchange, 400, Collections.singletonMap("error", "Invalid window, use e.g. 1h, 24h, 7d or all."));
+            return;
+        }
+        sendResponse(exchange, 200, dataManager.getRunAnalytics().summarize(windowHours));
+    }
+}
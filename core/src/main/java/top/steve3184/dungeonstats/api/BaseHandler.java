@@ -3,20 +3,21 @@ package top.steve3184.dungeonstats.api;
 import com.google.gson.Gson;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
-import top.steve3184.dungeonstats.utils.DataManager;
+import top.steve3184.dungeonstats.utils.StatsEngine;
 
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
 public abstract class BaseHandler implements HttpHandler {
 
-    protected final DataManager dataManager;
+    protected final StatsEngine dataManager;
     protected final Gson gson;
 
-    public BaseHandler(DataManager dataManager, Gson gson) {
+    public BaseHandler(StatsEngine dataManager, Gson gson) {
         this.dataManager = dataManager;
         this.gson = gson;
     }
@@ -30,6 +31,26 @@ public abstract class BaseHandler implements HttpHandler {
         os.close();
     }
 
+    protected void sendText(HttpExchange exchange, int statusCode, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(statusCode, bytes.length);
+        OutputStream os = exchange.getResponseBody();
+        os.write(bytes);
+        os.close();
+    }
+
+    /**
+     * Answers with 503 while the stats are still loading after startup.
+     * @return true if the request was answered and the handler should stop
+     */
+    protected boolean rejectWhileWarmingUp(HttpExchange exchange) throws IOException {
+        if (dataManager.isReady()) return false;
+        exchange.getResponseHeaders().set("Retry-After", "5");
+        sendResponse(exchange, 503, Collections.singletonMap("status", "warming up"));
+        return true;
+    }
+
     protected Map<String, String> parseQuery(String query) {
         Map<String, String> result = new HashMap<>();
         if (query == null) {
@@ -0,0 +1,71 @@
+package top.steve3184.dungeonstats.api;
+
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import top.steve3184.dungeonstats.changefeed.ChangeFeed;
+import top.steve3184.dungeonstats.utils.StatsEngine;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Serves {@code /changes?since=&limit=}: the changefeed after a sequence number, so consumers
+ * resume from the last change they saw instead of re-reading leaderboards. The changes are
+ * passed through as written, without parsing them again.
+ */
+public class ChangesHandler extends BaseHandler {
+
+    private static final int DEFAULT_LIMIT = 1000;
+    private static final int MAX_LIMIT = 10000;
+
+    public ChangesHandler(StatsEngine dataManager, Gson gson) {
+        super(dataManager, gson);
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        // 改动记录直接从文件读取，不用等数据加载完
+        ChangeFeed feed = dataManager.getChangeFeed();
+        if (feed == null) {
+            sendResponse(exchange, 404, Collections.singletonMap("error", "The changefeed is not enabled."));
+            return;
+        }
+        Map<String, String> params = parseQuery(exchange.getRequestURI().getQuery());
+        long since;
+        int limit;
+        try {
+            since = Long.parseLong(params.getOrDefault("since", "0"));
+            limit = Integer.parseInt(params.getOrDefault("limit", String.valueOf(DEFAULT_LIMIT)));
+        } catch (NumberFormatException e) {
+            sendResponse(exchange, 400, Collections.singletonMap("error", "since and limit must be numbers."));
+            return;
+        }
+        if (since < 0 || limit < 1 || limit > MAX_LIMIT) {
+            sendResponse(exchange, 400, Collections.singletonMap("error", "since must not be negative and limit must be between 1 and " + MAX_LIMIT + "."));
+            return;
+        }
+
+        ChangeFeed.Page page;
+        try {
+            page = feed.read(since, limit);
+        } catch (IOException e) {
+            sendResponse(exchange, 500, Collections.singletonMap("error", "Failed to read the changefeed: " + e.getMessage()));
+            return;
+        }
+        StringBuilder body = new StringBuilder(64 + page.changes().size() * 160);
+        body.append("{\"since\":").append(since)
+                .append(",\"next\":").append(page.next())
+                .append(",\"oldest\":").append(page.oldest())
+                // 要的改动已经被删掉了，只能重新导出全部数据
+                .append(",\"gap\":").append(since + 1 < page.oldest())
+                .append(",\"more\":").append(page.more())
+                .append(",\"changes\":[");
+        for (int i = 0; i < page.changes().size(); i++) {
+            if (i > 0) body.append(',');
+            body.append(page.changes().get(i));
+        }
+        body.append("]}");
+        sendText(exchange, 200, "application/json; charset=UTF-8", body.toString());
+    }
+}
@@ -0,0 +1,41 @@
+package top.steve3184.dungeonstats.api;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import top.steve3184.dungeonstats.metrics.Counter;
+import top.steve3184.dungeonstats.metrics.Histogram;
+import top.steve3184.dungeonstats.metrics.Metrics;
+
+import java.io.IOException;
+
+/**
+ * Wraps an endpoint handler and records its request count, error count and latency.
+ */
+public class InstrumentedHandler implements HttpHandler {
+
+    private final HttpHandler delegate;
+    private final Counter requests;
+    private final Counter errors;
+    private final Histogram latency;
+
+    public InstrumentedHandler(String endpoint, HttpHandler delegate) {
+        this.delegate = delegate;
+        this.requests = Metrics.counter("dungeonstats_http_requests_total", "HTTP requests served", "endpoint", endpoint);
+        this.errors = Metrics.counter("dungeonstats_http_errors_total", "HTTP requests answered with status >= 400 or failed", "endpoint", endpoint);
+        this.latency = Metrics.histogram("dungeonstats_http_request_duration_seconds", "HTTP request handling time", "endpoint", endpoint);
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            delegate.handle(exchange);
+            failed = exchange.getResponseCode() >= 400;
+        } finally {
+            requests.inc();
+            if (failed) errors.inc();
+            latency.observeSince(start);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package top.steve3184.dungeonstats.api;
+
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import top.steve3184.dungeonstats.utils.KillLevels;
+import top.steve3184.dungeonstats.utils.StatsEngine;
+
+import java.io.IOException;
+
+// 全服按敌人等级段统计的击杀数
+public class KillLevelsHandler extends BaseHandler {
+
+    public KillLevelsHandler(StatsEngine dataManager, Gson gson) {
+        super(dataManager, gson);
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        if (rejectWhileWarmingUp(exchange)) return;
+        sendResponse(exchange, 200, KillLevels.toMap(dataManager.getServerKillsByLevel()));
+    }
+}
@@ -0,0 +1,20 @@
+package top.steve3184.dungeonstats.api;
+
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import top.steve3184.dungeonstats.metrics.Metrics;
+import top.steve3184.dungeonstats.utils.StatsEngine;
+
+import java.io.IOException;
+
+public class MetricsHandler extends BaseHandler {
+
+    public MetricsHandler(StatsEngine dataManager, Gson gson) {
+        super(dataManager, gson);
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        sendText(exchange, 200, "text/plain; version=0.0.4; charset=UTF-8", Metrics.scrape());
+    }
+}
@@ -0,0 +1,65 @@
+package top.steve3184.dungeonstats.api;
+
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import top.steve3184.dungeonstats.model.PlayerStats;
+import top.steve3184.dungeonstats.utils.KillLevels;
+import top.steve3184.dungeonstats.utils.MetricRegistry;
+import top.steve3184.dungeonstats.utils.StatsEngine;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class PlayerStatsHandler extends BaseHandler {
+
+    public PlayerStatsHandler(StatsEngine dataManager, Gson gson) {
+        super(dataManager, gson);
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        if (rejectWhileWarmingUp(exchange)) return;
+        Map<String, String> params = parseQuery(exchange.getRequestURI().getQuery());
+        String playerName = params.get("name");
+
+        if (playerName == null || playerName.isEmpty()) {
+            sendResponse(exchange, 400, Collections.singletonMap("error", "Player name query parameter is required."));
+            return;
+        }
+
+        PlayerStats stats = dataManager.getPlayerStats(playerName);
+        if (stats == null) {
+            sendResponse(exchange, 404, Collections.singletonMap("error", "Player not found."));
+            return;
+        }
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("playerName", stats.playerName());
+        response.put("kills", stats.kills());
+        response.put("playtimeSeconds", stats.playtimeSeconds());
+        response.put("maxLevel", stats.maxLevel());
+        // 配置里声明的其他指标
+        MetricRegistry metrics = dataManager.getMetrics();
+        long[] values = dataManager.getPlayerValues(playerName);
+        for (int m = MetricRegistry.MAX_LEVEL + 1; values != null && m < Math.min(values.length, metrics.globals().size()); m++) {
+            response.put(metrics.get(m).key(), values[m]);
+        }
+        // 有多个竞技场时，每个竞技场一组同样的指标
+        if (values != null && metrics.arenas().size() > 1) {
+            Map<String, Object> arenas = new LinkedHashMap<>();
+            for (int a = 0; a < metrics.arenas().size(); a++) {
+                Map<String, Object> arena = new LinkedHashMap<>();
+                for (MetricRegistry.Metric metric : metrics.globals()) {
+                    int id = metrics.arenaMetric(metric.id(), a);
+                    arena.put(metric.key(), id < values.length ? values[id] : 0);
+                }
+                arenas.put(metrics.arenas().get(a), arena);
+            }
+            response.put("arenas", arenas);
+        }
+        int[] killsByLevel = dataManager.getKillsByLevel(playerName);
+        response.put("killsByLevel", KillLevels.toMap(killsByLevel != null ? killsByLevel : new int[KillLevels.BANDS]));
+        sendResponse(exchange, 200, response);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,27 @@
+package top.steve3184.dungeonstats.api;
+
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import top.steve3184.dungeonstats.utils.StatsEngine;
+
+import java.io.IOException;
+import java.util.Map;
+
+public class PlayersHandler extends BaseHandler {
+
+    public PlayersHandler(StatsEngine dataManager, Gson gson) {
+        super(dataManager, gson);
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        // 确保是GET请求
+        if (!exchange.getRequestMethod().equalsIgnoreCase("GET")) {
+            sendResponse(exchange, 405, Map.of("error", "Method Not Allowed"));
+            return;
+        }
+
+        // 在线玩家状态由主线程发布在快照里，这里不调用 Bukkit API
+        sendResponse(exchange, 200, dataManager.getSnapshot().onlinePlayers());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,56 @@
+package top.steve3184.dungeonstats.api;
+
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import top.steve3184.dungeonstats.metrics.Counter;
+import top.steve3184.dungeonstats.metrics.Metrics;
+import top.steve3184.dungeonstats.utils.StatsEngine;
+
+import java.io.IOException;
+import java.util.Collections;
+
+/**
+ * Admits a request only if both the client's bucket for this endpoint and the shared bucket
+ * have enough tokens for the endpoint's cost; otherwise answers {@code 429} with {@code Retry-After}.
+ * A refused request costs the client nothing.
+ */
+public class RateLimitedHandler extends BaseHandler {
+
+    private final String endpoint;
+    private final HttpHandler delegate;
+    private final RateLimiter perClient;
+    private final RateLimiter global; // 为 null 时不限制总量
+    private final int cost;
+    private final Counter rejected;
+
+    public RateLimitedHandler(StatsEngine dataManager, Gson gson, String endpoint, HttpHandler delegate,
+                              RateLimiter perClient, RateLimiter global, int cost) {
+        super(dataManager, gson);
+        this.endpoint = endpoint;
+        this.delegate = delegate;
+        this.perClient = perClient;
+        this.global = global;
+        this.cost = cost;
+        this.rejected = Metrics.counter("dungeonstats_http_rate_limited_total", "HTTP requests refused by the rate limiter", "endpoint", endpoint);
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        String key = exchange.getRemoteAddress().getAddress().getHostAddress() + " " + endpoint;
+        long waitNanos = perClient.acquire(key, cost);
+        if (waitNanos == 0 && global != null) {
+            waitNanos = global.acquire(endpoint, cost);
+            // 总量不够时把客户端的令牌还回去
+            if (waitNanos > 0) perClient.release(key, cost);
+        }
+        if (waitNanos > 0) {
+            rejected.inc();
+            long seconds = Math.max(1, (waitNanos + 999_999_999L) / 1_000_000_000L);
+            exchange.getResponseHeaders().set("Retry-After", String.valueOf(seconds));
+            sendResponse(exchange, 429, Collections.singletonMap("error", "Too Many Requests"));
+            return;
+        }
+        delegate.handle(exchange);
+    }
+}
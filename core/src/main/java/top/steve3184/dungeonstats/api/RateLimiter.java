@@ -0,0 +1,76 @@
+package top.steve3184.dungeonstats.api;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token buckets keyed by an arbitrary string, such as client address plus endpoint.
+ *
+ * Each bucket is a single {@link AtomicLong} holding the time at which it will be full again
+ * (the generic cell rate algorithm), so taking tokens is one compare-and-set with no locks.
+ * A bucket that has refilled carries no state, which is why idle entries can be dropped by
+ * the periodic sweep without changing any decision.
+ */
+public class RateLimiter {
+
+    private static final long SWEEP_INTERVAL_NANOS = 30_000_000_000L;
+
+    private final long nanosPerToken;
+    private final long burstNanos;
+    private final int burst;
+    private final ConcurrentHashMap<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final AtomicLong nextSweep = new AtomicLong(System.nanoTime() + SWEEP_INTERVAL_NANOS);
+
+    /**
+     * @param tokensPerSecond refill rate, must be positive
+     * @param burst           bucket size, the most tokens that can be taken at once
+     * @throws IllegalArgumentException if {@code tokensPerSecond} is not positive
+     */
+    public RateLimiter(double tokensPerSecond, int burst) {
+        // 速率为 0 时每个令牌的间隔是 Long.MAX_VALUE，乘以 burst 会溢出
+        if (!(tokensPerSecond > 0)) throw new IllegalArgumentException("tokensPerSecond must be > 0: " + tokensPerSecond);
+        this.nanosPerToken = Math.max(1, (long) (1_000_000_000L / tokensPerSecond));
+        this.burst = Math.max(1, burst);
+        this.burstNanos = nanosPerToken * this.burst;
+    }
+
+    /**
+     * Takes {@code cost} tokens from the bucket for {@code key} if it has them.
+     * @return 0 if the tokens were taken, otherwise the nanoseconds until they would be available
+     */
+    public long acquire(String key, int cost) {
+        long now = System.nanoTime();
+        sweepIfDue(now);
+        long increment = nanosPerToken * Math.min(Math.max(cost, 1), burst);
+        AtomicLong bucket = buckets.computeIfAbsent(key, k -> new AtomicLong(now));
+        while (true) {
+            long fullAt = bucket.get();
+            long next = Math.max(fullAt, now) + increment;
+            long excess = next - now - burstNanos;
+            if (excess > 0) return excess;
+            if (bucket.compareAndSet(fullAt, next)) return 0;
+        }
+    }
+
+    /**
+     * Gives back {@code cost} tokens taken by {@link #acquire}, e.g. when another limiter refused
+     * the same request. Never fills the bucket past full.
+     */
+    public void release(String key, int cost) {
+        AtomicLong bucket = buckets.get(key);
+        if (bucket == null) return; // 已经回满并被清理
+        long decrement = nanosPerToken * Math.min(Math.max(cost, 1), burst);
+        bucket.addAndGet(-decrement);
+    }
+
+    public int size() {
+        return buckets.size();
+    }
+
+    // 已经回满的桶没有状态，直接删掉
+    private void sweepIfDue(long now) {
+        long due = nextSweep.get();
+        if (now - due < 0 || !nextSweep.compareAndSet(due, now + SWEEP_INTERVAL_NANOS)) return;
+        buckets.values().removeIf(bucket -> bucket.get() - now <= 0);
+    }
+}
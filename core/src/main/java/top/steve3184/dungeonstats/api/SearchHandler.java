@@ -0,0 +1,51 @@
+package top.steve3184.dungeonstats.api;
+
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import top.steve3184.dungeonstats.model.PlayerStats;
+import top.steve3184.dungeonstats.utils.StatsEngine;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Serves {@code /search?prefix=&limit=}: players whose name starts with the prefix, ordered by name. */
+public class SearchHandler extends BaseHandler {
+
+    private static final int DEFAULT_LIMIT = 10;
+    private static final int MAX_LIMIT = 100;
+
+    public SearchHandler(StatsEngine dataManager, Gson gson) {
+        super(dataManager, gson);
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        if (rejectWhileWarmingUp(exchange)) return;
+        Map<String, String> params = parseQuery(exchange.getRequestURI().getQuery());
+        String prefix = params.getOrDefault("prefix", "");
+        if (prefix.isEmpty()) {
+            sendResponse(exchange, 400, Collections.singletonMap("error", "prefix is required."));
+            return;
+        }
+        int limit;
+        try {
+            limit = Integer.parseInt(params.getOrDefault("limit", String.valueOf(DEFAULT_LIMIT)));
+        } catch (NumberFormatException e) {
+            sendResponse(exchange, 400, Collections.singletonMap("error", "limit must be a number."));
+            return;
+        }
+        if (limit < 1 || limit > MAX_LIMIT) {
+            sendResponse(exchange, 400, Collections.singletonMap("error", "limit must be between 1 and " + MAX_LIMIT + "."));
+            return;
+        }
+
+        List<PlayerStats> players = dataManager.searchPlayers(prefix, limit);
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("prefix", prefix);
+        response.put("players", players);
+        sendResponse(exchange, 200, response);
+    }
+}
@@ -0,0 +1,39 @@
+package top.steve3184.dungeonstats.api;
+
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import top.steve3184.dungeonstats.season.SeasonArchive;
+import top.steve3184.dungeonstats.utils.StatsEngine;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// 当前赛季和已归档的赛季，排行榜用 /top?season=<n> 查询
+public class SeasonsHandler extends BaseHandler {
+
+    public SeasonsHandler(StatsEngine dataManager, Gson gson) {
+        super(dataManager, gson);
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        if (rejectWhileWarmingUp(exchange)) return;
+        List<Map<String, Object>> archived = new ArrayList<>();
+        for (SeasonArchive archive : dataManager.getSeasonArchives()) {
+            Map<String, Object> season = new LinkedHashMap<>();
+            season.put("season", archive.season());
+            season.put("startedAt", archive.startedAt());
+            season.put("endedAt", archive.endedAt());
+            season.put("players", archive.players());
+            archived.add(season);
+        }
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("current", dataManager.getSeason());
+        response.put("startedAt", dataManager.getSeasonStartedAt());
+        response.put("archived", archived);
+        sendResponse(exchange, 200, response);
+    }
+}
@@ -0,0 +1,56 @@
+package top.steve3184.dungeonstats.api;
+
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import top.steve3184.dungeonstats.model.DungeonLog;
+import top.steve3184.dungeonstats.model.RunRollup;
+import top.steve3184.dungeonstats.utils.StatsEngine;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+// 对局记录，新的在前；最新 100 条以内的一页直接从快照读取，更早的从日志分页读取
+public class StatsHandler extends BaseHandler {
+
+    public StatsHandler(StatsEngine dataManager, Gson gson) {
+        super(dataManager, gson);
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        if (rejectWhileWarmingUp(exchange)) return;
+        Map<String, String> params = parseQuery(exchange.getRequestURI().getQuery());
+        int offset;
+        int limit;
+        try {
+            offset = Integer.parseInt(params.getOrDefault("offset", "0"));
+            limit = Integer.parseInt(params.getOrDefault("limit", "0"));
+        } catch (NumberFormatException e) {
+            sendResponse(exchange, 400, Collections.singletonMap("error", "offset and limit must be numbers."));
+            return;
+        }
+        if (offset < 0 || limit < 0) {
+            sendResponse(exchange, 400, Collections.singletonMap("error", "offset and limit must be >= 0."));
+            return;
+        }
+        String arena = params.get("arena");
+        if (arena != null && dataManager.getMetrics().arenaIndex(arena) < 0) {
+            sendResponse(exchange, 400, Collections.singletonMap("error",
+                    "arena must be one of " + String.join(", ", dataManager.getMetrics().arenas()) + "."));
+            return;
+        }
+
+        List<DungeonLog> logs = dataManager.getDungeonLogs(offset, limit, arena);
+        List<Object> rows = new ArrayList<>(logs);
+        // 已压缩的旧记录汇总排在全部详细记录之后，一起分页；汇总不分竞技场，按竞技场查询时不返回
+        if (arena == null && (limit == 0 || logs.size() < limit)) {
+            int skipped = Math.max(0, offset - dataManager.countLogs());
+            List<RunRollup> rollups = dataManager.getRollups(skipped, limit == 0 ? 0 : limit - logs.size());
+            rows.addAll(rollups);
+        }
+        sendResponse(exchange, 200, rows);
+    }
+}
\ No newline at end of file
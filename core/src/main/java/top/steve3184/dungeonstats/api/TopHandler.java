@@ -0,0 +1,151 @@
+package top.steve3184.dungeonstats.api;
+
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import top.steve3184.dungeonstats.model.LeaderboardPage;
+import top.steve3184.dungeonstats.model.PlayerStats;
+import top.steve3184.dungeonstats.utils.MetricRegistry;
+import top.steve3184.dungeonstats.utils.StatsEngine;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serves {@code /top?metric=&offset=&limit=&fields=&season=&arena=} for every metric of the
+ * {@link MetricRegistry}, and the older {@code /killtop}, {@code /playtimetop} and
+ * {@code /maxleveltop} endpoints as aliases with a fixed metric. With {@code season}, the
+ * season's standings are returned instead of the all-time ones; with {@code arena}, those
+ * of one arena instead of all of them.
+ */
+public class TopHandler extends BaseHandler {
+
+    private static final int DEFAULT_LIMIT = 100;
+    private static final int MAX_LIMIT = 1000;
+    private static final List<String> FIELDS = List.of("rank", "playerName", "kills", "playtimeSeconds", "maxLevel");
+
+    private final String key; // 指标 key，为 null 时由 metric 参数决定
+
+    public TopHandler(StatsEngine dataManager, Gson gson) {
+        this(dataManager, gson, null);
+    }
+
+    public TopHandler(StatsEngine dataManager, Gson gson, String key) {
+        super(dataManager, gson);
+        this.key = key;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        if (rejectWhileWarmingUp(exchange)) return;
+        Map<String, String> params = parseQuery(exchange.getRequestURI().getQuery());
+
+        MetricRegistry metrics = dataManager.getMetrics();
+        String requested = key != null ? key : params.getOrDefault("metric", "kills");
+        String arena = params.get("arena");
+        if (arena != null && metrics.arenaIndex(arena) < 0) {
+            sendResponse(exchange, 400, Collections.singletonMap("error", "arena must be one of " + String.join(", ", metrics.arenas()) + "."));
+            return;
+        }
+        MetricRegistry.Metric found = metrics.get(requested, arena);
+        if (found == null && arena != null) {
+            // 归档赛季里按 key@竞技场 查找
+            requested = requested + "@" + arena;
+        }
+        Integer season = null;
+        if (params.containsKey("season")) {
+            String value = params.get("season");
+            try {
+                season = value.equalsIgnoreCase("current") ? dataManager.getSeason() : Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                sendResponse(exchange, 400, Collections.singletonMap("error", "season must be a number or 'current'."));
+                return;
+            }
+        }
+        // 归档赛季的指标可能已经从配置里删掉了
+        if (found == null && season == null) {
+            List<String> keys = metrics.globals().stream().map(MetricRegistry.Metric::key).toList();
+            sendResponse(exchange, 400, Collections.singletonMap("error", "metric must be one of " + String.join(", ", keys) + "."));
+            return;
+        }
+        String metric = found != null ? found.key() : requested;
+        int offset;
+        int limit;
+        try {
+            offset = Integer.parseInt(params.getOrDefault("offset", "0"));
+            limit = Integer.parseInt(params.getOrDefault("limit", String.valueOf(DEFAULT_LIMIT)));
+        } catch (NumberFormatException e) {
+            sendResponse(exchange, 400, Collections.singletonMap("error", "offset and limit must be numbers."));
+            return;
+        }
+        if (offset < 0 || limit < 0 || limit > MAX_LIMIT) {
+            sendResponse(exchange, 400, Collections.singletonMap("error", "offset must be >= 0 and limit between 0 and " + MAX_LIMIT + "."));
+            return;
+        }
+
+        // 默认字段：旧接口保持原来的 playerName + 对应数值，/top 额外带上名次
+        List<String> fields = new ArrayList<>();
+        if (params.containsKey("fields")) {
+            for (String field : params.get("fields").split(",")) {
+                if (field.isEmpty()) continue;
+                if (!FIELDS.contains(field) && !field.equals(metric)) {
+                    sendResponse(exchange, 400, Collections.singletonMap("error", "Unknown field: " + field + ". Available: "
+                            + String.join(",", FIELDS) + (FIELDS.contains(valueField(metric)) ? "" : "," + metric)));
+                    return;
+                }
+                fields.add(field);
+            }
+        } else {
+            if (key == null) fields.add("rank");
+            fields.add("playerName");
+            fields.add(valueField(metric));
+        }
+
+        LeaderboardPage page = season == null ? dataManager.getLeaderboard(metric, offset, limit)
+                : dataManager.getSeasonLeaderboard(metric, season, offset, limit);
+        if (page == null) {
+            sendResponse(exchange, 404, Collections.singletonMap("error", "No standings for " + metric + " in season " + season + "."));
+            return;
+        }
+        List<Map<String, Object>> rows = new ArrayList<>(page.players().size());
+        int rank = page.offset();
+        for (int i = 0; i < page.players().size(); i++) {
+            PlayerStats stats = page.players().get(i);
+            rank++;
+            // 只输出请求的字段，按请求的顺序
+            Map<String, Object> row = new LinkedHashMap<>();
+            for (String field : fields) {
+                switch (field) {
+                    case "rank" -> row.put("rank", rank);
+                    case "playerName" -> row.put("playerName", stats.playerName());
+                    case "kills" -> row.put("kills", stats.kills());
+                    case "playtimeSeconds" -> row.put("playtimeSeconds", stats.playtimeSeconds());
+                    case "maxLevel" -> row.put("maxLevel", stats.maxLevel());
+                    // 不是内置字段时就是排名所用的指标
+                    default -> row.put(field, page.values().get(i));
+                }
+            }
+            rows.add(row);
+        }
+
+        if (key != null) {
+            sendResponse(exchange, 200, rows);
+            return;
+        }
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("metric", metric);
+        if (season != null) response.put("season", season);
+        if (arena != null) response.put("arena", arena);
+        response.put("total", page.total());
+        response.put("offset", page.offset());
+        response.put("players", rows);
+        sendResponse(exchange, 200, response);
+    }
+
+    private static String valueField(String metric) {
+        return metric.equals("playtime") ? "playtimeSeconds" : metric;
+    }
+}
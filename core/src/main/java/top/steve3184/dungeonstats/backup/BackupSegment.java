@@ -0,0 +1,205 @@
+package top.steve3184.dungeonstats.backup;
+
+import top.steve3184.dungeonstats.model.DungeonLog;
+import top.steve3184.dungeonstats.utils.KillLevels;
+import top.steve3184.dungeonstats.utils.PlayerStore;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * One gzip'd backup file. A base holds every player and dungeon log; a delta holds the players
+ * changed and the logs added since the previous segment. The ingested record IDs, fold point,
+ * rollups and season state are small and always stored whole. Version 1 segments, written
+ * before seasons, and version 2 ones, written before arenas, are still read.
+ *
+ * The contents are followed by a CRC32 of everything before it, so a damaged segment is
+ * rejected instead of restored.
+ */
+public final class BackupSegment {
+
+    private static final int MAGIC = 0x44534231; // "DSB1"
+    private static final int FORMAT_VERSION = 3;
+
+    public record PlayerRecord(UUID uuid, PlayerStore.Row row) {}
+
+    /**
+     * @param metrics       metric keys, in the order of each row's values
+     * @param ingested      {@link top.steve3184.dungeonstats.utils.IngestedRuns#encode() encoded} ingested run IDs of every arena
+     * @param foldedThrough highest record ID folded into rollups; older logs are not restored
+     * @param rollups       the rollups and the current season in the plugin's own data file format
+     */
+    public record Contents(long seq, boolean base, long createdAt, List<String> metrics, List<PlayerRecord> players,
+                           List<DungeonLog> logs, String ingested, int foldedThrough, String rollups) {}
+
+    private BackupSegment() {
+    }
+
+    /**
+     * Writes to a temporary file first and moves it into place, so a crash never leaves a partial segment.
+     * @return the size of the file in bytes
+     */
+    public static long write(Path file, Contents contents) throws IOException {
+        Files.createDirectories(file.getParent());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (BufferedOutputStream gzip = new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(tmp)))) {
+            CheckedOutputStream checked = new CheckedOutputStream(gzip, new CRC32());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(contents.seq());
+            out.writeBoolean(contents.base());
+            out.writeLong(contents.createdAt());
+            out.writeInt(contents.metrics().size());
+            for (String metric : contents.metrics()) {
+                out.writeUTF(metric);
+            }
+
+            out.writeInt(contents.players().size());
+            for (PlayerRecord player : contents.players()) {
+                PlayerStore.Row row = player.row();
+                out.writeLong(player.uuid().getMostSignificantBits());
+                out.writeLong(player.uuid().getLeastSignificantBits());
+                out.writeUTF(row.name() == null ? "" : row.name());
+                out.writeLong(row.lastUpdated());
+                for (int m = 0; m < contents.metrics().size(); m++) {
+                    out.writeLong(m < row.values().length ? row.values()[m] : 0);
+                }
+                out.writeBoolean(row.killsByLevel() != null);
+                if (row.killsByLevel() != null) {
+                    for (int band = 0; band < KillLevels.BANDS; band++) {
+                        out.writeInt(row.killsByLevel()[band]);
+                    }
+                }
+                out.writeBoolean(row.seasonValues() != null);
+                if (row.seasonValues() != null) {
+                    out.writeInt(row.season());
+                    for (int m = 0; m < contents.metrics().size(); m++) {
+                        out.writeLong(m < row.seasonValues().length ? row.seasonValues()[m] : 0);
+                    }
+                }
+            }
+
+            out.writeInt(contents.logs().size());
+            for (DungeonLog log : contents.logs()) {
+                out.writeInt(log.recordId());
+                out.writeInt(log.maxLevel());
+                out.writeInt(log.doorsOpened());
+                out.writeInt(log.enemiesKilled());
+                out.writeInt(log.bossesDefeated());
+                out.writeLong(log.durationSeconds());
+                out.writeLong(log.timestamp());
+                out.writeUTF(log.arena() == null ? "" : log.arena());
+                out.writeInt(log.runId());
+            }
+
+            writeLongString(out, contents.ingested());
+            out.writeInt(contents.foldedThrough());
+            writeLongString(out, contents.rollups());
+            out.flush();
+            // 校验和本身不参与计算
+            new DataOutputStream(gzip).writeLong(checked.getChecksum().getValue());
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return Files.size(file);
+    }
+
+    /** @throws IOException if the file is not a segment, is truncated or fails its checksum */
+    public static Contents read(Path file) throws IOException {
+        try (BufferedInputStream gzip = new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file)))) {
+            CheckedInputStream checked = new CheckedInputStream(gzip, new CRC32());
+            DataInputStream in = new DataInputStream(checked);
+            int version = in.readInt() == MAGIC ? in.readInt() : -1;
+            if (version < 1 || version > FORMAT_VERSION) {
+                throw new IOException("Not a DungeonStats backup segment of version " + FORMAT_VERSION + " or older: " + file);
+            }
+            long seq = in.readLong();
+            boolean base = in.readBoolean();
+            long createdAt = in.readLong();
+            int metricCount = in.readInt();
+            List<String> metrics = new ArrayList<>(metricCount);
+            for (int m = 0; m < metricCount; m++) {
+                metrics.add(in.readUTF());
+            }
+
+            int playerCount = in.readInt();
+            List<PlayerRecord> players = new ArrayList<>(playerCount);
+            for (int i = 0; i < playerCount; i++) {
+                UUID uuid = new UUID(in.readLong(), in.readLong());
+                String name = in.readUTF();
+                long lastUpdated = in.readLong();
+                long[] values = new long[metricCount];
+                for (int m = 0; m < metricCount; m++) {
+                    values[m] = in.readLong();
+                }
+                int[] killsByLevel = null;
+                if (in.readBoolean()) {
+                    killsByLevel = new int[KillLevels.BANDS];
+                    for (int band = 0; band < KillLevels.BANDS; band++) {
+                        killsByLevel[band] = in.readInt();
+                    }
+                }
+                int season = 0;
+                long[] seasonValues = null;
+                if (version >= 2 && in.readBoolean()) {
+                    season = in.readInt();
+                    seasonValues = new long[metricCount];
+                    for (int m = 0; m < metricCount; m++) {
+                        seasonValues[m] = in.readLong();
+                    }
+                }
+                players.add(new PlayerRecord(uuid, new PlayerStore.Row(values, lastUpdated, name.isEmpty() ? null : name, killsByLevel,
+                        season, seasonValues)));
+            }
+
+            int logCount = in.readInt();
+            List<DungeonLog> logs = new ArrayList<>(logCount);
+            for (int i = 0; i < logCount; i++) {
+                DungeonLog log = new DungeonLog(in.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readInt(),
+                        in.readLong(), in.readLong());
+                if (version >= 3) {
+                    String arena = in.readUTF();
+                    log = new DungeonLog(log.recordId(), log.maxLevel(), log.doorsOpened(), log.enemiesKilled(),
+                            log.bossesDefeated(), log.durationSeconds(), log.timestamp(), arena.isEmpty() ? null : arena, in.readInt());
+                }
+                logs.add(log);
+            }
+
+            String ingested = readLongString(in);
+            int foldedThrough = in.readInt();
+            String rollups = readLongString(in);
+            long expected = checked.getChecksum().getValue();
+            if (new DataInputStream(gzip).readLong() != expected || gzip.read() != -1) {
+                throw new IOException("Backup segment failed its checksum: " + file);
+            }
+            return new Contents(seq, base, createdAt, metrics, players, logs, ingested, foldedThrough, rollups);
+        }
+    }
+
+    // writeUTF 最多 65535 字节，汇总可能更长
+    private static void writeLongString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(java.nio.charset.StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readLongString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, java.nio.charset.StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,186 @@
+package top.steve3184.dungeonstats.backup;
+
+import top.steve3184.dungeonstats.model.DungeonLog;
+import top.steve3184.dungeonstats.utils.MetricRegistry;
+import top.steve3184.dungeonstats.utils.PlayerStore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * The backup directory: {@code <seq>-<createdAt>.base} for full backups and
+ * {@code <seq>-<createdAt>.delta} for the changes since the segment before it. Restoring
+ * reads one base and replays the deltas after it in order, so the cost depends on the
+ * amount of data and the deltas since the last base, not on how many backups were taken.
+ *
+ * Has no Bukkit dependency.
+ */
+public class BackupStore {
+
+    private static final String BASE = ".base";
+    private static final String DELTA = ".delta";
+
+    public record Segment(Path file, long seq, long createdAt, boolean base, long size) {}
+
+    /**
+     * @param players       restored rows, values in the order of the registry passed to {@link #restore}
+     * @param logs          restored dungeon logs, ordered by record ID
+     * @param createdAt     when the last segment applied was written
+     * @param segments      how many segments were read
+     * @param bytes         their total size on disk
+     */
+    public record Restored(Map<UUID, PlayerStore.Row> players, List<DungeonLog> logs, String ingested, int foldedThrough,
+                           String rollups, long createdAt, int segments, long bytes, long nanos) {}
+
+    private final Path directory;
+    private final Logger logger;
+
+    public BackupStore(Path directory, Logger logger) {
+        this.directory = directory;
+        this.logger = logger;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /** @return every segment, oldest first */
+    public List<Segment> list() throws IOException {
+        if (!Files.isDirectory(directory)) return List.of();
+        List<Segment> segments = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Segment segment = parse(file);
+                if (segment != null) segments.add(segment);
+            }
+        }
+        segments.sort(Comparator.comparingLong(Segment::seq));
+        return segments;
+    }
+
+    public long nextSequence() throws IOException {
+        List<Segment> segments = list();
+        return segments.isEmpty() ? 1 : segments.get(segments.size() - 1).seq() + 1;
+    }
+
+    /** @return the segment written */
+    public Segment write(BackupSegment.Contents contents) throws IOException {
+        Path file = directory.resolve(fileName(contents.seq(), contents.createdAt(), contents.base()));
+        long size = BackupSegment.write(file, contents);
+        return new Segment(file, contents.seq(), contents.createdAt(), contents.base(), size);
+    }
+
+    /**
+     * Keeps the newest {@code keepBases} bases and the deltas after the oldest of them.
+     * @return the number of files deleted
+     */
+    public int prune(int keepBases) throws IOException {
+        List<Segment> segments = list();
+        List<Segment> bases = segments.stream().filter(Segment::base).toList();
+        if (keepBases < 1 || bases.size() <= keepBases) return 0;
+        long oldestKept = bases.get(bases.size() - keepBases).seq();
+        int deleted = 0;
+        for (Segment segment : segments) {
+            if (segment.seq() >= oldestKept) break;
+            if (Files.deleteIfExists(segment.file())) deleted++;
+        }
+        return deleted;
+    }
+
+    /**
+     * Rebuilds the state as of the newest backup taken at or before {@code atOrBefore}.
+     * Metrics the registry does not declare any more are dropped; new ones start at 0.
+     * @throws IOException if there is no such backup, a segment is damaged or a delta is missing
+     */
+    public Restored restore(MetricRegistry metrics, long atOrBefore) throws IOException {
+        long start = System.nanoTime();
+        List<Segment> segments = list();
+        int baseIndex = -1;
+        for (int i = 0; i < segments.size(); i++) {
+            Segment segment = segments.get(i);
+            if (segment.createdAt() > atOrBefore) break;
+            if (segment.base()) baseIndex = i;
+        }
+        if (baseIndex < 0) {
+            throw new IOException("No full backup taken at or before " + atOrBefore);
+        }
+
+        Map<UUID, PlayerStore.Row> players = new LinkedHashMap<>();
+        TreeMap<Integer, DungeonLog> logs = new TreeMap<>();
+        BackupSegment.Contents last = null;
+        int read = 0;
+        long bytes = 0;
+        for (int i = baseIndex; i < segments.size(); i++) {
+            Segment segment = segments.get(i);
+            if (segment.createdAt() > atOrBefore) break;
+            if (last != null && segment.seq() != last.seq() + 1) {
+                throw new IOException("Backup segment " + (last.seq() + 1) + " is missing; cannot restore past " + last.createdAt());
+            }
+            BackupSegment.Contents contents = BackupSegment.read(segment.file());
+            int[] columns = columnsFor(metrics, contents.metrics());
+            for (BackupSegment.PlayerRecord player : contents.players()) {
+                PlayerStore.Row row = player.row();
+                long[] values = new long[metrics.size()];
+                long[] seasonValues = row.seasonValues() == null ? null : new long[metrics.size()];
+                for (int m = 0; m < columns.length; m++) {
+                    if (columns[m] < 0) continue;
+                    values[columns[m]] = row.values()[m];
+                    if (seasonValues != null) seasonValues[columns[m]] = row.seasonValues()[m];
+                }
+                players.put(player.uuid(), new PlayerStore.Row(values, row.lastUpdated(), row.name(), row.killsByLevel(),
+                        row.season(), seasonValues));
+            }
+            for (DungeonLog log : contents.logs()) {
+                logs.put(log.recordId(), log);
+            }
+            last = contents;
+            read++;
+            bytes += segment.size();
+        }
+
+        // 已经压缩进汇总的日志不再恢复
+        logs.headMap(last.foldedThrough(), true).clear();
+        logger.info("Restored backup " + last.seq() + " from " + read + " segment(s)");
+        return new Restored(players, new ArrayList<>(logs.values()), last.ingested(), last.foldedThrough(), last.rollups(),
+                last.createdAt(), read, bytes, System.nanoTime() - start);
+    }
+
+    // 段内第 m 列 -> 当前注册表的指标 ID，没有则为 -1
+    private static int[] columnsFor(MetricRegistry metrics, List<String> keys) {
+        int[] columns = new int[keys.size()];
+        for (int m = 0; m < keys.size(); m++) {
+            MetricRegistry.Metric metric = metrics.get(keys.get(m));
+            columns[m] = metric == null ? -1 : metric.id();
+        }
+        return columns;
+    }
+
+    private static String fileName(long seq, long createdAt, boolean base) {
+        return String.format("%010d-%d%s", seq, createdAt, base ? BASE : DELTA);
+    }
+
+    private static Segment parse(Path file) throws IOException {
+        String name = file.getFileName().toString();
+        boolean base = name.endsWith(BASE);
+        if (!base && !name.endsWith(DELTA)) return null;
+        int dash = name.indexOf('-');
+        int dot = name.lastIndexOf('.');
+        if (dash < 0) return null;
+        try {
+            return new Segment(file, Long.parseLong(name.substring(0, dash)), Long.parseLong(name.substring(dash + 1, dot)),
+                    base, Files.size(file));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,355 @@
+package top.steve3184.dungeonstats.changefeed;
+
+import com.google.gson.stream.JsonWriter;
+import top.steve3184.dungeonstats.metrics.Counter;
+import top.steve3184.dungeonstats.metrics.Metrics;
+import top.steve3184.dungeonstats.model.DungeonLog;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * An append-only log of stat changes, one JSON object per line, in segment files named after
+ * the sequence number of their first change ({@code changes-<seq>.ndjson}). A new segment is
+ * started once the current one reaches {@code segmentBytes}, and the oldest are deleted beyond
+ * {@code keepSegments}.
+ *
+ * Sequence numbers are assigned by the thread that appends, in order and without gaps, and
+ * continue after a restart. Lines are encoded and written by a background writer thread, so
+ * appending only queues a small record. Readers on any thread see a change once it has been
+ * flushed; the API sidecar reads the same directory with {@link #openReader}.
+ *
+ * Has no Bukkit dependency.
+ */
+public class ChangeFeed implements AutoCloseable {
+
+    /**
+     * A page of changes read with {@link #read}.
+     *
+     * @param changes the JSON lines, in sequence order
+     * @param next    the sequence number to pass as {@code since} for the following page
+     * @param oldest  the oldest sequence number still kept; changes before it were deleted
+     * @param more    whether the page was cut off at the limit
+     */
+    public record Page(List<String> changes, long next, long oldest, boolean more) {}
+
+    // 单条改动，由写线程编码成一行
+    private record Change(long seq, long time, UUID uuid, String name, String metric, long delta, long value, DungeonLog run) {}
+
+    private static final String PREFIX = "changes-";
+    private static final String SUFFIX = ".ndjson";
+    private static final Change END = new Change(-1, 0, null, null, null, 0, 0, null);
+
+    private final Counter changesWritten = Metrics.counter("dungeonstats_changefeed_changes_total", "Changes written to the changefeed");
+    private final Counter segmentsRotated = Metrics.counter("dungeonstats_changefeed_segments_total", "Changefeed segments started");
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final int keepSegments;
+    private final Logger logger;
+    private final LinkedBlockingQueue<Change> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    // 只在追加的线程读写
+    private long nextSeq;
+    // 已经写进文件并刷新的最大编号，读取不会越过它
+    private volatile long flushed;
+    // 写入失败后不再排队，避免内存一直增长
+    private volatile boolean failed;
+    // 以下只在写线程读写
+    private OutputStream out;
+    private long segmentSize;
+
+    private ChangeFeed(Path directory, long segmentBytes, int keepSegments, Logger logger, boolean writable) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.keepSegments = keepSegments;
+        this.logger = logger;
+        if (!writable) {
+            this.flushed = Long.MAX_VALUE;
+            this.writer = null;
+            return;
+        }
+        Files.createDirectories(directory);
+        List<Path> segments = segments();
+        long last = segments.isEmpty() ? 0 : lastSeq(segments.get(segments.size() - 1));
+        this.nextSeq = last + 1;
+        this.flushed = last;
+        this.writer = new Thread(this::writeLoop, "DungeonStats-ChangeFeed");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Opens the feed for appending. Sequence numbers continue after the last change on disk; a
+     * new segment is started rather than appending to one a crash may have cut off.
+     */
+    public static ChangeFeed open(Path directory, long segmentBytes, int keepSegments, Logger logger) throws IOException {
+        return new ChangeFeed(directory, Math.max(1024, segmentBytes), Math.max(1, keepSegments), logger, true);
+    }
+
+    /** Opens a feed written by another process for reading only. */
+    public static ChangeFeed openReader(Path directory, Logger logger) throws IOException {
+        return new ChangeFeed(directory, 0, 0, logger, false);
+    }
+
+    /**
+     * Appends a change of a player's metric. Must be called by one thread, in the order the
+     * changes were made.
+     *
+     * @param delta how much the value changed
+     * @param value the value afterwards
+     * @return the change's sequence number
+     */
+    public long appendStat(long time, UUID uuid, String name, String metric, long delta, long value) {
+        return append(new Change(nextSeq, time, uuid, name, metric, delta, value, null));
+    }
+
+    /** Appends a stored dungeon run. Must be called by the thread that appends stat changes. */
+    public long appendRun(long time, DungeonLog run) {
+        return append(new Change(nextSeq, time, null, null, null, 0, 0, run));
+    }
+
+    private long append(Change change) {
+        if (writer == null) throw new IllegalStateException("The changefeed was opened for reading only.");
+        if (failed) return -1;
+        nextSeq++;
+        queue.add(change);
+        return change.seq();
+    }
+
+    /** Changes queued but not yet written. */
+    public int backlog() {
+        return queue.size();
+    }
+
+    /**
+     * Reads up to {@code limit} changes after {@code since}. Safe to call from any thread.
+     * Segments deleted while being read are skipped, like older changes that were pruned.
+     */
+    public Page read(long since, int limit) throws IOException {
+        List<Path> segments = segments();
+        long bound = flushed;
+        long oldest = segments.isEmpty() ? (writer == null ? 1 : bound + 1) : seqOf(segments.get(0));
+        // 从最后一个起始编号不大于 since + 1 的分段开始读
+        int from = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            if (seqOf(segments.get(i)) <= since + 1) from = i;
+        }
+        List<String> changes = new ArrayList<>(Math.min(limit, 1024));
+        boolean stopped = false;
+        for (int i = from; i < segments.size() && !stopped; i++) {
+            try {
+                stopped = scan(segments.get(i), since, bound, limit, changes);
+            } catch (NoSuchFileException e) {
+                // 读的时候被轮转删掉了
+            }
+        }
+        long next = changes.isEmpty() ? since : seqOf(changes.get(changes.size() - 1));
+        return new Page(changes, next, oldest, stopped && changes.size() >= limit);
+    }
+
+    // 把一个分段里 since 之后的完整行加入 changes，不用再往后读时返回 true
+    private static boolean scan(Path file, long since, long bound, int limit, List<String> changes) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file), 64 * 1024)) {
+            byte[] line = new byte[256];
+            int length = 0;
+            int b;
+            while ((b = in.read()) != -1) {
+                if (b != '\n') {
+                    if (length == line.length) line = Arrays.copyOf(line, length * 2);
+                    line[length++] = (byte) b;
+                    continue;
+                }
+                long seq = seqOf(line, length);
+                int size = length;
+                length = 0;
+                if (seq <= since) continue;
+                if (seq > bound) return true;
+                if (changes.size() >= limit) return true;
+                changes.add(new String(line, 0, size, StandardCharsets.UTF_8));
+            }
+            // 没有换行的最后一行还在写或者被截断了，不返回
+        }
+        return false;
+    }
+
+    /** Writes everything queued and stops the writer thread. */
+    @Override
+    public void close() {
+        if (writer == null) return;
+        queue.add(END);
+        try {
+            writer.join(10_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeLoop() {
+        List<Change> drained = new ArrayList<>();
+        try {
+            while (true) {
+                drained.add(queue.take());
+                queue.drainTo(drained, 4096);
+                boolean end = false;
+                long last = flushed;
+                for (Change change : drained) {
+                    if (change == END) {
+                        end = true;
+                        break;
+                    }
+                    write(change);
+                    last = change.seq();
+                }
+                if (out != null) out.flush();
+                changesWritten.add(last - flushed);
+                flushed = last;
+                drained.clear();
+                if (end) break;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            failed = true;
+            queue.clear();
+            logger.severe("Failed to write the changefeed in " + directory + "; no more changes are recorded until it is restarted!");
+            e.printStackTrace();
+        } finally {
+            closeSegment();
+        }
+    }
+
+    private void write(Change change) throws IOException {
+        byte[] line = encode(change);
+        if (out == null || (segmentSize > 0 && segmentSize + line.length > segmentBytes)) {
+            startSegment(change.seq());
+        }
+        out.write(line);
+        segmentSize += line.length;
+    }
+
+    private void startSegment(long firstSeq) throws IOException {
+        closeSegment();
+        Path file = directory.resolve(String.format("%s%012d%s", PREFIX, firstSeq, SUFFIX));
+        out = new BufferedOutputStream(Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND), 64 * 1024);
+        segmentSize = 0;
+        segmentsRotated.inc();
+        List<Path> segments = segments();
+        for (int i = 0; i < segments.size() - keepSegments; i++) {
+            Files.deleteIfExists(segments.get(i));
+        }
+    }
+
+    private void closeSegment() {
+        if (out == null) return;
+        try {
+            out.close();
+        } catch (IOException e) {
+            logger.warning("Failed to close the changefeed segment: " + e.getMessage());
+        }
+        out = null;
+    }
+
+    private static byte[] encode(Change change) throws IOException {
+        StringWriter line = new StringWriter(160);
+        JsonWriter json = new JsonWriter(line);
+        // seq 必须是第一个字段，读取时直接从行首解析
+        json.beginObject().name("seq").value(change.seq()).name("time").value(change.time());
+        if (change.run() != null) {
+            DungeonLog log = change.run();
+            json.name("type").value("run")
+                    .name("recordId").value(log.recordId())
+                    .name("maxLevel").value(log.maxLevel())
+                    .name("doorsOpened").value(log.doorsOpened())
+                    .name("enemiesKilled").value(log.enemiesKilled())
+                    .name("bossesDefeated").value(log.bossesDefeated())
+                    .name("durationSeconds").value(log.durationSeconds())
+                    .name("timestamp").value(log.timestamp())
+                    .name("arena").value(log.arena())
+                    .name("runId").value(log.runId());
+        } else {
+            json.name("type").value("stat")
+                    .name("uuid").value(change.uuid().toString())
+                    .name("playerName").value(change.name())
+                    .name("metric").value(change.metric())
+                    .name("delta").value(change.delta())
+                    .name("value").value(change.value());
+        }
+        json.endObject();
+        line.write('\n');
+        return line.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    // 行首是 {"seq":<数字>
+    private static long seqOf(byte[] line, int length) {
+        int i = length > 7 && line[1] == '"' && line[2] == 's' ? 7 : length;
+        long seq = 0;
+        boolean digits = false;
+        for (; i < length && line[i] >= '0' && line[i] <= '9'; i++) {
+            seq = seq * 10 + (line[i] - '0');
+            digits = true;
+        }
+        return digits ? seq : -1;
+    }
+
+    private static long seqOf(String line) {
+        int end = line.indexOf(',');
+        return Long.parseLong(line.substring(7, end));
+    }
+
+    private static long seqOf(Path segment) {
+        String name = segment.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // 最后一个分段里最后一条完整的改动
+    private static long lastSeq(Path segment) throws IOException {
+        long last = seqOf(segment) - 1;
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(segment), 64 * 1024)) {
+            byte[] line = new byte[256];
+            int length = 0;
+            int b;
+            while ((b = in.read()) != -1) {
+                if (b != '\n') {
+                    if (length == line.length) line = Arrays.copyOf(line, length * 2);
+                    line[length++] = (byte) b;
+                    continue;
+                }
+                last = Math.max(last, seqOf(line, length));
+                length = 0;
+            }
+        }
+        return last;
+    }
+
+    // 按起始编号排序的分段
+    private List<Path> segments() throws IOException {
+        if (!Files.isDirectory(directory)) return List.of();
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> {
+                String name = file.getFileName().toString();
+                return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+            }).filter(file -> seqOf(file) >= 0).sorted((a, b) -> Long.compare(seqOf(a), seqOf(b))).toList();
+        }
+    }
+}
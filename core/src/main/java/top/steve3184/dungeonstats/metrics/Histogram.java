@@ -0,0 +1,56 @@
+package top.steve3184.dungeonstats.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram with fixed bucket bounds. Observations are recorded in
+ * nanoseconds and exported in seconds, as Prometheus expects.
+ */
+public final class Histogram {
+
+    // Upper bounds in nanoseconds: 50µs .. 2.5s
+    static final long[] BOUNDS = {
+            50_000L, 100_000L, 250_000L, 500_000L,
+            1_000_000L, 2_500_000L, 5_000_000L, 10_000_000L, 25_000_000L, 50_000_000L,
+            100_000_000L, 250_000_000L, 500_000_000L, 1_000_000_000L, 2_500_000_000L
+    };
+
+    private final LongAdder[] buckets = new LongAdder[BOUNDS.length + 1];
+    private final LongAdder sumNanos = new LongAdder();
+    private final LongAdder count = new LongAdder();
+
+    Histogram() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void observeNanos(long nanos) {
+        int i = 0;
+        while (i < BOUNDS.length && nanos > BOUNDS[i]) i++;
+        buckets[i].increment();
+        sumNanos.add(nanos);
+        count.increment();
+    }
+
+    /** Records the time elapsed since {@code startNanos}, taken from {@link System#nanoTime()}. */
+    public void observeSince(long startNanos) {
+        observeNanos(System.nanoTime() - startNanos);
+    }
+
+    long bucket(int index) {
+        return buckets[index].sum();
+    }
+
+    long sumNanos() {
+        return sumNanos.sum();
+    }
+
+    long count() {
+        return count.sum();
+    }
+
+    int bucketCount() {
+        return buckets.length;
+    }
+}
@@ -0,0 +1,136 @@
+package top.steve3184.dungeonstats.metrics;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Process-wide metric registry, rendered in the Prometheus text exposition format.
+ *
+ * Series are registered once (typically in a constructor or static initializer) and the
+ * returned {@link Counter}/{@link Histogram} is kept in a field, so the hot path only
+ * touches lock-free adders. Registering the same name and labels twice returns the
+ * existing series.
+ */
+public final class Metrics {
+
+    private static final Map<String, Family> families = new LinkedHashMap<>();
+
+    private Metrics() {
+    }
+
+    /**
+     * @param labels alternating label names and values, e.g. {@code "endpoint", "/stats"}
+     */
+    public static Counter counter(String name, String help, String... labels) {
+        return (Counter) register(name, help, "counter", labels, Counter::new);
+    }
+
+    public static Histogram histogram(String name, String help, String... labels) {
+        return (Histogram) register(name, help, "histogram", labels, Histogram::new);
+    }
+
+    /**
+     * Registers a gauge whose value is sampled when metrics are scraped.
+     * Registering it again replaces the supplier, so owners can re-register after a reload.
+     */
+    public static synchronized void gauge(String name, String help, LongSupplier supplier, String... labels) {
+        register(name, help, "gauge", labels, () -> supplier);
+        families.get(name).series.put(formatLabels(labels), supplier);
+    }
+
+    private static synchronized Object register(String name, String help, String type, String[] labels,
+                                                java.util.function.Supplier<Object> factory) {
+        Family family = families.computeIfAbsent(name, n -> new Family(n, help, type));
+        if (!family.type.equals(type)) {
+            throw new IllegalArgumentException("Metric " + name + " is already registered as a " + family.type);
+        }
+        String labelString = formatLabels(labels);
+        return family.series.computeIfAbsent(labelString, l -> factory.get());
+    }
+
+    private static String formatLabels(String[] labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be name/value pairs");
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) sb.append(',');
+            sb.append(labels[i]).append("=\"")
+                    .append(labels[i + 1].replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+                    .append('"');
+        }
+        return sb.toString();
+    }
+
+    public static String scrape() {
+        List<Family> snapshot;
+        synchronized (Metrics.class) {
+            snapshot = new ArrayList<>(families.values());
+        }
+        StringBuilder out = new StringBuilder(4096);
+        for (Family family : snapshot) {
+            family.writeTo(out);
+        }
+        return out.toString();
+    }
+
+    private static final class Family {
+        final String name;
+        final String help;
+        final String type;
+        final Map<String, Object> series = new LinkedHashMap<>();
+
+        Family(String name, String help, String type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+
+        void writeTo(StringBuilder out) {
+            List<Map.Entry<String, Object>> entries;
+            synchronized (Metrics.class) {
+                entries = new ArrayList<>(series.entrySet());
+            }
+            out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+            for (Map.Entry<String, Object> entry : entries) {
+                String labels = entry.getKey();
+                Object metric = entry.getValue();
+                if (metric instanceof Counter counter) {
+                    sample(out, name, labels, null, Long.toString(counter.get()));
+                } else if (metric instanceof LongSupplier gauge) {
+                    sample(out, name, labels, null, Long.toString(gauge.getAsLong()));
+                } else if (metric instanceof Histogram histogram) {
+                    long cumulative = 0;
+                    for (int i = 0; i < histogram.bucketCount(); i++) {
+                        cumulative += histogram.bucket(i);
+                        String le = i < Histogram.BOUNDS.length ? seconds(Histogram.BOUNDS[i]) : "+Inf";
+                        sample(out, name + "_bucket", labels, "le=\"" + le + "\"", Long.toString(cumulative));
+                    }
+                    sample(out, name + "_sum", labels, null, seconds(histogram.sumNanos()));
+                    sample(out, name + "_count", labels, null, Long.toString(histogram.count()));
+                }
+            }
+        }
+
+        private static void sample(StringBuilder out, String name, String labels, String extra, String value) {
+            out.append(name);
+            if (!labels.isEmpty() || extra != null) {
+                out.append('{').append(labels);
+                if (extra != null) {
+                    if (!labels.isEmpty()) out.append(',');
+                    out.append(extra);
+                }
+                out.append('}');
+            }
+            out.append(' ').append(value).append('\n');
+        }
+
+        private static String seconds(long nanos) {
+            return Double.toString(nanos / 1_000_000_000.0);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package top.steve3184.dungeonstats.model;
+
+/**
+ * @param recordId global, increasing over all arenas
+ * @param arena    null for runs recorded before arenas existed, which belong to the first arena
+ * @param runId    the ID the arena's storage gave the run; only unique within the arena
+ */
+public record DungeonLog(
+        int recordId,
+        int maxLevel,
+        int doorsOpened,
+        int enemiesKilled,
+        int bossesDefeated,
+        long durationSeconds,
+        long timestamp, // 记录入库时间（毫秒），旧数据为 0
+        String arena,
+        int runId
+) {
+
+    /** A run without arena, whose run ID is its record ID. */
+    public DungeonLog(int recordId, int maxLevel, int doorsOpened, int enemiesKilled, int bossesDefeated,
+                      long durationSeconds, long timestamp) {
+        this(recordId, maxLevel, doorsOpened, enemiesKilled, bossesDefeated, durationSeconds, timestamp, null, recordId);
+    }
+
+    public DungeonLog withRecordId(int recordId) {
+        return new DungeonLog(recordId, maxLevel, doorsOpened, enemiesKilled, bossesDefeated, durationSeconds,
+                timestamp, arena, runId);
+    }
+}
@@ -0,0 +1,11 @@
+package top.steve3184.dungeonstats.model;
+
+import java.util.List;
+
+// 排行榜的一段：total 是上榜总人数，players 从第 offset + 1 名开始，values 是每人的排名指标值
+public record LeaderboardPage(
+        int total,
+        int offset,
+        List<PlayerStats> players,
+        List<Long> values
+) {}
@@ -0,0 +1,9 @@
+package top.steve3184.dungeonstats.model;
+
+// 在线玩家状态：spectator / waiting / ingame / unknown
+public record OnlinePlayer(
+        String name,
+        String status,
+        double health,
+        double armor
+) {}
@@ -0,0 +1,19 @@
+package top.steve3184.dungeonstats.model;
+
+// 被压缩归档的旧地牢记录，按天或按周汇总
+public record RunRollup(
+        String periodType,
+        String period,
+        long runs,
+        int firstRecordId,
+        int lastRecordId,
+        long enemiesKilled,
+        long maxEnemiesKilled,
+        long doorsOpened,
+        long maxDoorsOpened,
+        long bossesDefeated,
+        long maxBossesDefeated,
+        long durationSeconds,
+        long maxDurationSeconds,
+        int maxLevel
+) {}
@@ -0,0 +1,17 @@
+package top.steve3184.dungeonstats.model;
+
+import java.util.Map;
+
+// 地牢运行统计摘要，windowHours 为 0 表示全部时间
+public record RunSummary(
+        int windowHours,
+        long runs,
+        long durationP50,
+        long durationP90,
+        long durationP99,
+        double avgKills,
+        double avgDoors,
+        double avgBosses,
+        double runsPerHour,
+        Map<Integer, Long> levelDistribution
+) {}
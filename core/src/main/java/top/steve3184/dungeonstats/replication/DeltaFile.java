@@ -0,0 +1,70 @@
+package top.steve3184.dungeonstats.replication;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compact gzip'd binary file holding one node's replica entries as of a sequence number.
+ * A delta only holds the players changed since the node's previous file, a base holds all of them.
+ */
+public final class DeltaFile {
+
+    private static final int MAGIC = 0x44534431; // "DSD1"
+
+    public record Contents(String nodeId, long seq, boolean base, List<ReplicaEntry> entries) {}
+
+    private DeltaFile() {
+    }
+
+    /** Writes to a temporary file first and moves it into place, so readers never see a partial file. */
+    public static void write(Path file, String nodeId, long seq, boolean base, Collection<ReplicaEntry> entries) throws IOException {
+        Files.createDirectories(file.getParent());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(tmp))))) {
+            out.writeInt(MAGIC);
+            out.writeUTF(nodeId);
+            out.writeLong(seq);
+            out.writeBoolean(base);
+            out.writeInt(entries.size());
+            for (ReplicaEntry entry : entries) {
+                out.writeLong(entry.uuid().getMostSignificantBits());
+                out.writeLong(entry.uuid().getLeastSignificantBits());
+                out.writeUTF(entry.name() == null ? "" : entry.name());
+                out.writeLong(entry.kills());
+                out.writeLong(entry.playtime());
+                out.writeInt(entry.maxLevel());
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static Contents read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file))))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a DungeonStats delta file: " + file);
+            }
+            String nodeId = in.readUTF();
+            long seq = in.readLong();
+            boolean base = in.readBoolean();
+            int count = in.readInt();
+            List<ReplicaEntry> entries = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                UUID uuid = new UUID(in.readLong(), in.readLong());
+                entries.add(new ReplicaEntry(uuid, in.readUTF(), in.readLong(), in.readLong(), in.readInt()));
+            }
+            return new Contents(nodeId, seq, base, entries);
+        }
+    }
+}
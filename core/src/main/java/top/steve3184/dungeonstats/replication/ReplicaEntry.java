@@ -0,0 +1,20 @@
+package top.steve3184.dungeonstats.replication;
+
+import java.util.UUID;
+
+/**
+ * One node's contribution to a player's stats. Kills and playtime are that node's slot of a
+ * grow-only counter and maxLevel is a max-register, so merging two entries is a field-wise max.
+ */
+public record ReplicaEntry(UUID uuid, String name, long kills, long playtime, int maxLevel) {
+
+    public ReplicaEntry merge(ReplicaEntry other) {
+        return new ReplicaEntry(
+                uuid,
+                other.name != null && !other.name.isEmpty() ? other.name : name,
+                Math.max(kills, other.kills),
+                Math.max(playtime, other.playtime),
+                Math.max(maxLevel, other.maxLevel)
+        );
+    }
+}
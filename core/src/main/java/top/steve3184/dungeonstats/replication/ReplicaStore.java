@@ -0,0 +1,150 @@
+package top.steve3184.dungeonstats.replication;
+
+import top.steve3184.dungeonstats.model.PlayerStats;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Merged view of the stats contributed by peer nodes.
+ *
+ * Each peer's entries are merged field-wise by max, so applying the same delta twice or in any
+ * order gives the same state. A version vector records, per peer, the sequence up to which every
+ * file has been applied; files applied ahead of that watermark are remembered until the gap closes.
+ * Per-peer entries are only touched by the thread applying deltas; readers see the summed
+ * remote totals through a concurrent map of immutable values.
+ */
+public class ReplicaStore {
+
+    public record RemoteTotals(String name, long kills, long playtime, int maxLevel) {}
+
+    private final Map<String, Map<UUID, ReplicaEntry>> peers = new HashMap<>();
+    private final Map<String, Long> versionVector = new ConcurrentHashMap<>();
+    private final Map<String, TreeSet<Long>> appliedAhead = new HashMap<>();
+    private final Map<UUID, RemoteTotals> totals = new ConcurrentHashMap<>();
+    // 每应用一个文件加一，版本相同时合并出的排行榜仍然有效
+    private volatile long version;
+
+    /**
+     * Merges a peer's file into the store.
+     * @return false if the file was already applied or is covered by a base already applied
+     */
+    public synchronized boolean apply(DeltaFile.Contents contents) {
+        long known = versionOf(contents.nodeId());
+        TreeSet<Long> ahead = appliedAhead.computeIfAbsent(contents.nodeId(), n -> new TreeSet<>());
+        if (contents.seq() <= known || ahead.contains(contents.seq())) return false;
+
+        Map<UUID, ReplicaEntry> node = peers.computeIfAbsent(contents.nodeId(), n -> new HashMap<>());
+        for (ReplicaEntry incoming : contents.entries()) {
+            ReplicaEntry previous = node.get(incoming.uuid());
+            ReplicaEntry merged = previous == null ? incoming : previous.merge(incoming);
+            node.put(incoming.uuid(), merged);
+
+            // Only the growth of this node's slot is added to the summed totals
+            long killsDelta = merged.kills() - (previous == null ? 0 : previous.kills());
+            long playtimeDelta = merged.playtime() - (previous == null ? 0 : previous.playtime());
+            totals.merge(incoming.uuid(),
+                    new RemoteTotals(merged.name(), killsDelta, playtimeDelta, merged.maxLevel()),
+                    (a, b) -> new RemoteTotals(
+                            b.name() == null || b.name().isEmpty() ? a.name() : b.name(),
+                            a.kills() + b.kills(),
+                            a.playtime() + b.playtime(),
+                            Math.max(a.maxLevel(), b.maxLevel())));
+        }
+        // A base covers everything before it; a delta only closes the gap it fills
+        ahead.add(contents.seq());
+        long watermark = contents.base() ? contents.seq() : known;
+        ahead.headSet(watermark, true).clear();
+        while (ahead.remove(watermark + 1)) {
+            watermark++;
+        }
+        versionVector.put(contents.nodeId(), watermark);
+        version++;
+        return true;
+    }
+
+    /**
+     * Increases whenever a file is applied, i.e. whenever the version vector or the summed
+     * totals change. Views read at the same version are still current.
+     */
+    public long version() {
+        return version;
+    }
+
+    public long versionOf(String nodeId) {
+        return versionVector.getOrDefault(nodeId, 0L);
+    }
+
+    public Map<String, Long> getVersionVector() {
+        return Map.copyOf(versionVector);
+    }
+
+    public RemoteTotals getTotals(UUID uuid) {
+        return totals.get(uuid);
+    }
+
+    /** A copy of every player's summed remote totals. */
+    public Map<UUID, RemoteTotals> getAllTotals() {
+        return new HashMap<>(totals);
+    }
+
+    /** Adds peer contributions to a player's local stats. */
+    public PlayerStats withRemote(UUID uuid, PlayerStats local) {
+        RemoteTotals remote = totals.get(uuid);
+        if (remote == null) return local;
+        return new PlayerStats(
+                local.playerName(),
+                local.kills() + remote.kills(),
+                local.playtimeSeconds() + remote.playtime(),
+                Math.max(local.maxLevel(), remote.maxLevel())
+        );
+    }
+
+    /** Visits players known only from peers, i.e. not in {@code localPlayers}. */
+    public void forEachRemoteOnly(Set<UUID> localPlayers, Consumer<PlayerStats> consumer) {
+        for (Map.Entry<UUID, RemoteTotals> entry : totals.entrySet()) {
+            if (localPlayers.contains(entry.getKey())) continue;
+            RemoteTotals remote = entry.getValue();
+            if (remote.name() == null || remote.name().isEmpty()) continue;
+            consumer.accept(new PlayerStats(remote.name(), remote.kills(), remote.playtime(), remote.maxLevel()));
+        }
+    }
+
+    public UUID findByName(String playerName) {
+        for (Map.Entry<UUID, RemoteTotals> entry : totals.entrySet()) {
+            if (playerName.equalsIgnoreCase(entry.getValue().name())) return entry.getKey();
+        }
+        return null;
+    }
+
+    public int size() {
+        return totals.size();
+    }
+
+    /** Persists every peer's merged entries as one base file per peer. */
+    public synchronized void save(Path directory) throws IOException {
+        for (Map.Entry<String, Map<UUID, ReplicaEntry>> node : peers.entrySet()) {
+            Collection<ReplicaEntry> entries = node.getValue().values();
+            DeltaFile.write(directory.resolve(node.getKey() + ".state"), node.getKey(), versionOf(node.getKey()), true, entries);
+        }
+    }
+
+    public void load(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) return;
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files.filter(f -> f.getFileName().toString().endsWith(".state"))::iterator) {
+                apply(DeltaFile.read(file));
+            }
+        }
+    }
+}
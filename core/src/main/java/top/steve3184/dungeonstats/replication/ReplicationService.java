@@ -0,0 +1,164 @@
+package top.steve3184.dungeonstats.replication;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Exchanges replica files through a shared directory.
+ *
+ * Layout: {@code <shared>/<nodeId>/<seq>.delta} for each published delta and
+ * {@code <shared>/<nodeId>/<seq>.base} for periodic full snapshots. When a base is written,
+ * the files it supersedes are pruned, so a peer that fell behind reads one base instead of
+ * the whole history. Peers are pulled using the store's version vector, so only files newer
+ * than what was already merged are read.
+ *
+ * Has no Bukkit dependency; several instances can be run against local directories.
+ */
+public class ReplicationService {
+
+    private static final String DELTA = ".delta";
+    private static final String BASE = ".base";
+
+    private final String nodeId;
+    private final Path sharedDirectory;
+    private final Path stateDirectory;
+    private final ReplicaStore store;
+    private final Logger logger;
+    private long nextSeq;
+    private long lastBaseSeq;
+
+    public ReplicationService(String nodeId, Path sharedDirectory, Path stateDirectory, ReplicaStore store, Logger logger) throws IOException {
+        this.nodeId = nodeId;
+        this.sharedDirectory = sharedDirectory;
+        this.stateDirectory = stateDirectory;
+        this.store = store;
+        this.logger = logger;
+
+        Files.createDirectories(sharedDirectory.resolve(nodeId));
+        store.load(stateDirectory);
+        for (Path file : listFiles(sharedDirectory.resolve(nodeId))) {
+            long seq = seqOf(file);
+            nextSeq = Math.max(nextSeq, seq);
+            if (file.getFileName().toString().endsWith(BASE)) lastBaseSeq = Math.max(lastBaseSeq, seq);
+        }
+        nextSeq++;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public ReplicaStore getStore() {
+        return store;
+    }
+
+    /**
+     * Publishes this node's entries.
+     * @param base whether {@code entries} holds every local player rather than just the changed ones
+     */
+    public synchronized void publish(Collection<ReplicaEntry> entries, boolean base) throws IOException {
+        if (entries.isEmpty() && !base) return;
+        long seq = nextSeq++;
+        Path nodeDirectory = sharedDirectory.resolve(nodeId);
+        DeltaFile.write(nodeDirectory.resolve(fileName(seq, DELTA)), nodeId, seq, false, entries);
+        if (!base) return;
+
+        DeltaFile.write(nodeDirectory.resolve(fileName(seq, BASE)), nodeId, seq, true, entries);
+        // Deltas up to the previous base stay available for peers that are only slightly behind
+        for (Path file : listFiles(nodeDirectory)) {
+            long fileSeq = seqOf(file);
+            boolean isBase = file.getFileName().toString().endsWith(BASE);
+            if ((isBase && fileSeq < seq) || (!isBase && fileSeq <= lastBaseSeq)) {
+                Files.deleteIfExists(file);
+            }
+        }
+        lastBaseSeq = seq;
+    }
+
+    /**
+     * Merges every peer file that is newer than the version vector.
+     * @return the number of files applied
+     */
+    public synchronized int pull() throws IOException {
+        int applied = 0;
+        for (Path peerDirectory : listFiles(sharedDirectory)) {
+            if (!Files.isDirectory(peerDirectory)) continue;
+            String peer = peerDirectory.getFileName().toString();
+            if (peer.equals(nodeId)) continue;
+            applied += pullPeer(peer, peerDirectory);
+        }
+        if (applied > 0) {
+            store.save(stateDirectory);
+        }
+        return applied;
+    }
+
+    private int pullPeer(String peer, Path peerDirectory) throws IOException {
+        long known = store.versionOf(peer);
+        List<Path> deltas = new ArrayList<>();
+        Path latestBase = null;
+        long latestBaseSeq = 0;
+        for (Path file : listFiles(peerDirectory)) {
+            String name = file.getFileName().toString();
+            long seq = seqOf(file);
+            if (seq <= known) continue;
+            if (name.endsWith(DELTA)) {
+                deltas.add(file);
+            } else if (name.endsWith(BASE) && seq > latestBaseSeq) {
+                latestBase = file;
+                latestBaseSeq = seq;
+            }
+        }
+        deltas.sort((a, b) -> Long.compare(seqOf(a), seqOf(b)));
+
+        int applied = 0;
+        // The next delta was pruned: catch up from the newest base, then the deltas after it
+        boolean gap = deltas.isEmpty() ? latestBase != null : seqOf(deltas.get(0)) != known + 1;
+        if (gap && latestBase != null) {
+            applied += applyFile(latestBase);
+        }
+        for (Path delta : deltas) {
+            if (seqOf(delta) <= store.versionOf(peer)) continue;
+            applied += applyFile(delta);
+        }
+        return applied;
+    }
+
+    private int applyFile(Path file) {
+        try {
+            return store.apply(DeltaFile.read(file)) ? 1 : 0;
+        } catch (IOException e) {
+            // The peer may have pruned it in the meantime; the next pull picks up its base
+            logger.log(Level.WARNING, "Failed to read replica file " + file + ": " + e.getMessage());
+            return 0;
+        }
+    }
+
+    private static String fileName(long seq, String extension) {
+        return String.format("%012d%s", seq, extension);
+    }
+
+    private static long seqOf(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.indexOf('.');
+        try {
+            return Long.parseLong(dot < 0 ? name : name.substring(0, dot));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static List<Path> listFiles(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) return List.of();
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(f -> !f.getFileName().toString().endsWith(".tmp")).toList();
+        }
+    }
+}
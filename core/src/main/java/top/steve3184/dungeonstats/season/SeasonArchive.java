@@ -0,0 +1,165 @@
+package top.steve3184.dungeonstats.season;
+
+import top.steve3184.dungeonstats.model.LeaderboardPage;
+import top.steve3184.dungeonstats.model.PlayerStats;
+import top.steve3184.dungeonstats.utils.MetricRegistry;
+import top.steve3184.dungeonstats.utils.PlayerSnapshot;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The frozen leaderboards of a finished season: the top players of every metric, each stored
+ * once with all of their season values. Never changes after the season ends.
+ *
+ * @param players   how many players played in the season
+ * @param metrics   metric keys, in the order of each entry's values
+ * @param standings lower-case metric key -> indexes into {@code entries}, best first
+ */
+public record SeasonArchive(int season, long startedAt, long endedAt, int players, List<String> metrics,
+                            List<Entry> entries, Map<String, int[]> standings) {
+
+    public record Entry(String name, long[] values) {}
+
+    /**
+     * Freezes the season of {@code snapshot}: the first {@code limit} players of every metric's
+     * season leaderboard. Sorts the leaderboards if they are not yet, so call it off the main thread.
+     */
+    public static SeasonArchive of(PlayerSnapshot snapshot, long endedAt, int limit) {
+        MetricRegistry registry = snapshot.metrics();
+        List<String> metrics = registry.all().stream().map(MetricRegistry.Metric::key).toList();
+        List<Entry> entries = new ArrayList<>();
+        // 槽位 -> 条目序号，上了多个榜的玩家只存一次
+        Map<Integer, Integer> indexes = new HashMap<>();
+        Map<String, int[]> standings = new LinkedHashMap<>();
+        int players = 0;
+        for (MetricRegistry.Metric metric : registry.all()) {
+            int[] board = snapshot.seasonLeaderboard(metric.id());
+            players = board.length;
+            int[] top = new int[Math.min(limit, board.length)];
+            for (int rank = 0; rank < top.length; rank++) {
+                int slot = board[rank];
+                top[rank] = indexes.computeIfAbsent(slot, s -> {
+                    entries.add(new Entry(snapshot.name(s), snapshot.seasonValues(s)));
+                    return entries.size() - 1;
+                });
+            }
+            standings.put(metric.key().toLowerCase(Locale.ROOT), top);
+        }
+        return new SeasonArchive(snapshot.season(), snapshot.seasonStartedAt(), endedAt, players, metrics,
+                List.copyOf(entries), Collections.unmodifiableMap(standings));
+    }
+
+    /**
+     * Ranks {@code offset + 1} to {@code offset + limit} of a metric's final standings. Player
+     * stats hold the season values; only the archived top of each metric can be read.
+     *
+     * @param key a metric key, case-insensitive
+     * @return null if the metric did not exist during the season
+     */
+    public LeaderboardPage page(String key, int offset, int limit) {
+        int[] top = standings.get(key.toLowerCase(Locale.ROOT));
+        if (top == null) return null;
+        int metric = indexOf(key);
+        int end = (int) Math.min(top.length, (long) offset + limit);
+        List<PlayerStats> page = new ArrayList<>(Math.max(0, end - offset));
+        List<Long> values = new ArrayList<>(Math.max(0, end - offset));
+        for (int i = offset; i < end; i++) {
+            Entry entry = entries.get(top[i]);
+            // 内置指标总是排在最前面
+            page.add(new PlayerStats(entry.name(), entry.values()[MetricRegistry.KILLS], entry.values()[MetricRegistry.PLAYTIME],
+                    (int) entry.values()[MetricRegistry.MAX_LEVEL]));
+            values.add(entry.values()[metric]);
+        }
+        return new LeaderboardPage(players, offset, page, values);
+    }
+
+    private int indexOf(String key) {
+        for (int m = 0; m < metrics.size(); m++) {
+            if (metrics.get(m).equalsIgnoreCase(key)) return m;
+        }
+        return -1;
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(season);
+        out.writeLong(startedAt);
+        out.writeLong(endedAt);
+        out.writeInt(players);
+        out.writeInt(metrics.size());
+        for (String metric : metrics) {
+            out.writeUTF(metric);
+        }
+        out.writeInt(entries.size());
+        for (Entry entry : entries) {
+            out.writeUTF(entry.name() == null ? "" : entry.name());
+            for (long value : entry.values()) {
+                out.writeLong(value);
+            }
+        }
+        for (String metric : metrics) {
+            int[] top = standings.get(metric.toLowerCase(Locale.ROOT));
+            out.writeInt(top.length);
+            for (int index : top) {
+                out.writeInt(index);
+            }
+        }
+    }
+
+    static SeasonArchive read(DataInputStream in) throws IOException {
+        int season = in.readInt();
+        long startedAt = in.readLong();
+        long endedAt = in.readLong();
+        int players = in.readInt();
+        int metricCount = in.readInt();
+        List<String> metrics = new ArrayList<>(metricCount);
+        for (int m = 0; m < metricCount; m++) {
+            metrics.add(in.readUTF());
+        }
+        int entryCount = in.readInt();
+        List<Entry> entries = new ArrayList<>(entryCount);
+        for (int i = 0; i < entryCount; i++) {
+            String name = in.readUTF();
+            long[] values = new long[metricCount];
+            for (int m = 0; m < metricCount; m++) {
+                values[m] = in.readLong();
+            }
+            entries.add(new Entry(name, values));
+        }
+        Map<String, int[]> standings = new LinkedHashMap<>();
+        for (String metric : metrics) {
+            int[] top = new int[in.readInt()];
+            for (int rank = 0; rank < top.length; rank++) {
+                top[rank] = in.readInt();
+            }
+            standings.put(metric.toLowerCase(Locale.ROOT), top);
+        }
+        return new SeasonArchive(season, startedAt, endedAt, players, List.copyOf(metrics), List.copyOf(entries),
+                Collections.unmodifiableMap(standings));
+    }
+
+    /** Writes several archives into a stream, e.g. the sidecar's snapshot file. */
+    public static void writeAll(DataOutputStream out, List<SeasonArchive> archives) throws IOException {
+        out.writeInt(archives.size());
+        for (SeasonArchive archive : archives) {
+            archive.write(out);
+        }
+    }
+
+    public static List<SeasonArchive> readAll(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<SeasonArchive> archives = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            archives.add(read(in));
+        }
+        return List.copyOf(archives);
+    }
+}
@@ -0,0 +1,69 @@
+package top.steve3184.dungeonstats.season;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The directory of archived seasons, one gzip'd {@code season-<n>.dat} file each.
+ *
+ * Has no Bukkit dependency.
+ */
+public class SeasonArchiveStore {
+
+    private static final int MAGIC = 0x44534131; // "DSA1"
+    private static final String PREFIX = "season-";
+    private static final String SUFFIX = ".dat";
+
+    private final Path directory;
+    private final Logger logger;
+
+    public SeasonArchiveStore(Path directory, Logger logger) {
+        this.directory = directory;
+        this.logger = logger;
+    }
+
+    /** Writes to a temporary file first and moves it into place, so a crash never leaves a partial archive. */
+    public void write(SeasonArchive archive) throws IOException {
+        Files.createDirectories(directory);
+        Path file = directory.resolve(PREFIX + archive.season() + SUFFIX);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(tmp))))) {
+            out.writeInt(MAGIC);
+            archive.write(out);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** @return every readable archive, newest season first; damaged files are skipped with a warning */
+    public List<SeasonArchive> loadAll() throws IOException {
+        List<SeasonArchive> archives = new ArrayList<>();
+        if (!Files.isDirectory(directory)) return archives;
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (!name.startsWith(PREFIX) || !name.endsWith(SUFFIX)) continue;
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file))))) {
+                    if (in.readInt() != MAGIC) throw new IOException("not a season archive");
+                    archives.add(SeasonArchive.read(in));
+                } catch (IOException e) {
+                    logger.warning("Skipping season archive " + file + ": " + e.getMessage());
+                }
+            }
+        }
+        archives.sort(Comparator.comparingInt(SeasonArchive::season).reversed());
+        return archives;
+    }
+}
@@ -0,0 +1,118 @@
+package top.steve3184.dungeonstats.sidecar;
+
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import top.steve3184.dungeonstats.api.ChangesHandler;
+import top.steve3184.dungeonstats.api.InstrumentedHandler;
+import top.steve3184.dungeonstats.api.KillLevelsHandler;
+import top.steve3184.dungeonstats.api.MetricsHandler;
+import top.steve3184.dungeonstats.api.PlayerStatsHandler;
+import top.steve3184.dungeonstats.api.PlayersHandler;
+import top.steve3184.dungeonstats.api.RateLimitedHandler;
+import top.steve3184.dungeonstats.api.RateLimiter;
+import top.steve3184.dungeonstats.api.SearchHandler;
+import top.steve3184.dungeonstats.api.SeasonsHandler;
+import top.steve3184.dungeonstats.api.StatsHandler;
+import top.steve3184.dungeonstats.api.TopHandler;
+import top.steve3184.dungeonstats.changefeed.ChangeFeed;
+import top.steve3184.dungeonstats.metrics.Metrics;
+import top.steve3184.dungeonstats.utils.StatsEngine;
+import top.steve3184.dungeonstats.utils.StatsSnapshot;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Serves the read-only stats API from its own process, so web traffic does not compete with the
+ * game for CPU and GC. Stats come from the snapshot file the plugin writes
+ * ({@code api-sidecar} in config.yml); the file is checked for a new snapshot every
+ * {@code poll-ms} and the handlers read the latest one.
+ *
+ * Usage: {@code dungeonstats-sidecar file=plugins/DungeonStats/api-snapshot.dat [port=8080]
+ * [poll-ms=250] [threads=<cores>] [requests-per-second=5] [burst=20]
+ * [changes=plugins/DungeonStats/changes]}. A rate of 0 turns rate limiting off; {@code changes}
+ * serves {@code /changes} from the plugin's changefeed directory.
+ */
+public final class SidecarServer {
+
+    private static final Logger LOGGER = Logger.getLogger("DungeonStats");
+
+    private SidecarServer() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int split = arg.indexOf('=');
+            if (split < 0) {
+                System.err.println("Expected key=value, got: " + arg);
+                System.exit(2);
+            }
+            options.put(arg.substring(0, split), arg.substring(split + 1));
+        }
+        if (!options.containsKey("file")) {
+            System.err.println("Usage: dungeonstats-sidecar file=<snapshot file> [port=8080] [poll-ms=250] [threads=N] [requests-per-second=5] [burst=20] [changes=<changefeed directory>]");
+            System.exit(2);
+        }
+        Path file = Path.of(options.get("file"));
+        int port = Integer.parseInt(options.getOrDefault("port", "8080"));
+        long pollMillis = Long.parseLong(options.getOrDefault("poll-ms", "250"));
+        int threads = Integer.parseInt(options.getOrDefault("threads", String.valueOf(Runtime.getRuntime().availableProcessors())));
+        double rate = Double.parseDouble(options.getOrDefault("requests-per-second", "5"));
+        int burst = Integer.parseInt(options.getOrDefault("burst", "20"));
+
+        StatsEngine engine = new StatsEngine(LOGGER);
+        if (options.containsKey("changes")) {
+            engine.setChangeFeed(ChangeFeed.openReader(Path.of(options.get("changes")), LOGGER));
+        }
+        SnapshotReader reader = new SnapshotReader(file);
+        Metrics.gauge("dungeonstats_sidecar_snapshot_age_ms", "Time since the served snapshot was published by the plugin",
+                () -> engine.isReady() ? System.currentTimeMillis() - engine.getSnapshot().publishedAt() : -1);
+        ScheduledExecutorService poller = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "DungeonStats-SnapshotReader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        poller.scheduleWithFixedDelay(() -> {
+            try {
+                StatsSnapshot snapshot = reader.poll();
+                if (snapshot != null) engine.install(snapshot);
+            } catch (IOException | RuntimeException e) {
+                LOGGER.severe("Failed to read snapshot file " + file + ": " + e.getMessage());
+            }
+        }, 0, pollMillis, TimeUnit.MILLISECONDS);
+
+        Gson gson = new Gson();
+        RateLimiter limiter = rate > 0 ? new RateLimiter(rate, burst) : null;
+        HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+        Map<String, HttpHandler> handlers = new HashMap<>();
+        handlers.put("/players", new PlayersHandler(engine, gson));
+        handlers.put("/stats", new StatsHandler(engine, gson));
+        handlers.put("/playerstats", new PlayerStatsHandler(engine, gson));
+        handlers.put("/top", new TopHandler(engine, gson));
+        handlers.put("/killtop", new TopHandler(engine, gson, "kills"));
+        handlers.put("/playtimetop", new TopHandler(engine, gson, "playtime"));
+        handlers.put("/maxleveltop", new TopHandler(engine, gson, "maxLevel"));
+        handlers.put("/killlevels", new KillLevelsHandler(engine, gson));
+        handlers.put("/search", new SearchHandler(engine, gson));
+        handlers.put("/seasons", new SeasonsHandler(engine, gson));
+        handlers.put("/changes", new ChangesHandler(engine, gson));
+        handlers.forEach((path, handler) -> {
+            if (limiter != null) handler = new RateLimitedHandler(engine, gson, path, handler, limiter, null, 1);
+            server.createContext(path, new InstrumentedHandler(path, handler));
+        });
+        server.createContext("/metrics", new MetricsHandler(engine, gson));
+        // 快照只读，处理请求可以用多个线程
+        server.setExecutor(Executors.newFixedThreadPool(threads));
+        server.start();
+        LOGGER.info("DungeonStats API sidecar serving " + file + " on port " + port);
+    }
+}
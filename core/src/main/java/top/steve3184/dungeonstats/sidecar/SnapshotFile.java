@@ -0,0 +1,217 @@
+package top.steve3184.dungeonstats.sidecar;
+
+import top.steve3184.dungeonstats.model.DungeonLog;
+import top.steve3184.dungeonstats.model.OnlinePlayer;
+import top.steve3184.dungeonstats.model.RunRollup;
+import top.steve3184.dungeonstats.season.SeasonArchive;
+import top.steve3184.dungeonstats.utils.KillLevels;
+import top.steve3184.dungeonstats.utils.MetricRegistry;
+import top.steve3184.dungeonstats.utils.PlayerSnapshot;
+import top.steve3184.dungeonstats.utils.PlayerStore;
+import top.steve3184.dungeonstats.utils.StatsSnapshot;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Layout of the memory-mapped file through which the plugin hands {@link StatsSnapshot}s to
+ * the API sidecar. The file is rewritten in place and guarded by a sequence number (a seqlock):
+ *
+ * <pre>
+ *  0  int   magic "DSS1"
+ *  4  int   format version
+ *  8  long  sequence, odd while the writer is changing the file
+ * 16  long  snapshot epoch
+ * 24  long  time the snapshot was published (ms)
+ * 32  int   payload length
+ * 64  ...   payload: metric registry and arenas, current season, players with their metric values,
+ *             kills by level and season values, recent logs, rollups, online players,
+ *             archived seasons
+ * </pre>
+ *
+ * A reader copies the payload and then checks that the sequence is even and unchanged;
+ * otherwise the writer was busy and it tries again, so it never decodes torn data.
+ */
+public final class SnapshotFile {
+
+    static final int MAGIC = 0x44535331; // "DSS1"
+    static final int FORMAT_VERSION = 5;
+    static final int SEQUENCE = 8;
+    static final int EPOCH = 16;
+    static final int PUBLISHED_AT = 24;
+    static final int LENGTH = 32;
+    static final int HEADER_SIZE = 64;
+
+    // 序号必须用带内存屏障的读写，普通的 getLong 可能被重排
+    static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    private SnapshotFile() {
+    }
+
+    static void encode(StatsSnapshot snapshot, DataOutputStream out) throws IOException {
+        PlayerSnapshot players = snapshot.players();
+        MetricRegistry metrics = players.metrics();
+        // 各竞技场的列由读取方自己生成
+        out.writeInt(metrics.globals().size());
+        for (MetricRegistry.Metric metric : metrics.globals()) {
+            out.writeUTF(metric.key());
+            out.writeUTF(metric.name());
+            out.writeUTF(metric.type().name());
+            out.writeUTF(metric.source().name());
+            out.writeBoolean(metric.duration());
+        }
+        out.writeInt(metrics.arenas().size());
+        for (String arena : metrics.arenas()) {
+            out.writeUTF(arena);
+        }
+        out.writeInt(players.season());
+        out.writeLong(players.seasonStartedAt());
+        out.writeInt(players.size());
+        for (int slot = 0; slot < players.size(); slot++) {
+            UUID uuid = players.uuid(slot);
+            String name = players.name(slot);
+            out.writeLong(uuid.getMostSignificantBits());
+            out.writeLong(uuid.getLeastSignificantBits());
+            out.writeUTF(name == null ? "" : name);
+            for (int m = 0; m < metrics.size(); m++) {
+                out.writeLong(players.value(slot, m));
+            }
+            for (int count : players.killsByLevel(slot)) {
+                out.writeInt(count);
+            }
+            // 不在本赛季的玩家只写一个 false
+            boolean inSeason = players.inSeason(slot);
+            out.writeBoolean(inSeason);
+            if (inSeason) {
+                for (long value : players.seasonValues(slot)) {
+                    out.writeLong(value);
+                }
+            }
+        }
+
+        out.writeInt(snapshot.recentLogs().size());
+        for (DungeonLog log : snapshot.recentLogs()) {
+            out.writeInt(log.recordId());
+            out.writeInt(log.maxLevel());
+            out.writeInt(log.doorsOpened());
+            out.writeInt(log.enemiesKilled());
+            out.writeInt(log.bossesDefeated());
+            out.writeLong(log.durationSeconds());
+            out.writeLong(log.timestamp());
+            out.writeUTF(log.arena() == null ? "" : log.arena());
+            out.writeInt(log.runId());
+        }
+
+        out.writeInt(snapshot.rollups().size());
+        for (RunRollup rollup : snapshot.rollups()) {
+            out.writeUTF(rollup.periodType());
+            out.writeUTF(rollup.period());
+            out.writeLong(rollup.runs());
+            out.writeInt(rollup.firstRecordId());
+            out.writeInt(rollup.lastRecordId());
+            out.writeLong(rollup.enemiesKilled());
+            out.writeLong(rollup.maxEnemiesKilled());
+            out.writeLong(rollup.doorsOpened());
+            out.writeLong(rollup.maxDoorsOpened());
+            out.writeLong(rollup.bossesDefeated());
+            out.writeLong(rollup.maxBossesDefeated());
+            out.writeLong(rollup.durationSeconds());
+            out.writeLong(rollup.maxDurationSeconds());
+            out.writeInt(rollup.maxLevel());
+        }
+
+        out.writeInt(snapshot.onlinePlayers().size());
+        for (OnlinePlayer player : snapshot.onlinePlayers()) {
+            out.writeUTF(player.name());
+            out.writeUTF(player.status());
+            out.writeDouble(player.health());
+            out.writeDouble(player.armor());
+        }
+        SeasonArchive.writeAll(out, snapshot.seasons());
+        out.flush();
+    }
+
+    static StatsSnapshot decode(long epoch, long publishedAt, byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        int globalCount = in.readInt();
+        MetricRegistry.Builder builder = MetricRegistry.builder();
+        for (int m = 0; m < globalCount; m++) {
+            builder.add(in.readUTF(), in.readUTF(), MetricRegistry.Type.valueOf(in.readUTF()),
+                    MetricRegistry.Source.valueOf(in.readUTF()), in.readBoolean());
+        }
+        int arenaCount = in.readInt();
+        List<String> arenas = new ArrayList<>(arenaCount);
+        for (int i = 0; i < arenaCount; i++) {
+            arenas.add(in.readUTF());
+        }
+        MetricRegistry metrics = builder.arenas(arenas).build();
+        int metricCount = metrics.size();
+        int season = in.readInt();
+        long seasonStartedAt = in.readLong();
+        int playerCount = in.readInt();
+        String[] keys = new String[playerCount];
+        PlayerStore.Row[] rows = new PlayerStore.Row[playerCount];
+        for (int i = 0; i < playerCount; i++) {
+            keys[i] = new UUID(in.readLong(), in.readLong()).toString();
+            String name = in.readUTF();
+            long[] values = new long[metricCount];
+            for (int m = 0; m < metricCount; m++) {
+                values[m] = in.readLong();
+            }
+            int[] killsByLevel = new int[KillLevels.BANDS];
+            for (int band = 0; band < KillLevels.BANDS; band++) {
+                killsByLevel[band] = in.readInt();
+            }
+            long[] seasonValues = null;
+            if (in.readBoolean()) {
+                seasonValues = new long[metricCount];
+                for (int m = 0; m < metricCount; m++) {
+                    seasonValues[m] = in.readLong();
+                }
+            }
+            rows[i] = new PlayerStore.Row(values, 0, name.isEmpty() ? null : name, killsByLevel, season, seasonValues);
+        }
+        PlayerStore store = PlayerStore.load(metrics, keys, i -> rows[i]);
+        store.startSeason(season, seasonStartedAt);
+        PlayerSnapshot players = store.snapshot(null);
+
+        int logCount = in.readInt();
+        List<DungeonLog> logs = new ArrayList<>(logCount);
+        for (int i = 0; i < logCount; i++) {
+            int recordId = in.readInt();
+            int maxLevel = in.readInt();
+            int doors = in.readInt();
+            int kills = in.readInt();
+            int bosses = in.readInt();
+            long duration = in.readLong();
+            long timestamp = in.readLong();
+            String arena = in.readUTF();
+            logs.add(new DungeonLog(recordId, maxLevel, doors, kills, bosses, duration, timestamp,
+                    arena.isEmpty() ? null : arena, in.readInt()));
+        }
+
+        int rollupCount = in.readInt();
+        List<RunRollup> rollups = new ArrayList<>(rollupCount);
+        for (int i = 0; i < rollupCount; i++) {
+            rollups.add(new RunRollup(in.readUTF(), in.readUTF(), in.readLong(), in.readInt(), in.readInt(),
+                    in.readLong(), in.readLong(), in.readLong(), in.readLong(), in.readLong(), in.readLong(),
+                    in.readLong(), in.readLong(), in.readInt()));
+        }
+
+        int onlineCount = in.readInt();
+        List<OnlinePlayer> online = new ArrayList<>(onlineCount);
+        for (int i = 0; i < onlineCount; i++) {
+            online.add(new OnlinePlayer(in.readUTF(), in.readUTF(), in.readDouble(), in.readDouble()));
+        }
+        List<SeasonArchive> seasons = SeasonArchive.readAll(in);
+        return new StatsSnapshot(epoch, publishedAt, players, List.copyOf(logs), List.copyOf(rollups), List.copyOf(online), seasons);
+    }
+}
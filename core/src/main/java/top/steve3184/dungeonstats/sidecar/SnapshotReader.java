@@ -0,0 +1,85 @@
+package top.steve3184.dungeonstats.sidecar;
+
+import top.steve3184.dungeonstats.utils.StatsSnapshot;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static top.steve3184.dungeonstats.sidecar.SnapshotFile.*;
+
+/** Reads the snapshots a {@link SnapshotWriter} in another process keeps writing to a {@link SnapshotFile}. */
+public class SnapshotReader implements Closeable {
+
+    private static final int MAX_ATTEMPTS = 100;
+
+    private final Path file;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private long readSequence = -1;
+
+    public SnapshotReader(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Reads the file if it changed since the last successful read.
+     * @return the new snapshot, or null if there is nothing new or the writer stayed busy
+     */
+    public StatsSnapshot poll() throws IOException {
+        if (buffer == null && !open()) return null;
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            long before = (long) LONGS.getVolatile(buffer, SEQUENCE);
+            if (before == readSequence) return null;
+            if ((before & 1) != 0) {
+                // 正在写入
+                Thread.onSpinWait();
+                continue;
+            }
+            int length = buffer.getInt(LENGTH);
+            if (length < 0) continue;
+            if ((long) HEADER_SIZE + length > buffer.capacity()) {
+                // 写入方扩大了文件，重新映射
+                map();
+                continue;
+            }
+            long epoch = buffer.getLong(EPOCH);
+            long publishedAt = buffer.getLong(PUBLISHED_AT);
+            byte[] payload = new byte[length];
+            buffer.get(HEADER_SIZE, payload);
+            // 读完内容后再读一次序号，没变才说明读到的是完整的一份
+            VarHandle.acquireFence();
+            if ((long) LONGS.getVolatile(buffer, SEQUENCE) != before) continue;
+            readSequence = before;
+            return decode(epoch, publishedAt, payload);
+        }
+        return null;
+    }
+
+    private boolean open() throws IOException {
+        if (!Files.exists(file) || Files.size(file) < HEADER_SIZE) return false;
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        map();
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+            close();
+            throw new IOException("Not a DungeonStats snapshot file of version " + FORMAT_VERSION + ": " + file);
+        }
+        return true;
+    }
+
+    private void map() throws IOException {
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+
+    @Override
+    public void close() throws IOException {
+        buffer = null;
+        if (channel != null) channel.close();
+        channel = null;
+    }
+}
@@ -0,0 +1,93 @@
+package top.steve3184.dungeonstats.sidecar;
+
+import top.steve3184.dungeonstats.utils.StatsSnapshot;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static top.steve3184.dungeonstats.sidecar.SnapshotFile.*;
+
+/**
+ * Writes {@link StatsSnapshot}s into a {@link SnapshotFile} in place. The file only grows; it is
+ * extended and mapped again when a snapshot no longer fits. Not thread-safe: use one writer
+ * thread.
+ */
+public class SnapshotWriter implements Closeable {
+
+    private static final int INITIAL_SIZE = 1 << 20;
+
+    private final FileChannel channel;
+    private MappedByteBuffer buffer;
+    private long sequence;
+    private long writtenEpoch = -1;
+    // 复用编码缓冲区，每次写入不必重新分配
+    private final EncodeBuffer bytes = new EncodeBuffer();
+
+    public SnapshotWriter(Path file) throws IOException {
+        if (file.getParent() != null) Files.createDirectories(file.getParent());
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        map(Math.max(channel.size(), INITIAL_SIZE));
+        // 接着文件里原有的序号继续，已经在运行的 sidecar 能看出内容变了
+        if (buffer.getInt(0) == MAGIC) {
+            sequence = (long) LONGS.getVolatile(buffer, SEQUENCE) + 1 & ~1L;
+        }
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, FORMAT_VERSION);
+    }
+
+    /**
+     * Writes the snapshot unless it is the one written last.
+     * @return whether the file was changed
+     */
+    public boolean write(StatsSnapshot snapshot) throws IOException {
+        if (snapshot.epoch() == writtenEpoch) return false;
+        bytes.reset();
+        encode(snapshot, new DataOutputStream(bytes));
+        int length = bytes.size();
+
+        // 序号变成奇数：读者看到后会等写完再读
+        LONGS.setVolatile(buffer, SEQUENCE, ++sequence);
+        // volatile 写只保证之前的写入不后移，之后的普通写入可能提前到它前面；
+        // 加一道 StoreStore 屏障，读者看到旧的偶数序号时，内容一定还没被改动
+        VarHandle.storeStoreFence();
+        if (HEADER_SIZE + length > buffer.capacity()) {
+            map(Math.max((long) buffer.capacity() * 2, HEADER_SIZE + length));
+        }
+        buffer.putLong(EPOCH, snapshot.epoch());
+        buffer.putLong(PUBLISHED_AT, snapshot.publishedAt());
+        buffer.putInt(LENGTH, length);
+        buffer.put(HEADER_SIZE, bytes.array(), 0, length);
+        LONGS.setVolatile(buffer, SEQUENCE, ++sequence);
+        writtenEpoch = snapshot.epoch();
+        return true;
+    }
+
+    private void map(long size) throws IOException {
+        if (size > Integer.MAX_VALUE) throw new IOException("Snapshot does not fit in a mapped file: " + size + " bytes");
+        // 映射的是同一个文件，头部和奇数序号在新映射里照样可见
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    private static final class EncodeBuffer extends ByteArrayOutputStream {
+        EncodeBuffer() {
+            super(INITIAL_SIZE);
+        }
+
+        byte[] array() {
+            return buf;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
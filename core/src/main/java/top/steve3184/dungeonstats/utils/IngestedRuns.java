@@ -0,0 +1,54 @@
+package top.steve3184.dungeonstats.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The run IDs already ingested, one {@link RecordIdSet} per arena: every arena's storage numbers
+ * its runs on its own, so the same ID from two arenas is two different runs.
+ */
+public class IngestedRuns {
+
+    private final Map<String, RecordIdSet> arenas = new LinkedHashMap<>();
+
+    /** The IDs of one arena, created empty the first time it is asked for. */
+    public synchronized RecordIdSet of(String arena) {
+        return arenas.computeIfAbsent(arena, key -> new RecordIdSet());
+    }
+
+    public synchronized void put(String arena, RecordIdSet ids) {
+        arenas.put(arena, ids);
+    }
+
+    public synchronized Map<String, RecordIdSet> all() {
+        return new LinkedHashMap<>(arenas);
+    }
+
+    /** Text form: {@code arena=runs} pairs separated by ';', such as {@code main=1-500,502;east=1-3}. */
+    public synchronized String encode() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, RecordIdSet> entry : arenas.entrySet()) {
+            if (sb.length() > 0) sb.append(';');
+            sb.append(entry.getKey()).append('=').append(entry.getValue().encode());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @param defaultArena arena of an encoded {@link RecordIdSet} without arenas, as written
+     *                     before arenas existed
+     */
+    public static IngestedRuns decode(String encoded, String defaultArena) {
+        IngestedRuns runs = new IngestedRuns();
+        if (encoded == null || encoded.isEmpty()) return runs;
+        if (encoded.indexOf('=') < 0) {
+            runs.put(defaultArena, RecordIdSet.decode(encoded));
+            return runs;
+        }
+        for (String arena : encoded.split(";")) {
+            int equals = arena.indexOf('=');
+            runs.put(arena.substring(0, equals), RecordIdSet.decode(arena.substring(equals + 1)));
+        }
+        return runs;
+    }
+}
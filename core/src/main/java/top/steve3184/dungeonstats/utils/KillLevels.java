@@ -0,0 +1,45 @@
+package top.steve3184.dungeonstats.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The enemy level bands kills are counted in: {@value #BAND_WIDTH} levels each, the last band
+ * open-ended. Every player keeps one counter per band, so changing these constants changes
+ * the meaning of stored histograms.
+ */
+public final class KillLevels {
+
+    public static final int BANDS = 8;
+    public static final int BAND_WIDTH = 10;
+
+    private KillLevels() {
+    }
+
+    public static int band(int level) {
+        return Math.min(Math.max(level, 0) / BAND_WIDTH, BANDS - 1);
+    }
+
+    /** e.g. "10-19", or "70+" for the last band. */
+    public static String label(int band) {
+        int from = band * BAND_WIDTH;
+        return band == BANDS - 1 ? from + "+" : from + "-" + (from + BAND_WIDTH - 1);
+    }
+
+    /** Band label to count, in band order. */
+    public static Map<String, Long> toMap(long[] counts) {
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (int band = 0; band < BANDS; band++) {
+            result.put(label(band), counts[band]);
+        }
+        return result;
+    }
+
+    public static Map<String, Long> toMap(int[] counts) {
+        long[] widened = new long[BANDS];
+        for (int band = 0; band < BANDS; band++) {
+            widened[band] = counts[band];
+        }
+        return toMap(widened);
+    }
+}
@@ -5,22 +5,30 @@ import com.google.gson.GsonBuilder; // 引入 GsonBuilder 用于格式化输出
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import top.steve3184.dungeonstats.metrics.Counter;
+import top.steve3184.dungeonstats.metrics.Histogram;
+import top.steve3184.dungeonstats.metrics.Metrics;
 import top.steve3184.dungeonstats.model.DungeonLog;
 import top.steve3184.dungeonstats.model.PlayerLevel;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
-
-import static com.mojang.logging.LogUtils.getLogger;
+import java.util.logging.Logger;
 
 public class LogParser {
 
+    private static final Logger LOGGER = Logger.getLogger("DungeonStats");
+
     // 用于解析的Gson实例，保持高效
     private static final Gson gson = new Gson();
     // 专门用于调试输出的Gson实例，会进行格式化（pretty printing）
     private static final Gson debugGson = new GsonBuilder().setPrettyPrinting().create();
 
+    private static final Counter parsed = Metrics.counter("dungeonstats_logs_parsed_total", "Dungeon logs parsed successfully");
+    private static final Counter failed = Metrics.counter("dungeonstats_logs_failed_total", "Dungeon logs that failed to parse");
+    private static final Histogram parseTime = Metrics.histogram("dungeonstats_log_parse_duration_seconds", "LogParser.parse time");
+
     public static class ParsedResult {
         public final DungeonLog dungeonLog;
         public final List<PlayerLevel> playerLevels;
@@ -32,11 +40,20 @@ public class LogParser {
     }
 
     public static ParsedResult parse(String rawJson) {
+        return parse(rawJson, null);
+    }
+
+    /**
+     * @param arena the arena whose storage the log was read from, or null for the first arena
+     * @return the run, whose record ID is still its run ID until {@link StatsEngine#ingestLog} assigns one; null if the log is malformed
+     */
+    public static ParsedResult parse(String rawJson, String arena) {
+        long start = System.nanoTime();
         try {
             JsonObject root = gson.fromJson(rawJson, JsonObject.class);
             JsonArray mainExtra = root.getAsJsonArray("extra");
 
-            int recordId = Integer.parseInt(mainExtra.get(0).getAsString());
+            int runId = Integer.parseInt(mainExtra.get(0).getAsString());
 
             List<PlayerLevel> playerLevels = new ArrayList<>();
             int maxLevel = 0;
@@ -66,15 +83,19 @@ public class LogParser {
             long seconds = Long.parseLong(timeExtra.get(6).getAsString());
             long duration = (hours * 3600) + (minutes * 60) + seconds;
 
-            DungeonLog log = new DungeonLog(recordId, maxLevel, doors, kills, bosses, duration);
+            DungeonLog log = new DungeonLog(runId, maxLevel, doors, kills, bosses, duration, System.currentTimeMillis(), arena, runId);
+            parsed.inc();
             return new ParsedResult(log, playerLevels);
 
         } catch (Exception e) {
             // 在捕获到异常时，打印出导致问题的原始JSON，并打印堆栈跟踪
-            getLogger().error("Failed to parse JSON");
-            getLogger().error("Raw JSON: {}", rawJson);
+            LOGGER.severe("Failed to parse JSON");
+            LOGGER.severe("Raw JSON: " + rawJson);
             e.printStackTrace(); // 这会打印出详细的错误信息和代码行号
+            failed.inc();
             return null;
+        } finally {
+            parseTime.observeSince(start);
         }
     }
 }
\ No newline at end of file
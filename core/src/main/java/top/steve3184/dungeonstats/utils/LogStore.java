@@ -0,0 +1,255 @@
+package top.steve3184.dungeonstats.utils;
+
+import top.steve3184.dungeonstats.model.DungeonLog;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * Dungeon logs stored in pages of {@value #PAGE_SIZE} consecutive record IDs each. Only the
+ * sorted record ID index is kept in memory; pages are read when a log is needed and a few
+ * recently used ones stay cached. How pages are stored is up to the {@link PageStorage}.
+ */
+public class LogStore {
+
+    static final int PAGE_SIZE = 1000;
+    private static final int CACHED_PAGES = 16;
+
+    /** Reads and writes whole pages, e.g. one file per page. */
+    public interface PageStorage {
+        /** @return the numbers of all stored pages */
+        int[] pages();
+
+        /** @return the logs on the page, empty if it does not exist or cannot be read */
+        Collection<DungeonLog> read(int page);
+
+        /** Replaces the page with {@code logs}, deleting it if there are none. */
+        void write(int page, Collection<DungeonLog> logs) throws IOException;
+    }
+
+    private final PageStorage storage;
+    private final Logger logger;
+    private final LinkedHashMap<Integer, Page> cache = new LinkedHashMap<>(CACHED_PAGES, 0.75f, true);
+    private int[] ids = new int[0];
+    private int size;
+
+    private static final class Page {
+        final TreeMap<Integer, DungeonLog> logs = new TreeMap<>();
+        boolean dirty;
+    }
+
+    private LogStore(PageStorage storage, Logger logger) {
+        this.storage = storage;
+        this.logger = logger;
+    }
+
+    /**
+     * Opens the store and passes every stored log to {@code visitor}. Pages are read in
+     * parallel, so {@code visitor} must be thread-safe.
+     */
+    public static LogStore open(PageStorage storage, Logger logger, Consumer<DungeonLog> visitor) {
+        LogStore store = new LogStore(storage, logger);
+        int[][] pageIds = Arrays.stream(storage.pages()).parallel().mapToObj(page -> {
+            Collection<DungeonLog> logs = storage.read(page);
+            int[] found = new int[logs.size()];
+            int count = 0;
+            for (DungeonLog log : logs) {
+                visitor.accept(log);
+                found[count++] = log.recordId();
+            }
+            return Arrays.copyOf(found, count);
+        }).toArray(int[][]::new);
+
+        int total = 0;
+        for (int[] page : pageIds) total += page.length;
+        store.ids = new int[Math.max(total, 16)];
+        for (int[] page : pageIds) {
+            System.arraycopy(page, 0, store.ids, store.size, page.length);
+            store.size += page.length;
+        }
+        Arrays.parallelSort(store.ids, 0, store.size);
+        return store;
+    }
+
+    /**
+     * Replaces everything in {@code storage} with {@code logs}, e.g. when restoring a backup.
+     * Pages that end up without logs are deleted. Must not be used while a store is open on it.
+     */
+    public static void writeAll(PageStorage storage, Collection<DungeonLog> logs) throws IOException {
+        TreeMap<Integer, List<DungeonLog>> pages = new TreeMap<>();
+        for (DungeonLog log : logs) {
+            pages.computeIfAbsent(Math.floorDiv(log.recordId(), PAGE_SIZE), page -> new ArrayList<>()).add(log);
+        }
+        for (Map.Entry<Integer, List<DungeonLog>> page : pages.entrySet()) {
+            storage.write(page.getKey(), page.getValue());
+        }
+        for (int page : storage.pages()) {
+            if (!pages.containsKey(page)) storage.write(page, List.of());
+        }
+    }
+
+    /**
+     * Stores logs kept elsewhere by older versions and writes them out.
+     * @param visitor receives each log that was not already stored
+     */
+    public synchronized int importLogs(Collection<DungeonLog> logs, Consumer<DungeonLog> visitor) throws IOException {
+        for (DungeonLog log : logs) {
+            if (put(log)) visitor.accept(log);
+        }
+        flush();
+        return logs.size();
+    }
+
+    /** @return whether the log was not stored before */
+    public synchronized boolean put(DungeonLog log) {
+        Page page = page(log.recordId());
+        page.logs.put(log.recordId(), log);
+        page.dirty = true;
+        int index = Arrays.binarySearch(ids, 0, size, log.recordId());
+        if (index >= 0) return false;
+        insertAt(-index - 1, log.recordId());
+        return true;
+    }
+
+    public synchronized boolean contains(int recordId) {
+        return Arrays.binarySearch(ids, 0, size, recordId) >= 0;
+    }
+
+    /** @return the log, or null if it is not stored */
+    public synchronized DungeonLog get(int recordId) {
+        if (!contains(recordId)) return null;
+        return page(recordId).logs.get(recordId);
+    }
+
+    public synchronized boolean remove(int recordId) {
+        int index = Arrays.binarySearch(ids, 0, size, recordId);
+        if (index < 0) return false;
+        Page page = page(recordId);
+        page.logs.remove(recordId);
+        page.dirty = true;
+        System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+        size--;
+        return true;
+    }
+
+    public synchronized int count() {
+        return size;
+    }
+
+    /** @return the highest stored record ID, or 0 if there are none */
+    public synchronized int highest() {
+        return size == 0 ? 0 : ids[size - 1];
+    }
+
+    /** Sorted record IDs above {@code sinceRecordId}. */
+    public synchronized int[] ids(int sinceRecordId) {
+        int from = Arrays.binarySearch(ids, 0, size, sinceRecordId + 1);
+        if (from < 0) from = -from - 1;
+        return Arrays.copyOfRange(ids, from, size);
+    }
+
+    /** The newest logs first, reading only the pages they are on. */
+    public synchronized List<DungeonLog> newest(int limit) {
+        int count = limit > 0 ? Math.min(limit, size) : size;
+        List<DungeonLog> logs = new ArrayList<>(count);
+        for (int i = size - 1; i >= size - count; i--) {
+            logs.add(page(ids[i]).logs.get(ids[i]));
+        }
+        return logs;
+    }
+
+    /**
+     * Reads the logs with the sorted IDs {@code recordIds[from..to)} from any thread, skipping
+     * those that no longer exist. Only pages with unsaved logs are copied under the lock; the
+     * others are read straight from storage without it, so the thread that puts logs never waits
+     * on these reads and the cache is left alone. A saved page holds every log it had when it was
+     * saved, and a stored log never changes.
+     */
+    public List<DungeonLog> read(int[] recordIds, int from, int to) {
+        List<DungeonLog> result = new ArrayList<>(Math.max(0, to - from));
+        if (from >= to) return result;
+        int firstPage = Math.floorDiv(recordIds[from], PAGE_SIZE);
+        int lastPage = Math.floorDiv(recordIds[to - 1], PAGE_SIZE);
+        Map<Integer, Collection<DungeonLog>> unsaved = new HashMap<>();
+        synchronized (this) {
+            for (Map.Entry<Integer, Page> entry : cache.entrySet()) {
+                int page = entry.getKey();
+                if (entry.getValue().dirty && page >= firstPage && page <= lastPage) {
+                    unsaved.put(page, new ArrayList<>(entry.getValue().logs.values()));
+                }
+            }
+        }
+
+        int i = from;
+        while (i < to) {
+            int pageNumber = Math.floorDiv(recordIds[i], PAGE_SIZE);
+            Collection<DungeonLog> stored = unsaved.get(pageNumber);
+            if (stored == null) stored = storage.read(pageNumber);
+            Map<Integer, DungeonLog> byId = new HashMap<>(stored.size() * 2);
+            for (DungeonLog log : stored) byId.put(log.recordId(), log);
+            for (; i < to && Math.floorDiv(recordIds[i], PAGE_SIZE) == pageNumber; i++) {
+                DungeonLog log = byId.get(recordIds[i]);
+                if (log != null) result.add(log);
+            }
+        }
+        return result;
+    }
+
+    /** Writes every changed page; empty pages are deleted. */
+    public synchronized void flush() throws IOException {
+        for (Map.Entry<Integer, Page> entry : cache.entrySet()) {
+            save(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private void save(int pageNumber, Page page) throws IOException {
+        if (!page.dirty) return;
+        storage.write(pageNumber, page.logs.values());
+        page.dirty = false;
+    }
+
+    private Page page(int recordId) {
+        int pageNumber = Math.floorDiv(recordId, PAGE_SIZE);
+        Page page = cache.get(pageNumber);
+        if (page != null) return page;
+        page = new Page();
+        for (DungeonLog log : storage.read(pageNumber)) {
+            page.logs.put(log.recordId(), log);
+        }
+        cache.put(pageNumber, page);
+        evict();
+        return page;
+    }
+
+    // 超出缓存数量时淘汰最久未用的页，未保存的页先写盘
+    private void evict() {
+        Iterator<Map.Entry<Integer, Page>> it = cache.entrySet().iterator();
+        while (cache.size() > CACHED_PAGES && it.hasNext()) {
+            Map.Entry<Integer, Page> eldest = it.next();
+            try {
+                save(eldest.getKey(), eldest.getValue());
+            } catch (IOException e) {
+                logger.severe("Failed to save dungeon log page " + eldest.getKey() + ": " + e.getMessage());
+                continue; // 保存失败的页留在内存里，下次 flush 再试
+            }
+            it.remove();
+        }
+    }
+
+    private void insertAt(int index, int recordId) {
+        if (size == ids.length) ids = Arrays.copyOf(ids, Math.max(16, ids.length * 2));
+        System.arraycopy(ids, index, ids, index + 1, size - index);
+        ids[index] = recordId;
+        size++;
+    }
+}
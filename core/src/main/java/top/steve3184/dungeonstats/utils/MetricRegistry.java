@@ -0,0 +1,238 @@
+package top.steve3184.dungeonstats.utils;
+
+import top.steve3184.dungeonstats.model.DungeonLog;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The per-player stats the {@link PlayerStore} keeps, one primitive column each (not to be
+ * confused with the Prometheus metrics in {@code metrics.Metrics}). Every metric gets a
+ * leaderboard, {@code /dun} and API top lists and placeholders.
+ *
+ * {@code kills}, {@code playtime} and {@code maxLevel} always exist with IDs 0-2, since
+ * replication and exports depend on them; more are declared in config.yml.
+ *
+ * With more than one arena every metric also gets one column per arena, keyed
+ * {@code <key>@<arena>} and listed after all global metrics; the global metric stays the total.
+ */
+public final class MetricRegistry {
+
+    public enum Type {
+        /** Values add up. */
+        COUNTER,
+        /** The highest value is kept. */
+        MAX
+    }
+
+    /** Where a metric's values come from. Run sources credit every player listed in a dungeon log. */
+    public enum Source {
+        KILLS, PLAYTIME, RUNS, RUN_LEVEL, RUN_BOSSES, RUN_DOORS, RUN_ENEMIES, RUN_DURATION;
+
+        public boolean fromRuns() {
+            return this != KILLS && this != PLAYTIME;
+        }
+
+        /** The value a run gives a player who reached {@code level} in it. */
+        public long fromRun(DungeonLog log, int level) {
+            return switch (this) {
+                case RUNS -> 1;
+                case RUN_LEVEL -> level;
+                case RUN_BOSSES -> log.bossesDefeated();
+                case RUN_DOORS -> log.doorsOpened();
+                case RUN_ENEMIES -> log.enemiesKilled();
+                case RUN_DURATION -> log.durationSeconds();
+                default -> 0;
+            };
+        }
+
+        /** Parses config names such as "run-bosses". @return null if unknown */
+        public static Source parse(String name) {
+            try {
+                return valueOf(name.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * @param id       column index, also the order of the metric everywhere it is listed
+     * @param name     shown in /dun stats and leaderboard titles
+     * @param duration whether values are seconds and shown as hh:mm:ss
+     * @param arena    the arena this column counts, or null for the total of all arenas
+     * @param global   ID of the total metric; equal to {@code id} if {@code arena} is null
+     */
+    public record Metric(int id, String key, String name, Type type, Source source, boolean duration,
+                         String arena, int global) {
+
+        Metric(int id, String key, String name, Type type, Source source, boolean duration) {
+            this(id, key, name, type, source, duration, null, id);
+        }
+    }
+
+    public static final int KILLS = 0;
+    public static final int PLAYTIME = 1;
+    public static final int MAX_LEVEL = 2;
+
+    /** Only the built-in metrics. */
+    public static final MetricRegistry DEFAULT = builder().build();
+
+    private final List<Metric> metrics;
+    private final List<Metric> globals;
+    private final List<String> arenas;
+    // 小写 key -> 指标
+    private final Map<String, Metric> byKey;
+
+    private MetricRegistry(List<Metric> metrics, int globalCount, List<String> arenas) {
+        this.metrics = Collections.unmodifiableList(metrics);
+        this.globals = this.metrics.subList(0, globalCount);
+        this.arenas = List.copyOf(arenas);
+        this.byKey = new HashMap<>();
+        for (Metric metric : metrics) {
+            byKey.put(metric.key().toLowerCase(Locale.ROOT), metric);
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public int size() {
+        return metrics.size();
+    }
+
+    public Metric get(int id) {
+        return metrics.get(id);
+    }
+
+    /** Case-insensitive lookup. @return null if there is no such metric */
+    public Metric get(String key) {
+        return byKey.get(key.toLowerCase(Locale.ROOT));
+    }
+
+    public List<Metric> all() {
+        return metrics;
+    }
+
+    /** The metrics that count every arena, without the per-arena columns. */
+    public List<Metric> globals() {
+        return globals;
+    }
+
+    /** Arena IDs in config order; always at least one. */
+    public List<String> arenas() {
+        return arenas;
+    }
+
+    /** The first arena, which runs recorded before arenas existed belong to. */
+    public String defaultArena() {
+        return arenas.get(0);
+    }
+
+    /** @return the arena's index, or -1 if there is no such arena */
+    public int arenaIndex(String arena) {
+        for (int i = 0; i < arenas.size(); i++) {
+            if (arenas.get(i).equalsIgnoreCase(arena)) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * @return ID of the column counting {@code global} in one arena, or -1 if there is only one
+     *         arena (whose values are the global ones) or the index is out of range
+     */
+    public int arenaMetric(int global, int arenaIndex) {
+        if (arenas.size() < 2 || arenaIndex < 0 || arenaIndex >= arenas.size()) return -1;
+        return globals.size() + arenaIndex * globals.size() + global;
+    }
+
+    /**
+     * Looks up a metric as counted in one arena.
+     * @param arena null for the global metric
+     * @return null if there is no such metric or arena
+     */
+    public Metric get(String key, String arena) {
+        Metric metric = get(key);
+        if (metric == null || arena == null) return metric;
+        int index = arenaIndex(arena);
+        if (index < 0 || metric.arena() != null) return null;
+        int id = arenaMetric(metric.id(), index);
+        return id < 0 ? metric : metrics.get(id);
+    }
+
+    public static final class Builder {
+        private final List<Metric> metrics = new ArrayList<>();
+        private List<String> arenas = List.of("main");
+
+        private Builder() {
+            metrics.add(new Metric(KILLS, "kills", "Total Kills", Type.COUNTER, Source.KILLS, false));
+            metrics.add(new Metric(PLAYTIME, "playtime", "Total Playtime", Type.COUNTER, Source.PLAYTIME, true));
+            metrics.add(new Metric(MAX_LEVEL, "maxLevel", "Highest Dungeon Level", Type.MAX, Source.RUN_LEVEL, false));
+        }
+
+        /**
+         * Adds a metric, or only renames a built-in one: the type and source of built-ins are fixed,
+         * so they may be null for those.
+         * @throws IllegalArgumentException if the key is not usable in YAML paths and URLs, or
+         *                                  a new metric is not fed by dungeon runs
+         */
+        public Builder add(String key, String name, Type type, Source source, boolean duration) {
+            if (!key.matches("[A-Za-z][A-Za-z0-9]*")) {
+                throw new IllegalArgumentException("Metric keys may only contain letters and digits: " + key);
+            }
+            for (int i = 0; i < metrics.size(); i++) {
+                Metric existing = metrics.get(i);
+                if (!existing.key().equalsIgnoreCase(key)) continue;
+                if (i <= MAX_LEVEL) {
+                    metrics.set(i, new Metric(i, existing.key(), name, existing.type(), existing.source(), existing.duration()));
+                    return this;
+                }
+                throw new IllegalArgumentException("Metric declared twice: " + key);
+            }
+            if (type == null || source == null || !source.fromRuns()) {
+                // 击杀和游戏时间由事件直接记入内置指标
+                throw new IllegalArgumentException("Metric " + key + " needs a type and one of the run sources");
+            }
+            metrics.add(new Metric(metrics.size(), key, name, type, source, duration));
+            return this;
+        }
+
+        /**
+         * Sets the arenas, first one being the default.
+         * @throws IllegalArgumentException if an ID is not usable in metric keys or listed twice
+         */
+        public Builder arenas(List<String> arenas) {
+            if (arenas.isEmpty()) throw new IllegalArgumentException("At least one arena is needed");
+            for (int i = 0; i < arenas.size(); i++) {
+                String arena = arenas.get(i);
+                if (!arena.matches("[A-Za-z0-9][A-Za-z0-9-]*")) {
+                    throw new IllegalArgumentException("Arena IDs may only contain letters, digits and '-': " + arena);
+                }
+                for (int j = 0; j < i; j++) {
+                    if (arenas.get(j).equalsIgnoreCase(arena)) throw new IllegalArgumentException("Arena declared twice: " + arena);
+                }
+            }
+            this.arenas = List.copyOf(arenas);
+            return this;
+        }
+
+        public MetricRegistry build() {
+            List<Metric> all = new ArrayList<>(metrics);
+            if (arenas.size() > 1) {
+                // 每个竞技场一组列，按竞技场排列，id 由 arenaMetric 算出
+                for (String arena : arenas) {
+                    for (Metric metric : metrics) {
+                        all.add(new Metric(all.size(), metric.key() + "@" + arena, metric.name() + " (" + arena + ")",
+                                metric.type(), metric.source(), metric.duration(), arena, metric.id()));
+                    }
+                }
+            }
+            return new MetricRegistry(all, metrics.size(), arenas);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package top.steve3184.dungeonstats.utils;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.function.ObjIntConsumer;
+import java.util.function.Predicate;
+
+/**
+ * Lower-case player names sorted for prefix search: the names starting with a prefix form one
+ * range of the array, found with one binary search. Built from a name index that never changes
+ * afterwards, and shared by every {@link PlayerSnapshot} that shares that index, so it is only
+ * rebuilt when the name index is. The engine builds it in the background right after that.
+ */
+final class NamePrefixIndex {
+
+    record Sorted(String[] keys, int[] slots) {}
+
+    private final Map<String, Integer> source;
+    private volatile Sorted sorted;
+
+    NamePrefixIndex(Map<String, Integer> source) {
+        this.source = source;
+    }
+
+    /**
+     * Passes names starting with {@code prefix}, in order, to {@code visitor} until it has
+     * been given {@code limit} names for which {@code accept} returned true.
+     *
+     * @param prefix lower-case
+     */
+    void search(String prefix, int limit, ObjIntConsumer<String> visitor, Predicate<String> accept) {
+        Sorted sorted = build();
+        String[] keys = sorted.keys();
+        int from = lowerBound(keys, prefix);
+        int found = 0;
+        for (int i = from; i < keys.length && found < limit && keys[i].startsWith(prefix); i++) {
+            if (!accept.test(keys[i])) continue;
+            visitor.accept(keys[i], sorted.slots()[i]);
+            found++;
+        }
+    }
+
+    boolean isBuilt() {
+        return sorted != null;
+    }
+
+    Sorted build() {
+        Sorted current = sorted;
+        if (current != null) return current;
+        synchronized (this) {
+            if (sorted != null) return sorted;
+            String[] keys = source.keySet().toArray(new String[0]);
+            Arrays.parallelSort(keys);
+            int[] slots = new int[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                slots[i] = source.get(keys[i]);
+            }
+            sorted = new Sorted(keys, slots);
+            return sorted;
+        }
+    }
+
+    // 第一个不小于 prefix 的位置
+    private static int lowerBound(String[] keys, String prefix) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid].compareTo(prefix) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,398 @@
+package top.steve3184.dungeonstats.utils;
+
+import top.steve3184.dungeonstats.model.PlayerStats;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Immutable copy of the {@link PlayerStore} at one point in time, safe to read from any thread.
+ *
+ * Rows are kept in fixed-size chunks. A new snapshot only copies the chunks that changed and
+ * shares the rest with the previous one, so publishing after a few kills is cheap even with a
+ * large player table. Leaderboards are built on first use by the reading thread and cached.
+ * A snapshot carries forward the newest board built by an earlier snapshot and the slots changed
+ * since, so building its board only re-ranks those players and merges them into the old order.
+ * Only without such a board, or when too many players changed, is everyone sorted again.
+ *
+ * Season values count only for players whose season tag is this snapshot's season, so a new
+ * season shares every chunk with the snapshot before it.
+ */
+public final class PlayerSnapshot {
+
+    static final int CHUNK_BITS = 10;
+    static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    static final PlayerSnapshot EMPTY = new PlayerSnapshot(MetricRegistry.DEFAULT, -1, 0, new Chunk[0], Collections.emptyMap(), Collections.emptyMap(),
+            null, new long[KillLevels.BANDS], 1, 0, null, null);
+
+    static final class Chunk {
+        final long[] uuidMost;
+        final long[] uuidLeast;
+        final String[] names;
+        // values[指标][行]
+        final long[][] values;
+        final int[] levelKills;
+        // 每行的赛季标记和那个赛季的值
+        final int[] seasons;
+        final long[][] seasonValues;
+
+        Chunk(long[] uuidMost, long[] uuidLeast, String[] names, long[][] values, int[] levelKills,
+              int[] seasons, long[][] seasonValues) {
+            this.uuidMost = uuidMost;
+            this.uuidLeast = uuidLeast;
+            this.names = names;
+            this.values = values;
+            this.levelKills = levelKills;
+            this.seasons = seasons;
+            this.seasonValues = seasonValues;
+        }
+    }
+
+    private final MetricRegistry registry;
+    final long version;
+    private final int size;
+    final Chunk[] chunks;
+    // 名字索引：大表在快照之间共享，最近改过的名字放在小表里，-1 表示名字已不存在
+    final Map<String, Integer> names;
+    final Map<String, Integer> recentNames;
+    // 大表的前缀索引，和大表一起共享
+    final NamePrefixIndex prefixes;
+    private final long[] serverLevelKills;
+    private final int season;
+    private final long seasonStartedAt;
+    // 先是各指标的总榜，后面接着各指标的赛季榜；发布下一个快照时主线程不加锁读取
+    private final AtomicReferenceArray<int[]> boards;
+    // 之前某个快照排好的榜单、那个快照的分块，和那之后改过的槽位（升序），构造后不再改变
+    private final int[][] baseBoards;
+    private final Chunk[][] baseChunks;
+    private final int[][] changedSince;
+
+    /**
+     * @param prefixes the prefix index of {@code names}, or null to make a new one
+     * @param previous the snapshot this one was made after, whose boards are carried forward, or null
+     * @param changed  the slots changed since {@code previous}, ascending
+     */
+    PlayerSnapshot(MetricRegistry registry, long version, int size, Chunk[] chunks, Map<String, Integer> names, Map<String, Integer> recentNames,
+                   NamePrefixIndex prefixes, long[] serverLevelKills, int season, long seasonStartedAt,
+                   PlayerSnapshot previous, int[] changed) {
+        this.registry = registry;
+        this.boards = new AtomicReferenceArray<>(registry.size() * 2);
+        this.baseBoards = new int[boards.length()][];
+        this.baseChunks = new Chunk[boards.length()][];
+        this.changedSince = new int[boards.length()][];
+        this.version = version;
+        this.size = size;
+        this.chunks = chunks;
+        this.names = names;
+        this.recentNames = recentNames;
+        this.prefixes = prefixes != null ? prefixes : new NamePrefixIndex(names);
+        this.serverLevelKills = serverLevelKills;
+        this.season = season;
+        this.seasonStartedAt = seasonStartedAt;
+        if (previous != null && previous.registry == registry) carryBoards(previous, changed);
+    }
+
+    private void carryBoards(PlayerSnapshot previous, int[] changed) {
+        // 改动太多时重新排序更快
+        int limit = Math.max(CHUNK_SIZE, size >> 3);
+        if (changed.length > limit) return;
+        // 多个榜单的改动集合通常是同一个数组，合并一次就够
+        Map<int[], int[]> unions = new IdentityHashMap<>();
+        for (int index = 0; index < baseBoards.length; index++) {
+            // 换了赛季，赛季榜全部作废
+            if (index >= registry.size() && previous.season != season) break;
+            // 不等正在排序的读取线程：还没排好就沿用它的旧榜单
+            int[] board = previous.boards.get(index);
+            if (board != null) {
+                baseBoards[index] = board;
+                baseChunks[index] = previous.chunks;
+                changedSince[index] = changed;
+            } else if (previous.baseBoards[index] != null) {
+                int[] union = unions.computeIfAbsent(previous.changedSince[index], since -> union(since, changed));
+                if (union.length > limit) continue;
+                baseBoards[index] = previous.baseBoards[index];
+                baseChunks[index] = previous.baseChunks[index];
+                changedSince[index] = union;
+            }
+        }
+    }
+
+    // 两个升序数组的并集
+    private static int[] union(int[] a, int[] b) {
+        if (b.length == 0) return a;
+        if (a.length == 0) return b;
+        int[] result = new int[a.length + b.length];
+        int i = 0, j = 0, count = 0;
+        while (i < a.length || j < b.length) {
+            int next = j >= b.length || (i < a.length && a[i] < b[j]) ? a[i++] : b[j++];
+            if (count == 0 || result[count - 1] != next) result[count++] = next;
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** The metrics this snapshot has a value of for every player. */
+    public MetricRegistry metrics() {
+        return registry;
+    }
+
+    /** Case-insensitive lookup by the last known name. @return the slot, or -1 if unknown */
+    public int slotOfName(String name) {
+        String key = name.toLowerCase(Locale.ROOT);
+        Integer slot = recentNames.get(key);
+        if (slot == null) slot = names.get(key);
+        return slot == null ? -1 : slot;
+    }
+
+    /**
+     * Case-insensitive prefix search over the last known names.
+     * @return up to {@code limit} slots, ordered by name
+     */
+    public int[] slotsByPrefix(String prefix, int limit) {
+        String key = prefix.toLowerCase(Locale.ROOT);
+        if (limit <= 0) return new int[0];
+        // 大表里按顺序取前 limit 个，名字改过的以小表为准
+        List<String> matches = new ArrayList<>();
+        List<Integer> matchSlots = new ArrayList<>();
+        prefixes.search(key, limit, (name, slot) -> {
+            matches.add(name);
+            matchSlots.add(slot);
+        }, name -> !recentNames.containsKey(name));
+        recentNames.forEach((name, slot) -> {
+            if (slot >= 0 && name.startsWith(key)) {
+                matches.add(name);
+                matchSlots.add(slot);
+            }
+        });
+        Integer[] order = new Integer[matches.size()];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> matches.get(a).compareTo(matches.get(b)));
+        int[] result = new int[Math.min(limit, order.length)];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = matchSlots.get(order[i]);
+        }
+        return result;
+    }
+
+    public UUID uuid(int slot) {
+        Chunk chunk = chunks[slot >> CHUNK_BITS];
+        int i = slot & (CHUNK_SIZE - 1);
+        return new UUID(chunk.uuidMost[i], chunk.uuidLeast[i]);
+    }
+
+    public String name(int slot) {
+        return chunks[slot >> CHUNK_BITS].names[slot & (CHUNK_SIZE - 1)];
+    }
+
+    public PlayerStats stats(int slot) {
+        Chunk chunk = chunks[slot >> CHUNK_BITS];
+        int i = slot & (CHUNK_SIZE - 1);
+        return new PlayerStats(chunk.names[i], chunk.values[MetricRegistry.KILLS][i], chunk.values[MetricRegistry.PLAYTIME][i],
+                (int) chunk.values[MetricRegistry.MAX_LEVEL][i]);
+    }
+
+    public long value(int slot, int metric) {
+        return chunks[slot >> CHUNK_BITS].values[metric][slot & (CHUNK_SIZE - 1)];
+    }
+
+    /** @return the player's value of every metric, by metric ID */
+    public long[] values(int slot) {
+        Chunk chunk = chunks[slot >> CHUNK_BITS];
+        int i = slot & (CHUNK_SIZE - 1);
+        long[] values = new long[chunk.values.length];
+        for (int m = 0; m < values.length; m++) {
+            values[m] = chunk.values[m][i];
+        }
+        return values;
+    }
+
+    public int season() {
+        return season;
+    }
+
+    public long seasonStartedAt() {
+        return seasonStartedAt;
+    }
+
+    /** Whether the player's stats changed during the current season. */
+    public boolean inSeason(int slot) {
+        return chunks[slot >> CHUNK_BITS].seasons[slot & (CHUNK_SIZE - 1)] == season;
+    }
+
+    /** @return the player's value of the metric in the current season */
+    public long seasonValue(int slot, int metric) {
+        Chunk chunk = chunks[slot >> CHUNK_BITS];
+        int i = slot & (CHUNK_SIZE - 1);
+        return chunk.seasons[i] == season ? chunk.seasonValues[metric][i] : 0;
+    }
+
+    /** @return the player's value of every metric in the current season, by metric ID */
+    public long[] seasonValues(int slot) {
+        long[] values = new long[registry.size()];
+        if (!inSeason(slot)) return values;
+        Chunk chunk = chunks[slot >> CHUNK_BITS];
+        int i = slot & (CHUNK_SIZE - 1);
+        for (int m = 0; m < values.length; m++) {
+            values[m] = chunk.seasonValues[m][i];
+        }
+        return values;
+    }
+
+    /**
+     * The player's stats in the current season, in the same form as {@link #stats(int)}.
+     */
+    public PlayerStats seasonStats(int slot) {
+        return new PlayerStats(name(slot), seasonValue(slot, MetricRegistry.KILLS), seasonValue(slot, MetricRegistry.PLAYTIME),
+                (int) seasonValue(slot, MetricRegistry.MAX_LEVEL));
+    }
+
+    /** @return a copy of the player's kill counts per {@link KillLevels} band */
+    public int[] killsByLevel(int slot) {
+        int from = (slot & (CHUNK_SIZE - 1)) * KillLevels.BANDS;
+        return Arrays.copyOfRange(chunks[slot >> CHUNK_BITS].levelKills, from, from + KillLevels.BANDS);
+    }
+
+    /** @return a copy of the kill counts per {@link KillLevels} band of all players */
+    public long[] serverKillsByLevel() {
+        return serverLevelKills.clone();
+    }
+
+    /**
+     * @param key a metric key, case-insensitive
+     * @return the ordered slots, or null for an unknown metric
+     */
+    public int[] leaderboard(String key) {
+        MetricRegistry.Metric metric = registry.get(key);
+        return metric == null ? null : leaderboard(metric.id());
+    }
+
+    /**
+     * Slots of named players ordered by the given metric, highest first. Built the first time it
+     * is asked for, from the carried-forward board if there is one, and cached for the lifetime
+     * of this snapshot.
+     */
+    public synchronized int[] leaderboard(int metric) {
+        return board(metric, false);
+    }
+
+    /**
+     * Slots of named players who played in the current season, ordered by their season value
+     * of the given metric, highest first. Cached like {@link #leaderboard(int)}.
+     */
+    public synchronized int[] seasonLeaderboard(int metric) {
+        return board(metric, true);
+    }
+
+    private int[] board(int metric, boolean seasonal) {
+        int index = seasonal ? registry.size() + metric : metric;
+        int[] board = boards.get(index);
+        if (board == null) {
+            int[] base = baseBoards[index];
+            board = base != null ? rerank(base, baseChunks[index], changedSince[index], metric, seasonal) : null;
+            if (board == null) board = sort(metric, seasonal);
+            boards.set(index, board);
+        }
+        return board;
+    }
+
+    // 高 32 位是数值，低 32 位是反转的槽位：键越大排名越前，同分时先加入的玩家在前
+    private static long key(Chunk[] chunks, int slot, int metric, boolean seasonal) {
+        Chunk chunk = chunks[slot >> CHUNK_BITS];
+        int i = slot & (CHUNK_SIZE - 1);
+        long value = seasonal ? chunk.seasonValues[metric][i] : chunk.values[metric][i];
+        return (Math.min(Math.max(value, 0), Integer.MAX_VALUE) << 32) | (Integer.MAX_VALUE - slot);
+    }
+
+    // 在 chunks 那个快照的榜单上有没有这个玩家；季节榜的赛季和本快照相同才会沿用
+    private boolean ranked(Chunk[] chunks, int slot, boolean seasonal) {
+        if ((slot >> CHUNK_BITS) >= chunks.length) return false;
+        Chunk chunk = chunks[slot >> CHUNK_BITS];
+        int i = slot & (CHUNK_SIZE - 1);
+        return i < chunk.names.length && chunk.names[i] != null && (!seasonal || chunk.seasons[i] == season);
+    }
+
+    /**
+     * Builds the board from {@code base}, the board of the snapshot with {@code baseChunks}: the
+     * {@code changed} players are taken out and put back at their new rank, found by binary
+     * search, and the runs of unchanged players in between are copied as they are.
+     *
+     * @return null if {@code base} does not match {@code baseChunks}
+     */
+    private int[] rerank(int[] base, Chunk[] baseChunks, int[] changed, int metric, boolean seasonal) {
+        // 旧榜单上要移走的下标，和改动后的玩家在旧榜单上的插入位置
+        int[] removals = new int[changed.length];
+        int removed = 0;
+        long[] inserts = new long[changed.length];
+        int inserted = 0;
+        for (int slot : changed) {
+            if (ranked(baseChunks, slot, seasonal)) {
+                int at = position(base, baseChunks, key(baseChunks, slot, metric, seasonal), metric, seasonal);
+                if (at >= base.length || base[at] != slot) return null;
+                removals[removed++] = at;
+            }
+            if (ranked(chunks, slot, seasonal)) inserts[inserted++] = key(chunks, slot, metric, seasonal);
+        }
+        Arrays.sort(removals, 0, removed);
+        // 键从大到小插入，插入位置随之不减
+        Arrays.sort(inserts, 0, inserted);
+        int[] order = new int[base.length - removed + inserted];
+        int from = 0;
+        int out = 0;
+        int r = 0;
+        for (int n = inserted - 1; n >= 0 || r < removed; ) {
+            // 插在刚移走的位置上时，从下一个没移走的位置插入也一样
+            int insertAt = n >= 0 ? Math.max(from, position(base, baseChunks, inserts[n], metric, seasonal)) : Integer.MAX_VALUE;
+            int removeAt = r < removed ? removals[r] : Integer.MAX_VALUE;
+            int at = Math.min(insertAt, removeAt);
+            System.arraycopy(base, from, order, out, at - from);
+            out += at - from;
+            from = at;
+            if (removeAt <= insertAt) {
+                from++;
+                r++;
+            } else {
+                order[out++] = Integer.MAX_VALUE - (int) inserts[n--];
+            }
+        }
+        System.arraycopy(base, from, order, out, base.length - from);
+        return order;
+    }
+
+    // 旧榜单按旧的键从大到小排列：返回第一个键不大于 key 的下标
+    private static int position(int[] base, Chunk[] baseChunks, long key, int metric, boolean seasonal) {
+        int low = 0;
+        int high = base.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (key(baseChunks, base[mid], metric, seasonal) > key) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    private int[] sort(int metric, boolean seasonal) {
+        // 升序排好后倒着读
+        long[] packed = new long[size];
+        int count = 0;
+        for (int slot = 0; slot < size; slot++) {
+            if (ranked(chunks, slot, seasonal)) packed[count++] = key(chunks, slot, metric, seasonal);
+        }
+        Arrays.parallelSort(packed, 0, count);
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = Integer.MAX_VALUE - (int) packed[count - 1 - i];
+        }
+        return order;
+    }
+}
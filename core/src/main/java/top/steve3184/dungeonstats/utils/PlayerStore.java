@@ -0,0 +1,489 @@
+package top.steve3184.dungeonstats.utils;
+
+import top.steve3184.dungeonstats.model.PlayerStats;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+
+/**
+ * In-memory player table: one primitive column per metric of the {@link MetricRegistry},
+ * indexed by player slot, plus a name index. Only the main thread writes to it.
+ *
+ * The table does not know the file format: it is filled from {@link Row}s by
+ * {@link #load(MetricRegistry, String[], IntFunction)}, and changed rows are handed back by
+ * {@link #flushTo(BiConsumer)} right before the data file is saved and by
+ * {@link #drainBackup(boolean, BiConsumer)} when a backup is taken. Readers on other
+ * threads use the immutable copy made by {@link #snapshot(PlayerSnapshot)}.
+ *
+ * Every metric also has a season column. A player's season values are tagged with the season
+ * they belong to and only count while that is the current season, so {@link #startSeason}
+ * resets everyone by changing one number; a player's old values are cleared the next time the
+ * player's stats change.
+ */
+public class PlayerStore {
+
+    /**
+     * One stored player. {@code values} holds one value per metric, by metric ID; it may be
+     * shorter than the registry, missing values are 0. {@code name} is null if it was never
+     * stored, {@code killsByLevel} (one count per {@link KillLevels} band) is null if the
+     * player has no kills by level. {@code seasonValues} are the values in {@code season},
+     * null if the player never played in a season.
+     */
+    public record Row(long[] values, long lastUpdated, String name, int[] killsByLevel, int season, long[] seasonValues) {
+
+        public Row(long[] values, long lastUpdated, String name, int[] killsByLevel) {
+            this(values, lastUpdated, name, killsByLevel, 0, null);
+        }
+    }
+
+    /** Told about every metric value an {@link #apply} changed, while the store is locked. */
+    @FunctionalInterface
+    public interface ChangeListener {
+        void changed(UUID uuid, String name, int metric, long delta, long value);
+    }
+
+    private static final int INITIAL_CAPACITY = 1024;
+    // 最近改名的条目超过这个数就重建共享的名字索引
+    private static final int MAX_RECENT_NAMES = 4096;
+
+    private long[] uuidMost;
+    private long[] uuidLeast;
+    private String[] names;
+    private final MetricRegistry registry;
+    // 每个指标一列：columns[指标][槽位]
+    private long[][] columns;
+    private long[] lastUpdated;
+    // 每个玩家占 KillLevels.BANDS 个连续的计数
+    private int[] levelKills;
+    // 本赛季的值：seasonColumns[指标][槽位]，只有 seasonOf[槽位] 等于当前赛季时才算数
+    private long[][] seasonColumns;
+    private int[] seasonOf;
+    private int season = 1;
+    private long seasonStartedAt;
+    private int size;
+    // 全服按等级段的击杀数，每个批次合并一次
+    private final long[] serverLevelKills = new long[KillLevels.BANDS];
+
+    private final Map<UUID, Integer> slots;
+    // 小写名字 -> 槽位
+    private final Map<String, Integer> nameIndex;
+    private final BitSet dirty = new BitSet();
+    // 上次增量备份之后改过的槽位
+    private final BitSet backupDirty = new BitSet();
+    // 上次快照之后改过的槽位和名字
+    private final BitSet unpublished = new BitSet();
+    private final Set<String> unpublishedNames = new HashSet<>();
+
+    private long version;
+
+    public PlayerStore(MetricRegistry registry) {
+        this(registry, INITIAL_CAPACITY);
+    }
+
+    private PlayerStore(MetricRegistry registry, int capacity) {
+        capacity = Math.max(capacity, 16);
+        this.registry = registry;
+        uuidMost = new long[capacity];
+        uuidLeast = new long[capacity];
+        names = new String[capacity];
+        columns = new long[registry.size()][capacity];
+        lastUpdated = new long[capacity];
+        levelKills = new int[capacity * KillLevels.BANDS];
+        seasonColumns = new long[registry.size()][capacity];
+        seasonOf = new int[capacity];
+        slots = new HashMap<>(capacity * 4 / 3 + 1);
+        nameIndex = new HashMap<>(capacity * 4 / 3 + 1);
+    }
+
+    /**
+     * Builds the table from stored rows. Rows are decoded in parallel on the common fork-join
+     * pool, so {@code rows} must be thread-safe; the indexes are then filled in a single pass.
+     *
+     * Names missing from the rows stay null; see {@link #playersWithoutName()}.
+     *
+     * @param keys player UUIDs as strings
+     * @param rows decodes the row for {@code keys[i]}, or returns null if it is empty
+     */
+    public static PlayerStore load(MetricRegistry registry, String[] keys, IntFunction<Row> rows) {
+        PlayerStore store = new PlayerStore(registry, keys.length);
+        int metrics = registry.size();
+        IntStream.range(0, keys.length).parallel().forEach(i -> {
+            UUID uuid = UUID.fromString(keys[i]);
+            store.uuidMost[i] = uuid.getMostSignificantBits();
+            store.uuidLeast[i] = uuid.getLeastSignificantBits();
+            Row row = rows.apply(i);
+            if (row == null) return;
+            for (int m = 0; m < Math.min(metrics, row.values().length); m++) {
+                store.columns[m][i] = row.values()[m];
+            }
+            store.lastUpdated[i] = row.lastUpdated();
+            if (row.killsByLevel() != null) {
+                System.arraycopy(row.killsByLevel(), 0, store.levelKills, i * KillLevels.BANDS,
+                        Math.min(row.killsByLevel().length, KillLevels.BANDS));
+            }
+            if (row.seasonValues() != null) {
+                store.seasonOf[i] = row.season();
+                for (int m = 0; m < Math.min(metrics, row.seasonValues().length); m++) {
+                    store.seasonColumns[m][i] = row.seasonValues()[m];
+                }
+            }
+            store.names[i] = row.name();
+        });
+        store.size = keys.length;
+        for (int i = 0; i < keys.length * KillLevels.BANDS; i++) {
+            store.serverLevelKills[i % KillLevels.BANDS] += store.levelKills[i];
+        }
+        for (int i = 0; i < keys.length; i++) {
+            store.slots.put(new UUID(store.uuidMost[i], store.uuidLeast[i]), i);
+            if (store.names[i] != null) store.nameIndex.put(store.names[i].toLowerCase(Locale.ROOT), i);
+        }
+        return store;
+    }
+
+    /**
+     * Players whose name is not known, e.g. from data files that never stored one. Setting a
+     * name with {@link #getOrCreate} marks the player changed, so it is saved from then on.
+     */
+    public synchronized List<UUID> playersWithoutName() {
+        List<UUID> nameless = new ArrayList<>();
+        for (int slot = 0; slot < size; slot++) {
+            if (names[slot] == null) nameless.add(new UUID(uuidMost[slot], uuidLeast[slot]));
+        }
+        return nameless;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /** @return the slot of the player, or -1 if unknown */
+    public synchronized int slotOf(UUID uuid) {
+        Integer slot = slots.get(uuid);
+        return slot == null ? -1 : slot;
+    }
+
+    /** Case-insensitive lookup by the last known name. @return the slot, or -1 if unknown */
+    public synchronized int slotOfName(String name) {
+        Integer slot = nameIndex.get(name.toLowerCase(Locale.ROOT));
+        return slot == null ? -1 : slot;
+    }
+
+    /** Returns the player's slot, adding the player if needed and updating a changed name. */
+    public synchronized int getOrCreate(UUID uuid, String name) {
+        Integer existing = slots.get(uuid);
+        int slot;
+        if (existing != null) {
+            slot = existing;
+        } else {
+            ensureCapacity(size + 1);
+            slot = size++;
+            uuidMost[slot] = uuid.getMostSignificantBits();
+            uuidLeast[slot] = uuid.getLeastSignificantBits();
+            slots.put(uuid, slot);
+            unpublished.set(slot);
+            version++;
+        }
+        if (name != null && !name.equals(names[slot])) {
+            if (names[slot] != null) {
+                String old = names[slot].toLowerCase(Locale.ROOT);
+                nameIndex.remove(old, slot);
+                unpublishedNames.add(old);
+            }
+            names[slot] = name;
+            nameIndex.put(name.toLowerCase(Locale.ROOT), slot);
+            unpublishedNames.add(name.toLowerCase(Locale.ROOT));
+            dirty.set(slot);
+            backupDirty.set(slot);
+            unpublished.set(slot);
+            version++;
+        }
+        return slot;
+    }
+
+    /**
+     * Ends the current season and starts {@code season}: every player's season values count as 0
+     * until they change again. Nothing is copied or rewritten.
+     */
+    public synchronized void startSeason(int season, long startedAt) {
+        this.season = season;
+        this.seasonStartedAt = startedAt;
+        version++;
+    }
+
+    public synchronized int season() {
+        return season;
+    }
+
+    public synchronized long seasonStartedAt() {
+        return seasonStartedAt;
+    }
+
+    /** @return the player's value of the metric in the current season */
+    public synchronized long seasonValue(int slot, int metric) {
+        return seasonOf[slot] == season ? seasonColumns[metric][slot] : 0;
+    }
+
+    // 上个赛季的值在玩家下次有变化时才清零
+    private void enterSeason(int slot) {
+        if (seasonOf[slot] == season) return;
+        seasonOf[slot] = season;
+        for (long[] column : seasonColumns) {
+            column[slot] = 0;
+        }
+    }
+
+    /**
+     * Applies every player change of a batch under one lock and one version bump, so readers
+     * never see part of it and leaderboards are rebuilt at most once.
+     *
+     * @return the players whose stats changed
+     */
+    public synchronized List<UUID> apply(StatsBatch batch, long now) {
+        return apply(batch, now, null);
+    }
+
+    /** Like {@link #apply(StatsBatch, long)}, also telling {@code listener} about each changed value. */
+    public synchronized List<UUID> apply(StatsBatch batch, long now, ChangeListener listener) {
+        List<UUID> changed = new ArrayList<>(batch.players.size() + batch.named.size());
+        int metrics = columns.length;
+        for (Map.Entry<UUID, StatsBatch.PlayerDelta> entry : batch.players.entrySet()) {
+            StatsBatch.PlayerDelta delta = entry.getValue();
+            int slot = getOrCreate(entry.getKey(), delta.name);
+            enterSeason(slot);
+            // 批次里可能有本服没有声明的指标，直接忽略
+            for (int m = 0; m < Math.min(metrics, delta.added.length); m++) {
+                columns[m][slot] += delta.added[m];
+                seasonColumns[m][slot] += delta.added[m];
+                if (listener != null && delta.added[m] != 0) {
+                    listener.changed(entry.getKey(), names[slot], m, delta.added[m], columns[m][slot]);
+                }
+            }
+            if (delta.levelKills != null) {
+                int base = slot * KillLevels.BANDS;
+                for (int band = 0; band < KillLevels.BANDS; band++) {
+                    levelKills[base + band] += delta.levelKills[band];
+                    serverLevelKills[band] += delta.levelKills[band];
+                }
+            }
+            touch(slot, now);
+            changed.add(entry.getKey());
+        }
+        // 名字在同一次加锁里一起解析
+        for (StatsBatch.NamedDelta delta : batch.named.values()) {
+            Integer slot = nameIndex.get(delta.name.toLowerCase(Locale.ROOT));
+            if (slot == null) continue;
+            boolean touched = false;
+            for (int m = 0; m < Math.min(metrics, delta.added.length); m++) {
+                // 最高值可能只刷新了本赛季的记录
+                if (delta.added[m] != 0 || delta.raised[m] > columns[m][slot] || delta.raised[m] > seasonValue(slot, m)) {
+                    touched = true;
+                }
+            }
+            if (!touched) continue;
+            enterSeason(slot);
+            UUID uuid = new UUID(uuidMost[slot], uuidLeast[slot]);
+            for (int m = 0; m < Math.min(metrics, delta.added.length); m++) {
+                long before = columns[m][slot];
+                columns[m][slot] += delta.added[m];
+                seasonColumns[m][slot] += delta.added[m];
+                columns[m][slot] = Math.max(columns[m][slot], delta.raised[m]);
+                seasonColumns[m][slot] = Math.max(seasonColumns[m][slot], delta.raised[m]);
+                // 只刷新了本赛季最高值的不算改动
+                if (listener != null && columns[m][slot] != before) {
+                    listener.changed(uuid, names[slot], m, columns[m][slot] - before, columns[m][slot]);
+                }
+            }
+            touch(slot, now);
+            changed.add(uuid);
+        }
+        if (!changed.isEmpty()) version++;
+        return changed;
+    }
+
+    private void touch(int slot, long now) {
+        lastUpdated[slot] = now;
+        dirty.set(slot);
+        backupDirty.set(slot);
+        unpublished.set(slot);
+    }
+
+    public synchronized UUID uuid(int slot) {
+        return new UUID(uuidMost[slot], uuidLeast[slot]);
+    }
+
+    public synchronized String name(int slot) {
+        return names[slot];
+    }
+
+    public MetricRegistry registry() {
+        return registry;
+    }
+
+    public synchronized long value(int slot, int metric) {
+        return columns[metric][slot];
+    }
+
+    public synchronized long kills(int slot) {
+        return columns[MetricRegistry.KILLS][slot];
+    }
+
+    public synchronized long playtime(int slot) {
+        return columns[MetricRegistry.PLAYTIME][slot];
+    }
+
+    public synchronized int maxLevel(int slot) {
+        return (int) columns[MetricRegistry.MAX_LEVEL][slot];
+    }
+
+    public synchronized long lastUpdated(int slot) {
+        return lastUpdated[slot];
+    }
+
+    /** @return a copy of the player's kill counts per {@link KillLevels} band */
+    public synchronized int[] killsByLevel(int slot) {
+        return Arrays.copyOfRange(levelKills, slot * KillLevels.BANDS, (slot + 1) * KillLevels.BANDS);
+    }
+
+    public synchronized PlayerStats stats(int slot) {
+        return new PlayerStats(names[slot], kills(slot), playtime(slot), maxLevel(slot));
+    }
+
+    // 一个玩家所有指标的值，按指标编号
+    private long[] values(int slot) {
+        long[] values = new long[columns.length];
+        for (int m = 0; m < columns.length; m++) {
+            values[m] = columns[m][slot];
+        }
+        return values;
+    }
+
+    /**
+     * Makes an immutable copy for readers on other threads. Chunks without changes since
+     * {@code previous} are shared with it; if nothing changed at all, {@code previous} is returned.
+     *
+     * @param previous the last published snapshot, or null to copy everything
+     */
+    public synchronized PlayerSnapshot snapshot(PlayerSnapshot previous) {
+        if (previous != null && previous.version == version) return previous;
+        int chunkCount = (size + PlayerSnapshot.CHUNK_SIZE - 1) >> PlayerSnapshot.CHUNK_BITS;
+        PlayerSnapshot.Chunk[] chunks = new PlayerSnapshot.Chunk[chunkCount];
+        for (int c = 0; c < chunkCount; c++) {
+            int from = c << PlayerSnapshot.CHUNK_BITS;
+            int to = Math.min(size, from + PlayerSnapshot.CHUNK_SIZE);
+            int next = unpublished.nextSetBit(from);
+            boolean changed = previous == null || c >= previous.chunks.length || (next >= 0 && next < to);
+            if (!changed) {
+                chunks[c] = previous.chunks[c];
+                continue;
+            }
+            long[][] values = new long[columns.length][];
+            long[][] seasonValues = new long[columns.length][];
+            for (int m = 0; m < columns.length; m++) {
+                values[m] = Arrays.copyOfRange(columns[m], from, to);
+                seasonValues[m] = Arrays.copyOfRange(seasonColumns[m], from, to);
+            }
+            chunks[c] = new PlayerSnapshot.Chunk(
+                    Arrays.copyOfRange(uuidMost, from, to), Arrays.copyOfRange(uuidLeast, from, to),
+                    Arrays.copyOfRange(names, from, to), values,
+                    Arrays.copyOfRange(levelKills, from * KillLevels.BANDS, to * KillLevels.BANDS),
+                    Arrays.copyOfRange(seasonOf, from, to), seasonValues);
+        }
+
+        Map<String, Integer> shared;
+        Map<String, Integer> recent;
+        NamePrefixIndex prefixes = null;
+        if (previous == null || previous.recentNames.size() + unpublishedNames.size() > MAX_RECENT_NAMES) {
+            shared = new HashMap<>(nameIndex);
+            recent = Collections.emptyMap();
+        } else if (unpublishedNames.isEmpty()) {
+            shared = previous.names;
+            recent = previous.recentNames;
+            prefixes = previous.prefixes;
+        } else {
+            shared = previous.names;
+            prefixes = previous.prefixes;
+            recent = new HashMap<>(previous.recentNames);
+            for (String name : unpublishedNames) {
+                recent.put(name, nameIndex.getOrDefault(name, -1));
+            }
+        }
+        int[] changed = previous == null ? null : unpublished.stream().toArray();
+        unpublished.clear();
+        unpublishedNames.clear();
+        return new PlayerSnapshot(registry, version, size, chunks, shared, recent, prefixes, serverLevelKills.clone(),
+                season, seasonStartedAt, previous, changed);
+    }
+
+    /** Hands every changed player to {@code writer} and clears the change set. */
+    public synchronized int flushTo(BiConsumer<UUID, Row> writer) {
+        int flushed = 0;
+        for (int slot = dirty.nextSetBit(0); slot >= 0; slot = dirty.nextSetBit(slot + 1)) {
+            writer.accept(new UUID(uuidMost[slot], uuidLeast[slot]), row(slot));
+            flushed++;
+        }
+        dirty.clear();
+        return flushed;
+    }
+
+    /**
+     * Hands the players changed since the last call to {@code writer}, or every player if
+     * {@code all}, and clears the backup change set. Independent of {@link #flushTo(BiConsumer)}.
+     */
+    public synchronized int drainBackup(boolean all, BiConsumer<UUID, Row> writer) {
+        int drained = 0;
+        if (all) backupDirty.set(0, size);
+        for (int slot = backupDirty.nextSetBit(0); slot >= 0; slot = backupDirty.nextSetBit(slot + 1)) {
+            writer.accept(new UUID(uuidMost[slot], uuidLeast[slot]), row(slot));
+            drained++;
+        }
+        backupDirty.clear();
+        return drained;
+    }
+
+    private Row row(int slot) {
+        long[] seasonValues = null;
+        if (seasonOf[slot] != 0) {
+            seasonValues = new long[columns.length];
+            for (int m = 0; m < columns.length; m++) {
+                seasonValues[m] = seasonColumns[m][slot];
+            }
+        }
+        return new Row(values(slot), lastUpdated[slot], names[slot], storedLevelKills(slot), seasonOf[slot], seasonValues);
+    }
+
+    // 全为 0 时返回 null，不写入数据文件
+    private int[] storedLevelKills(int slot) {
+        int base = slot * KillLevels.BANDS;
+        for (int band = 0; band < KillLevels.BANDS; band++) {
+            if (levelKills[base + band] != 0) return Arrays.copyOfRange(levelKills, base, base + KillLevels.BANDS);
+        }
+        return null;
+    }
+
+    private void ensureCapacity(int needed) {
+        if (needed <= uuidMost.length) return;
+        int capacity = Math.max(needed, uuidMost.length * 2);
+        uuidMost = Arrays.copyOf(uuidMost, capacity);
+        uuidLeast = Arrays.copyOf(uuidLeast, capacity);
+        names = Arrays.copyOf(names, capacity);
+        for (int m = 0; m < columns.length; m++) {
+            columns[m] = Arrays.copyOf(columns[m], capacity);
+            seasonColumns[m] = Arrays.copyOf(seasonColumns[m], capacity);
+        }
+        seasonOf = Arrays.copyOf(seasonOf, capacity);
+        lastUpdated = Arrays.copyOf(lastUpdated, capacity);
+        levelKills = Arrays.copyOf(levelKills, capacity * KillLevels.BANDS);
+    }
+}
@@ -0,0 +1,114 @@
+package top.steve3184.dungeonstats.utils;
+
+import java.util.Arrays;
+
+/**
+ * Set of record IDs stored as sorted, non-adjacent runs {@code [start, end]}.
+ *
+ * Record IDs are handed out in order, so nearly every ID extends the last run and the set
+ * stays a handful of runs no matter how many IDs it holds. Adding or checking an ID at the
+ * end is O(1); anything else is a binary search over the runs.
+ */
+public class RecordIdSet {
+
+    private int[] starts = new int[8];
+    private int[] ends = new int[8];
+    private int runs;
+
+    /** @return false if the ID was already in the set */
+    public synchronized boolean add(int id) {
+        if (runs > 0 && id == ends[runs - 1] + 1) {
+            ends[runs - 1] = id;
+            return true;
+        }
+        int run = runAtOrBefore(id);
+        if (run >= 0 && id <= ends[run]) return false;
+
+        boolean joinsPrevious = run >= 0 && ends[run] + 1 == id;
+        boolean joinsNext = run + 1 < runs && starts[run + 1] - 1 == id;
+        if (joinsPrevious && joinsNext) {
+            ends[run] = ends[run + 1];
+            removeRun(run + 1);
+        } else if (joinsPrevious) {
+            ends[run] = id;
+        } else if (joinsNext) {
+            starts[run + 1] = id;
+        } else {
+            insertRun(run + 1, id, id);
+        }
+        return true;
+    }
+
+    /** Adds every ID in {@code [from, to]}. */
+    public synchronized void addRange(int from, int to) {
+        for (int id = from; id <= to; id++) {
+            add(id);
+        }
+    }
+
+    public synchronized boolean contains(int id) {
+        int run = runAtOrBefore(id);
+        return run >= 0 && id <= ends[run];
+    }
+
+    /** @return the highest ID in the set, or 0 if it is empty */
+    public synchronized int highest() {
+        return runs == 0 ? 0 : ends[runs - 1];
+    }
+
+    public synchronized int runCount() {
+        return runs;
+    }
+
+    /** Text form: comma-separated runs such as {@code 1-500,502,504-900}. */
+    public synchronized String encode() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < runs; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(starts[i]);
+            if (ends[i] != starts[i]) sb.append('-').append(ends[i]);
+        }
+        return sb.toString();
+    }
+
+    public static RecordIdSet decode(String encoded) {
+        RecordIdSet set = new RecordIdSet();
+        if (encoded == null || encoded.isEmpty()) return set;
+        for (String run : encoded.split(",")) {
+            int dash = run.indexOf('-', 1);
+            int start = Integer.parseInt(dash < 0 ? run : run.substring(0, dash));
+            int end = dash < 0 ? start : Integer.parseInt(run.substring(dash + 1));
+            // 按顺序追加的连续区间可以直接放进去
+            if (set.runs > 0 && start <= set.ends[set.runs - 1] + 1) {
+                set.addRange(start, end);
+            } else {
+                set.insertRun(set.runs, start, end);
+            }
+        }
+        return set;
+    }
+
+    // Index of the last run starting at or before id, or -1
+    private int runAtOrBefore(int id) {
+        int index = Arrays.binarySearch(starts, 0, runs, id);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    private void insertRun(int index, int start, int end) {
+        if (runs == starts.length) {
+            starts = Arrays.copyOf(starts, runs * 2);
+            ends = Arrays.copyOf(ends, runs * 2);
+        }
+        System.arraycopy(starts, index, starts, index + 1, runs - index);
+        System.arraycopy(ends, index, ends, index + 1, runs - index);
+        starts[index] = start;
+        ends[index] = end;
+        runs++;
+    }
+
+    private void removeRun(int index) {
+        System.arraycopy(starts, index + 1, starts, index, runs - index - 1);
+        System.arraycopy(ends, index + 1, ends, index, runs - index - 1);
+        runs--;
+    }
+}
@@ -0,0 +1,190 @@
+package top.steve3184.dungeonstats.utils;
+
+import top.steve3184.dungeonstats.model.DungeonLog;
+import top.steve3184.dungeonstats.model.RunRollup;
+import top.steve3184.dungeonstats.model.RunSummary;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Mergeable aggregate over a set of dungeon runs: counts, sums and maxima, a duration sketch
+ * and a level histogram. Used both for live analytics and as the stored form of a rollup.
+ */
+public class RunAggregate {
+
+    // Levels above this are folded into the last bucket of the distribution
+    static final int MAX_TRACKED_LEVEL = 255;
+
+    private final QuantileSketch durations = new QuantileSketch();
+    private final long[] levels = new long[MAX_TRACKED_LEVEL + 1];
+    long runs;
+    long timedRuns;
+    private long kills;
+    private long doors;
+    private long bosses;
+    private long duration;
+    private long killsMax;
+    private long doorsMax;
+    private long bossesMax;
+    private long durationMax;
+    private int levelMax;
+    private int firstRecordId;
+    private int lastRecordId;
+    long firstTimestamp;
+    long lastTimestamp;
+
+    public void add(DungeonLog log) {
+        runs++;
+        kills += log.enemiesKilled();
+        doors += log.doorsOpened();
+        bosses += log.bossesDefeated();
+        duration += log.durationSeconds();
+        killsMax = Math.max(killsMax, log.enemiesKilled());
+        doorsMax = Math.max(doorsMax, log.doorsOpened());
+        bossesMax = Math.max(bossesMax, log.bossesDefeated());
+        durationMax = Math.max(durationMax, log.durationSeconds());
+        levelMax = Math.max(levelMax, log.maxLevel());
+        durations.add(log.durationSeconds());
+        levels[Math.min(Math.max(log.maxLevel(), 0), MAX_TRACKED_LEVEL)]++;
+        if (firstRecordId == 0 || log.recordId() < firstRecordId) firstRecordId = log.recordId();
+        lastRecordId = Math.max(lastRecordId, log.recordId());
+        if (log.timestamp() > 0) {
+            timedRuns++;
+            if (firstTimestamp == 0 || log.timestamp() < firstTimestamp) firstTimestamp = log.timestamp();
+            if (log.timestamp() > lastTimestamp) lastTimestamp = log.timestamp();
+        }
+    }
+
+    public void merge(RunAggregate other) {
+        runs += other.runs;
+        timedRuns += other.timedRuns;
+        kills += other.kills;
+        doors += other.doors;
+        bosses += other.bosses;
+        duration += other.duration;
+        killsMax = Math.max(killsMax, other.killsMax);
+        doorsMax = Math.max(doorsMax, other.doorsMax);
+        bossesMax = Math.max(bossesMax, other.bossesMax);
+        durationMax = Math.max(durationMax, other.durationMax);
+        levelMax = Math.max(levelMax, other.levelMax);
+        durations.merge(other.durations);
+        for (int i = 0; i < levels.length; i++) {
+            levels[i] += other.levels[i];
+        }
+        if (other.firstRecordId > 0 && (firstRecordId == 0 || other.firstRecordId < firstRecordId)) {
+            firstRecordId = other.firstRecordId;
+        }
+        lastRecordId = Math.max(lastRecordId, other.lastRecordId);
+        if (other.firstTimestamp > 0 && (firstTimestamp == 0 || other.firstTimestamp < firstTimestamp)) {
+            firstTimestamp = other.firstTimestamp;
+        }
+        lastTimestamp = Math.max(lastTimestamp, other.lastTimestamp);
+    }
+
+    public void clear() {
+        durations.clear();
+        java.util.Arrays.fill(levels, 0L);
+        runs = timedRuns = kills = doors = bosses = duration = 0;
+        killsMax = doorsMax = bossesMax = durationMax = 0;
+        levelMax = firstRecordId = lastRecordId = 0;
+        firstTimestamp = lastTimestamp = 0;
+    }
+
+    public long getRuns() {
+        return runs;
+    }
+
+    public long getLastTimestamp() {
+        return lastTimestamp;
+    }
+
+    public RunSummary toSummary(int windowHours, double runsPerHour) {
+        Map<Integer, Long> distribution = new TreeMap<>();
+        for (int level = 0; level < levels.length; level++) {
+            if (levels[level] > 0) distribution.put(level, levels[level]);
+        }
+        double divisor = Math.max(runs, 1);
+        return new RunSummary(
+                windowHours,
+                runs,
+                durations.quantile(0.50),
+                durations.quantile(0.90),
+                durations.quantile(0.99),
+                kills / divisor,
+                doors / divisor,
+                bosses / divisor,
+                runsPerHour,
+                distribution
+        );
+    }
+
+    public RunRollup toRollup(String periodType, String period) {
+        return new RunRollup(periodType, period, runs, firstRecordId, lastRecordId,
+                kills, killsMax, doors, doorsMax, bosses, bossesMax, duration, durationMax, levelMax);
+    }
+
+    /** Stored form, a flat map of numbers and strings. */
+    public Map<String, Object> toMap() {
+        Map<String, Object> values = new LinkedHashMap<>();
+        values.put("runs", runs);
+        values.put("timedRuns", timedRuns);
+        values.put("enemiesKilled", kills);
+        values.put("enemiesKilledMax", killsMax);
+        values.put("doorsOpened", doors);
+        values.put("doorsOpenedMax", doorsMax);
+        values.put("bossesDefeated", bosses);
+        values.put("bossesDefeatedMax", bossesMax);
+        values.put("durationSeconds", duration);
+        values.put("durationSecondsMax", durationMax);
+        values.put("maxLevel", levelMax);
+        values.put("firstRecordId", firstRecordId);
+        values.put("lastRecordId", lastRecordId);
+        values.put("firstTimestamp", firstTimestamp);
+        values.put("lastTimestamp", lastTimestamp);
+        values.put("durationSketch", durations.encode());
+        StringBuilder levelString = new StringBuilder();
+        for (int level = 0; level < levels.length; level++) {
+            if (levels[level] == 0) continue;
+            if (!levelString.isEmpty()) levelString.append(',');
+            levelString.append(level).append(':').append(levels[level]);
+        }
+        values.put("levels", levelString.toString());
+        return values;
+    }
+
+    public static RunAggregate fromMap(Map<String, ?> values) {
+        RunAggregate aggregate = new RunAggregate();
+        aggregate.runs = number(values, "runs");
+        aggregate.timedRuns = number(values, "timedRuns");
+        aggregate.kills = number(values, "enemiesKilled");
+        aggregate.killsMax = number(values, "enemiesKilledMax");
+        aggregate.doors = number(values, "doorsOpened");
+        aggregate.doorsMax = number(values, "doorsOpenedMax");
+        aggregate.bosses = number(values, "bossesDefeated");
+        aggregate.bossesMax = number(values, "bossesDefeatedMax");
+        aggregate.duration = number(values, "durationSeconds");
+        aggregate.durationMax = number(values, "durationSecondsMax");
+        aggregate.levelMax = (int) number(values, "maxLevel");
+        aggregate.firstRecordId = (int) number(values, "firstRecordId");
+        aggregate.lastRecordId = (int) number(values, "lastRecordId");
+        aggregate.firstTimestamp = number(values, "firstTimestamp");
+        aggregate.lastTimestamp = number(values, "lastTimestamp");
+        aggregate.durations.decode(string(values, "durationSketch"));
+        for (String entry : string(values, "levels").split(",")) {
+            if (entry.isEmpty()) continue;
+            String[] parts = entry.split(":");
+            aggregate.levels[Integer.parseInt(parts[0])] += Long.parseLong(parts[1]);
+        }
+        return aggregate;
+    }
+
+    private static long number(Map<String, ?> values, String key) {
+        return values.get(key) instanceof Number number ? number.longValue() : 0;
+    }
+
+    private static String string(Map<String, ?> values, String key) {
+        return values.get(key) instanceof String string ? string : "";
+    }
+}
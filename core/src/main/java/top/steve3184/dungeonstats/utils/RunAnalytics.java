@@ -0,0 +1,100 @@
+package top.steve3184.dungeonstats.utils;
+
+import top.steve3184.dungeonstats.model.DungeonLog;
+import top.steve3184.dungeonstats.model.RunSummary;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Run analytics maintained incrementally as dungeon logs are ingested.
+ * Keeps an all-time aggregate plus a ring of hourly aggregates for the last week,
+ * so a summary costs the same no matter how many logs have been stored.
+ */
+public class RunAnalytics {
+
+    public static final int MAX_WINDOW_HOURS = 7 * 24;
+    private static final long HOUR_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private final RunAggregate allTime = new RunAggregate();
+    private final RunAggregate[] hourly = new RunAggregate[MAX_WINDOW_HOURS];
+    private final long[] hourOfSlot = new long[MAX_WINDOW_HOURS];
+
+    public synchronized void record(DungeonLog log) {
+        allTime.add(log);
+        if (log.timestamp() <= 0) return; // 旧数据没有时间戳，只计入全部时间
+        RunAggregate slot = slotFor(log.timestamp());
+        if (slot != null) slot.add(log);
+    }
+
+    /**
+     * Adds a stored rollup. Rollups inside the window are attributed to the hour of their last run.
+     */
+    public synchronized void record(RunAggregate rollup) {
+        allTime.merge(rollup);
+        if (rollup.getLastTimestamp() <= 0) return;
+        RunAggregate slot = slotFor(rollup.getLastTimestamp());
+        if (slot != null) slot.merge(rollup);
+    }
+
+    private RunAggregate slotFor(long timestamp) {
+        long hour = timestamp / HOUR_MILLIS;
+        if (hour <= currentHour() - MAX_WINDOW_HOURS) return null;
+        int slot = (int) (hour % MAX_WINDOW_HOURS);
+        if (hourly[slot] == null) {
+            hourly[slot] = new RunAggregate();
+        } else if (hourOfSlot[slot] != hour) {
+            hourly[slot].clear();
+        }
+        hourOfSlot[slot] = hour;
+        return hourly[slot];
+    }
+
+    /**
+     * @param windowHours size of the trailing window in hours, or 0 for all time
+     */
+    public synchronized RunSummary summarize(int windowHours) {
+        if (windowHours <= 0) {
+            long spanMillis = allTime.lastTimestamp - allTime.firstTimestamp;
+            double hours = Math.max(1.0, (double) spanMillis / HOUR_MILLIS);
+            double runsPerHour = allTime.firstTimestamp > 0 ? allTime.timedRuns / hours : 0.0;
+            return allTime.toSummary(0, runsPerHour);
+        }
+
+        int hours = Math.min(windowHours, MAX_WINDOW_HOURS);
+        long now = currentHour();
+        RunAggregate window = new RunAggregate();
+        for (long hour = now - hours + 1; hour <= now; hour++) {
+            int slot = (int) (hour % MAX_WINDOW_HOURS);
+            if (hourly[slot] != null && hourOfSlot[slot] == hour) {
+                window.merge(hourly[slot]);
+            }
+        }
+        return window.toSummary(hours, (double) window.runs / hours);
+    }
+
+    /**
+     * Parses a window such as "6h", "7d" or "all".
+     * @return the window in hours, 0 for all time, or -1 if the value is invalid
+     */
+    public static int parseWindow(String value) {
+        if (value == null || value.isEmpty() || value.equalsIgnoreCase("all")) return 0;
+        try {
+            String lower = value.toLowerCase();
+            int hours;
+            if (lower.endsWith("d")) {
+                hours = Integer.parseInt(lower.substring(0, lower.length() - 1)) * 24;
+            } else if (lower.endsWith("h")) {
+                hours = Integer.parseInt(lower.substring(0, lower.length() - 1));
+            } else {
+                hours = Integer.parseInt(lower);
+            }
+            return hours > 0 && hours <= MAX_WINDOW_HOURS ? hours : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static long currentHour() {
+        return System.currentTimeMillis() / HOUR_MILLIS;
+    }
+}
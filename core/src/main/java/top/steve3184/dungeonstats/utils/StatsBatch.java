@@ -0,0 +1,142 @@
+package top.steve3184.dungeonstats.utils;
+
+import top.steve3184.dungeonstats.model.DungeonLog;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * A set of stat changes applied together by {@link StatsEngine#apply(StatsBatch)}: readers see
+ * either none or all of them, and leaderboards are invalidated once for the whole batch.
+ * Changes to the same player are combined as they are added.
+ */
+public class StatsBatch {
+
+    static final class PlayerDelta {
+        final String name;
+        // 按指标编号累加的值
+        long[] added = new long[MetricRegistry.MAX_LEVEL + 1];
+        // 按敌人等级段统计的击杀，没有时为 null
+        int[] levelKills;
+
+        PlayerDelta(String name) {
+            this.name = name;
+        }
+    }
+
+    static final class NamedDelta {
+        final String name;
+        long[] added = new long[MetricRegistry.MAX_LEVEL + 1];
+        // 只在大于当前值时生效
+        long[] raised = new long[MetricRegistry.MAX_LEVEL + 1];
+
+        NamedDelta(String name) {
+            this.name = name;
+        }
+    }
+
+    final Map<UUID, PlayerDelta> players = new LinkedHashMap<>();
+    // 按小写名字合并，只有名字的玩家在应用时统一解析
+    final Map<String, NamedDelta> named = new LinkedHashMap<>();
+    final List<DungeonLog> runs = new ArrayList<>();
+
+    /** Adds to a counter metric of a player. Metrics the store does not know are ignored. */
+    public StatsBatch add(UUID uuid, String name, int metric, long amount) {
+        PlayerDelta delta = players.get(uuid);
+        if (delta == null) {
+            delta = new PlayerDelta(name);
+            players.put(uuid, delta);
+        }
+        delta.added = grow(delta.added, metric);
+        delta.added[metric] += amount;
+        return this;
+    }
+
+    public StatsBatch addKills(UUID uuid, String name, long kills) {
+        return add(uuid, name, MetricRegistry.KILLS, kills);
+    }
+
+    /**
+     * Adds one kill of an enemy of the given level. Allocates only for the first kill of each
+     * player in the batch, so it can run for every kill during a wave.
+     */
+    public StatsBatch addKill(UUID uuid, String name, int level) {
+        add(uuid, name, MetricRegistry.KILLS, 1);
+        PlayerDelta delta = players.get(uuid);
+        if (delta.levelKills == null) delta.levelKills = new int[KillLevels.BANDS];
+        delta.levelKills[KillLevels.band(level)]++;
+        return this;
+    }
+
+    public StatsBatch addPlaytime(UUID uuid, String name, long seconds) {
+        return add(uuid, name, MetricRegistry.PLAYTIME, seconds);
+    }
+
+    /** Adds to a counter metric of a player looked up by name when the batch is applied. */
+    public StatsBatch addByName(String name, int metric, long amount) {
+        NamedDelta delta = named(name, metric);
+        delta.added[metric] += amount;
+        return this;
+    }
+
+    /** Raises a max metric of a player looked up by name when the batch is applied. */
+    public StatsBatch raiseByName(String name, int metric, long value) {
+        NamedDelta delta = named(name, metric);
+        delta.raised[metric] = Math.max(delta.raised[metric], value);
+        return this;
+    }
+
+    /** Raises a player's highest level, looked up by name when the batch is applied. */
+    public StatsBatch raiseMaxLevel(String name, int level) {
+        return raiseByName(name, MetricRegistry.MAX_LEVEL, level);
+    }
+
+    private NamedDelta named(String name, int metric) {
+        NamedDelta delta = named.computeIfAbsent(name.toLowerCase(Locale.ROOT), key -> new NamedDelta(name));
+        delta.added = grow(delta.added, metric);
+        delta.raised = grow(delta.raised, metric);
+        return delta;
+    }
+
+    private static long[] grow(long[] values, int metric) {
+        return metric < values.length ? values : Arrays.copyOf(values, metric + 1);
+    }
+
+    public StatsBatch addRun(DungeonLog log) {
+        runs.add(log);
+        return this;
+    }
+
+    /** Moves every change of {@code other} into this batch. */
+    public void merge(StatsBatch other) {
+        other.players.forEach((uuid, delta) -> {
+            PlayerDelta mine = players.computeIfAbsent(uuid, key -> new PlayerDelta(delta.name));
+            mine.added = grow(mine.added, delta.added.length - 1);
+            for (int m = 0; m < delta.added.length; m++) {
+                mine.added[m] += delta.added[m];
+            }
+            if (delta.levelKills != null) {
+                if (mine.levelKills == null) mine.levelKills = new int[KillLevels.BANDS];
+                for (int band = 0; band < KillLevels.BANDS; band++) {
+                    mine.levelKills[band] += delta.levelKills[band];
+                }
+            }
+        });
+        other.named.values().forEach(delta -> {
+            for (int m = 0; m < delta.added.length; m++) {
+                if (delta.added[m] != 0) addByName(delta.name, m, delta.added[m]);
+                if (delta.raised[m] != 0) raiseByName(delta.name, m, delta.raised[m]);
+            }
+        });
+        runs.addAll(other.runs);
+    }
+
+    public boolean isEmpty() {
+        return players.isEmpty() && named.isEmpty() && runs.isEmpty();
+    }
+}
@@ -0,0 +1,928 @@
+package top.steve3184.dungeonstats.utils;
+
+import top.steve3184.dungeonstats.backup.BackupSegment;
+import top.steve3184.dungeonstats.changefeed.ChangeFeed;
+import top.steve3184.dungeonstats.metrics.Counter;
+import top.steve3184.dungeonstats.metrics.Histogram;
+import top.steve3184.dungeonstats.metrics.Metrics;
+import top.steve3184.dungeonstats.model.DungeonLog;
+import top.steve3184.dungeonstats.model.LeaderboardPage;
+import top.steve3184.dungeonstats.model.OnlinePlayer;
+import top.steve3184.dungeonstats.model.PlayerLevel;
+import top.steve3184.dungeonstats.model.PlayerStats;
+import top.steve3184.dungeonstats.model.RunRollup;
+import top.steve3184.dungeonstats.replication.ReplicaEntry;
+import top.steve3184.dungeonstats.replication.ReplicaStore;
+import top.steve3184.dungeonstats.season.SeasonArchive;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.logging.Logger;
+
+/**
+ * The stats without a server: player table, dungeon logs, analytics and the snapshot that
+ * readers on other threads use.
+ *
+ * All changes are made by one thread (the server's main thread in the plugin), which also
+ * publishes the snapshot. Loading, saving and anything else that needs the server is left to a
+ * subclass; without one, the engine can be filled with {@link #install} and queried directly,
+ * as the load tests do.
+ */
+public class StatsEngine {
+
+    protected final Logger logger;
+    // 以下几项在加载完成后由主线程一次性设置
+    private volatile PlayerStore players;
+    private volatile LogStore logs;
+    private volatile RunAnalytics runAnalytics = new RunAnalytics();
+    // 各竞技场已经处理过的对局编号，重复的直接跳过
+    private volatile IngestedRuns ingested = new IngestedRuns();
+    // 下一局分到的全局记录编号，只在主线程使用
+    private int nextRecordId = 1;
+    private volatile boolean ready;
+    // 加载完成前的改动，加载后一次性应用
+    private StatsBatch pendingBatch = new StatsBatch();
+    // 供其他线程读取的只读快照，主线程每 tick 发布一次
+    private volatile StatsSnapshot snapshot = StatsSnapshot.EMPTY;
+    private boolean logsChanged = true;
+    // 每个竞技场最新的 RECENT_LOGS 条记录，新的在前；发布快照时不用读日志分页
+    private final Map<String, ArrayDeque<DungeonLog>> recentLogs = new LinkedHashMap<>();
+    private List<RunRollup> rollups = List.of();
+    private boolean rollupsChanged = true;
+    // 不大于这个编号的记录已经压缩进汇总
+    private int foldedThrough;
+    // 其他实例合并进来的数据，未启用同步时为 null
+    private volatile ReplicaStore replicaStore;
+    private final Set<UUID> replicaDirty = new HashSet<>();
+    // 合并排行榜的缓存，按内置指标编号
+    private final AtomicReferenceArray<MergedBoard> mergedBoards = new AtomicReferenceArray<>(MetricRegistry.MAX_LEVEL + 1);
+    // 上次备份之后新增的日志，未启用备份时为 null
+    private List<DungeonLog> backupLogs;
+    private List<SeasonArchive> seasonArchives = List.of();
+    private boolean seasonsChanged = true;
+    // 未启用时为 null
+    private volatile ChangeFeed changeFeed;
+    // 游戏时间每秒都在涨，一段游戏结束时才写进改动记录
+    private final Map<UUID, PlaytimeSession> playtimeSessions = new HashMap<>();
+
+    private static final class PlaytimeSession {
+        String name;
+        // 按指标记，各竞技场的游戏时间是单独的指标
+        long[] seconds;
+    }
+
+    // 快照里每个竞技场保留的最新记录条数，也是 /stats 一次最多返回的条数
+    public static final int RECENT_LOGS = 100;
+    private static final String QUERY_METRIC = "dungeonstats_query_duration_seconds";
+    private static final String QUERY_HELP = "DataManager query time";
+    private final Histogram dungeonLogsTime = Metrics.histogram(QUERY_METRIC, QUERY_HELP, "query", "getDungeonLogs");
+    private final Histogram applyTime = Metrics.histogram(QUERY_METRIC, QUERY_HELP, "query", "apply");
+    private final Histogram playerStatsTime = Metrics.histogram(QUERY_METRIC, QUERY_HELP, "query", "getPlayerStats");
+    private final Histogram topPlayersTime = Metrics.histogram(QUERY_METRIC, QUERY_HELP, "query", "getTopPlayers");
+    private final Histogram seasonTopTime = Metrics.histogram(QUERY_METRIC, QUERY_HELP, "query", "getSeasonLeaderboard");
+    private final Histogram searchTime = Metrics.histogram(QUERY_METRIC, QUERY_HELP, "query", "searchPlayers");
+    private final Counter duplicateLogs = Metrics.counter("dungeonstats_logs_duplicate_total", "Dungeon logs skipped because their record ID was already ingested");
+    private final Counter gapRecordIds = Metrics.counter("dungeonstats_log_gap_ids_total", "Record IDs skipped over when a newer dungeon log was ingested");
+
+    public StatsEngine(Logger logger) {
+        this.logger = logger;
+    }
+
+    /**
+     * Takes over loaded data, publishes the first snapshot and then applies the batches that
+     * arrived while loading. Until this is called, queries return nothing.
+     *
+     * @param foldedThrough highest record ID already folded into {@code rollups}
+     */
+    public void install(PlayerStore players, LogStore logs, RunAnalytics analytics, IngestedRuns ingested,
+                        List<RunRollup> rollups, int foldedThrough) {
+        this.players = players;
+        this.logs = logs;
+        this.runAnalytics = analytics;
+        this.ingested = ingested;
+        this.rollups = List.copyOf(rollups);
+        this.foldedThrough = foldedThrough;
+        this.nextRecordId = Math.max(logs.highest(), foldedThrough) + 1;
+        // 最新的几页足够凑齐各竞技场的最新记录；很少开的竞技场可能凑不满
+        recentLogs.clear();
+        for (DungeonLog log : logs.newest(RECENT_LOGS * players.registry().arenas().size())) {
+            ArrayDeque<DungeonLog> arena = recentLogs.computeIfAbsent(arenaOf(log), key -> new ArrayDeque<>());
+            if (arena.size() < RECENT_LOGS) arena.addLast(log);
+        }
+        // 恢复备份后重新加载：旧快照的分块属于原来的表，不能共用
+        StatsSnapshot previous = snapshot;
+        if (previous.players() != PlayerSnapshot.EMPTY) {
+            snapshot = new StatsSnapshot(previous.epoch(), previous.publishedAt(), PlayerSnapshot.EMPTY,
+                    previous.recentLogs(), previous.rollups(), previous.onlinePlayers(), previous.seasons());
+        }
+        logsChanged = true;
+        rollupsChanged = true;
+        // 先发布一次，标记就绪后读取的线程马上就能看到数据
+        publish();
+        this.ready = true;
+        apply(pendingBatch);
+        pendingBatch = new StatsBatch();
+    }
+
+    /**
+     * Serves a snapshot made elsewhere, e.g. read from a snapshot file by the API sidecar, in
+     * place of local stores. Only queries answered from the snapshot work afterwards.
+     */
+    public void install(StatsSnapshot snapshot) {
+        this.snapshot = snapshot;
+        this.ready = true;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Stops serving and changing the stores until the next {@link #install}, e.g. while a backup
+     * is restored. Batches applied in the meantime are queued as during loading.
+     */
+    public void suspend() {
+        ready = false;
+    }
+
+    protected PlayerStore players() {
+        return players;
+    }
+
+    protected LogStore logs() {
+        return logs;
+    }
+
+    protected IngestedRuns ingested() {
+        return ingested;
+    }
+
+    protected int foldedThrough() {
+        return foldedThrough;
+    }
+
+    /**
+     * Records that logs up to {@code foldedThrough} were removed and folded into rollups,
+     * so the next snapshot carries the new rollups.
+     */
+    protected void logsFolded(int foldedThrough, List<RunRollup> rollups) {
+        this.foldedThrough = foldedThrough;
+        this.rollups = List.copyOf(rollups);
+        for (ArrayDeque<DungeonLog> arena : recentLogs.values()) {
+            arena.removeIf(log -> log.recordId() <= foldedThrough);
+        }
+        logsChanged = true;
+        rollupsChanged = true;
+    }
+
+    /** The last published snapshot. Safe to call from any thread. */
+    public StatsSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /** Publishes a new snapshot with the players returned by {@link #collectOnlinePlayers()}. */
+    public void publish() {
+        publish(collectOnlinePlayers());
+    }
+
+    /** Reads the online players for the next snapshot. Without a server the list stays as it was. */
+    protected List<OnlinePlayer> collectOnlinePlayers() {
+        return snapshot.onlinePlayers();
+    }
+
+    /**
+     * Publishes a new {@link StatsSnapshot} if anything changed since the previous one.
+     * Called by the thread that makes changes, once per tick in the plugin.
+     */
+    public void publish(List<OnlinePlayer> online) {
+        StatsSnapshot previous = snapshot;
+        PlayerSnapshot playerSnapshot = previous.players();
+        List<DungeonLog> publishedLogs = previous.recentLogs();
+        List<RunRollup> publishedRollups = previous.rollups();
+        List<SeasonArchive> publishedSeasons = previous.seasons();
+        boolean changed = false;
+        if (players != null) {
+            playerSnapshot = players.snapshot(previous.players() == PlayerSnapshot.EMPTY ? null : previous.players());
+            if (logsChanged) publishedLogs = mergeRecentLogs();
+            if (rollupsChanged) publishedRollups = rollups;
+            if (seasonsChanged) publishedSeasons = seasonArchives;
+            changed = playerSnapshot != previous.players() || logsChanged || rollupsChanged || seasonsChanged;
+            logsChanged = false;
+            rollupsChanged = false;
+            seasonsChanged = false;
+        }
+        online = List.copyOf(online);
+        if (!changed && online.equals(previous.onlinePlayers())) return;
+        snapshot = new StatsSnapshot(previous.epoch() + 1, System.currentTimeMillis(),
+                playerSnapshot, publishedLogs, publishedRollups, online, publishedSeasons);
+        if (playerSnapshot.prefixes != previous.players().prefixes) {
+            // 名字索引重建过，前缀索引在后台排好序，不让第一次搜索去等
+            NamePrefixIndex prefixes = playerSnapshot.prefixes;
+            ForkJoinPool.commonPool().execute(prefixes::build);
+        }
+    }
+
+    // 各竞技场的最新记录合成一个列表，新的在前
+    private List<DungeonLog> mergeRecentLogs() {
+        List<DungeonLog> merged = new ArrayList<>();
+        for (ArrayDeque<DungeonLog> arena : recentLogs.values()) merged.addAll(arena);
+        merged.sort(Comparator.comparingInt(DungeonLog::recordId).reversed());
+        return List.copyOf(merged);
+    }
+
+    /**
+     * Applies a parsed dungeon log exactly once: a run ID the log's arena already had is skipped.
+     * New runs get the next global record ID and count towards both the global metrics and
+     * those of their arena.
+     * @return whether the log was new
+     */
+    public boolean ingestLog(LogParser.ParsedResult result) {
+        if (!ready) return false;
+        MetricRegistry registry = players.registry();
+        String arena = arenaOf(result.dungeonLog);
+        RecordIdSet runs = ingested.of(arena);
+        int runId = result.dungeonLog.runId();
+        int highest = runs.highest();
+        if (!runs.add(runId)) {
+            duplicateLogs.inc();
+            return false;
+        }
+        if (highest > 0 && runId > highest + 1) {
+            // 中间的编号没有收到，可能是两次轮询之间结束了多局
+            gapRecordIds.add(runId - highest - 1);
+            logger.warning("Dungeon log run IDs " + (highest + 1) + "-" + (runId - 1) + " of arena " + arena + " were never received.");
+        }
+        // 只有一个竞技场时沿用游戏给的编号，和旧版本的记录一致
+        int recordId = registry.arenas().size() == 1 ? Math.max(nextRecordId, runId) : nextRecordId;
+        nextRecordId = recordId + 1;
+        DungeonLog log = result.dungeonLog.withRecordId(recordId);
+        StatsBatch batch = new StatsBatch().addRun(log);
+        int arenaIndex = registry.arenaIndex(arena);
+        // 来自对局的指标记到日志里的每个玩家头上
+        for (MetricRegistry.Metric metric : registry.globals()) {
+            if (!metric.source().fromRuns()) continue;
+            int arenaMetric = registry.arenaMetric(metric.id(), arenaIndex);
+            for (PlayerLevel pl : result.playerLevels) {
+                long value = metric.source().fromRun(log, pl.level());
+                if (metric.type() == MetricRegistry.Type.MAX) {
+                    batch.raiseByName(pl.playerName(), metric.id(), value);
+                    if (arenaMetric >= 0) batch.raiseByName(pl.playerName(), arenaMetric, value);
+                } else if (value != 0) {
+                    batch.addByName(pl.playerName(), metric.id(), value);
+                    if (arenaMetric >= 0) batch.addByName(pl.playerName(), arenaMetric, value);
+                }
+            }
+        }
+        apply(batch);
+        return true;
+    }
+
+    /** The arena a run belongs to; runs recorded before arenas existed belong to the first one. */
+    public String arenaOf(DungeonLog log) {
+        if (log.arena() != null) return log.arena();
+        PlayerStore store = players;
+        return store != null ? store.registry().defaultArena() : snapshot.players().metrics().defaultArena();
+    }
+
+    /**
+     * Applies a batch of changes. Player names are resolved in one pass, and all player
+     * changes become visible together with a single leaderboard invalidation.
+     * Batches applied before loading has finished are kept and applied once it has.
+     */
+    public void apply(StatsBatch batch) {
+        if (batch.isEmpty()) return;
+        if (!ready) {
+            if (batch != pendingBatch) pendingBatch.merge(batch);
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            long now = System.currentTimeMillis();
+            ChangeFeed feed = changeFeed;
+            List<UUID> changed = players.apply(batch, now, feed == null ? null
+                    : (uuid, name, metric, delta, value) -> recordChange(feed, now, uuid, name, metric, delta, value));
+            if (replicaStore != null) replicaDirty.addAll(changed);
+            for (DungeonLog log : batch.runs) {
+                // 已经被压缩进汇总的旧记录不再重复写入
+                if (log.recordId() <= foldedThrough) continue;
+                if (logs.put(log)) {
+                    ArrayDeque<DungeonLog> recent = recentLogs.computeIfAbsent(arenaOf(log), key -> new ArrayDeque<>());
+                    recent.addFirst(log);
+                    if (recent.size() > RECENT_LOGS) recent.removeLast();
+                    runAnalytics.record(log);
+                    if (backupLogs != null) backupLogs.add(log);
+                    if (feed != null) feed.appendRun(now, log);
+                    logsChanged = true;
+                }
+            }
+            // 不在这里保存，由周期性任务统一保存
+        } finally {
+            applyTime.observeSince(start);
+        }
+    }
+
+    private void recordChange(ChangeFeed feed, long now, UUID uuid, String name, int metric, long delta, long value) {
+        MetricRegistry registry = players.registry();
+        if (registry.get(metric).global() == MetricRegistry.PLAYTIME) {
+            PlaytimeSession session = playtimeSessions.computeIfAbsent(uuid, key -> new PlaytimeSession());
+            if (session.seconds == null) session.seconds = new long[registry.size()];
+            session.name = name;
+            session.seconds[metric] += delta;
+            return;
+        }
+        feed.appendStat(now, uuid, name, players.registry().get(metric).key(), delta, value);
+    }
+
+    /**
+     * Sets the feed every change is appended to from now on, or null to stop recording. Open
+     * playtime sessions are first closed into the previous feed.
+     */
+    public void setChangeFeed(ChangeFeed changeFeed) {
+        closePlaytimeSessions();
+        this.changeFeed = changeFeed;
+    }
+
+    public ChangeFeed getChangeFeed() {
+        return changeFeed;
+    }
+
+    /**
+     * Writes the playtime a player gained since their session started to the changefeed, e.g.
+     * once they stop playing. Playtime is credited every second, so it is recorded per session
+     * rather than per change.
+     */
+    public void closePlaytimeSession(UUID uuid) {
+        PlaytimeSession session = playtimeSessions.remove(uuid);
+        ChangeFeed feed = changeFeed;
+        if (session == null || feed == null || !ready) return;
+        int slot = players.slotOf(uuid);
+        long now = System.currentTimeMillis();
+        MetricRegistry registry = players.registry();
+        for (int metric = 0; metric < session.seconds.length && metric < registry.size(); metric++) {
+            long seconds = session.seconds[metric];
+            if (seconds == 0) continue;
+            feed.appendStat(now, uuid, session.name, registry.get(metric).key(), seconds,
+                    slot < 0 ? seconds : players.value(slot, metric));
+        }
+    }
+
+    /** Closes every open playtime session, e.g. before shutting down. */
+    public void closePlaytimeSessions() {
+        for (UUID uuid : new ArrayList<>(playtimeSessions.keySet())) {
+            closePlaytimeSession(uuid);
+        }
+    }
+
+    public int countPlayers() {
+        return ready ? players.size() : 0;
+    }
+
+    public int countLogs() {
+        if (!ready) return 0;
+        LogStore store = logs;
+        return store != null ? store.count() : Math.min(snapshot.recentLogs().size(), RECENT_LOGS);
+    }
+
+    public void setReplicaStore(ReplicaStore replicaStore) {
+        this.replicaStore = replicaStore;
+        replicaDirty.clear();
+    }
+
+    /**
+     * Collects this node's entries for players changed since the previous call.
+     * @param all whether to return every local player instead, for a base snapshot
+     */
+    public List<ReplicaEntry> drainReplicaChanges(boolean all) {
+        List<ReplicaEntry> entries = new ArrayList<>();
+        if (!ready) return entries;
+        Collection<UUID> uuids = all ? allPlayers() : replicaDirty;
+        for (UUID uuid : uuids) {
+            int slot = players.slotOf(uuid);
+            if (slot < 0) continue;
+            String name = players.name(slot);
+            entries.add(new ReplicaEntry(uuid, name == null ? "" : name,
+                    players.kills(slot), players.playtime(slot), players.maxLevel(slot)));
+        }
+        replicaDirty.clear();
+        return entries;
+    }
+
+    /** Starts or stops collecting the logs added since the previous backup. */
+    public void setBackupTracking(boolean enabled) {
+        backupLogs = enabled ? new ArrayList<>() : null;
+    }
+
+    /**
+     * Collects what changed since the previous call for an incremental backup: the changed
+     * players and the new logs. A base holds every player instead and no logs; its logs are
+     * read afterwards with {@link #getLogRecordIds} and {@link #getDungeonLogsById}.
+     *
+     * @param rollups the rollups in the subclass's data file format, stored as is
+     * @return null while not ready
+     */
+    public BackupSegment.Contents drainBackupChanges(long seq, boolean base, long createdAt, String rollups) {
+        if (!ready) return null;
+        List<BackupSegment.PlayerRecord> changed = new ArrayList<>();
+        players.drainBackup(base, (uuid, row) -> changed.add(new BackupSegment.PlayerRecord(uuid, row)));
+        List<DungeonLog> added = backupLogs == null || base ? List.of() : List.copyOf(backupLogs);
+        if (backupLogs != null) backupLogs.clear();
+        List<String> metrics = players.registry().all().stream().map(MetricRegistry.Metric::key).toList();
+        return new BackupSegment.Contents(seq, base, createdAt, metrics, changed, added, ingested.encode(), foldedThrough, rollups);
+    }
+
+    private List<UUID> allPlayers() {
+        List<UUID> uuids = new ArrayList<>(players.size());
+        for (int slot = 0; slot < players.size(); slot++) {
+            uuids.add(players.uuid(slot));
+        }
+        return uuids;
+    }
+
+    /** Sets the archived seasons, e.g. once read at startup. Must run on the thread that makes changes. */
+    public void setSeasonArchives(List<SeasonArchive> archives) {
+        List<SeasonArchive> sorted = new ArrayList<>(archives);
+        sorted.sort(Comparator.comparingInt(SeasonArchive::season).reversed());
+        seasonArchives = List.copyOf(sorted);
+        seasonsChanged = true;
+    }
+
+    /** Adds the archive of a finished season, replacing an older archive of the same season. */
+    public void addSeasonArchive(SeasonArchive archive) {
+        List<SeasonArchive> archives = new ArrayList<>(seasonArchives);
+        archives.removeIf(existing -> existing.season() == archive.season());
+        archives.add(archive);
+        setSeasonArchives(archives);
+    }
+
+    /**
+     * Ends the current season and starts the next one. Publishes first, so the returned snapshot
+     * holds the final standings of the season that ended; archive it with
+     * {@link SeasonArchive#of} off this thread. Player values are not touched.
+     *
+     * @return the last snapshot of the season that ended, or null while not ready
+     */
+    public PlayerSnapshot startNextSeason(long now) {
+        if (!ready) return null;
+        publish();
+        PlayerSnapshot ended = snapshot.players();
+        players.startSeason(players.season() + 1, now);
+        publish();
+        return ended;
+    }
+
+    /**
+     * Copies every player updated at or after {@code sinceTime} into primitive columns.
+     * Must run on the thread that makes changes; the copy is a consistent point-in-time view.
+     */
+    public PlayerColumns snapshotPlayers(long sinceTime) {
+        int count = ready ? players.size() : 0;
+        PlayerColumns columns = new PlayerColumns(count);
+        for (int slot = 0; slot < count; slot++) {
+            long updated = players.lastUpdated(slot);
+            if (sinceTime > 0 && updated < sinceTime) continue;
+            UUID uuid = players.uuid(slot);
+            int i = columns.size++;
+            columns.uuidMost[i] = uuid.getMostSignificantBits();
+            columns.uuidLeast[i] = uuid.getLeastSignificantBits();
+            columns.names[i] = players.name(slot);
+            columns.kills[i] = players.kills(slot);
+            columns.playtime[i] = players.playtime(slot);
+            columns.maxLevel[i] = players.maxLevel(slot);
+            columns.lastUpdated[i] = updated;
+        }
+        return columns;
+    }
+
+    /** Sorted record IDs of all stored logs above {@code sinceRecordId}. */
+    public int[] getLogRecordIds(int sinceRecordId) {
+        return ready ? logs.ids(sinceRecordId) : new int[0];
+    }
+
+    /**
+     * Reads the logs with the given sorted IDs, skipping any that no longer exist. Safe to call
+     * from any thread: pages are read with {@link LogStore#read} without blocking the thread that
+     * makes changes. Still reads the stored logs while suspended, e.g. for a backup taken right
+     * before a restore.
+     */
+    public List<DungeonLog> getDungeonLogsById(int[] recordIds, int from, int to) {
+        LogStore store = logs;
+        return store == null ? new ArrayList<>() : store.read(recordIds, from, to);
+    }
+
+    /**
+     * Finds the oldest logs that fall outside retention: every log except the newest
+     * {@code keepRuns} and those recorded at or after {@code keepSince}. Stops at the first
+     * log that must be kept, so folded logs always form a prefix of the record IDs.
+     */
+    public int[] findCompactionCandidates(int keepRuns, long keepSince) {
+        int[] ids = getLogRecordIds(0);
+        int foldable = keepRuns > 0 ? Math.max(0, ids.length - keepRuns) : ids.length;
+        int count = 0;
+        while (count < foldable) {
+            if (keepSince > 0) {
+                DungeonLog log = logs.get(ids[count]);
+                if (log != null && log.timestamp() >= keepSince) break;
+            }
+            count++;
+        }
+        return Arrays.copyOf(ids, count);
+    }
+
+    /** Stored rollups, newest first, skipping the first {@code offset}; a {@code limit} of 0 returns all the rest. */
+    public List<RunRollup> getRollups(int offset, int limit) {
+        List<RunRollup> published = snapshot.rollups();
+        int from = Math.min(offset, published.size());
+        int to = limit > 0 ? (int) Math.min((long) from + limit, published.size()) : published.size();
+        return published.subList(from, to);
+    }
+
+    public static final class PlayerColumns {
+        public final long[] uuidMost;
+        public final long[] uuidLeast;
+        // 最后一次见到的名字，没有时为 null
+        public final String[] names;
+        public final long[] kills;
+        public final long[] playtime;
+        public final int[] maxLevel;
+        public final long[] lastUpdated;
+        public int size;
+
+        PlayerColumns(int capacity) {
+            uuidMost = new long[capacity];
+            uuidLeast = new long[capacity];
+            names = new String[capacity];
+            kills = new long[capacity];
+            playtime = new long[capacity];
+            maxLevel = new int[capacity];
+            lastUpdated = new long[capacity];
+        }
+    }
+
+    public RunAnalytics getRunAnalytics() {
+        return runAnalytics;
+    }
+
+    /**
+     * The stored runs, newest first, skipping the newest {@code offset}; a {@code limit} of 0
+     * returns all the rest. A page within the runs the snapshot holds (the newest
+     * {@value #RECENT_LOGS}, or the newest {@value #RECENT_LOGS} of the arena) is read from the
+     * snapshot; anything further is read from the log pages with {@link LogStore#read}, which
+     * does not block the thread that makes changes. Without a log store, as in the sidecar, only
+     * the snapshot's runs are available.
+     *
+     * @param arena only runs of this arena, or null for all
+     */
+    public List<DungeonLog> getDungeonLogs(int offset, int limit, String arena) {
+        long start = System.nanoTime();
+        try {
+            List<DungeonLog> recent = snapshot.recentLogs();
+            if (arena != null) {
+                List<DungeonLog> matching = new ArrayList<>();
+                for (DungeonLog log : recent) {
+                    if (arenaOf(log).equalsIgnoreCase(arena)) matching.add(log);
+                }
+                recent = matching;
+            } else if (recent.size() > RECENT_LOGS) {
+                // 快照只保证前 RECENT_LOGS 条是全局最新的，再往后各竞技场的记录可能不全
+                recent = recent.subList(0, RECENT_LOGS);
+            }
+            long end = limit > 0 ? (long) offset + limit : Long.MAX_VALUE;
+            LogStore store = logs;
+            if (store == null || end <= recent.size()) {
+                return recent.subList(Math.min(offset, recent.size()), (int) Math.min(end, recent.size()));
+            }
+            return arena == null ? readNewest(store, offset, limit) : readNewest(store, offset, limit, arena);
+        } finally {
+            dungeonLogsTime.observeSince(start);
+        }
+    }
+
+    private static List<DungeonLog> readNewest(LogStore store, int offset, int limit) {
+        int[] ids = store.ids(0);
+        int to = Math.max(0, ids.length - offset);
+        int from = limit > 0 ? Math.max(0, to - limit) : 0;
+        List<DungeonLog> page = store.read(ids, from, to);
+        Collections.reverse(page);
+        return page;
+    }
+
+    // 不知道各竞技场的记录在哪里，从最新的一页往回读，直到凑满 limit 条
+    private List<DungeonLog> readNewest(LogStore store, int offset, int limit, String arena) {
+        int[] ids = store.ids(0);
+        List<DungeonLog> page = new ArrayList<>();
+        int skipped = 0;
+        for (int to = ids.length; to > 0 && (limit == 0 || page.size() < limit); to -= LogStore.PAGE_SIZE) {
+            List<DungeonLog> read = store.read(ids, Math.max(0, to - LogStore.PAGE_SIZE), to);
+            for (int i = read.size() - 1; i >= 0 && (limit == 0 || page.size() < limit); i--) {
+                DungeonLog log = read.get(i);
+                if (!arenaOf(log).equalsIgnoreCase(arena)) continue;
+                if (skipped < offset) skipped++;
+                else page.add(log);
+            }
+        }
+        return page;
+    }
+
+    public PlayerStats getPlayerStats(String playerName) {
+        long start = System.nanoTime();
+        try {
+            return getPlayerStatsImpl(playerName);
+        } finally {
+            playerStatsTime.observeSince(start);
+        }
+    }
+
+    private PlayerStats getPlayerStatsImpl(String playerName) {
+        PlayerSnapshot current = snapshot.players();
+        ReplicaStore replicaStore = this.replicaStore;
+        int slot = current.slotOfName(playerName);
+        if (slot >= 0) {
+            PlayerStats stats = current.stats(slot);
+            return replicaStore == null ? stats : replicaStore.withRemote(current.uuid(slot), stats);
+        }
+
+        // 只在其他实例上玩过的玩家
+        if (replicaStore != null) {
+            UUID remote = replicaStore.findByName(playerName);
+            if (remote != null) {
+                ReplicaStore.RemoteTotals totals = replicaStore.getTotals(remote);
+                return new PlayerStats(totals.name(), totals.kills(), totals.playtime(), totals.maxLevel());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Players on this server whose last known name starts with {@code prefix}, case-insensitive,
+     * ordered by name. Players only known from other instances are not included.
+     */
+    public List<PlayerStats> searchPlayers(String prefix, int limit) {
+        long start = System.nanoTime();
+        try {
+            PlayerSnapshot current = snapshot.players();
+            int[] slots = current.slotsByPrefix(prefix, limit);
+            List<PlayerStats> result = new ArrayList<>(slots.length);
+            for (int slot : slots) {
+                result.add(current.stats(slot));
+            }
+            return result;
+        } finally {
+            searchTime.observeSince(start);
+        }
+    }
+
+    /** Whether {@link #searchPlayers} answers without first sorting the names. */
+    public boolean isSearchReady() {
+        return snapshot.players().prefixes.isBuilt();
+    }
+
+    /**
+     * Updates the stored name of a known player, e.g. when they join under a new name, so
+     * lookups and search find the new name before the player's next kill. Unknown players are
+     * not added.
+     */
+    public void updateName(UUID uuid, String name) {
+        if (!ready || players.slotOf(uuid) < 0) return;
+        players.getOrCreate(uuid, name);
+    }
+
+    /** The current season; seasons are numbered from 1. */
+    public int getSeason() {
+        return snapshot.players().season();
+    }
+
+    public long getSeasonStartedAt() {
+        return snapshot.players().seasonStartedAt();
+    }
+
+    /** Archived seasons, newest first. */
+    public List<SeasonArchive> getSeasonArchives() {
+        return snapshot.seasons();
+    }
+
+    /**
+     * A page of a season's leaderboard: the live standings of the current season or the frozen
+     * ones of an archived season. Season stats are kept by this server only.
+     *
+     * @return null if the season is unknown or the metric did not exist during it
+     */
+    public LeaderboardPage getSeasonLeaderboard(String key, int season, int offset, int limit) {
+        long start = System.nanoTime();
+        try {
+            StatsSnapshot current = snapshot;
+            offset = Math.max(offset, 0);
+            limit = Math.max(limit, 0);
+            if (season != current.players().season()) {
+                for (SeasonArchive archive : current.seasons()) {
+                    if (archive.season() == season) return archive.page(key, offset, limit);
+                }
+                return null;
+            }
+            PlayerSnapshot players = current.players();
+            MetricRegistry.Metric metric = players.metrics().get(key);
+            if (metric == null) return null;
+            int[] board = players.seasonLeaderboard(metric.id());
+            int end = (int) Math.min(board.length, (long) offset + limit);
+            List<PlayerStats> page = new ArrayList<>(Math.max(0, end - offset));
+            List<Long> values = new ArrayList<>(Math.max(0, end - offset));
+            for (int i = offset; i < end; i++) {
+                page.add(players.seasonStats(board[i]));
+                values.add(players.seasonValue(board[i], metric.id()));
+            }
+            return new LeaderboardPage(board.length, offset, page, values);
+        } finally {
+            seasonTopTime.observeSince(start);
+        }
+    }
+
+    /** Every metric value of a player in the current season by metric ID, or null if unknown. */
+    public long[] getPlayerSeasonValues(String playerName) {
+        PlayerSnapshot current = snapshot.players();
+        int slot = current.slotOfName(playerName);
+        return slot < 0 ? null : current.seasonValues(slot);
+    }
+
+    /**
+     * Kills per {@link KillLevels} band of a player on this server, or null if unknown.
+     * Kills merged from other instances carry no levels and are not included.
+     */
+    public int[] getKillsByLevel(String playerName) {
+        PlayerSnapshot current = snapshot.players();
+        int slot = current.slotOfName(playerName);
+        return slot < 0 ? null : current.killsByLevel(slot);
+    }
+
+    /** The metrics players are tracked by. */
+    public MetricRegistry getMetrics() {
+        return snapshot.players().metrics();
+    }
+
+    /**
+     * Every metric value of a player by metric ID, or null if unknown. Built-in metrics include
+     * other instances like {@link #getPlayerStats}; the others are kept by this server only.
+     */
+    public long[] getPlayerValues(String playerName) {
+        PlayerSnapshot current = snapshot.players();
+        int slot = current.slotOfName(playerName);
+        if (slot >= 0 && replicaStore == null) return current.values(slot);
+        PlayerStats stats = getPlayerStats(playerName);
+        if (stats == null) return null;
+        long[] values = slot >= 0 ? current.values(slot) : new long[current.metrics().size()];
+        values[MetricRegistry.KILLS] = stats.kills();
+        values[MetricRegistry.PLAYTIME] = stats.playtimeSeconds();
+        values[MetricRegistry.MAX_LEVEL] = stats.maxLevel();
+        return values;
+    }
+
+    /** Kills per {@link KillLevels} band of all players on this server. */
+    public long[] getServerKillsByLevel() {
+        return snapshot.players().serverKillsByLevel();
+    }
+
+    public List<PlayerStats> getTopPlayers(String key, int limit) {
+        return getLeaderboard(key, 0, limit).players();
+    }
+
+    /**
+     * Returns ranks {@code offset + 1} to {@code offset + limit} of a leaderboard. Only the
+     * requested window is read from the sorted index of the current snapshot.
+     *
+     * @param key a metric key, case-insensitive; unknown keys give an empty page
+     */
+    public LeaderboardPage getLeaderboard(String key, int offset, int limit) {
+        long start = System.nanoTime();
+        try {
+            return getLeaderboardImpl(key, Math.max(offset, 0), Math.max(limit, 0));
+        } finally {
+            topPlayersTime.observeSince(start);
+        }
+    }
+
+    private LeaderboardPage getLeaderboardImpl(String key, int offset, int limit) {
+        PlayerSnapshot current = snapshot.players();
+        MetricRegistry.Metric metric = current.metrics().get(key);
+        if (metric == null) return new LeaderboardPage(0, offset, Collections.emptyList(), Collections.emptyList());
+        ReplicaStore replicaStore = this.replicaStore;
+        // 只有内置指标在实例之间同步
+        if (replicaStore != null && metric.id() <= MetricRegistry.MAX_LEVEL) {
+            return getMergedLeaderboard(current, replicaStore, metric.id(), offset, limit);
+        }
+
+        int[] board = current.leaderboard(metric.id());
+        int end = (int) Math.min(board.length, (long) offset + limit);
+        List<PlayerStats> page = new ArrayList<>(Math.max(0, end - offset));
+        List<Long> values = new ArrayList<>(Math.max(0, end - offset));
+        for (int i = offset; i < end; i++) {
+            page.add(current.stats(board[i]));
+            values.add(current.value(board[i], metric.id()));
+        }
+        return new LeaderboardPage(board.length, offset, page, values);
+    }
+
+    /**
+     * A leaderboard merged with the totals of other instances, built for one player snapshot
+     * and one replica store version. {@code order} holds local slots, and {@code -(i + 1)} for
+     * the i-th of {@code remoteOnly}; {@code remote} are the totals it was sorted by.
+     */
+    private record MergedBoard(PlayerSnapshot players, ReplicaStore replicas, long version,
+                               Map<UUID, ReplicaStore.RemoteTotals> remote,
+                               List<ReplicaStore.RemoteTotals> remoteOnly, int[] order) {
+
+        boolean isFor(PlayerSnapshot players, ReplicaStore replicas, long version) {
+            return this.players == players && this.replicas == replicas && this.version == version;
+        }
+
+        PlayerStats stats(int entry) {
+            if (entry < 0) {
+                ReplicaStore.RemoteTotals totals = remoteOnly.get(-entry - 1);
+                return new PlayerStats(totals.name(), totals.kills(), totals.playtime(), totals.maxLevel());
+            }
+            PlayerStats local = players.stats(entry);
+            ReplicaStore.RemoteTotals totals = remote.get(players.uuid(entry));
+            if (totals == null) return local;
+            return new PlayerStats(local.playerName(), local.kills() + totals.kills(),
+                    local.playtimeSeconds() + totals.playtime(), Math.max(local.maxLevel(), totals.maxLevel()));
+        }
+    }
+
+    private LeaderboardPage getMergedLeaderboard(PlayerSnapshot current, ReplicaStore replicaStore, int metric, int offset, int limit) {
+        MergedBoard board = mergedBoard(current, replicaStore, metric);
+        int end = (int) Math.min(board.order().length, (long) offset + limit);
+        List<PlayerStats> page = new ArrayList<>(Math.max(0, end - offset));
+        List<Long> values = new ArrayList<>(Math.max(0, end - offset));
+        for (int i = offset; i < end; i++) {
+            PlayerStats stats = board.stats(board.order()[i]);
+            page.add(stats);
+            values.add(mergedValue(stats, metric));
+        }
+        return new LeaderboardPage(board.order().length, offset, page, values);
+    }
+
+    // 快照和副本都没变时直接用上次排好的结果；变了才重新排序，同一时间只排一次
+    private MergedBoard mergedBoard(PlayerSnapshot current, ReplicaStore replicaStore, int metric) {
+        MergedBoard board = mergedBoards.get(metric);
+        if (board != null && board.isFor(current, replicaStore, replicaStore.version())) return board;
+        synchronized (mergedBoards) {
+            long version = replicaStore.version();
+            board = mergedBoards.get(metric);
+            if (board != null && board.isFor(current, replicaStore, version)) return board;
+            board = sortMerged(current, replicaStore, version, metric);
+            mergedBoards.set(metric, board);
+            return board;
+        }
+    }
+
+    // 先读版本再复制合计：复制时又有文件应用的话，下次读取会看到新版本并重新排序
+    private static MergedBoard sortMerged(PlayerSnapshot current, ReplicaStore replicaStore, long version, int metric) {
+        Map<UUID, ReplicaStore.RemoteTotals> remote = replicaStore.getAllTotals();
+        Map<UUID, ReplicaStore.RemoteTotals> unmatched = new HashMap<>(remote);
+        int size = current.size();
+        long[] packed = new long[size + remote.size()];
+        int count = 0;
+        for (int slot = 0; slot < size; slot++) {
+            if (current.name(slot) == null) continue;
+            ReplicaStore.RemoteTotals totals = unmatched.remove(current.uuid(slot));
+            long value = current.value(slot, metric);
+            if (totals != null) {
+                value = metric == MetricRegistry.MAX_LEVEL ? Math.max(value, totals.maxLevel()) : value + remoteValue(totals, metric);
+            }
+            packed[count++] = pack(value, slot);
+        }
+        List<ReplicaStore.RemoteTotals> remoteOnly = new ArrayList<>();
+        for (ReplicaStore.RemoteTotals totals : unmatched.values()) {
+            if (totals.name() == null || totals.name().isEmpty()) continue;
+            remoteOnly.add(totals);
+            packed[count++] = pack(remoteValue(totals, metric), size + remoteOnly.size() - 1);
+        }
+
+        // 和本地排行榜一样按 (值, 序号) 打包后升序排序，倒着读；同分时本地玩家在前
+        Arrays.parallelSort(packed, 0, count);
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) {
+            int index = Integer.MAX_VALUE - (int) packed[count - 1 - i];
+            order[i] = index < size ? index : -(index - size + 1);
+        }
+        return new MergedBoard(current, replicaStore, version, remote, List.copyOf(remoteOnly), order);
+    }
+
+    private static long pack(long value, int index) {
+        return (Math.min(Math.max(value, 0), Integer.MAX_VALUE) << 32) | (Integer.MAX_VALUE - index);
+    }
+
+    private static long remoteValue(ReplicaStore.RemoteTotals totals, int metric) {
+        return switch (metric) {
+            case MetricRegistry.KILLS -> totals.kills();
+            case MetricRegistry.PLAYTIME -> totals.playtime();
+            default -> totals.maxLevel();
+        };
+    }
+
+    private static long mergedValue(PlayerStats stats, int metric) {
+        return switch (metric) {
+            case MetricRegistry.KILLS -> stats.kills();
+            case MetricRegistry.PLAYTIME -> stats.playtimeSeconds();
+            default -> stats.maxLevel();
+        };
+    }
+}
@@ -0,0 +1,32 @@
+package top.steve3184.dungeonstats.utils;
+
+import top.steve3184.dungeonstats.model.DungeonLog;
+import top.steve3184.dungeonstats.model.OnlinePlayer;
+import top.steve3184.dungeonstats.model.RunRollup;
+import top.steve3184.dungeonstats.season.SeasonArchive;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Everything off-thread readers need, published by the main thread through one volatile
+ * reference in {@link StatsEngine}. Nothing in it changes after publication, so the HTTP
+ * handlers and placeholders read it without locks and always see one consistent tick.
+ *
+ * @param epoch        increases by one with every published snapshot
+ * @param recentLogs   the newest {@value StatsEngine#RECENT_LOGS} dungeon logs of each arena, newest first
+ * @param rollups      stored rollups, newest first
+ * @param seasons      archived seasons, newest first
+ */
+public record StatsSnapshot(
+        long epoch,
+        long publishedAt,
+        PlayerSnapshot players,
+        List<DungeonLog> recentLogs,
+        List<RunRollup> rollups,
+        List<OnlinePlayer> onlinePlayers,
+        List<SeasonArchive> seasons
+) {
+    public static final StatsSnapshot EMPTY = new StatsSnapshot(0, 0, PlayerSnapshot.EMPTY,
+            Collections.emptyList(), Collections.emptyList(), Collections.emptyList(), Collections.emptyList());
+}
@@ -0,0 +1,357 @@
+package top.steve3184.dungeonstats.perf;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.sun.management.ThreadMXBean;
+import com.sun.net.httpserver.HttpServer;
+import top.steve3184.dungeonstats.api.PlayerStatsHandler;
+import top.steve3184.dungeonstats.api.PlayersHandler;
+import top.steve3184.dungeonstats.api.StatsHandler;
+import top.steve3184.dungeonstats.api.TopHandler;
+import top.steve3184.dungeonstats.model.DungeonLog;
+import top.steve3184.dungeonstats.model.OnlinePlayer;
+import top.steve3184.dungeonstats.utils.IngestedRuns;
+import top.steve3184.dungeonstats.utils.LogStore;
+import top.steve3184.dungeonstats.utils.MetricRegistry;
+import top.steve3184.dungeonstats.utils.PlayerStore;
+import top.steve3184.dungeonstats.utils.QuantileSketch;
+import top.steve3184.dungeonstats.utils.RunAnalytics;
+import top.steve3184.dungeonstats.utils.StatsBatch;
+import top.steve3184.dungeonstats.utils.StatsEngine;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+/**
+ * Drives the API handlers over loopback to find how much dashboard traffic they take.
+ *
+ * Usage: {@code ./gradlew apiLoadTest -Pplayers=100000 -Pruns=20000 -Pclients=32 -Prate=2000 -Pseconds=30}
+ *
+ * The handlers run on a JDK {@link HttpServer} with the same single dispatcher thread the plugin
+ * uses, backed by a bare {@link StatsEngine} over a synthetic data set kept in memory. Two phases run after
+ * a warm-up: a closed loop where {@code clients} workers each send their next request as soon
+ * as the previous one is answered, and, if {@code rate} is above 0, an open loop that sends
+ * {@code rate} requests per second on a fixed schedule. Open-loop latency is measured from the
+ * scheduled send time, so time spent queued behind a slow request is counted.
+ *
+ * The report is JSON with throughput and p50/p99/p999 latency per endpoint, GC counts and pause
+ * time, and the bytes allocated by the server thread, so two versions can be diffed.
+ */
+public final class ApiLoadTest {
+
+    private static final Logger LOGGER = Logger.getLogger("ApiLoadTest");
+    private static final int WARM_UP_SECONDS = 5;
+    private static final int ONLINE_PLAYERS = 60;
+
+    private final int players;
+    private final HttpClient client;
+    private final String baseUrl;
+
+    private ApiLoadTest(int players, int port) {
+        this.players = players;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+        this.baseUrl = "http://127.0.0.1:" + port;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int players = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+        int clients = args.length > 2 ? Integer.parseInt(args[2]) : 32;
+        int rate = args.length > 3 ? Integer.parseInt(args[3]) : 0;
+        int seconds = args.length > 4 ? Integer.parseInt(args[4]) : 30;
+        File output = new File(args.length > 5 ? args[5] : "api-load-test.json");
+
+        HttpServer server = null;
+        try {
+            long start = System.nanoTime();
+            StatsEngine dataManager = generate(players, runs);
+            dataManager.publish(onlinePlayers());
+            System.out.printf("Generated %d players and %d runs in %.1f ms%n", players, runs, (System.nanoTime() - start) / 1_000_000.0);
+
+            Gson gson = new Gson();
+            server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+            server.createContext("/players", new PlayersHandler(dataManager, gson));
+            server.createContext("/stats", new StatsHandler(dataManager, gson));
+            server.createContext("/playerstats", new PlayerStatsHandler(dataManager, gson));
+            server.createContext("/top", new TopHandler(dataManager, gson));
+            server.createContext("/killtop", new TopHandler(dataManager, gson, "kills"));
+            // 和插件一样只用一个分发线程
+            server.setExecutor(null);
+            server.start();
+
+            ApiLoadTest test = new ApiLoadTest(players, server.getAddress().getPort());
+            test.closedLoop(clients, WARM_UP_SECONDS);
+
+            Map<String, Object> report = new LinkedHashMap<>();
+            Map<String, Object> config = new LinkedHashMap<>();
+            config.put("players", players);
+            config.put("runs", runs);
+            config.put("clients", clients);
+            config.put("rate", rate);
+            config.put("seconds", seconds);
+            config.put("javaVersion", System.getProperty("java.version"));
+            config.put("availableProcessors", Runtime.getRuntime().availableProcessors());
+            report.put("config", config);
+
+            List<Map<String, Object>> phases = new ArrayList<>();
+            phases.add(test.closedLoop(clients, seconds).toReport());
+            if (rate > 0) phases.add(test.openLoop(rate, seconds).toReport());
+            report.put("phases", phases);
+
+            String json = new GsonBuilder().setPrettyPrinting().create().toJson(report);
+            if (output.getParentFile() != null) output.getParentFile().mkdirs();
+            Files.writeString(output.toPath(), json, StandardCharsets.UTF_8);
+            System.out.println(json);
+            System.out.println("Report written to " + output.getAbsolutePath());
+        } finally {
+            if (server != null) server.stop(0);
+        }
+    }
+
+    private static StatsEngine generate(int players, int runs) {
+        Random random = new Random(42);
+        long now = System.currentTimeMillis();
+        PlayerStore store = new PlayerStore(MetricRegistry.DEFAULT);
+        StatsBatch batch = new StatsBatch();
+        for (int i = 0; i < players; i++) {
+            UUID uuid = new UUID(random.nextLong(), random.nextLong());
+            batch.addKills(uuid, "Player" + i, random.nextInt(50_000));
+            batch.addPlaytime(uuid, "Player" + i, random.nextInt(1_000_000));
+            batch.raiseMaxLevel("Player" + i, random.nextInt(120));
+        }
+        store.apply(batch, now);
+
+        RunAnalytics analytics = new RunAnalytics();
+        IngestedRuns ingested = new IngestedRuns();
+        LogStore logs = LogStore.open(new MemoryPages(), LOGGER, log -> {});
+        for (int id = 1; id <= runs; id++) {
+            DungeonLog log = new DungeonLog(id, random.nextInt(120), random.nextInt(120), random.nextInt(400),
+                    random.nextInt(15), 300 + random.nextInt(4000), now - (long) (runs - id) * 60_000);
+            logs.put(log);
+            analytics.record(log);
+            ingested.of(MetricRegistry.DEFAULT.defaultArena()).add(id);
+        }
+        StatsEngine engine = new StatsEngine(LOGGER);
+        engine.install(store, logs, analytics, ingested, List.of(), 0);
+        return engine;
+    }
+
+    // 日志页只放在内存里，压测不碰磁盘
+    private static final class MemoryPages implements LogStore.PageStorage {
+        private final Map<Integer, List<DungeonLog>> pages = new ConcurrentHashMap<>();
+
+        @Override
+        public int[] pages() {
+            return pages.keySet().stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        @Override
+        public Collection<DungeonLog> read(int page) {
+            return pages.getOrDefault(page, List.of());
+        }
+
+        @Override
+        public void write(int page, Collection<DungeonLog> logs) {
+            if (logs.isEmpty()) pages.remove(page);
+            else pages.put(page, List.copyOf(logs));
+        }
+    }
+
+    private static List<OnlinePlayer> onlinePlayers() {
+        List<OnlinePlayer> online = new ArrayList<>();
+        String[] statuses = {"ingame", "waiting", "spectator"};
+        for (int i = 0; i < ONLINE_PLAYERS; i++) {
+            online.add(new OnlinePlayer("Player" + i, statuses[i % statuses.length], 20.0, 10.0));
+        }
+        return online;
+    }
+
+    // 各接口按比例混合：排行榜和个人数据最多，/stats 最重
+    private String nextPath(ThreadLocalRandom random) {
+        int pick = random.nextInt(100);
+        if (pick < 30) return "/playerstats?name=Player" + random.nextInt(players);
+        if (pick < 55) return "/top?metric=kills&offset=" + random.nextInt(Math.max(1, players - 50)) + "&limit=50";
+        if (pick < 70) return "/killtop";
+        if (pick < 90) return "/players";
+        return "/stats?limit=20";
+    }
+
+    private Phase closedLoop(int clients, int seconds) throws InterruptedException {
+        Phase phase = new Phase("closed", clients);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        try (ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < clients; i++) {
+                workers.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    while (System.nanoTime() < deadline) {
+                        long start = System.nanoTime();
+                        send(phase, nextPath(random), start);
+                    }
+                });
+            }
+        }
+        return phase.finish();
+    }
+
+    private Phase openLoop(int rate, int seconds) throws InterruptedException {
+        Phase phase = new Phase("open", rate);
+        long intervalNanos = 1_000_000_000L / rate;
+        long start = System.nanoTime();
+        long total = (long) rate * seconds;
+        try (ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (long i = 0; i < total; i++) {
+                long scheduled = start + i * intervalNanos;
+                long wait = scheduled - System.nanoTime();
+                if (wait > 0) LockSupport.parkNanos(wait);
+                String path = nextPath(ThreadLocalRandom.current());
+                workers.submit(() -> send(phase, path, scheduled));
+            }
+        }
+        return phase.finish();
+    }
+
+    private void send(Phase phase, String path, long startNanos) {
+        String endpoint = path.contains("?") ? path.substring(0, path.indexOf('?')) : path;
+        boolean failed;
+        try {
+            HttpResponse<byte[]> response = client.send(HttpRequest.newBuilder(URI.create(baseUrl + path)).GET().build(),
+                    HttpResponse.BodyHandlers.ofByteArray());
+            failed = response.statusCode() >= 400 && response.statusCode() != 404;
+        } catch (IOException e) {
+            failed = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        phase.record(endpoint, (System.nanoTime() - startNanos) / 1_000, failed);
+    }
+
+    private static final class EndpointStats {
+        // 微秒，QuantileSketch 最大可以表示约 600 秒
+        final QuantileSketch latencyMicros = new QuantileSketch();
+        long requests;
+        long errors;
+    }
+
+    /** Results of one phase plus the JVM counters around it. */
+    private static final class Phase {
+        private final String mode;
+        private final int concurrency;
+        private final Map<String, EndpointStats> endpoints = new LinkedHashMap<>();
+        private final long startNanos = System.nanoTime();
+        private final long gcCountBefore = gcCount();
+        private final long gcMillisBefore = gcMillis();
+        private final long serverBytesBefore = serverAllocatedBytes();
+        private long elapsedNanos;
+        private long gcCount;
+        private long gcMillis;
+        private long serverBytes;
+
+        Phase(String mode, int concurrency) {
+            this.mode = mode;
+            this.concurrency = concurrency;
+        }
+
+        synchronized void record(String endpoint, long micros, boolean failed) {
+            EndpointStats stats = endpoints.computeIfAbsent(endpoint, key -> new EndpointStats());
+            stats.requests++;
+            if (failed) stats.errors++;
+            stats.latencyMicros.add(micros);
+        }
+
+        Phase finish() {
+            elapsedNanos = System.nanoTime() - startNanos;
+            gcCount = gcCount() - gcCountBefore;
+            gcMillis = gcMillis() - gcMillisBefore;
+            serverBytes = serverAllocatedBytes() - serverBytesBefore;
+            return this;
+        }
+
+        synchronized Map<String, Object> toReport() {
+            double seconds = elapsedNanos / 1_000_000_000.0;
+            long totalRequests = 0;
+            QuantileSketch all = new QuantileSketch();
+            Map<String, Object> perEndpoint = new LinkedHashMap<>();
+            for (Map.Entry<String, EndpointStats> entry : endpoints.entrySet()) {
+                EndpointStats stats = entry.getValue();
+                totalRequests += stats.requests;
+                all.merge(stats.latencyMicros);
+                perEndpoint.put(entry.getKey(), latencyReport(stats.requests, stats.errors, stats.latencyMicros, seconds));
+            }
+            long totalErrors = endpoints.values().stream().mapToLong(stats -> stats.errors).sum();
+
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("mode", mode);
+            report.put(mode.equals("closed") ? "clients" : "targetRate", concurrency);
+            report.put("seconds", seconds);
+            report.put("total", latencyReport(totalRequests, totalErrors, all, seconds));
+            report.put("endpoints", perEndpoint);
+            Map<String, Object> gc = new LinkedHashMap<>();
+            gc.put("collections", gcCount);
+            gc.put("pauseMillis", gcMillis);
+            report.put("gc", gc);
+            Map<String, Object> allocation = new LinkedHashMap<>();
+            allocation.put("serverThreadBytes", serverBytes);
+            allocation.put("serverThreadBytesPerRequest", totalRequests == 0 ? 0 : serverBytes / totalRequests);
+            report.put("allocation", allocation);
+            return report;
+        }
+
+        private static Map<String, Object> latencyReport(long requests, long errors, QuantileSketch latency, double seconds) {
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("requests", requests);
+            report.put("errors", errors);
+            report.put("throughputPerSecond", seconds == 0 ? 0 : requests / seconds);
+            report.put("p50Micros", latency.quantile(0.50));
+            report.put("p99Micros", latency.quantile(0.99));
+            report.put("p999Micros", latency.quantile(0.999));
+            return report;
+        }
+
+        private static long gcCount() {
+            return ManagementFactory.getGarbageCollectorMXBeans().stream().mapToLong(GarbageCollectorMXBean::getCollectionCount).sum();
+        }
+
+        private static long gcMillis() {
+            return ManagementFactory.getGarbageCollectorMXBeans().stream().mapToLong(GarbageCollectorMXBean::getCollectionTime).sum();
+        }
+
+        // 处理请求的分发线程分配的字节数，不含客户端
+        private static long serverAllocatedBytes() {
+            ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+            for (Thread thread : Thread.getAllStackTraces().keySet()) {
+                if (thread.getName().startsWith("HTTP-Dispatcher")) {
+                    return threads.getThreadAllocatedBytes(thread.threadId());
+                }
+            }
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package top.steve3184.dungeonstats.api;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RateLimiterTest {
+
+    @Test
+    void aFullBucketAllowsABurst() {
+        RateLimiter limiter = new RateLimiter(0.1, 3);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, limiter.acquire("client /top", 1));
+        }
+        long wait = limiter.acquire("client /top", 1);
+        // 每 10 秒回一个令牌
+        assertTrue(wait > 9_000_000_000L && wait <= 10_000_000_000L, "wait " + wait);
+    }
+
+    @Test
+    void bucketsAreKeptPerKey() {
+        RateLimiter limiter = new RateLimiter(0.1, 2);
+        assertEquals(0, limiter.acquire("a", 2));
+        assertTrue(limiter.acquire("a", 1) > 0);
+        assertEquals(0, limiter.acquire("b", 1));
+        assertEquals(2, limiter.size());
+    }
+
+    @Test
+    void aCostAboveTheBurstTakesTheWholeBucket() {
+        RateLimiter limiter = new RateLimiter(0.1, 2);
+        assertEquals(0, limiter.acquire("a", 50));
+        assertTrue(limiter.acquire("a", 1) > 0);
+    }
+
+    @Test
+    void releasedTokensCanBeTakenAgain() {
+        RateLimiter limiter = new RateLimiter(0.1, 3);
+        assertEquals(0, limiter.acquire("a", 2));
+        limiter.release("a", 2);
+        assertEquals(0, limiter.acquire("a", 3));
+        assertTrue(limiter.acquire("a", 1) > 0);
+        // 满的桶还回令牌也不会超过 burst
+        limiter.release("b", 1);
+        assertEquals(0, limiter.acquire("b", 3));
+        assertTrue(limiter.acquire("b", 1) > 0);
+    }
+
+    @Test
+    void aRateMustBePositive() {
+        assertThrows(IllegalArgumentException.class, () -> new RateLimiter(0, 20));
+        assertThrows(IllegalArgumentException.class, () -> new RateLimiter(-1, 20));
+        assertThrows(IllegalArgumentException.class, () -> new RateLimiter(Double.NaN, 20));
+    }
+
+    @Test
+    void tokensComeBackOverTime() throws InterruptedException {
+        RateLimiter limiter = new RateLimiter(100, 1);
+        assertEquals(0, limiter.acquire("a", 1));
+        assertTrue(limiter.acquire("a", 1) > 0);
+        Thread.sleep(30);
+        assertEquals(0, limiter.acquire("a", 1));
+    }
+}
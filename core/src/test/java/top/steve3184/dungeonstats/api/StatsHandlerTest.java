@@ -0,0 +1,165 @@
+package top.steve3184.dungeonstats.api;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import top.steve3184.dungeonstats.model.DungeonLog;
+import top.steve3184.dungeonstats.model.RunRollup;
+import top.steve3184.dungeonstats.utils.IngestedRuns;
+import top.steve3184.dungeonstats.utils.LogStore;
+import top.steve3184.dungeonstats.utils.MetricRegistry;
+import top.steve3184.dungeonstats.utils.PlayerStore;
+import top.steve3184.dungeonstats.utils.RunAnalytics;
+import top.steve3184.dungeonstats.utils.StatsBatch;
+import top.steve3184.dungeonstats.utils.StatsEngine;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class StatsHandlerTest {
+
+    private static final Logger LOGGER = Logger.getLogger("StatsHandlerTest");
+
+    private HttpServer server;
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @BeforeEach
+    void start() throws IOException {
+        StatsEngine engine = new StatsEngine(LOGGER);
+        // 1 到 10 号已经压缩成两天的汇总，新的在前
+        List<RunRollup> rollups = List.of(rollup("day-2", 6, 10), rollup("day-1", 1, 5));
+        MetricRegistry registry = MetricRegistry.builder().arenas(List.of("main", "side")).build();
+        engine.install(new PlayerStore(registry), LogStore.open(new EmptyPages(), LOGGER, log -> {}),
+                new RunAnalytics(), new IngestedRuns(), rollups, 10);
+        StatsBatch batch = new StatsBatch();
+        for (int id = 11; id <= 160; id++) {
+            // 每 4 条有一条在 side，其余没有竞技场，算在 main
+            String arena = id % 4 == 0 ? "side" : null;
+            batch.addRun(new DungeonLog(id, 10, 2, 30, 1, 600, 1_700_000_000_000L + id, arena, id));
+        }
+        engine.apply(batch);
+        engine.publish();
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/stats", new StatsHandler(engine, new Gson()));
+        server.start();
+    }
+
+    @AfterEach
+    void stop() {
+        server.stop(0);
+    }
+
+    @Test
+    void offsetAndLimitMustBeNonNegativeNumbers() throws Exception {
+        assertEquals(400, get("/stats?limit=abc").statusCode());
+        assertEquals(400, get("/stats?limit=-1").statusCode());
+        assertEquals(400, get("/stats?limit=99999999999").statusCode());
+        assertEquals(400, get("/stats?offset=-1").statusCode());
+    }
+
+    @Test
+    void pagesReachPastTheRecentLogs() throws Exception {
+        // 100 条以内从快照读，更多的从日志分页读，结果要接得上
+        assertEquals(runs(160, 156), rows("/stats?limit=5"));
+        assertEquals(runs(100, 81), rows("/stats?offset=60&limit=20"));
+        assertEquals(runs(70, 51), rows("/stats?offset=90&limit=20"));
+        assertEquals(runs(160, 11), rows("/stats?limit=150"));
+    }
+
+    @Test
+    void rollupsFollowTheDetailedRuns() throws Exception {
+        List<String> all = runs(160, 11);
+        all.addAll(List.of("day-2", "day-1"));
+        assertEquals(all, rows("/stats"));
+        assertEquals(all, rows("/stats?limit=0"));
+        assertEquals(all, rows("/stats?limit=1000"));
+
+        List<String> tail = runs(15, 11);
+        tail.add("day-2");
+        assertEquals(tail, rows("/stats?offset=145&limit=6"));
+        assertEquals(List.of("day-1"), rows("/stats?offset=151"));
+        assertEquals(List.of(), rows("/stats?offset=152"));
+    }
+
+    @Test
+    void arenaPagesHoldDetailedRunsOnly() throws Exception {
+        List<String> side = runs(160, 11, 0);
+        assertEquals(38, side.size());
+        assertEquals(side, rows("/stats?arena=side"));
+        assertEquals(side.subList(0, 5), rows("/stats?arena=side&limit=5"));
+        assertEquals(side.subList(30, 38), rows("/stats?arena=side&offset=30&limit=20"));
+
+        // main 有 112 条，快照里只有最新的 100 条，再往后从日志分页读
+        List<String> main = runs(160, 11);
+        main.removeAll(side);
+        assertEquals(112, main.size());
+        assertEquals(main.subList(90, 100), rows("/stats?arena=main&offset=90&limit=10"));
+        assertEquals(main.subList(95, 112), rows("/stats?arena=MAIN&offset=95"));
+        assertEquals(400, get("/stats?arena=nowhere").statusCode());
+    }
+
+    // 对局记录用 recordId 表示，汇总用 period 表示
+    private List<String> rows(String path) throws Exception {
+        HttpResponse<String> response = get(path);
+        assertEquals(200, response.statusCode());
+        List<String> rows = new ArrayList<>();
+        for (JsonElement element : JsonParser.parseString(response.body()).getAsJsonArray()) {
+            JsonObject row = element.getAsJsonObject();
+            rows.add(row.has("recordId") ? row.get("recordId").getAsString() : row.get("period").getAsString());
+        }
+        return rows;
+    }
+
+    private static List<String> runs(int newest, int oldest) {
+        List<String> rows = new ArrayList<>();
+        for (int id = newest; id >= oldest; id--) rows.add(String.valueOf(id));
+        return rows;
+    }
+
+    private static List<String> runs(int newest, int oldest, int remainder) {
+        List<String> rows = runs(newest, oldest);
+        rows.removeIf(id -> Integer.parseInt(id) % 4 != remainder);
+        return rows;
+    }
+
+    private static RunRollup rollup(String period, int first, int last) {
+        return new RunRollup("day", period, last - first + 1, first, last, 0, 0, 0, 0, 0, 0, 0, 0, 10);
+    }
+
+    private HttpResponse<String> get(String path) throws Exception {
+        URI uri = URI.create("http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + path);
+        return client.send(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static final class EmptyPages implements LogStore.PageStorage {
+        @Override
+        public int[] pages() {
+            return new int[0];
+        }
+
+        @Override
+        public Collection<DungeonLog> read(int page) {
+            return List.of();
+        }
+
+        @Override
+        public void write(int page, Collection<DungeonLog> logs) {
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package top.steve3184.dungeonstats.backup;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import top.steve3184.dungeonstats.model.DungeonLog;
+import top.steve3184.dungeonstats.utils.MetricRegistry;
+import top.steve3184.dungeonstats.utils.PlayerStore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BackupStoreTest {
+
+    private static final List<String> METRICS = List.of("kills", "playtime", "maxLevel");
+    private static final UUID ALICE = new UUID(0, 1);
+    private static final UUID BOB = new UUID(0, 2);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void restoreReplaysTheDeltasAfterTheBase() throws IOException {
+        BackupStore store = store();
+        writeHistory(store);
+
+        BackupStore.Restored restored = store.restore(MetricRegistry.DEFAULT, Long.MAX_VALUE);
+        assertEquals(3, restored.segments());
+        assertEquals(3000, restored.createdAt());
+        assertArrayEquals(new long[]{12, 100, 30}, restored.players().get(ALICE).values());
+        assertArrayEquals(new long[]{9, 50, 20}, restored.players().get(BOB).values());
+        // 已经压缩进汇总的记录不恢复
+        assertEquals(2, restored.foldedThrough());
+        assertEquals(List.of(3, 4, 5), restored.logs().stream().map(DungeonLog::recordId).toList());
+        assertEquals("main=1-5", restored.ingested());
+    }
+
+    @Test
+    void restoreStopsAtTheRequestedTime() throws IOException {
+        BackupStore store = store();
+        writeHistory(store);
+
+        BackupStore.Restored restored = store.restore(MetricRegistry.DEFAULT, 2500);
+        assertEquals(2, restored.segments());
+        assertArrayEquals(new long[]{12, 100, 30}, restored.players().get(ALICE).values());
+        assertArrayEquals(new long[]{5, 50, 20}, restored.players().get(BOB).values());
+        assertEquals(List.of(1, 2, 3, 4), restored.logs().stream().map(DungeonLog::recordId).toList());
+        assertThrows(IOException.class, () -> store.restore(MetricRegistry.DEFAULT, 500));
+    }
+
+    @Test
+    void aMissingDeltaFailsTheRestore() throws IOException {
+        BackupStore store = store();
+        writeHistory(store);
+        Files.delete(store.list().get(1).file());
+        assertThrows(IOException.class, () -> store.restore(MetricRegistry.DEFAULT, Long.MAX_VALUE));
+        // 缺的那段之前的备份还能恢复
+        assertEquals(1, store.restore(MetricRegistry.DEFAULT, 1500).segments());
+    }
+
+    @Test
+    void metricsAreMatchedByKey() throws IOException {
+        BackupStore store = store();
+        PlayerStore.Row row = new PlayerStore.Row(new long[]{7, 3, 99}, 1000, "Alice", null);
+        store.write(new BackupSegment.Contents(1, true, 1000, List.of("playtime", "kills", "removed"),
+                List.of(new BackupSegment.PlayerRecord(ALICE, row)), List.of(), "", 0, ""));
+
+        BackupStore.Restored restored = store.restore(MetricRegistry.DEFAULT, Long.MAX_VALUE);
+        assertArrayEquals(new long[]{3, 7, 0}, restored.players().get(ALICE).values());
+        assertEquals("Alice", restored.players().get(ALICE).name());
+    }
+
+    @Test
+    void pruneKeepsTheNewestBasesAndTheirDeltas() throws IOException {
+        BackupStore store = store();
+        for (int seq = 1; seq <= 5; seq++) {
+            store.write(segment(seq, seq % 2 == 1, seq * 1000L, List.of(), List.of(), 0));
+        }
+        assertEquals(2, store.prune(2));
+        assertEquals(List.of(3L, 4L, 5L), store.list().stream().map(BackupStore.Segment::seq).toList());
+        assertEquals(0, store.prune(2));
+        assertEquals(6, store.nextSequence());
+    }
+
+    // 一个全量和两个增量：Alice 的击杀在第二段增加，Bob 的在第三段，第三段压缩了前两条记录
+    private static void writeHistory(BackupStore store) throws IOException {
+        store.write(segment(1, true, 1000, List.of(player(ALICE, "Alice", 10, 100, 30), player(BOB, "Bob", 5, 50, 20)),
+                List.of(log(1), log(2), log(3)), 0));
+        store.write(segment(2, false, 2000, List.of(player(ALICE, "Alice", 12, 100, 30)), List.of(log(4)), 0));
+        store.write(segment(3, false, 3000, List.of(player(BOB, "Bob", 9, 50, 20)), List.of(log(5)), 2));
+    }
+
+    private static BackupSegment.Contents segment(long seq, boolean base, long createdAt, List<BackupSegment.PlayerRecord> players,
+                                                  List<DungeonLog> logs, int foldedThrough) {
+        return new BackupSegment.Contents(seq, base, createdAt, METRICS, players, logs, "main=1-" + (seq + 2),
+                foldedThrough, "");
+    }
+
+    private static BackupSegment.PlayerRecord player(UUID uuid, String name, long kills, long playtime, long maxLevel) {
+        return new BackupSegment.PlayerRecord(uuid, new PlayerStore.Row(new long[]{kills, playtime, maxLevel}, 1000, name, null));
+    }
+
+    private static DungeonLog log(int recordId) {
+        return new DungeonLog(recordId, 10, 2, 30, 1, 600, 1_700_000_000_000L + recordId);
+    }
+
+    private BackupStore store() {
+        return new BackupStore(directory, Logger.getLogger("BackupStoreTest"));
+    }
+}
@@ -0,0 +1,82 @@
+package top.steve3184.dungeonstats.changefeed;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import top.steve3184.dungeonstats.model.DungeonLog;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChangeFeedTest {
+
+    private static final Logger LOGGER = Logger.getLogger("ChangeFeedTest");
+    private static final UUID ALICE = new UUID(0, 1);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void changesAreReadInPagesInSequenceOrder() throws IOException {
+        try (ChangeFeed feed = ChangeFeed.open(directory, 1 << 20, 4, LOGGER)) {
+            for (int i = 1; i <= 25; i++) {
+                assertEquals(i, feed.appendStat(1000L * i, ALICE, "Alice", "kills", 1, i));
+            }
+            feed.appendRun(26_000, new DungeonLog(1, 10, 2, 30, 1, 600, 26_000));
+        }
+        ChangeFeed reader = ChangeFeed.openReader(directory, LOGGER);
+        ChangeFeed.Page first = reader.read(0, 10);
+        assertEquals(10, first.changes().size());
+        assertTrue(first.more());
+        assertEquals(10, first.next());
+        assertEquals(1, first.oldest());
+        assertTrue(first.changes().get(0).startsWith("{\"seq\":1,"));
+
+        ChangeFeed.Page rest = reader.read(first.next(), 100);
+        assertEquals(16, rest.changes().size());
+        assertFalse(rest.more());
+        assertEquals(26, rest.next());
+        assertTrue(rest.changes().get(15).contains("\"type\":\"run\""));
+        assertTrue(reader.read(rest.next(), 100).changes().isEmpty());
+    }
+
+    @Test
+    void oldSegmentsAreDeletedWhenRotating() throws IOException {
+        try (ChangeFeed feed = ChangeFeed.open(directory, 1024, 2, LOGGER)) {
+            for (int i = 1; i <= 200; i++) {
+                feed.appendStat(i, ALICE, "Alice", "kills", 1, i);
+            }
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(2, files.count());
+        }
+        ChangeFeed.Page page = ChangeFeed.openReader(directory, LOGGER).read(0, 1000);
+        // 被删掉的改动从 oldest 之前开始，剩下的连续不断
+        assertTrue(page.oldest() > 1);
+        assertEquals(200 - page.oldest() + 1, page.changes().size());
+        for (int i = 0; i < page.changes().size(); i++) {
+            assertTrue(page.changes().get(i).startsWith("{\"seq\":" + (page.oldest() + i) + ","));
+        }
+        assertEquals(200, page.next());
+    }
+
+    @Test
+    void sequenceNumbersContinueAfterReopening() throws IOException {
+        try (ChangeFeed feed = ChangeFeed.open(directory, 1 << 20, 4, LOGGER)) {
+            for (int i = 1; i <= 5; i++) feed.appendStat(i, ALICE, "Alice", "kills", 1, i);
+        }
+        try (ChangeFeed feed = ChangeFeed.open(directory, 1 << 20, 4, LOGGER)) {
+            assertEquals(6, feed.appendStat(6, ALICE, "Alice", "kills", 1, 6));
+        }
+        ChangeFeed.Page page = ChangeFeed.openReader(directory, LOGGER).read(4, 100);
+        assertEquals(2, page.changes().size());
+        assertEquals(6, page.next());
+    }
+}
@@ -0,0 +1,73 @@
+package top.steve3184.dungeonstats.replication;
+
+import org.junit.jupiter.api.Test;
+import top.steve3184.dungeonstats.model.PlayerStats;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReplicaStoreTest {
+
+    private static final UUID ALICE = new UUID(0, 1);
+    private static final UUID BOB = new UUID(0, 2);
+
+    @Test
+    void applyingAFileTwiceChangesNothing() {
+        ReplicaStore store = new ReplicaStore();
+        DeltaFile.Contents delta = delta("east", 1, false, entry(ALICE, "Alice", 10, 60, 5));
+        assertTrue(store.apply(delta));
+        assertFalse(store.apply(delta));
+        assertEquals(new ReplicaStore.RemoteTotals("Alice", 10, 60, 5), store.getTotals(ALICE));
+        assertEquals(1, store.versionOf("east"));
+    }
+
+    @Test
+    void theWatermarkWaitsForGapsToClose() {
+        ReplicaStore store = new ReplicaStore();
+        assertTrue(store.apply(delta("east", 1, false, entry(ALICE, "Alice", 1, 0, 0))));
+        assertTrue(store.apply(delta("east", 3, false, entry(ALICE, "Alice", 3, 0, 0))));
+        assertEquals(1, store.versionOf("east"));
+        assertFalse(store.apply(delta("east", 3, false, entry(ALICE, "Alice", 3, 0, 0))));
+        assertTrue(store.apply(delta("east", 2, false, entry(ALICE, "Alice", 2, 0, 0))));
+        assertEquals(3, store.versionOf("east"));
+        // 乱序到达不会让旧值覆盖新值
+        assertEquals(3, store.getTotals(ALICE).kills());
+    }
+
+    @Test
+    void aBaseCoversEverythingBeforeIt() {
+        ReplicaStore store = new ReplicaStore();
+        store.apply(delta("east", 1, false, entry(ALICE, "Alice", 1, 0, 0)));
+        assertTrue(store.apply(delta("east", 5, true, entry(ALICE, "Alice", 8, 30, 2), entry(BOB, "Bob", 4, 0, 1))));
+        assertEquals(5, store.versionOf("east"));
+        assertFalse(store.apply(delta("east", 4, false, entry(ALICE, "Alice", 7, 0, 0))));
+        assertEquals(8, store.getTotals(ALICE).kills());
+    }
+
+    @Test
+    void peersAreSummedAndAddedToLocalStats() {
+        ReplicaStore store = new ReplicaStore();
+        store.apply(delta("east", 1, false, entry(ALICE, "Alice", 10, 60, 5)));
+        store.apply(delta("west", 1, false, entry(ALICE, "Alice", 4, 20, 9), entry(BOB, "Bob", 2, 0, 1)));
+        assertEquals(new PlayerStats("Alice", 15, 90, 9), store.withRemote(ALICE, new PlayerStats("Alice", 1, 10, 3)));
+        assertEquals(BOB, store.findByName("bob"));
+
+        List<PlayerStats> remoteOnly = new ArrayList<>();
+        store.forEachRemoteOnly(Set.of(ALICE), remoteOnly::add);
+        assertEquals(List.of(new PlayerStats("Bob", 2, 0, 1)), remoteOnly);
+    }
+
+    static DeltaFile.Contents delta(String nodeId, long seq, boolean base, ReplicaEntry... entries) {
+        return new DeltaFile.Contents(nodeId, seq, base, List.of(entries));
+    }
+
+    static ReplicaEntry entry(UUID uuid, String name, long kills, long playtime, int maxLevel) {
+        return new ReplicaEntry(uuid, name, kills, playtime, maxLevel);
+    }
+}
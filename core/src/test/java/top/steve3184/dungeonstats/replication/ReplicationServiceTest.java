@@ -0,0 +1,132 @@
+package top.steve3184.dungeonstats.replication;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static top.steve3184.dungeonstats.replication.ReplicaStoreTest.entry;
+
+class ReplicationServiceTest {
+
+    private static final Logger LOGGER = Logger.getLogger("ReplicationServiceTest");
+    private static final UUID ALICE = new UUID(0, 1);
+    private static final UUID BOB = new UUID(0, 2);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void twoNodesSeeEachOthersStats() throws IOException {
+        ReplicationService east = node("east");
+        ReplicationService west = node("west");
+        east.publish(List.of(entry(ALICE, "Alice", 5, 60, 3)), false);
+        west.publish(List.of(entry(ALICE, "Alice", 2, 10, 7), entry(BOB, "Bob", 1, 0, 1)), false);
+
+        assertEquals(1, east.pull());
+        assertEquals(1, west.pull());
+        assertEquals(new ReplicaStore.RemoteTotals("Alice", 2, 10, 7), east.getStore().getTotals(ALICE));
+        assertEquals(new ReplicaStore.RemoteTotals("Alice", 5, 60, 3), west.getStore().getTotals(ALICE));
+        // 自己发布的文件不会算进自己的远程合计
+        assertEquals(null, west.getStore().getTotals(BOB));
+    }
+
+    @Test
+    void pullingAgainAppliesNothing() throws IOException {
+        ReplicationService east = node("east");
+        ReplicationService west = node("west");
+        east.publish(List.of(entry(ALICE, "Alice", 5, 60, 3)), false);
+        assertEquals(1, west.pull());
+        long version = west.getStore().version();
+        assertEquals(0, west.pull());
+        assertEquals(version, west.getStore().version());
+
+        // 重启后从保存的状态继续，不会再应用一遍
+        ReplicationService restarted = node("west");
+        assertEquals(0, restarted.pull());
+        assertEquals(5, restarted.getStore().getTotals(ALICE).kills());
+    }
+
+    @Test
+    void theOrderFilesAreMergedInDoesNotMatter() throws IOException {
+        ReplicationService east = node("east");
+        ReplicationService eager = node("eager");
+        Random random = new Random(13);
+        long[] kills = new long[4];
+        for (int seq = 1; seq <= 12; seq++) {
+            List<ReplicaEntry> entries = new ArrayList<>();
+            for (int player = 0; player < kills.length; player++) {
+                if (random.nextBoolean()) continue;
+                kills[player] += 1 + random.nextInt(10);
+                entries.add(entry(new UUID(1, player), "Player" + player, kills[player], kills[player] * 60, player));
+            }
+            east.publish(entries, false);
+            if (seq % 3 == 0) eager.pull();
+        }
+        eager.pull();
+
+        // 同样的文件倒序应用，以及每个文件应用两次，结果都一样
+        List<DeltaFile.Contents> files = new ArrayList<>();
+        try (Stream<Path> paths = Files.list(directory.resolve("shared").resolve("east"))) {
+            for (Path file : (Iterable<Path>) paths.sorted()::iterator) files.add(DeltaFile.read(file));
+        }
+        Collections.reverse(files);
+        ReplicaStore reversed = new ReplicaStore();
+        for (DeltaFile.Contents file : files) {
+            assertTrue(reversed.apply(file));
+            assertFalse(reversed.apply(file));
+        }
+        for (int player = 0; player < kills.length; player++) {
+            UUID uuid = new UUID(1, player);
+            assertEquals(kills[player], eager.getStore().getTotals(uuid).kills());
+            assertEquals(eager.getStore().getTotals(uuid), reversed.getTotals(uuid));
+        }
+        assertEquals(12, reversed.versionOf("east"));
+    }
+
+    @Test
+    void aNodeThatFellBehindCatchesUpFromTheBase() throws IOException {
+        ReplicationService east = node("east");
+        ReplicationService west = node("west");
+        for (int seq = 1; seq <= 3; seq++) {
+            east.publish(List.of(entry(ALICE, "Alice", seq, 0, 0)), false);
+        }
+        west.pull();
+        east.publish(List.of(entry(ALICE, "Alice", 4, 0, 0), entry(BOB, "Bob", 1, 0, 0)), true);
+        east.publish(List.of(entry(BOB, "Bob", 2, 0, 0)), false);
+        east.publish(List.of(entry(ALICE, "Alice", 6, 0, 0)), false);
+        east.publish(List.of(entry(ALICE, "Alice", 7, 0, 0), entry(BOB, "Bob", 3, 0, 0)), true);
+        east.publish(List.of(entry(BOB, "Bob", 9, 0, 0)), false);
+        assertFalse(Files.exists(directory.resolve("shared/east/000000000001.delta")), "deltas before the previous base are pruned");
+
+        // 从没拉取过的节点：开头的增量已经删掉，从最新的全量开始，再接后面的增量
+        ReplicationService late = node("late");
+        assertEquals(2, late.pull());
+        assertEquals(8, late.getStore().versionOf("east"));
+        assertEquals(7, late.getStore().getTotals(ALICE).kills());
+        assertEquals(9, late.getStore().getTotals(BOB).kills());
+
+        // 拉取过一部分的节点缺的增量也删掉了，同样从全量接上，结果相同
+        assertEquals(2, west.pull());
+        assertEquals(8, west.getStore().versionOf("east"));
+        assertEquals(late.getStore().getTotals(ALICE), west.getStore().getTotals(ALICE));
+        assertEquals(late.getStore().getTotals(BOB), west.getStore().getTotals(BOB));
+    }
+
+    private ReplicationService node(String nodeId) throws IOException {
+        return new ReplicationService(nodeId, directory.resolve("shared"), directory.resolve("state-" + nodeId),
+                new ReplicaStore(), LOGGER);
+    }
+}
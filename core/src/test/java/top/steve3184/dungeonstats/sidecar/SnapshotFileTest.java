@@ -0,0 +1,162 @@
+package top.steve3184.dungeonstats.sidecar;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import top.steve3184.dungeonstats.model.DungeonLog;
+import top.steve3184.dungeonstats.model.LeaderboardPage;
+import top.steve3184.dungeonstats.model.OnlinePlayer;
+import top.steve3184.dungeonstats.utils.IngestedRuns;
+import top.steve3184.dungeonstats.utils.LogStore;
+import top.steve3184.dungeonstats.utils.MetricRegistry;
+import top.steve3184.dungeonstats.utils.PlayerStore;
+import top.steve3184.dungeonstats.utils.RunAnalytics;
+import top.steve3184.dungeonstats.utils.StatsBatch;
+import top.steve3184.dungeonstats.utils.StatsEngine;
+import top.steve3184.dungeonstats.utils.StatsSnapshot;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SnapshotFileTest {
+
+    private static final Logger LOGGER = Logger.getLogger("SnapshotFileTest");
+    private static final int PLAYERS = 200;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void decodeRestoresAnEncodedSnapshot() throws Exception {
+        StatsEngine engine = engine();
+        engine.apply(new StatsBatch().addRun(new DungeonLog(1, 30, 4, 50, 2, 1200, 1_700_000_000_000L)));
+        engine.publish(List.of(new OnlinePlayer("Player1", "ingame", 20.0, 10.0)));
+        StatsSnapshot snapshot = engine.getSnapshot();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        SnapshotFile.encode(snapshot, new DataOutputStream(bytes));
+        StatsSnapshot decoded = SnapshotFile.decode(snapshot.epoch(), snapshot.publishedAt(), bytes.toByteArray());
+
+        assertEquals(snapshot.epoch(), decoded.epoch());
+        assertEquals(snapshot.publishedAt(), decoded.publishedAt());
+        assertEquals(snapshot.recentLogs(), decoded.recentLogs());
+        assertEquals(snapshot.onlinePlayers(), decoded.onlinePlayers());
+        StatsEngine served = new StatsEngine(LOGGER);
+        served.install(decoded);
+        for (int i = 0; i < PLAYERS; i += 17) {
+            assertEquals(engine.getPlayerStats("Player" + i), served.getPlayerStats("Player" + i));
+        }
+        assertEquals(engine.getLeaderboard("kills", 0, 50), served.getLeaderboard("kills", 0, 50));
+    }
+
+    @Test
+    void readerOnlyReturnsNewSnapshots() throws Exception {
+        Path file = directory.resolve("snapshot.dat");
+        StatsEngine engine = engine();
+        try (SnapshotWriter writer = new SnapshotWriter(file); SnapshotReader reader = new SnapshotReader(file)) {
+            assertTrue(writer.write(engine.getSnapshot()));
+            assertFalse(writer.write(engine.getSnapshot()));
+            StatsSnapshot first = reader.poll();
+            assertNotNull(first);
+            assertEquals(engine.getSnapshot().epoch(), first.epoch());
+            assertNull(reader.poll());
+
+            engine.apply(new StatsBatch().addKills(new UUID(1, 0), "Player0", 5));
+            engine.publish();
+            assertTrue(writer.write(engine.getSnapshot()));
+            assertEquals(first.epoch() + 1, reader.poll().epoch());
+        }
+    }
+
+    @Test
+    void aReaderNeverSeesAHalfWrittenSnapshot() throws Exception {
+        Path file = directory.resolve("snapshot.dat");
+        StatsEngine engine = engine();
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        try (SnapshotWriter writer = new SnapshotWriter(file)) {
+            writer.write(engine.getSnapshot());
+            Thread reader = new Thread(() -> {
+                try (SnapshotReader snapshots = new SnapshotReader(file)) {
+                    long lastEpoch = -1;
+                    int read = 0;
+                    while (writing.get() || read == 0) {
+                        StatsSnapshot snapshot = snapshots.poll();
+                        if (snapshot == null) continue;
+                        assertTrue(snapshot.epoch() > lastEpoch);
+                        lastEpoch = snapshot.epoch();
+                        read++;
+                        // 每次写入都给所有人加一次击杀，读到的一份里所有人必须相同
+                        StatsEngine served = new StatsEngine(LOGGER);
+                        served.install(snapshot);
+                        LeaderboardPage board = served.getLeaderboard("kills", 0, PLAYERS);
+                        assertEquals(PLAYERS, board.total());
+                        assertEquals(board.players().get(0).kills(), board.players().get(PLAYERS - 1).kills(), "epoch " + snapshot.epoch());
+                    }
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            });
+            reader.start();
+            for (int round = 0; round < 500; round++) {
+                StatsBatch batch = new StatsBatch();
+                for (int i = 0; i < PLAYERS; i++) batch.addKills(new UUID(1, i), "Player" + i, 1);
+                engine.apply(batch);
+                engine.publish();
+                writer.write(engine.getSnapshot());
+            }
+            writing.set(false);
+            reader.join(30_000);
+        }
+        if (failure.get() != null) throw new AssertionError(failure.get());
+    }
+
+    // 每个玩家的击杀数都一样
+    private static StatsEngine engine() {
+        StatsEngine engine = new StatsEngine(LOGGER);
+        engine.install(new PlayerStore(MetricRegistry.DEFAULT), LogStore.open(new MemoryPages(), LOGGER, log -> {}),
+                new RunAnalytics(), new IngestedRuns(), List.of(), 0);
+        StatsBatch batch = new StatsBatch();
+        for (int i = 0; i < PLAYERS; i++) {
+            batch.addKills(new UUID(1, i), "Player" + i, 10).addPlaytime(new UUID(1, i), "Player" + i, i);
+        }
+        engine.apply(batch);
+        engine.publish();
+        return engine;
+    }
+
+    private static final class MemoryPages implements LogStore.PageStorage {
+        private final Map<Integer, List<DungeonLog>> pages = new ConcurrentHashMap<>();
+
+        @Override
+        public int[] pages() {
+            return pages.keySet().stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        @Override
+        public Collection<DungeonLog> read(int page) {
+            return pages.getOrDefault(page, List.of());
+        }
+
+        @Override
+        public void write(int page, Collection<DungeonLog> logs) {
+            if (logs.isEmpty()) pages.remove(page);
+            else pages.put(page, new ArrayList<>(logs));
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package top.steve3184.dungeonstats.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IngestedRunsTest {
+
+    @Test
+    void runIdsAreDeduplicatedPerArena() {
+        IngestedRuns runs = new IngestedRuns();
+        assertTrue(runs.of("main").add(1));
+        assertFalse(runs.of("main").add(1));
+        // 另一个竞技场的同一编号是另一局
+        assertTrue(runs.of("east").add(1));
+    }
+
+    @Test
+    void decodeRestoresEveryArena() {
+        IngestedRuns runs = new IngestedRuns();
+        runs.of("main").addRange(1, 500);
+        runs.of("main").add(502);
+        runs.of("east").addRange(1, 3);
+        String encoded = runs.encode();
+        assertEquals("main=1-500,502;east=1-3", encoded);
+
+        IngestedRuns decoded = IngestedRuns.decode(encoded, "main");
+        assertEquals(encoded, decoded.encode());
+        assertFalse(decoded.of("east").add(3));
+        assertTrue(decoded.of("east").add(4));
+    }
+
+    @Test
+    void idsWrittenBeforeArenasBelongToTheDefaultArena() {
+        IngestedRuns decoded = IngestedRuns.decode("1-10,12", "main");
+        assertEquals(1, decoded.all().size());
+        assertTrue(decoded.of("main").contains(12));
+        assertFalse(decoded.of("main").contains(11));
+        assertEquals(0, IngestedRuns.decode("", "main").all().size());
+    }
+}
@@ -0,0 +1,71 @@
+package top.steve3184.dungeonstats.utils;
+
+import org.junit.jupiter.api.Test;
+import top.steve3184.dungeonstats.model.DungeonLog;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LogStoreTest {
+
+    private static final Logger LOGGER = Logger.getLogger("LogStoreTest");
+
+    @Test
+    void putIsIdempotent() {
+        LogStore store = LogStore.open(new MemoryPages(), LOGGER, log -> {});
+        assertTrue(store.put(log(1)));
+        assertFalse(store.put(log(1)));
+        assertEquals(1, store.count());
+        assertEquals(1, store.highest());
+    }
+
+    @Test
+    void readSeesSavedAndUnsavedLogs() throws IOException {
+        MemoryPages pages = new MemoryPages();
+        LogStore store = LogStore.open(pages, LOGGER, log -> {});
+        for (int id = 1; id <= 2500; id++) store.put(log(id));
+        store.flush();
+        // 刷新之后的改动只在缓存的脏页里
+        for (int id = 2501; id <= 2600; id++) store.put(log(id));
+        store.remove(10);
+        store.remove(2550);
+
+        int[] ids = store.ids(0);
+        assertEquals(2598, ids.length);
+        List<DungeonLog> read = store.read(new int[]{5, 10, 999, 1000, 2500, 2550, 2600}, 0, 7);
+        assertArrayEquals(new int[]{5, 999, 1000, 2500, 2600}, read.stream().mapToInt(DungeonLog::recordId).toArray());
+        assertEquals(log(999), read.get(1));
+        assertTrue(store.read(ids, 3, 3).isEmpty());
+    }
+
+    @Test
+    void reopeningFindsEveryFlushedLog() throws IOException {
+        MemoryPages pages = new MemoryPages();
+        LogStore store = LogStore.open(pages, LOGGER, log -> {});
+        for (int id = 1; id <= 1500; id++) store.put(log(id));
+        store.remove(700);
+        store.flush();
+
+        List<DungeonLog> visited = new ArrayList<>();
+        LogStore reopened = LogStore.open(pages, LOGGER, log -> {
+            synchronized (visited) {
+                visited.add(log);
+            }
+        });
+        assertEquals(1499, reopened.count());
+        assertEquals(1499, visited.size());
+        assertFalse(reopened.contains(700));
+        assertEquals(log(1500), reopened.newest(1).get(0));
+    }
+
+    static DungeonLog log(int recordId) {
+        return new DungeonLog(recordId, recordId % 120, 3, 40, 1, 600 + recordId, 1_700_000_000_000L + recordId * 1000L);
+    }
+}
@@ -0,0 +1,30 @@
+package top.steve3184.dungeonstats.utils;
+
+import top.steve3184.dungeonstats.model.DungeonLog;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// 测试用的日志页，只放在内存里
+final class MemoryPages implements LogStore.PageStorage {
+
+    final Map<Integer, List<DungeonLog>> pages = new ConcurrentHashMap<>();
+
+    @Override
+    public int[] pages() {
+        return pages.keySet().stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    @Override
+    public Collection<DungeonLog> read(int page) {
+        return pages.getOrDefault(page, List.of());
+    }
+
+    @Override
+    public void write(int page, Collection<DungeonLog> logs) {
+        if (logs.isEmpty()) pages.remove(page);
+        else pages.put(page, List.copyOf(logs));
+    }
+}
@@ -0,0 +1,89 @@
+package top.steve3184.dungeonstats.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PlayerStoreTest {
+
+    private static final UUID ALICE = new UUID(0, 1);
+    private static final UUID BOB = new UUID(0, 2);
+    private static final UUID CAROL = new UUID(0, 3);
+
+    @Test
+    void playersAreFoundByUuidAndByTheirLatestName() {
+        PlayerStore store = new PlayerStore(MetricRegistry.DEFAULT);
+        int slot = store.getOrCreate(ALICE, "Alice");
+        assertEquals(slot, store.getOrCreate(ALICE, null));
+        assertEquals(slot, store.slotOfName("ALICE"));
+
+        store.getOrCreate(ALICE, "Alicia");
+        assertEquals(-1, store.slotOfName("alice"));
+        assertEquals(slot, store.slotOfName("alicia"));
+        assertEquals(1, store.size());
+        assertEquals(-1, store.slotOf(BOB));
+    }
+
+    @Test
+    void namesMissingFromTheDataAreFilledLaterAndSaved() {
+        String[] keys = {ALICE.toString(), BOB.toString()};
+        long[] values = new long[MetricRegistry.DEFAULT.size()];
+        PlayerStore store = PlayerStore.load(MetricRegistry.DEFAULT, keys,
+                i -> new PlayerStore.Row(values, 1, i == 0 ? "Alice" : null, null, 0, null));
+        assertEquals(List.of(BOB), store.playersWithoutName());
+        assertEquals(0, store.flushTo((uuid, row) -> {}));
+
+        store.getOrCreate(BOB, "Bob");
+        assertTrue(store.playersWithoutName().isEmpty());
+        assertEquals(store.slotOf(BOB), store.slotOfName("bob"));
+        List<UUID> saved = new ArrayList<>();
+        store.flushTo((uuid, row) -> saved.add(uuid));
+        assertEquals(List.of(BOB), saved);
+    }
+
+    @Test
+    void snapshotsAreSharedUntilSomethingChanges() {
+        PlayerStore store = new PlayerStore(MetricRegistry.DEFAULT);
+        store.apply(new StatsBatch().addKills(ALICE, "Alice", 5).addKills(BOB, "Bob", 9).addKills(CAROL, "Carol", 5), 1);
+        int alice = store.slotOf(ALICE);
+        int bob = store.slotOf(BOB);
+        int carol = store.slotOf(CAROL);
+
+        PlayerSnapshot first = store.snapshot(null);
+        int[] board = first.leaderboard("kills");
+        // 同分时先加入的玩家在前
+        assertArrayEquals(new int[]{bob, alice, carol}, board);
+        assertSame(board, first.leaderboard("kills"));
+        assertSame(first, store.snapshot(first));
+
+        store.apply(new StatsBatch().addKills(CAROL, "Carol", 10), 2);
+        PlayerSnapshot second = store.snapshot(first);
+        assertNotSame(first, second);
+        assertArrayEquals(new int[]{carol, bob, alice}, second.leaderboard("kills"));
+        // 旧快照不受之后的改动影响
+        assertArrayEquals(new int[]{bob, alice, carol}, first.leaderboard("kills"));
+        assertEquals(5, first.stats(carol).kills());
+        assertEquals(carol, second.slotOfName("carol"));
+        assertEquals(null, second.leaderboard("deaths"));
+    }
+
+    @Test
+    void maxLevelOnlyRises() {
+        PlayerStore store = new PlayerStore(MetricRegistry.DEFAULT);
+        int alice = store.getOrCreate(ALICE, "Alice");
+        assertEquals(1, store.apply(new StatsBatch().raiseMaxLevel("alice", 20), 1).size());
+        // 没有提高的最高等级不算改动
+        assertTrue(store.apply(new StatsBatch().raiseMaxLevel("Alice", 10), 2).isEmpty());
+        assertTrue(store.apply(new StatsBatch().raiseMaxLevel("Nobody", 10), 2).isEmpty());
+        assertEquals(20, store.maxLevel(alice));
+        assertEquals(1, store.lastUpdated(alice));
+    }
+}
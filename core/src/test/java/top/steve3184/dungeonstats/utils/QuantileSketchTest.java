@@ -0,0 +1,64 @@
+package top.steve3184.dungeonstats.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QuantileSketchTest {
+
+    @Test
+    void quantilesAreWithinTheRelativeError() {
+        Random random = new Random(3);
+        QuantileSketch sketch = new QuantileSketch();
+        long[] values = new long[20_000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = 1 + (long) Math.abs(random.nextGaussian() * 600 + 900);
+            sketch.add(values[i]);
+        }
+        Arrays.sort(values);
+        for (double q : new double[]{0.1, 0.5, 0.9, 0.99}) {
+            long exact = values[(int) Math.ceil(q * values.length) - 1];
+            long estimate = sketch.quantile(q);
+            assertTrue(Math.abs(estimate - exact) <= Math.max(1, exact * 0.02), "p" + q + ": " + estimate + " vs " + exact);
+        }
+    }
+
+    @Test
+    void mergingEqualsAddingToOneSketch() {
+        Random random = new Random(5);
+        QuantileSketch all = new QuantileSketch();
+        QuantileSketch left = new QuantileSketch();
+        QuantileSketch right = new QuantileSketch();
+        for (int i = 0; i < 5_000; i++) {
+            long value = random.nextInt(10_000);
+            all.add(value);
+            (i % 3 == 0 ? left : right).add(value);
+        }
+        left.merge(right);
+        for (double q = 0; q <= 1.0; q += 0.05) {
+            assertEquals(all.quantile(q), left.quantile(q), "p" + q);
+        }
+        assertEquals(all.count(), left.count());
+    }
+
+    @Test
+    void decodeAddsTheEncodedCounts() {
+        QuantileSketch sketch = new QuantileSketch();
+        sketch.add(0);
+        sketch.add(300);
+        sketch.add(3600);
+        QuantileSketch decoded = new QuantileSketch();
+        decoded.decode(sketch.encode());
+        assertEquals(sketch.encode(), decoded.encode());
+        assertEquals(3, decoded.count());
+        assertEquals(0, decoded.quantile(0.2));
+
+        decoded.decode(sketch.encode());
+        assertEquals(6, decoded.count());
+        assertEquals(0, new QuantileSketch().quantile(0.5));
+    }
+}
@@ -0,0 +1,75 @@
+package top.steve3184.dungeonstats.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RecordIdSetTest {
+
+    @Test
+    void addingAnIdTwiceIsRejected() {
+        RecordIdSet set = new RecordIdSet();
+        assertTrue(set.add(5));
+        assertFalse(set.add(5));
+        assertTrue(set.contains(5));
+        assertFalse(set.contains(4));
+        assertEquals(5, set.highest());
+    }
+
+    @Test
+    void adjacentIdsShareOneRun() {
+        RecordIdSet set = new RecordIdSet();
+        set.addRange(1, 100);
+        set.add(102);
+        assertEquals(2, set.runCount());
+        // 补上中间的空位后两段合成一段
+        set.add(101);
+        assertEquals(1, set.runCount());
+        assertEquals("1-102", set.encode());
+    }
+
+    @Test
+    void matchesATreeSetInAnyOrder() {
+        Random random = new Random(7);
+        RecordIdSet set = new RecordIdSet();
+        TreeSet<Integer> expected = new TreeSet<>();
+        for (int i = 0; i < 5_000; i++) {
+            int id = 1 + random.nextInt(2_000);
+            assertEquals(expected.add(id), set.add(id), "add " + id);
+        }
+        for (int id = 0; id <= 2_001; id++) {
+            assertEquals(expected.contains(id), set.contains(id), "contains " + id);
+        }
+        assertEquals(expected.last(), set.highest());
+    }
+
+    @Test
+    void decodeRestoresTheEncodedIds() {
+        RecordIdSet set = new RecordIdSet();
+        set.addRange(1, 500);
+        set.add(502);
+        set.addRange(504, 900);
+        String encoded = set.encode();
+        assertEquals("1-500,502,504-900", encoded);
+
+        RecordIdSet decoded = RecordIdSet.decode(encoded);
+        assertEquals(encoded, decoded.encode());
+        assertEquals(3, decoded.runCount());
+        assertFalse(decoded.add(502));
+        assertTrue(decoded.add(503));
+        assertEquals("1-500,502-900", decoded.encode());
+    }
+
+    @Test
+    void decodeMergesOverlappingRuns() {
+        RecordIdSet set = RecordIdSet.decode("1-10,5-20,21");
+        assertEquals("1-21", set.encode());
+        assertEquals(0, RecordIdSet.decode("").runCount());
+        assertEquals(0, RecordIdSet.decode(null).highest());
+    }
+}
@@ -0,0 +1,30 @@
+package top.steve3184.dungeonstats.utils;
+
+import org.junit.jupiter.api.Test;
+import top.steve3184.dungeonstats.model.DungeonLog;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RunAggregateTest {
+
+    @Test
+    void aMergedAggregateEqualsOneOverAllRuns() {
+        RunAggregate all = new RunAggregate();
+        RunAggregate days = new RunAggregate();
+        RunAggregate day = new RunAggregate();
+        for (int id = 1; id <= 100; id++) {
+            DungeonLog log = new DungeonLog(id, id % 40, 3, id, id % 3, 60L * id, 1_700_000_000_000L + id * 60_000L);
+            all.add(log);
+            day.add(log);
+            // 每 10 条算一段，像按天压缩那样合并
+            if (id % 10 == 0) {
+                days.merge(day);
+                day.clear();
+            }
+        }
+        assertEquals(all.toSummary(0, 0), days.toSummary(0, 0));
+        assertEquals(100, days.getRuns());
+        assertEquals(all.getLastTimestamp(), days.getLastTimestamp());
+        assertEquals(0, day.getRuns());
+    }
+}
@@ -0,0 +1,56 @@
+package top.steve3184.dungeonstats.utils;
+
+import org.junit.jupiter.api.Test;
+import top.steve3184.dungeonstats.model.DungeonLog;
+import top.steve3184.dungeonstats.model.RunSummary;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RunAnalyticsTest {
+
+    @Test
+    void summariesFollowEveryRecordedRun() {
+        RunAnalytics analytics = new RunAnalytics();
+        long now = System.currentTimeMillis();
+        for (int id = 1; id <= 10; id++) {
+            analytics.record(new DungeonLog(id, id <= 5 ? 10 : 20, 2, 10 * id, 1, 100L * id, now - TimeUnit.MINUTES.toMillis(id)));
+        }
+        RunSummary summary = analytics.summarize(0);
+        assertEquals(10, summary.runs());
+        assertEquals(55.0, summary.avgKills());
+        assertEquals(2.0, summary.avgDoors());
+        assertEquals(Map.of(10, 5L, 20, 5L), summary.levelDistribution());
+        assertEquals(500, summary.durationP50(), 10);
+        assertEquals(1000, summary.durationP99(), 20);
+    }
+
+    @Test
+    void windowsOnlyCountRecentRuns() {
+        RunAnalytics analytics = new RunAnalytics();
+        long now = System.currentTimeMillis();
+        analytics.record(new DungeonLog(1, 10, 2, 30, 1, 600, now));
+        analytics.record(new DungeonLog(2, 10, 2, 30, 1, 600, now - TimeUnit.DAYS.toMillis(3)));
+        // 旧版本的记录没有时间戳，只计入全部时间
+        analytics.record(new DungeonLog(3, 10, 2, 30, 1, 600, 0));
+
+        assertEquals(3, analytics.summarize(0).runs());
+        assertEquals(1, analytics.summarize(6).runs());
+        assertEquals(2, analytics.summarize(RunAnalytics.MAX_WINDOW_HOURS).runs());
+        assertEquals(0, new RunAnalytics().summarize(24).runs());
+    }
+
+    @Test
+    void windowsAreParsedInHoursOrDays() {
+        assertEquals(0, RunAnalytics.parseWindow("all"));
+        assertEquals(0, RunAnalytics.parseWindow(null));
+        assertEquals(6, RunAnalytics.parseWindow("6h"));
+        assertEquals(48, RunAnalytics.parseWindow("2D"));
+        assertEquals(12, RunAnalytics.parseWindow("12"));
+        assertEquals(-1, RunAnalytics.parseWindow("8d"));
+        assertEquals(-1, RunAnalytics.parseWindow("0h"));
+        assertEquals(-1, RunAnalytics.parseWindow("soon"));
+    }
+}
@@ -0,0 +1,51 @@
+package top.steve3184.dungeonstats.utils;
+
+import org.junit.jupiter.api.Test;
+import top.steve3184.dungeonstats.model.PlayerStats;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StatsBatchTest {
+
+    private static final UUID ALICE = new UUID(0, 1);
+    private static final UUID BOB = new UUID(0, 2);
+
+    @Test
+    void aMergedBatchEqualsItsPartsAppliedInTurn() {
+        PlayerStore separate = new PlayerStore(MetricRegistry.DEFAULT);
+        PlayerStore merged = new PlayerStore(MetricRegistry.DEFAULT);
+        StatsBatch combined = new StatsBatch();
+        for (int part = 0; part < 3; part++) {
+            separate.apply(part(part), 1);
+            combined.merge(part(part));
+        }
+        merged.apply(combined, 1);
+
+        for (UUID uuid : List.of(ALICE, BOB)) {
+            assertEquals(separate.stats(separate.slotOf(uuid)), merged.stats(merged.slotOf(uuid)));
+        }
+        assertEquals(new PlayerStats("Alice", 3, 30, 40), merged.stats(merged.slotOf(ALICE)));
+        assertEquals(new PlayerStats("Bob", 3, 0, 0), merged.stats(merged.slotOf(BOB)));
+    }
+
+    @Test
+    void changesToOnePlayerAreCombined() {
+        StatsBatch batch = new StatsBatch().addKills(ALICE, "Alice", 2).addKills(ALICE, "Alice", 3).addPlaytime(ALICE, "Alice", 7);
+        PlayerStore store = new PlayerStore(MetricRegistry.DEFAULT);
+        assertEquals(List.of(ALICE), store.apply(batch, 1));
+        assertEquals(new PlayerStats("Alice", 5, 7, 0), store.stats(store.slotOf(ALICE)));
+        assertTrue(new StatsBatch().isEmpty());
+    }
+
+    private static StatsBatch part(int part) {
+        return new StatsBatch()
+                .addKills(ALICE, "Alice", 1)
+                .addPlaytime(ALICE, "Alice", 10)
+                .addKills(BOB, "Bob", part)
+                .raiseMaxLevel("Alice", 20 * part);
+    }
+}
@@ -0,0 +1,175 @@
+package top.steve3184.dungeonstats.utils;
+
+import org.junit.jupiter.api.Test;
+import top.steve3184.dungeonstats.model.DungeonLog;
+import top.steve3184.dungeonstats.model.LeaderboardPage;
+import top.steve3184.dungeonstats.model.PlayerLevel;
+import top.steve3184.dungeonstats.model.PlayerStats;
+import top.steve3184.dungeonstats.replication.DeltaFile;
+import top.steve3184.dungeonstats.replication.ReplicaEntry;
+import top.steve3184.dungeonstats.replication.ReplicaStore;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StatsEngineTest {
+
+    private static final Logger LOGGER = Logger.getLogger("StatsEngineTest");
+    private static final UUID ALICE = new UUID(0, 1);
+    private static final UUID BOB = new UUID(0, 2);
+
+    @Test
+    void batchesAppliedWhileLoadingAreMergedAndAppliedOnce() {
+        StatsEngine engine = new StatsEngine(LOGGER);
+        engine.apply(new StatsBatch().addKill(ALICE, "Alice", 5).addPlaytime(ALICE, "Alice", 60));
+        engine.apply(new StatsBatch().addKill(ALICE, "Alice", 5).addKill(ALICE, "Alice", 90).addKills(BOB, "Bob", 3));
+        assertNull(engine.getPlayerStats("Alice"));
+
+        install(engine);
+        // 排队的批次在第一次发布之后才应用，下一次发布可见
+        engine.publish();
+        assertEquals(new PlayerStats("Alice", 3, 60, 0), engine.getPlayerStats("Alice"));
+        assertEquals(new PlayerStats("Bob", 3, 0, 0), engine.getPlayerStats("Bob"));
+        assertEquals(3, sum(engine.getKillsByLevel("Alice")));
+
+        // 恢复备份后重新加载，旧数据不能留在快照里
+        engine.apply(new StatsBatch());
+        install(engine);
+        engine.publish();
+        assertNull(engine.getPlayerStats("Alice"));
+    }
+
+    @Test
+    void aMergedBatchEqualsItsPartsAppliedInTurn() {
+        StatsEngine separate = install(new StatsEngine(LOGGER));
+        StatsEngine merged = install(new StatsEngine(LOGGER));
+        StatsBatch combined = new StatsBatch();
+        for (int part = 0; part < 3; part++) {
+            separate.apply(part(part));
+            combined.merge(part(part));
+        }
+        merged.apply(combined);
+        separate.publish();
+        merged.publish();
+
+        for (String name : List.of("Alice", "Bob")) {
+            assertEquals(separate.getPlayerStats(name), merged.getPlayerStats(name), name);
+            assertArrayEquals(separate.getKillsByLevel(name), merged.getKillsByLevel(name), name);
+        }
+        assertEquals(new PlayerStats("Alice", 3, 30, 40), merged.getPlayerStats("Alice"));
+        assertEquals(new PlayerStats("Bob", 3, 15, 0), merged.getPlayerStats("Bob"));
+    }
+
+    @Test
+    void aRunIdIsOnlyIngestedOnce() {
+        StatsEngine engine = install(new StatsEngine(LOGGER));
+        engine.apply(new StatsBatch().addKills(ALICE, "Alice", 1));
+        LogParser.ParsedResult run = new LogParser.ParsedResult(
+                new DungeonLog(7, 12, 3, 40, 1, 900, 1_700_000_000_000L), List.of(new PlayerLevel("Alice", 12)));
+
+        assertTrue(engine.ingestLog(run));
+        assertFalse(engine.ingestLog(run));
+        engine.publish();
+        assertEquals(1, engine.countLogs());
+        assertEquals(12, engine.getPlayerStats("Alice").maxLevel());
+        assertEquals(1, engine.getDungeonLogs(0, 0, null).size());
+    }
+
+    @Test
+    void leaderboardsMatchAFullSortAfterEveryPublish() {
+        Random random = new Random(11);
+        StatsEngine engine = install(new StatsEngine(LOGGER));
+        int players = 3_000;
+        StatsBatch initial = new StatsBatch();
+        for (int i = 0; i < players; i++) {
+            initial.addKills(new UUID(1, i), "Player" + i, random.nextInt(1_000));
+        }
+        engine.apply(initial);
+        engine.publish();
+        assertBoardSorted(engine, players);
+
+        // 少量改动时排行榜从上一份快照延续，大量改动时重新排序，两种都要和全量排序一致
+        for (int round = 0; round < 30; round++) {
+            int changes = round % 10 == 9 ? 2_000 : 1 + random.nextInt(60);
+            StatsBatch batch = new StatsBatch();
+            for (int c = 0; c < changes; c++) {
+                int player = random.nextInt(players);
+                batch.addKills(new UUID(1, player), "Player" + player, random.nextInt(50));
+            }
+            engine.apply(batch);
+            engine.publish();
+            assertBoardSorted(engine, players);
+        }
+    }
+
+    @Test
+    void mergedLeaderboardsFollowLocalAndRemoteChanges() {
+        StatsEngine engine = install(new StatsEngine(LOGGER));
+        ReplicaStore replicas = new ReplicaStore();
+        engine.setReplicaStore(replicas);
+        engine.apply(new StatsBatch().addKills(ALICE, "Alice", 10).addKills(BOB, "Bob", 8));
+        engine.publish();
+        assertEquals(List.of(10L, 8L), engine.getLeaderboard("kills", 0, 10).values());
+
+        UUID carol = new UUID(0, 3);
+        replicas.apply(new DeltaFile.Contents("east", 1, false,
+                List.of(new ReplicaEntry(BOB, "Bob", 5, 0, 0), new ReplicaEntry(carol, "Carol", 9, 0, 4))));
+        LeaderboardPage page = engine.getLeaderboard("kills", 0, 10);
+        assertEquals(List.of("Bob", "Alice", "Carol"), page.players().stream().map(PlayerStats::playerName).toList());
+        assertEquals(List.of(13L, 10L, 9L), page.values());
+        assertEquals(new PlayerStats("Carol", 9, 0, 4), engine.getLeaderboard("maxLevel", 0, 1).players().get(0));
+
+        // 本地改动换了快照，缓存的榜单要重新排；同分时先加入的玩家在前
+        engine.apply(new StatsBatch().addKills(ALICE, "Alice", 3));
+        engine.publish();
+        page = engine.getLeaderboard("kills", 1, 10);
+        assertEquals(3, page.total());
+        assertEquals(List.of("Bob", "Carol"), page.players().stream().map(PlayerStats::playerName).toList());
+        assertEquals(List.of(13L, 9L), page.values());
+        assertTrue(engine.getLeaderboard("kills", 5, 10).players().isEmpty());
+    }
+
+    private static void assertBoardSorted(StatsEngine engine, int players) {
+        LeaderboardPage page = engine.getLeaderboard("kills", 0, players);
+        assertEquals(players, page.total());
+        List<Long> expected = new ArrayList<>();
+        for (int i = 0; i < players; i++) {
+            expected.add(engine.getPlayerStats("Player" + i).kills());
+        }
+        expected.sort(Comparator.reverseOrder());
+        assertEquals(expected, page.values());
+        for (int i = 0; i < players; i++) {
+            assertEquals(page.values().get(i), page.players().get(i).kills());
+        }
+    }
+
+    private static StatsBatch part(int part) {
+        StatsBatch batch = new StatsBatch()
+                .addKill(ALICE, "Alice", 10 * part)
+                .addPlaytime(ALICE, "Alice", 10)
+                .addKills(BOB, "Bob", part);
+        return batch.raiseMaxLevel("Alice", 20 * part).addByName("Bob", MetricRegistry.PLAYTIME, 5);
+    }
+
+    private static StatsEngine install(StatsEngine engine) {
+        engine.install(new PlayerStore(MetricRegistry.DEFAULT), LogStore.open(new MemoryPages(), LOGGER, log -> {}),
+                new RunAnalytics(), new IngestedRuns(), List.of(), 0);
+        return engine;
+    }
+
+    private static long sum(int[] values) {
+        long sum = 0;
+        for (int value : values) sum += value;
+        return sum;
+    }
+}
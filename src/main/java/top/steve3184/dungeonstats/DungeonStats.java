@@ -1,11 +1,14 @@
 package top.steve3184.dungeonstats;
 
 import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
 import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
 import net.minecraft.resources.ResourceLocation;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.world.level.storage.CommandStorage;
+import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.craftbukkit.CraftServer;
@@ -14,44 +17,124 @@ import org.bukkit.plugin.java.JavaPlugin;
 import org.bukkit.scoreboard.Scoreboard;
 import org.bukkit.scoreboard.Team;
 import top.steve3184.dungeonstats.api.*;
+import top.steve3184.dungeonstats.changefeed.ChangeFeed;
 import top.steve3184.dungeonstats.commands.DunCommand;
+import top.steve3184.dungeonstats.commands.QueryRunner;
 import top.steve3184.dungeonstats.holograms.HologramManager;
+import top.steve3184.dungeonstats.listeners.JoinListener;
 import top.steve3184.dungeonstats.listeners.KillListener;
-import top.steve3184.dungeonstats.model.PlayerLevel;
+import top.steve3184.dungeonstats.metrics.Metrics;
+import top.steve3184.dungeonstats.replication.ReplicaEntry;
+import top.steve3184.dungeonstats.replication.ReplicaStore;
+import top.steve3184.dungeonstats.replication.ReplicationService;
+import top.steve3184.dungeonstats.sidecar.SnapshotWriter;
+import top.steve3184.dungeonstats.utils.Arenas;
+import top.steve3184.dungeonstats.utils.BackupManager;
 import top.steve3184.dungeonstats.utils.DataManager;
-import top.steve3184.dungeonstats.utils.LogParser;
+import top.steve3184.dungeonstats.utils.Exporter;
+import top.steve3184.dungeonstats.utils.LogCompactor;
+import top.steve3184.dungeonstats.utils.LogIngestor;
+import top.steve3184.dungeonstats.utils.MetricRegistry;
+import top.steve3184.dungeonstats.utils.SeasonManager;
+import top.steve3184.dungeonstats.utils.StatsBatch;
+import top.steve3184.dungeonstats.utils.TickScheduler;
+import top.steve3184.dungeonstats.utils.YamlLogPages;
 
 import java.io.File;
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public final class DungeonStats extends JavaPlugin {
 
     private HttpServer server;
+    // 未启用限流时为 null
+    private RateLimiter clientLimiter;
+    private RateLimiter globalLimiter;
     private File dataFile;
     private FileConfiguration dataConfig;
     private DataManager dataManager;
+    // 启动时从配置读取，改动后需要重启
+    private MetricRegistry metricRegistry;
+    private Arenas arenas;
     private HologramManager hologramManager;
+    private TickScheduler tickScheduler;
+    private Exporter exporter;
+    private LogCompactor logCompactor;
+    private BackupManager backupManager;
+    private SeasonManager seasonManager;
+    private QueryRunner queryRunner;
+    private LogIngestor logIngestor;
+    private TickScheduler.Job logCheckerJob;
+    private TickScheduler.Job replicationJob;
+    private ReplicationService replicationService;
+    private ExecutorService replicationExecutor;
+    // 给独立 API 进程写快照文件，未启用时为 null
+    private ScheduledExecutorService sidecarExecutor;
+    private SnapshotWriter sidecarWriter;
     private Gson gson;
 
-    private String lastKnownLogContent = "";
+    // 竞技场 -> 上次读到的最后一页
+    private final Map<String, String> lastKnownLogContent = new HashMap<>();
+    // 上一秒在游戏里计时的玩家
+    private Set<UUID> playing = new HashSet<>();
+
+    private volatile long dataFileSize;
+    private volatile long storedPlayers;
+    private volatile long storedLogs;
+    private volatile long onlinePlayers;
 
     @Override
     public void onEnable() {
         this.gson = new Gson();
         saveDefaultConfig();
         createDataFile();
+        this.tickScheduler = new TickScheduler(this);
         this.dataManager = new DataManager(this);
+        this.arenas = Arenas.load(getConfig().getConfigurationSection("arenas"), getLogger());
+        this.metricRegistry = loadMetrics();
+        dataManager.warmUp(metricRegistry, dataFile, new File(getDataFolder(), "logs"));
         this.hologramManager = new HologramManager(this, dataManager);
+        this.exporter = new Exporter(this, dataManager);
+        this.logCompactor = new LogCompactor(this, dataManager);
+        this.backupManager = new BackupManager(this, dataManager);
+        this.seasonManager = new SeasonManager(this, dataManager);
+        this.queryRunner = new QueryRunner(this, dataManager);
+        queryRunner.start();
+        this.logIngestor = new LogIngestor(this, dataManager);
+        registerGauges();
 
         getServer().getPluginManager().registerEvents(new KillListener(dataManager), this);
-        DunCommand dunCommand = new DunCommand(this, dataManager);
+        getServer().getPluginManager().registerEvents(new JoinListener(dataManager), this);
+        DunCommand dunCommand = new DunCommand(this, dataManager, queryRunner);
         getCommand("dun").setExecutor(dunCommand);
         getCommand("dun").setTabCompleter(dunCommand);
 
+        tickScheduler.start();
         startLogCheckerTask();
         startPlaytimeTrackerTask();
+        startReplication();
+        startChangeFeed();
+        logCompactor.start();
+        backupManager.start();
+        seasonManager.start();
         setupApiServer();
+        startApiSidecar();
 
         // 初始化全息图
         hologramManager.initialize();
@@ -67,40 +150,148 @@ public final class DungeonStats extends JavaPlugin {
 
     @Override
     public void onDisable() {
+        tickScheduler.stop();
         getServer().getScheduler().cancelTasks(this);
-        if (server != null) server.stop(0);
+        logIngestor.stop(); // 把已经取出的日志处理完，来不及的存到 pending-logs.yml
+        stopReplication();
+        stopApiServer();
+        stopApiSidecar();
+        queryRunner.stop();
         hologramManager.cleanup(); // 清理全息图实体
+        dataManager.commitQueued();
+        stopChangeFeed(); // 结束所有玩家的游戏时间记录
+        seasonManager.stop(); // 等赛季归档写完
+        backupManager.stop(); // 最后一份增量备份
         saveDataConfig();
         getLogger().info("Plugin DungeonStats Disabled！");
     }
 
-    public void reloadAll() {
-        // Cancel scheduled tasks and stop API server
-        getServer().getScheduler().cancelTasks(this);
-        if (server != null) {
-            try { server.stop(0); } catch (Exception ignored) {} finally { server = null; }
-        }
+    /**
+     * Re-reads config.yml and restarts only the subsystems whose settings changed.
+     * Player stats and logs stay in memory; data.yml is never re-read, so nothing recorded since the last save is lost.
+     *
+     * @return nanoseconds spent per restarted subsystem, in restart order
+     */
+    public Map<String, Long> reloadAll() {
+        FileConfiguration previous = getConfig();
+        reloadConfig();
+        FileConfiguration current = getConfig();
+        Map<String, Long> timings = new LinkedHashMap<>();
 
-        // Cleanup holograms
-        if (hologramManager != null) {
-            hologramManager.cleanup();
+        if (changed(previous, current, "database")) {
+            getLogger().warning("'database' changed; restart the server to switch data files.");
         }
-
-        // Reload main config and data file
-        reloadConfig();
-        if (dataFile != null) {
-            this.dataConfig = YamlConfiguration.loadConfiguration(dataFile);
+        if (changed(previous, current, "player-metrics")) {
+            getLogger().warning("'player-metrics' changed; restart the server to change the tracked metrics.");
+        }
+        if (changed(previous, current, "arenas")) {
+            getLogger().warning("'arenas' changed; restart the server to add or change arenas.");
+        }
+        if (changed(previous, current, "performance")) {
+            timed(timings, "performance", tickScheduler::reloadSettings);
+        }
+        if (changed(previous, current, "log-checker")) {
+            timed(timings, "log-checker", () -> {
+                if (logCheckerJob != null) logCheckerJob.cancel();
+                startLogCheckerTask();
+            });
+        }
+        if (changed(previous, current, "replication")) {
+            timed(timings, "replication", () -> {
+                stopReplication();
+                startReplication();
+            });
+        }
+        if (changed(previous, current, "changefeed")) {
+            timed(timings, "changefeed", () -> {
+                stopChangeFeed();
+                startChangeFeed();
+            });
+        }
+        if (changed(previous, current, "retention")) {
+            timed(timings, "retention", logCompactor::start);
+        }
+        if (changed(previous, current, "commands")) {
+            timed(timings, "commands", queryRunner::start);
         }
+        if (changed(previous, current, "backups")) {
+            timed(timings, "backups", backupManager::start);
+        }
+        if (changed(previous, current, "seasons")) {
+            timed(timings, "seasons", seasonManager::start);
+        }
+        if (changed(previous, current, "api-server")) {
+            timed(timings, "api-server", () -> {
+                stopApiServer();
+                setupApiServer();
+            });
+        }
+        if (changed(previous, current, "api-sidecar")) {
+            timed(timings, "api-sidecar", () -> {
+                stopApiSidecar();
+                startApiSidecar();
+            });
+        }
+        boolean hologramsChanged = changed(previous, current, "holograms");
+        if (hologramsChanged) {
+            timed(timings, "holograms", () -> {
+                hologramManager.cleanup();
+                hologramManager.initialize();
+            });
+        }
+        if (changed(previous, current, "messages")) {
+            // 消息每次使用时读取，只需要重绘全息图
+            timed(timings, "messages", () -> {
+                if (!hologramsChanged) hologramManager.refresh();
+            });
+        }
+
+        getLogger().info("DungeonStats reloaded" + (timings.isEmpty() ? " (no changes)." : ": " + String.join(", ", timings.keySet())));
+        return timings;
+    }
 
-        // Reinitialize runtime features based on refreshed config
-        if (hologramManager != null) {
-            hologramManager.initialize();
+    /** Reads {@code player-metrics}, split by arena. Metrics with invalid settings are skipped with an error. */
+    private MetricRegistry loadMetrics() {
+        MetricRegistry.Builder builder = MetricRegistry.builder().arenas(arenas.ids());
+        ConfigurationSection section = getConfig().getConfigurationSection("player-metrics");
+        if (section == null) return builder.build();
+        for (String key : section.getKeys(false)) {
+            ConfigurationSection metric = section.getConfigurationSection(key);
+            if (metric == null) continue;
+            MetricRegistry.Type type = switch (metric.getString("type", "counter").toLowerCase()) {
+                case "counter" -> MetricRegistry.Type.COUNTER;
+                case "max" -> MetricRegistry.Type.MAX;
+                default -> null;
+            };
+            try {
+                builder.add(key, metric.getString("name", key), type, MetricRegistry.Source.parse(metric.getString("source", "")),
+                        "duration".equalsIgnoreCase(metric.getString("format", "number")));
+            } catch (IllegalArgumentException e) {
+                getLogger().severe("Skipping player metric '" + key + "': " + e.getMessage());
+            }
         }
-        startLogCheckerTask();
-        startPlaytimeTrackerTask();
-        setupApiServer();
+        return builder.build();
+    }
 
-        getLogger().info("DungeonStats reloaded.");
+    private static boolean changed(FileConfiguration previous, FileConfiguration current, String path) {
+        return !settingsOf(previous, path).equals(settingsOf(current, path));
+    }
+
+    // Leaf values under a path; nested sections are left out since they do not compare by value
+    private static Map<String, Object> settingsOf(FileConfiguration config, String path) {
+        ConfigurationSection section = config.getConfigurationSection(path);
+        if (section == null) return Collections.singletonMap(path, config.get(path));
+        Map<String, Object> values = new TreeMap<>();
+        section.getValues(true).forEach((key, value) -> {
+            if (!(value instanceof ConfigurationSection)) values.put(key, value);
+        });
+        return values;
+    }
+
+    private static void timed(Map<String, Long> timings, String subsystem, Runnable restart) {
+        long start = System.nanoTime();
+        restart.run();
+        timings.put(subsystem, System.nanoTime() - start);
     }
 
     private void setupApiServer() {
@@ -108,14 +299,24 @@ public final class DungeonStats extends JavaPlugin {
             return;
         }
         int port = getConfig().getInt("api-server.port", 8080);
+        setupRateLimits();
         try {
             server = HttpServer.create(new InetSocketAddress(port), 0);
-            server.createContext("/players", new PlayersHandler(dataManager, gson));
-            server.createContext("/stats", new StatsHandler(dataManager, gson));
-            server.createContext("/playerstats", new PlayerStatsHandler(dataManager, gson));
-            server.createContext("/killtop", new TopHandler(dataManager, gson, "kills"));
-            server.createContext("/playtimetop", new TopHandler(dataManager, gson, "playtime"));
-            server.createContext("/maxleveltop", new TopHandler(dataManager, gson, "maxLevel"));
+            createContext("/players", new PlayersHandler(dataManager, gson));
+            createContext("/stats", new StatsHandler(dataManager, gson));
+            createContext("/playerstats", new PlayerStatsHandler(dataManager, gson));
+            createContext("/top", new TopHandler(dataManager, gson));
+            createContext("/killtop", new TopHandler(dataManager, gson, "kills"));
+            createContext("/playtimetop", new TopHandler(dataManager, gson, "playtime"));
+            createContext("/maxleveltop", new TopHandler(dataManager, gson, "maxLevel"));
+            createContext("/killlevels", new KillLevelsHandler(dataManager, gson));
+            createContext("/search", new SearchHandler(dataManager, gson));
+            createContext("/seasons", new SeasonsHandler(dataManager, gson));
+            createContext("/changes", new ChangesHandler(dataManager, gson));
+            createContext("/analytics", new AnalyticsHandler(dataManager, gson));
+            createContext("/metrics", new MetricsHandler(dataManager, gson));
+            createContext("/export/players", new ExportHandler(dataManager, gson, exporter, "players"));
+            createContext("/export/runs", new ExportHandler(dataManager, gson, exporter, "runs"));
             server.setExecutor(null);
             server.start();
             getLogger().info("API Server started on port " + port + "!");
@@ -125,60 +326,327 @@ public final class DungeonStats extends JavaPlugin {
         }
     }
 
+    private void stopApiServer() {
+        if (server != null) {
+            try { server.stop(0); } catch (Exception ignored) {} finally { server = null; }
+        }
+    }
+
+    /**
+     * Writes the published snapshot to a memory-mapped file for the standalone API sidecar. The
+     * snapshot is immutable, so it is encoded and written on a separate thread.
+     */
+    private void startApiSidecar() {
+        if (!getConfig().getBoolean("api-sidecar.enabled", false)) return;
+        Path file = getDataFolder().toPath().resolve(getConfig().getString("api-sidecar.snapshot-file", "api-snapshot.dat"));
+        SnapshotWriter writer;
+        try {
+            writer = new SnapshotWriter(file);
+        } catch (IOException e) {
+            getLogger().severe("Failed to open the API snapshot file " + file + "!");
+            e.printStackTrace();
+            return;
+        }
+        sidecarExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "DungeonStats-SnapshotWriter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(50, getConfig().getLong("api-sidecar.interval-ms", 1000));
+        ScheduledExecutorService executor = sidecarExecutor;
+        executor.scheduleWithFixedDelay(() -> {
+            if (!dataManager.isReady()) return;
+            try {
+                writer.write(dataManager.getSnapshot());
+            } catch (IOException e) {
+                getLogger().warning("Failed to write the API snapshot file: " + e.getMessage());
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+        sidecarWriter = writer;
+        getLogger().info("Writing API snapshots for the sidecar to " + file);
+    }
+
+    private void stopApiSidecar() {
+        if (sidecarExecutor == null) return;
+        SnapshotWriter writer = sidecarWriter;
+        // 退出前写最后一份，sidecar 能看到关服前的数据
+        sidecarExecutor.execute(() -> {
+            try {
+                writer.write(dataManager.getSnapshot());
+                writer.close();
+            } catch (IOException e) {
+                getLogger().warning("Failed to write the final API snapshot: " + e.getMessage());
+            }
+        });
+        sidecarExecutor.shutdown();
+        try {
+            sidecarExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        sidecarExecutor = null;
+        sidecarWriter = null;
+    }
+
+    private void setupRateLimits() {
+        clientLimiter = null;
+        globalLimiter = null;
+        // 旧配置里没有这一项时保持关闭，和升级前一样
+        if (!getConfig().getBoolean("api-server.rate-limit.enabled", false)) return;
+        double rate = getConfig().getDouble("api-server.rate-limit.requests-per-second", 5);
+        if (rate <= 0) {
+            getLogger().warning("api-server.rate-limit.requests-per-second must be > 0, rate limiting is disabled.");
+            return;
+        }
+        clientLimiter = new RateLimiter(rate, getConfig().getInt("api-server.rate-limit.burst", 20));
+        double global = getConfig().getDouble("api-server.rate-limit.global-requests-per-second", 0);
+        if (global > 0) {
+            globalLimiter = new RateLimiter(global, getConfig().getInt("api-server.rate-limit.global-burst", 100));
+        }
+    }
+
+    private void createContext(String path, HttpHandler handler) {
+        if (clientLimiter != null) {
+            // 配置里的路径以 / 开头，和 Bukkit 的 . 分隔符不冲突
+            int cost = getConfig().getInt("api-server.rate-limit.costs." + path, 1);
+            handler = new RateLimitedHandler(dataManager, gson, path, handler, clientLimiter, globalLimiter, cost);
+        }
+        server.createContext(path, new InstrumentedHandler(path, handler));
+    }
+
+    private void registerGauges() {
+        Metrics.gauge("dungeonstats_data_file_bytes", "Size of the data file after the last save", () -> dataFileSize);
+        Metrics.gauge("dungeonstats_store_players", "Players in the data store at the last save", () -> storedPlayers);
+        Metrics.gauge("dungeonstats_store_logs", "Dungeon logs in the data store at the last save", () -> storedLogs);
+        Metrics.gauge("dungeonstats_online_players", "Players online at the last playtime tick", () -> onlinePlayers);
+        Metrics.gauge("dungeonstats_changefeed_backlog", "Changes queued for the changefeed writer", () -> {
+            ChangeFeed feed = dataManager.getChangeFeed();
+            return feed == null ? 0 : feed.backlog();
+        });
+        dataFileSize = dataFile.length();
+        storedPlayers = dataManager.countPlayers();
+        storedLogs = dataManager.countLogs();
+    }
+
     private void startLogCheckerTask() {
         if (!getConfig().getBoolean("log-checker.enabled", false)) {
+            logIngestor.pause();
             return;
         }
+        logIngestor.start();
         long interval = getConfig().getLong("log-checker.interval-ticks", 20L);
-        getServer().getScheduler().runTaskTimer(this, () -> {
+        logCheckerJob = tickScheduler.schedule("log-checker", () -> {
+            if (!dataManager.isReady()) return; // 加载完成后再读取，日志不会丢
             try {
+                // 先应用上一轮后台解析好的日志
+                logIngestor.applyParsed();
+
                 MinecraftServer mcServer = ((CraftServer) getServer()).getServer();
                 CommandStorage commandStorage = mcServer.getCommandStorage();
-                ResourceLocation storageId = ResourceLocation.fromNamespaceAndPath("dun", "log");
-                CompoundTag nbt = commandStorage.get(storageId);
-
-                String currentContent = null;
-                if (nbt != null && nbt.contains("Page", 10)) {
-                    CompoundTag pageTag = nbt.getCompound("Page");
-                    if (pageTag.contains("raw", 8)) currentContent = pageTag.getString("raw");
-                }
-
-                if (currentContent != null && !currentContent.equals(this.lastKnownLogContent)) {
-                    this.lastKnownLogContent = currentContent;
-                    LogParser.ParsedResult result = LogParser.parse(currentContent);
-                    if (result != null) {
-                        getLogger().info("Parsed Dungeon Log #" + result.dungeonLog.recordId());
-                        dataManager.saveDungeonLog(result.dungeonLog);
-                        for (PlayerLevel pl : result.playerLevels) {
-                            dataManager.updatePlayerMaxLevel(pl.playerName(), pl.level());
-                        }
-                    }
+                for (Arenas.Arena arena : arenas.all()) {
+                    checkArenaLogs(commandStorage, arena);
                 }
             } catch (Exception e) {
                 getLogger().severe("Log checker failed to start!");
                 e.printStackTrace();
             }
-        }, interval, interval);
+        }, interval, interval, false);
+    }
+
+    // 每个竞技场的存储单独读取，各自记住最后一页
+    private void checkArenaLogs(CommandStorage commandStorage, Arenas.Arena arena) {
+        ResourceLocation storageId = arena.storage();
+        CompoundTag nbt = commandStorage.get(storageId);
+        if (nbt == null) return;
+
+        // 数据包追加到 Pages 列表里的日志：取走能放进队列的部分，其余留到下次
+        if (nbt.contains("Pages", 9)) {
+            ListTag pages = nbt.getList("Pages", 10);
+            int taken = 0;
+            while (taken < pages.size()) {
+                CompoundTag page = pages.getCompound(taken);
+                if (page.contains("raw", 8) && !logIngestor.offer(arena.id(), page.getString("raw"))) break;
+                taken++;
+            }
+            if (taken > 0) {
+                for (int i = 0; i < taken; i++) {
+                    pages.remove(0);
+                }
+                commandStorage.set(storageId, nbt);
+            }
+        }
+
+        String currentContent = null;
+        if (nbt.contains("Page", 10)) {
+            CompoundTag pageTag = nbt.getCompound("Page");
+            if (pageTag.contains("raw", 8)) currentContent = pageTag.getString("raw");
+        }
+
+        // 重启后会再读到最后一页，由对局编号去重
+        if (currentContent != null && !currentContent.equals(lastKnownLogContent.get(arena.id()))
+                && logIngestor.offer(arena.id(), currentContent)) {
+            lastKnownLogContent.put(arena.id(), currentContent);
+        }
     }
 
     private void startPlaytimeTrackerTask() {
         Scoreboard mainScoreboard = getServer().getScoreboardManager().getMainScoreboard();
-        getServer().getScheduler().runTaskTimer(this, () -> {
+        tickScheduler.schedule("playtime-tracker", () -> {
+            onlinePlayers = getServer().getOnlinePlayers().size();
             Team inGameTeam = mainScoreboard.getTeam("default");
-            if (inGameTeam == null) return;
-            for (Player player : getServer().getOnlinePlayers()) {
-                if (inGameTeam.hasEntry(player.getName())) {
-                    dataManager.incrementPlayTime(player);
+            Set<UUID> nowPlaying = new HashSet<>();
+            if (inGameTeam != null) {
+                // 所有在线玩家的游戏时间作为一批提交，排行榜只失效一次
+                StatsBatch batch = new StatsBatch();
+                for (Player player : getServer().getOnlinePlayers()) {
+                    if (inGameTeam.hasEntry(player.getName())) {
+                        batch.addPlaytime(player.getUniqueId(), player.getName(), 1);
+                        int arenaPlaytime = metricRegistry.arenaMetric(MetricRegistry.PLAYTIME, arenas.indexOfWorld(player.getWorld().getName()));
+                        if (arenaPlaytime >= 0) batch.add(player.getUniqueId(), player.getName(), arenaPlaytime, 1);
+                        nowPlaying.add(player.getUniqueId());
+                    }
                 }
+                dataManager.apply(batch);
+            }
+            // 离开游戏队伍或者下线，这一段游戏时间结束
+            for (UUID uuid : playing) {
+                if (!nowPlaying.contains(uuid)) dataManager.closePlaytimeSession(uuid);
             }
-        }, 20L, 20L);
-        getServer().getScheduler().runTaskTimer(this, this::saveDataConfig, 6000L, 6000L);
+            playing = nowPlaying;
+        }, 20L, 20L, false);
+        tickScheduler.schedule("stats-commit", dataManager::commitQueued, 1L, 1L, false);
+        tickScheduler.schedule("snapshot-publish", dataManager::publish, 1L, 1L, false);
+        tickScheduler.schedule("data-save", this::saveDataConfig, 6000L, 6000L, true);
     }
 
+    /** Appends every stat change to NDJSON segments for {@code /changes} and external consumers. */
+    private void startChangeFeed() {
+        if (!getConfig().getBoolean("changefeed.enabled", false)) return;
+        Path directory = getDataFolder().toPath().resolve(getConfig().getString("changefeed.directory", "changes"));
+        try {
+            dataManager.setChangeFeed(ChangeFeed.open(directory, getConfig().getLong("changefeed.segment-size-kb", 1024) * 1024,
+                    getConfig().getInt("changefeed.keep-segments", 64), getLogger()));
+        } catch (IOException e) {
+            getLogger().severe("Failed to open the changefeed in " + directory + "!");
+            e.printStackTrace();
+            return;
+        }
+        getLogger().info("Recording stat changes to " + directory);
+    }
+
+    private void stopChangeFeed() {
+        ChangeFeed feed = dataManager.getChangeFeed();
+        if (feed == null) return;
+        // 先把进行中的游戏时间写进去，再等写线程写完
+        dataManager.setChangeFeed(null);
+        feed.close();
+    }
+
+    private void startReplication() {
+        if (!getConfig().getBoolean("replication.enabled", false)) {
+            dataManager.setReplicaStore(null);
+            return;
+        }
+        String sharedDirectory = getConfig().getString("replication.shared-directory", "");
+        if (sharedDirectory.isEmpty()) {
+            getLogger().severe("Replication is enabled but 'replication.shared-directory' is not set!");
+            return;
+        }
+        try {
+            Path stateDirectory = getDataFolder().toPath().resolve("replication");
+            replicationService = new ReplicationService(resolveNodeId(stateDirectory), Path.of(sharedDirectory),
+                    stateDirectory, new ReplicaStore(), getLogger());
+        } catch (IOException e) {
+            getLogger().severe("Failed to start replication!");
+            e.printStackTrace();
+            return;
+        }
+        dataManager.setReplicaStore(replicationService.getStore());
+        replicationExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "DungeonStats-Replication");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        long interval = getConfig().getLong("replication.interval-seconds", 60) * 20L;
+        int baseEvery = Math.max(1, getConfig().getInt("replication.base-every", 60));
+        ReplicationService service = replicationService;
+        // 第一次发布完整快照，之后只发布变化的玩家
+        int[] publishes = {0};
+        replicationJob = tickScheduler.schedule("replication", () -> {
+            if (!dataManager.isReady()) return;
+            boolean base = publishes[0]++ % baseEvery == 0;
+            List<ReplicaEntry> entries = dataManager.drainReplicaChanges(base);
+            replicationExecutor.execute(() -> {
+                try {
+                    service.publish(entries, base);
+                    int applied = service.pull();
+                    if (applied > 0) getLogger().fine("Merged " + applied + " replica files from peers.");
+                } catch (IOException e) {
+                    getLogger().warning("Replication cycle failed: " + e.getMessage());
+                }
+            });
+        }, 20L, interval, true);
+        getLogger().info("Replication enabled as node '" + service.getNodeId() + "' via " + sharedDirectory);
+    }
+
+    private void stopReplication() {
+        if (replicationJob != null) replicationJob.cancel();
+        replicationJob = null;
+        if (replicationService == null) return;
+        // 关闭前把尚未发布的变化写出去
+        List<ReplicaEntry> entries = dataManager.drainReplicaChanges(false);
+        ReplicationService service = replicationService;
+        replicationExecutor.execute(() -> {
+            try {
+                service.publish(entries, false);
+            } catch (IOException e) {
+                getLogger().warning("Failed to publish final replica delta: " + e.getMessage());
+            }
+        });
+        replicationExecutor.shutdown();
+        try {
+            replicationExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        replicationService = null;
+        replicationExecutor = null;
+    }
+
+    private String resolveNodeId(Path stateDirectory) throws IOException {
+        String configured = getConfig().getString("replication.node-id", "");
+        if (!configured.isEmpty()) return configured;
+        Path idFile = stateDirectory.resolve("node-id");
+        if (Files.exists(idFile)) {
+            return Files.readString(idFile, StandardCharsets.UTF_8).trim();
+        }
+        String generated = UUID.randomUUID().toString().substring(0, 8);
+        Files.createDirectories(stateDirectory);
+        Files.writeString(idFile, generated, StandardCharsets.UTF_8);
+        return generated;
+    }
+
+    public Exporter getExporter() { return this.exporter; }
+    public BackupManager getBackupManager() { return this.backupManager; }
+    public SeasonManager getSeasonManager() { return this.seasonManager; }
+    public File getDataFile() { return this.dataFile; }
+    public TickScheduler getTickScheduler() { return this.tickScheduler; }
+    public MetricRegistry getMetricRegistry() { return this.metricRegistry; }
+    public Arenas getArenas() { return this.arenas; }
     public FileConfiguration getDataConfig() { return this.dataConfig; }
+    public void setDataConfig(FileConfiguration dataConfig) { this.dataConfig = dataConfig; }
     public void saveDataConfig() {
+        if (!dataManager.isReady()) {
+            getLogger().warning("Stats are still loading, skipped saving PlayerData.");
+            return;
+        }
         try {
-            dataConfig.save(dataFile);
+            dataManager.flush();
+            YamlLogPages.saveAtomically(dataConfig, dataFile);
+            dataFileSize = dataFile.length();
+            storedPlayers = dataManager.countPlayers();
+            storedLogs = dataManager.countLogs();
             getLogger().info("PlayerData saved.");
         } catch (IOException e) {
             getLogger().severe("Failed to save PlayerData!");
@@ -191,6 +659,7 @@ public final class DungeonStats extends JavaPlugin {
             getDataFolder().mkdirs();
             try { dataFile.createNewFile(); } catch (IOException e) { getLogger().severe("Failed to create database yml!"); }
         }
-        dataConfig = YamlConfiguration.loadConfiguration(dataFile);
+        // 真正的内容由 DataManager 在后台加载，这里先放一个空配置
+        dataConfig = new YamlConfiguration();
     }
 }
\ No newline at end of file
@@ -5,23 +5,32 @@ import org.bukkit.OfflinePlayer;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import top.steve3184.dungeonstats.DungeonStats;
-import top.steve3184.dungeonstats.model.PlayerStats;
+import top.steve3184.dungeonstats.model.LeaderboardPage;
 import top.steve3184.dungeonstats.utils.DataManager;
-
-import java.util.List;
+import top.steve3184.dungeonstats.utils.KillLevels;
+import top.steve3184.dungeonstats.utils.MetricRegistry;
 
 /**
  * PlaceholderAPI expansion for DungeonStats
  *
- * Provided placeholders (identifier: dungeonstats):
- * - %dungeonstats_kills%
- * - %dungeonstats_playtime%
- * - %dungeonstats_maxlevel%
+ * Provided placeholders (identifier: dungeonstats), for every metric in player-metrics:
+ * - %dungeonstats_<metric>%                   -> e.g. %dungeonstats_kills%, %dungeonstats_playtime% (seconds)
+ *
+ * Kills by enemy level band (band 0 = LV0-9, 1 = LV10-19, ..., 7 = LV70+):
+ * - %dungeonstats_kills_lv_<band>%           -> the player's kills in the band
+ * - %dungeonstats_server_kills_lv_<band>%    -> all players' kills in the band
+ * - %dungeonstats_lv_<band>_label%           -> the band's levels, e.g. "10-19"
  *
- * Top placeholders (by metric: kills|playtime|maxlevel, index starts from 1):
+ * Top placeholders (by metric key, case-insensitive, index starts from 1):
  * - %dungeonstats_top_<metric>_<n>%           -> player name at rank n
  * - %dungeonstats_top_<metric>_<n>_name%      -> player name at rank n
  * - %dungeonstats_top_<metric>_<n>_value%     -> value at rank n
+ *
+ * Seasons (<season> is a season number or "current"):
+ * - %dungeonstats_season%                              -> the current season number
+ * - %dungeonstats_season_<metric>%                     -> the player's value in the current season
+ * - %dungeonstats_season_top_<metric>_<n>[_name|_value]% -> current season standings
+ * - %dungeonstats_season_<season>_top_<metric>_<n>[_name|_value]% -> standings of any season
  */
 public class DungeonStatsExpansion extends PlaceholderExpansion {
 
@@ -56,21 +65,33 @@ public class DungeonStatsExpansion extends PlaceholderExpansion {
     @Override
     public @Nullable String onRequest(OfflinePlayer player, @NotNull String params) {
         // Player-centric placeholders
-        switch (params.toLowerCase()) {
-            case "kills": {
-                PlayerStats stats = getStatsFor(player);
-                return stats == null ? "0" : String.valueOf(stats.kills());
-            }
-            case "playtime": {
-                PlayerStats stats = getStatsFor(player);
-                return stats == null ? "0" : String.valueOf(stats.playtimeSeconds());
-            }
-            case "maxlevel": {
-                PlayerStats stats = getStatsFor(player);
-                return stats == null ? "0" : String.valueOf(stats.maxLevel());
+        MetricRegistry.Metric playerMetric = dataManager.getMetrics().get(params);
+        if (playerMetric != null) {
+            long[] values = getValuesFor(player);
+            return values == null || playerMetric.id() >= values.length ? "0" : String.valueOf(values[playerMetric.id()]);
+        }
+
+        // Level band placeholders: kills_lv_<band>, server_kills_lv_<band>, lv_<band>_label
+        String lower = params.toLowerCase();
+        if (lower.startsWith("kills_lv_") || lower.startsWith("server_kills_lv_") || (lower.startsWith("lv_") && lower.endsWith("_label"))) {
+            String number = lower.startsWith("lv_") ? lower.substring(3, lower.length() - 6) : lower.substring(lower.lastIndexOf('_') + 1);
+            int band;
+            try {
+                band = Integer.parseInt(number);
+            } catch (NumberFormatException e) {
+                return "";
             }
+            if (band < 0 || band >= KillLevels.BANDS) return "";
+            if (lower.startsWith("lv_")) return KillLevels.label(band);
+            if (lower.startsWith("server_")) return String.valueOf(dataManager.getServerKillsByLevel()[band]);
+            if (player == null || player.getName() == null) return "0";
+            int[] killsByLevel = dataManager.getKillsByLevel(player.getName());
+            return killsByLevel == null ? "0" : String.valueOf(killsByLevel[band]);
         }
 
+        if (lower.equals("season")) return String.valueOf(dataManager.getSeason());
+        if (lower.startsWith("season_")) return onSeasonRequest(player, params.substring("season_".length()));
+
         // Top placeholders: top_<metric>_<n>[_name|_value]
         if (params.toLowerCase().startsWith("top_")) {
             String[] parts = params.split("_");
@@ -85,28 +106,16 @@ public class DungeonStatsExpansion extends PlaceholderExpansion {
                 }
                 String field = parts.length >= 4 ? parts[3].toLowerCase() : "name";
 
-                String key = switch (metric) {
-                    case "kills" -> "kills";
-                    case "playtime" -> "playtime";
-                    case "maxlevel" -> "maxLevel";
-                    default -> null;
-                };
-                if (key == null) return "";
+                if (dataManager.getMetrics().get(metric) == null || index < 1) return "";
 
-                // getTopPlayers is 1-based for display, convert to 0-based index
-                List<PlayerStats> top = dataManager.getTopPlayers(key, Math.max(index, 1));
-                if (top.isEmpty() || index < 1 || index > top.size()) return "";
-                PlayerStats ps = top.get(index - 1);
+                // Ranks are 1-based for display, read only the requested one
+                LeaderboardPage page = dataManager.getLeaderboard(metric, index - 1, 1);
+                if (page.players().isEmpty()) return "";
 
                 if ("value".equals(field)) {
-                    return switch (key) {
-                        case "kills" -> String.valueOf(ps.kills());
-                        case "playtime" -> String.valueOf(ps.playtimeSeconds());
-                        case "maxLevel" -> String.valueOf(ps.maxLevel());
-                        default -> "";
-                    };
+                    return String.valueOf(page.values().get(0));
                 } else { // default to name
-                    return ps.playerName();
+                    return page.players().get(0).playerName();
                 }
             }
         }
@@ -114,10 +123,45 @@ public class DungeonStatsExpansion extends PlaceholderExpansion {
         return null; // Unknown placeholder
     }
 
-    private @Nullable PlayerStats getStatsFor(@Nullable OfflinePlayer player) {
+    // season_ 之后的部分：<metric>、top_... 或 <season>_top_...
+    private String onSeasonRequest(OfflinePlayer player, String params) {
+        MetricRegistry.Metric metric = dataManager.getMetrics().get(params);
+        if (metric != null) {
+            if (player == null || player.getName() == null) return "0";
+            long[] values = dataManager.getPlayerSeasonValues(player.getName());
+            return values == null || metric.id() >= values.length ? "0" : String.valueOf(values[metric.id()]);
+        }
+
+        String[] parts = params.split("_");
+        int season = dataManager.getSeason();
+        int first = 0;
+        if (parts.length > 0 && !parts[0].equalsIgnoreCase("top")) {
+            try {
+                season = parts[0].equalsIgnoreCase("current") ? season : Integer.parseInt(parts[0]);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            first = 1;
+        }
+        // Expect: [top, metric, n] or [top, metric, n, name|value]
+        if (parts.length < first + 3 || !parts[first].equalsIgnoreCase("top")) return null;
+        int index;
+        try {
+            index = Integer.parseInt(parts[first + 2]);
+        } catch (NumberFormatException e) {
+            return "";
+        }
+        if (index < 1) return "";
+        LeaderboardPage page = dataManager.getSeasonLeaderboard(parts[first + 1], season, index - 1, 1);
+        if (page == null || page.players().isEmpty()) return "";
+        String field = parts.length > first + 3 ? parts[first + 3].toLowerCase() : "name";
+        return "value".equals(field) ? String.valueOf(page.values().get(0)) : page.players().get(0).playerName();
+    }
+
+    private long[] getValuesFor(@Nullable OfflinePlayer player) {
         if (player == null) return null;
         String name = player.getName();
         if (name == null || name.isEmpty()) return null;
-        return dataManager.getPlayerStats(name);
+        return dataManager.getPlayerValues(name);
     }
 }
@@ -0,0 +1,49 @@
+package top.steve3184.dungeonstats.api;
+
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import top.steve3184.dungeonstats.utils.DataManager;
+import top.steve3184.dungeonstats.utils.Exporter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.Map;
+
+public class ExportHandler extends BaseHandler {
+
+    private final Exporter exporter;
+    private final String kind; // "players" or "runs"
+
+    public ExportHandler(DataManager dataManager, Gson gson, Exporter exporter, String kind) {
+        super(dataManager, gson);
+        this.exporter = exporter;
+        this.kind = kind;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        if (rejectWhileWarmingUp(exchange)) return;
+        Exporter.Options options;
+        try {
+            options = Exporter.Options.parse(parseQuery(exchange.getRequestURI().getQuery()));
+        } catch (NumberFormatException e) {
+            sendResponse(exchange, 400, Collections.singletonMap("error", "since and sinceTime must be numbers."));
+            return;
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", options.contentType());
+        if (options.gzip()) {
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+        // 长度为 0 表示分块传输，逐行写出
+        exchange.sendResponseHeaders(200, 0);
+        try (OutputStream os = exchange.getResponseBody()) {
+            if (kind.equals("players")) {
+                exporter.exportPlayers(os, options);
+            } else {
+                exporter.exportRuns(os, options);
+            }
+        }
+    }
+}
@@ -7,22 +7,46 @@ import org.bukkit.command.CommandSender;
 import org.bukkit.command.TabCompleter;
 import org.bukkit.entity.Player;
 import top.steve3184.dungeonstats.DungeonStats;
+import top.steve3184.dungeonstats.backup.BackupStore;
+import top.steve3184.dungeonstats.model.LeaderboardPage;
 import top.steve3184.dungeonstats.model.PlayerStats;
+import top.steve3184.dungeonstats.model.RunSummary;
+import top.steve3184.dungeonstats.season.SeasonArchive;
+import top.steve3184.dungeonstats.utils.BackupManager;
 import top.steve3184.dungeonstats.utils.DataManager;
+import top.steve3184.dungeonstats.utils.Exporter;
+import top.steve3184.dungeonstats.utils.KillLevels;
+import top.steve3184.dungeonstats.utils.MetricRegistry;
+import top.steve3184.dungeonstats.utils.RunAnalytics;
+import top.steve3184.dungeonstats.utils.TickScheduler;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 public class DunCommand implements CommandExecutor, TabCompleter {
 
+    private static final int TAB_COMPLETIONS = 20;
+
     private final DungeonStats plugin;
     private final DataManager dataManager;
+    private final QueryRunner queries;
 
-    public DunCommand(DungeonStats plugin, DataManager dataManager) {
+    public DunCommand(DungeonStats plugin, DataManager dataManager, QueryRunner queries) {
         this.plugin = plugin;
         this.dataManager = dataManager;
+        this.queries = queries;
     }
 
     @Override
@@ -33,12 +57,23 @@ public class DunCommand implements CommandExecutor, TabCompleter {
         }
 
         String subCommand = args[0].toLowerCase();
+        // 数据还在后台加载时，查询类命令先返回提示
+        if (!dataManager.isReady() && List.of("stats", "top", "killtop", "playtimetop", "maxleveltop", "analytics", "export", "season").contains(subCommand)) {
+            sender.sendMessage(format(plugin.getConfig().getString("messages.warming-up", "&7Stats are still loading, please try again in a moment.")));
+            return true;
+        }
         switch (subCommand) {
             case "stats" -> showPlayerStats(sender, args);
-            case "killtop" -> showTopList(sender, "kills");
-            case "playtimetop" -> showTopList(sender, "playtime");
-            case "maxleveltop" -> showTopList(sender, "maxlevel");
+            case "top" -> showTopList(sender, args.length > 1 ? args[1] : "kills", args, 2);
+            case "killtop" -> showTopList(sender, "kills", args, 1);
+            case "playtimetop" -> showTopList(sender, "playtime", args, 1);
+            case "maxleveltop" -> showTopList(sender, "maxLevel", args, 1);
+            case "season" -> season(sender, args);
+            case "analytics" -> showAnalytics(sender, args);
+            case "perf" -> showPerf(sender);
+            case "export" -> exportData(sender, args);
             case "reload" -> reloadPlugin(sender);
+            case "backup" -> backup(sender, args);
             default -> sendUsage(sender);
         }
         return true;
@@ -55,35 +90,116 @@ public class DunCommand implements CommandExecutor, TabCompleter {
             return;
         }
 
+        queries.run(sender, "stats:" + targetName.toLowerCase(), () -> playerStatsLines(targetName));
+    }
+
+    // 在查询线程里执行，只读快照
+    private List<String> playerStatsLines(String targetName) {
+        List<String> lines = new ArrayList<>();
         PlayerStats stats = dataManager.getPlayerStats(targetName);
         if (stats == null) {
-            sender.sendMessage(format(plugin.getConfig().getString("messages.command-player-not-found").replace("{player_name}", targetName)));
+            lines.add(format(plugin.getConfig().getString("messages.command-player-not-found").replace("{player_name}", targetName)));
+            return lines;
+        }
+
+        lines.add(format(plugin.getConfig().getString("messages.stats-title").replace("{player_name}", stats.playerName())));
+        lines.add(format(plugin.getConfig().getString("messages.stats-line-maxlevel").replace("{value}", String.valueOf(stats.maxLevel()))));
+        lines.add(format(plugin.getConfig().getString("messages.stats-line-kills").replace("{value}", String.valueOf(stats.kills()))));
+        lines.add(format(plugin.getConfig().getString("messages.stats-line-playtime").replace("{value}", formatSeconds(stats.playtimeSeconds()))));
+        // 配置里声明的其他指标
+        MetricRegistry metrics = dataManager.getMetrics();
+        long[] values = dataManager.getPlayerValues(targetName);
+        for (int m = MetricRegistry.MAX_LEVEL + 1; values != null && m < Math.min(values.length, metrics.globals().size()); m++) {
+            MetricRegistry.Metric metric = metrics.get(m);
+            lines.add(format(plugin.getConfig().getString("messages.stats-line-metric", "&e{name}: &f{value}")
+                    .replace("{name}", metric.name())
+                    .replace("{value}", formatValue(metric, values[m]))));
+        }
+        int[] killsByLevel = dataManager.getKillsByLevel(targetName);
+        if (killsByLevel != null) {
+            String levels = KillLevels.toMap(killsByLevel).entrySet().stream()
+                    .filter(e -> e.getValue() > 0)
+                    .map(e -> e.getKey() + "×" + e.getValue())
+                    .collect(Collectors.joining(", "));
+            if (!levels.isEmpty()) {
+                lines.add(format(plugin.getConfig().getString("messages.stats-line-kill-levels", "&eKills by Enemy Level: &f{levels}")
+                        .replace("{levels}", levels)));
+            }
+        }
+        return lines;
+    }
+
+    /** @param optionArg where the optional {@code season <n|current>} and {@code arena <id>} start in {@code args} */
+    private void showTopList(CommandSender sender, String key, String[] args, int optionArg) {
+        MetricRegistry metrics = dataManager.getMetrics();
+        Integer season = null;
+        String arena = null;
+        try {
+            for (int i = optionArg; i < args.length; i += 2) {
+                String value = args.length > i + 1 ? args[i + 1] : null;
+                if (args[i].equalsIgnoreCase("season")) {
+                    season = value == null || value.equalsIgnoreCase("current") ? dataManager.getSeason() : Integer.parseInt(value);
+                } else if (args[i].equalsIgnoreCase("arena") && value != null) {
+                    arena = value;
+                } else {
+                    throw new NumberFormatException();
+                }
+            }
+        } catch (NumberFormatException e) {
+            sendUsage(sender);
+            return;
+        }
+        if (arena != null && metrics.arenaIndex(arena) < 0) {
+            sender.sendMessage(format(plugin.getConfig().getString("messages.command-unknown-arena", "&cUnknown arena {arena}. Available: {arenas}")
+                    .replace("{arena}", arena)
+                    .replace("{arenas}", String.join(", ", metrics.arenas()))));
+            return;
+        }
+        MetricRegistry.Metric metric = metrics.get(key, arena);
+        if (metric == null) {
+            sender.sendMessage(format(plugin.getConfig().getString("messages.command-unknown-metric", "&cUnknown leaderboard {metric}. Available: {metrics}")
+                    .replace("{metric}", key)
+                    .replace("{metrics}", metricKeys().stream().collect(Collectors.joining(", ")))));
             return;
         }
+        if (season == null) {
+            // 排行榜可能需要完整排序，在查询线程里执行，同一快照的结果所有人共用
+            queries.run(sender, "top:" + metric.key().toLowerCase(), () -> topListLines(metric));
+            return;
+        }
+        int seasonNumber = season;
+        queries.run(sender, "top:" + metric.key().toLowerCase() + ":season:" + seasonNumber, () -> seasonTopLines(metric, seasonNumber));
+    }
 
-        sender.sendMessage(format(plugin.getConfig().getString("messages.stats-title").replace("{player_name}", stats.playerName())));
-        sender.sendMessage(format(plugin.getConfig().getString("messages.stats-line-maxlevel").replace("{value}", String.valueOf(stats.maxLevel()))));
-        sender.sendMessage(format(plugin.getConfig().getString("messages.stats-line-kills").replace("{value}", String.valueOf(stats.kills()))));
-        sender.sendMessage(format(plugin.getConfig().getString("messages.stats-line-playtime").replace("{value}", formatSeconds(stats.playtimeSeconds()))));
+    private List<String> topListLines(MetricRegistry.Metric metric) {
+        String title = plugin.getConfig().getString("messages.title-" + metric.key().toLowerCase(),
+                plugin.getConfig().getString("messages.title-metric", "&6&l--- {name} Leaderboard ---"));
+        return rankLines(title.replace("{name}", metric.name()), metric, dataManager.getLeaderboard(metric.key(), 0, 10));
+    }
+
+    private List<String> seasonTopLines(MetricRegistry.Metric metric, int season) {
+        LeaderboardPage page = dataManager.getSeasonLeaderboard(metric.key(), season, 0, 10);
+        if (page == null) {
+            return List.of(format(plugin.getConfig().getString("messages.command-unknown-season", "&cThere is no season {season} with this leaderboard.")
+                    .replace("{season}", String.valueOf(season))));
+        }
+        String title = plugin.getConfig().getString("messages.title-season", "&6&l--- {name} Leaderboard, Season {season} ---");
+        return rankLines(title.replace("{name}", metric.name()).replace("{season}", String.valueOf(season)), metric, page);
     }
 
-    private void showTopList(CommandSender sender, String key) {
-        sender.sendMessage(format(plugin.getConfig().getString("messages.title-" + key)));
-        List<PlayerStats> topPlayers = dataManager.getTopPlayers(key, 10);
+    private List<String> rankLines(String title, MetricRegistry.Metric metric, LeaderboardPage page) {
+        List<String> lines = new ArrayList<>();
+        lines.add(format(title));
+        List<PlayerStats> topPlayers = page.players();
         if (topPlayers.isEmpty()) {
-            sender.sendMessage(format(plugin.getConfig().getString("messages.command-no-data")));
-            return;
+            lines.add(format(plugin.getConfig().getString("messages.command-no-data")));
+            return lines;
         }
 
         for (int i = 0; i < 10; i++) {
             if (i < topPlayers.size()) {
                 PlayerStats stats = topPlayers.get(i);
-                String valueStr = switch (key) {
-                    case "playtime" -> formatSeconds(stats.playtimeSeconds());
-                    case "kills" -> String.valueOf(stats.kills());
-                    case "maxlevel" -> String.valueOf(stats.maxLevel());
-                    default -> "";
-                };
+                String valueStr = formatValue(metric, page.values().get(i));
                 String rankColor = switch (i) {
                     case 0 -> plugin.getConfig().getString("messages.rank-color-1");
                     case 1 -> plugin.getConfig().getString("messages.rank-color-2");
@@ -94,20 +210,255 @@ public class DunCommand implements CommandExecutor, TabCompleter {
                         .replace("{rank}", String.valueOf(i + 1))
                         .replace("{player_name}", stats.playerName())
                         .replace("{value}", valueStr);
-                sender.sendMessage(format(rankColor + entry));
+                lines.add(format(rankColor + entry));
             } else {
-                // sender.sendMessage(" "); // 补充空行
+                // lines.add(" "); // 补充空行
+            }
+        }
+        return lines;
+    }
+
+    private void season(CommandSender sender, String[] args) {
+        if (args.length > 1 && args[1].equalsIgnoreCase("start")) {
+            if (!(sender.isOp() || sender.hasPermission("dungeonstats.season"))) {
+                sender.sendMessage(ChatColor.RED + "You do not have permission to use this command.");
+                return;
             }
+            int ending = dataManager.getSeason();
+            plugin.getSeasonManager().startNextSeason().whenComplete((archive, error) -> {
+                if (error != null) {
+                    sender.sendMessage(ChatColor.RED + "Failed to start a new season: " + rootMessage(error));
+                    return;
+                }
+                sender.sendMessage(ChatColor.GREEN + "Season " + (ending + 1) + " started. Season " + archive.season() + " was archived with "
+                        + archive.players() + " players; see /dun killtop season " + archive.season() + ".");
+            });
+            return;
+        }
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+        sender.sendMessage(format(plugin.getConfig().getString("messages.season-info", "&6Season {season} &7started {started}")
+                .replace("{season}", String.valueOf(dataManager.getSeason()))
+                .replace("{started}", dateFormat.format(new Date(dataManager.getSeasonStartedAt())))));
+        List<SeasonArchive> archives = dataManager.getSeasonArchives();
+        if (!archives.isEmpty()) {
+            sender.sendMessage(format(plugin.getConfig().getString("messages.season-archived", "&7Past seasons: &f{seasons}")
+                    .replace("{seasons}", archives.stream().map(a -> String.valueOf(a.season())).collect(Collectors.joining(", ")))));
+        }
+    }
+
+    private void showAnalytics(CommandSender sender, String[] args) {
+        String window = args.length > 1 ? args[1] : "all";
+        int windowHours = RunAnalytics.parseWindow(window);
+        if (windowHours < 0) {
+            sender.sendMessage(format(plugin.getConfig().getString("messages.command-usage")));
+            return;
+        }
+
+        queries.run(sender, "analytics:" + window.toLowerCase(), () -> analyticsLines(window, windowHours));
+    }
+
+    private List<String> analyticsLines(String window, int windowHours) {
+        List<String> lines = new ArrayList<>();
+        RunSummary summary = dataManager.getRunAnalytics().summarize(windowHours);
+        lines.add(format(plugin.getConfig().getString("messages.analytics-title").replace("{window}", window)));
+        if (summary.runs() == 0) {
+            lines.add(format(plugin.getConfig().getString("messages.command-no-data")));
+            return lines;
+        }
+        lines.add(format(plugin.getConfig().getString("messages.analytics-line-runs")
+                .replace("{runs}", String.valueOf(summary.runs()))
+                .replace("{runs_per_hour}", String.format("%.2f", summary.runsPerHour()))));
+        lines.add(format(plugin.getConfig().getString("messages.analytics-line-duration")
+                .replace("{p50}", formatSeconds(summary.durationP50()))
+                .replace("{p90}", formatSeconds(summary.durationP90()))
+                .replace("{p99}", formatSeconds(summary.durationP99()))));
+        lines.add(format(plugin.getConfig().getString("messages.analytics-line-averages")
+                .replace("{kills}", String.format("%.1f", summary.avgKills()))
+                .replace("{doors}", String.format("%.1f", summary.avgDoors()))
+                .replace("{bosses}", String.format("%.1f", summary.avgBosses()))));
+        String levels = summary.levelDistribution().entrySet().stream()
+                .map(e -> e.getKey() + "×" + e.getValue())
+                .collect(Collectors.joining(", "));
+        lines.add(format(plugin.getConfig().getString("messages.analytics-line-levels").replace("{levels}", levels)));
+        return lines;
+    }
+
+    private void showPerf(CommandSender sender) {
+        if (!(sender.isOp() || sender.hasPermission("dungeonstats.perf"))) {
+            sender.sendMessage(ChatColor.RED + "You do not have permission to use this command.");
+            return;
+        }
+        TickScheduler scheduler = plugin.getTickScheduler();
+        double budgetMs = scheduler.getBudgetNanos() / 1_000_000.0;
+        double averageMs = scheduler.getAverageTickNanos() / 1_000_000.0;
+        sender.sendMessage(ChatColor.GOLD + "--- DungeonStats Tick Budget ---");
+        sender.sendMessage(ChatColor.YELLOW + "Budget: " + ChatColor.WHITE + String.format("%.2f ms/tick", budgetMs)
+                + ChatColor.YELLOW + ", avg used: " + ChatColor.WHITE + String.format("%.3f ms (%.1f%%)", averageMs, budgetMs > 0 ? averageMs / budgetMs * 100 : 0)
+                + ChatColor.YELLOW + ", peak: " + ChatColor.WHITE + String.format("%.2f ms", scheduler.getPeakTickNanos() / 1_000_000.0));
+        sender.sendMessage(ChatColor.YELLOW + "Ticks over budget: " + ChatColor.WHITE + scheduler.getOverBudgetTicks() + "/" + scheduler.getTicks()
+                + ChatColor.YELLOW + ", waiting: " + ChatColor.WHITE + scheduler.getDeferredCount());
+        for (TickScheduler.TaskStats task : scheduler.getTaskStats()) {
+            double avg = task.runs() == 0 ? 0 : task.totalNanos() / (double) task.runs() / 1_000_000.0;
+            sender.sendMessage(ChatColor.AQUA + task.name() + ChatColor.GRAY + ": "
+                    + String.format("%d runs, avg %.3f ms, max %.2f ms, %d deferred, %d slow",
+                    task.runs(), avg, task.maxNanos() / 1_000_000.0, task.deferrals(), task.slowRuns()));
         }
     }
 
+    private void exportData(CommandSender sender, String[] args) {
+        if (!(sender.isOp() || sender.hasPermission("dungeonstats.export"))) {
+            sender.sendMessage(ChatColor.RED + "You do not have permission to use this command.");
+            return;
+        }
+        if (args.length < 2 || !(args[1].equalsIgnoreCase("players") || args[1].equalsIgnoreCase("runs"))) {
+            sender.sendMessage(ChatColor.RED + "Usage: /dun export <players|runs> [format=ndjson|csv] [since=<recordId>] [sinceTime=<epochMillis>] [gzip=true]");
+            return;
+        }
+        String kind = args[1].toLowerCase();
+        Map<String, String> params = new HashMap<>();
+        for (int i = 2; i < args.length; i++) {
+            String[] entry = args[i].split("=", 2);
+            params.put(entry[0], entry.length > 1 ? entry[1] : "true");
+        }
+        Exporter.Options options;
+        try {
+            options = Exporter.Options.parse(params);
+        } catch (NumberFormatException e) {
+            sender.sendMessage(ChatColor.RED + "since and sinceTime must be numbers.");
+            return;
+        }
+
+        String timestamp = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+        File file = new File(new File(plugin.getDataFolder(), "exports"), kind + "-" + timestamp + options.fileExtension());
+        sender.sendMessage(ChatColor.GRAY + "Exporting " + kind + " to " + file.getName() + "...");
+        // 导出在异步线程中进行，需要的数据分批回到主线程读取
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+            long start = System.nanoTime();
+            String result;
+            try {
+                file.getParentFile().mkdirs();
+                long rows;
+                try (OutputStream out = new FileOutputStream(file)) {
+                    rows = kind.equals("players")
+                            ? plugin.getExporter().exportPlayers(out, options)
+                            : plugin.getExporter().exportRuns(out, options);
+                }
+                result = ChatColor.GREEN + "Exported " + rows + " " + kind + " to " + file.getPath()
+                        + " in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms.";
+            } catch (IOException e) {
+                plugin.getLogger().severe("Export failed: " + e.getMessage());
+                result = ChatColor.RED + "Export failed: " + e.getMessage();
+            }
+            String message = result;
+            plugin.getServer().getScheduler().runTask(plugin, () -> sender.sendMessage(message));
+        });
+    }
+
+    private void backup(CommandSender sender, String[] args) {
+        if (!(sender.isOp() || sender.hasPermission("dungeonstats.backup"))) {
+            sender.sendMessage(ChatColor.RED + "You do not have permission to use this command.");
+            return;
+        }
+        BackupManager backups = plugin.getBackupManager();
+        String action = args.length > 1 ? args[1].toLowerCase() : "";
+        if (!backups.isEnabled() && !action.isEmpty()) {
+            sender.sendMessage(ChatColor.RED + "Backups are disabled. Enable them under 'backups' in config.yml.");
+            return;
+        }
+        switch (action) {
+            case "now" -> {
+                sender.sendMessage(ChatColor.GRAY + "Writing a backup...");
+                backups.backup(false).whenComplete((segment, error) -> plugin.getServer().getScheduler().runTask(plugin, () -> {
+                    if (error != null) {
+                        sender.sendMessage(ChatColor.RED + "Backup failed: " + rootMessage(error));
+                    } else if (segment == null) {
+                        sender.sendMessage(ChatColor.YELLOW + "Nothing changed since the last backup.");
+                    } else {
+                        sender.sendMessage(ChatColor.GREEN + "Wrote " + (segment.base() ? "base" : "delta") + " backup #" + segment.seq()
+                                + " (" + String.format("%.1f KB", segment.size() / 1024.0) + ").");
+                    }
+                }));
+            }
+            case "list" -> backups.list().whenComplete((segments, error) -> plugin.getServer().getScheduler().runTask(plugin, () -> {
+                if (error != null) {
+                    sender.sendMessage(ChatColor.RED + "Failed to list backups: " + rootMessage(error));
+                    return;
+                }
+                SimpleDateFormat dateFormat = new SimpleDateFormat("yyyyMMdd-HHmmss");
+                long total = segments.stream().mapToLong(BackupStore.Segment::size).sum();
+                sender.sendMessage(ChatColor.GOLD + "--- Backups: " + segments.size() + " segments, "
+                        + String.format("%.1f KB", total / 1024.0) + " ---");
+                // 只列最近的 10 个
+                for (BackupStore.Segment segment : segments.subList(Math.max(0, segments.size() - 10), segments.size())) {
+                    sender.sendMessage(ChatColor.AQUA + "#" + segment.seq() + " " + ChatColor.WHITE + dateFormat.format(new Date(segment.createdAt()))
+                            + ChatColor.GRAY + " " + (segment.base() ? "base" : "delta") + ", " + String.format("%.1f KB", segment.size() / 1024.0));
+                }
+            }));
+            case "restore" -> {
+                if (args.length < 3) {
+                    sender.sendMessage(ChatColor.RED + "Usage: /dun backup restore <yyyyMMdd-HHmmss|epochMillis|latest>");
+                    return;
+                }
+                long atOrBefore;
+                try {
+                    atOrBefore = parseBackupTime(args[2]);
+                } catch (ParseException | NumberFormatException e) {
+                    sender.sendMessage(ChatColor.RED + "Use yyyyMMdd-HHmmss, epoch milliseconds or 'latest'.");
+                    return;
+                }
+                sender.sendMessage(ChatColor.GRAY + "Restoring... stats are unavailable until it finishes.");
+                backups.restore(atOrBefore).whenComplete((result, error) -> {
+                    if (error != null) {
+                        sender.sendMessage(ChatColor.RED + "Restore failed: " + rootMessage(error));
+                        return;
+                    }
+                    BackupStore.Restored restored = result.restored();
+                    sender.sendMessage(ChatColor.GREEN + "Restored the backup from " + new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date(restored.createdAt()))
+                            + ": " + restored.players().size() + " players, " + restored.logs().size() + " logs.");
+                    sender.sendMessage(ChatColor.GRAY + String.format("  read %d segments (%.1f KB) in %.1f ms, wrote in %.1f ms, loaded in %.1f ms, total %.1f ms",
+                            restored.segments(), restored.bytes() / 1024.0, restored.nanos() / 1_000_000.0,
+                            result.writeNanos() / 1_000_000.0, result.loadNanos() / 1_000_000.0, result.totalNanos() / 1_000_000.0));
+                });
+            }
+            default -> sender.sendMessage(ChatColor.RED + "Usage: /dun backup <now|list|restore <yyyyMMdd-HHmmss|epochMillis|latest>>");
+        }
+    }
+
+    private static long parseBackupTime(String value) throws ParseException {
+        if (value.equalsIgnoreCase("latest")) return Long.MAX_VALUE;
+        if (value.matches("\\d{10,}")) return Long.parseLong(value);
+        // 精确到秒，包含这一秒内的备份
+        return new SimpleDateFormat("yyyyMMdd-HHmmss").parse(value).getTime() + 999;
+    }
+
+    private static String rootMessage(Throwable error) {
+        while (error.getCause() != null) error = error.getCause();
+        return error.getMessage();
+    }
+
     private void reloadPlugin(CommandSender sender) {
         if (!(sender.isOp() || sender.hasPermission("dungeonstats.reload"))) {
             sender.sendMessage(ChatColor.RED + "You do not have permission to use this command.");
             return;
         }
-        plugin.reloadAll();
-        sender.sendMessage(ChatColor.GREEN + "DungeonStats reloaded.");
+        long start = System.nanoTime();
+        Map<String, Long> timings = plugin.reloadAll();
+        long total = System.nanoTime() - start;
+        if (timings.isEmpty()) {
+            sender.sendMessage(ChatColor.GREEN + "DungeonStats reloaded, no settings changed " + ChatColor.GRAY + "(" + String.format("%.2f ms", total / 1_000_000.0) + ")");
+            return;
+        }
+        sender.sendMessage(ChatColor.GREEN + "DungeonStats reloaded " + ChatColor.GRAY + "(" + String.format("%.2f ms", total / 1_000_000.0) + ")");
+        timings.forEach((subsystem, nanos) ->
+                sender.sendMessage(ChatColor.GRAY + "  " + subsystem + ": " + ChatColor.WHITE + String.format("%.2f ms", nanos / 1_000_000.0)));
+    }
+
+    private List<String> metricKeys() {
+        return dataManager.getMetrics().globals().stream().map(MetricRegistry.Metric::key).collect(Collectors.toList());
+    }
+
+    private String formatValue(MetricRegistry.Metric metric, long value) {
+        return metric.duration() ? formatSeconds(value) : String.valueOf(value);
     }
 
     private String formatSeconds(long totalSeconds) {
@@ -128,14 +479,57 @@ public class DunCommand implements CommandExecutor, TabCompleter {
     @Override
     public List<String> onTabComplete(CommandSender sender, Command command, String alias, String[] args) {
         if (args.length == 1) {
-            List<String> base = Arrays.asList("stats", "killtop", "playtimetop", "maxleveltop");
-            if (sender.isOp() || sender.hasPermission("dungeonstats.reload")) {
-                base = Arrays.asList("stats", "killtop", "playtimetop", "maxleveltop", "reload");
-            }
+            List<String> base = new ArrayList<>(Arrays.asList("stats", "top", "killtop", "playtimetop", "maxleveltop", "analytics", "season"));
+            if (sender.isOp() || sender.hasPermission("dungeonstats.perf")) base.add("perf");
+            if (sender.isOp() || sender.hasPermission("dungeonstats.export")) base.add("export");
+            if (sender.isOp() || sender.hasPermission("dungeonstats.reload")) base.add("reload");
+            if (sender.isOp() || sender.hasPermission("dungeonstats.backup")) base.add("backup");
             return base.stream()
                     .filter(s -> s.startsWith(args[0].toLowerCase()))
                     .collect(Collectors.toList());
         }
+        if (args.length == 2 && args[0].equalsIgnoreCase("export")) {
+            return Arrays.asList("players", "runs").stream()
+                    .filter(s -> s.startsWith(args[1].toLowerCase()))
+                    .collect(Collectors.toList());
+        }
+        if (args.length == 2 && args[0].equalsIgnoreCase("backup")) {
+            return Arrays.asList("now", "list", "restore").stream()
+                    .filter(s -> s.startsWith(args[1].toLowerCase()))
+                    .collect(Collectors.toList());
+        }
+        int optionArg = args[0].equalsIgnoreCase("top") ? 2 : 1;
+        if (List.of("top", "killtop", "playtimetop", "maxleveltop").contains(args[0].toLowerCase()) && args.length > optionArg) {
+            // 选项和值交替出现：season <n>、arena <id>
+            String last = args[args.length - 1].toLowerCase();
+            List<String> arenas = dataManager.getMetrics().arenas();
+            if ((args.length - 1 - optionArg) % 2 == 0) {
+                List<String> options = arenas.size() > 1 ? List.of("season", "arena") : List.of("season");
+                return options.stream().filter(s -> s.startsWith(last)).collect(Collectors.toList());
+            }
+            if (!args[args.length - 2].equalsIgnoreCase("arena")) return List.of();
+            return arenas.stream().filter(s -> s.toLowerCase().startsWith(last)).collect(Collectors.toList());
+        }
+        if (args.length == 2 && args[0].equalsIgnoreCase("season") && (sender.isOp() || sender.hasPermission("dungeonstats.season"))) {
+            return "start".startsWith(args[1].toLowerCase()) ? List.of("start") : List.of();
+        }
+        if (args.length == 2 && args[0].equalsIgnoreCase("top")) {
+            return metricKeys().stream()
+                    .filter(s -> s.toLowerCase().startsWith(args[1].toLowerCase()))
+                    .collect(Collectors.toList());
+        }
+        if (args.length == 2 && args[0].equalsIgnoreCase("stats")) {
+            // 按名字前缀从索引里取，不遍历所有玩家；索引还在排序时先补全在线玩家
+            if (!dataManager.isSearchReady()) return null;
+            return dataManager.searchPlayers(args[1], TAB_COMPLETIONS).stream()
+                    .map(PlayerStats::playerName)
+                    .collect(Collectors.toList());
+        }
+        if (args.length == 2 && args[0].equalsIgnoreCase("analytics")) {
+            return Arrays.asList("1h", "24h", "7d", "all").stream()
+                    .filter(s -> s.startsWith(args[1].toLowerCase()))
+                    .collect(Collectors.toList());
+        }
         return null;
     }
 }
@@ -0,0 +1,141 @@
+package top.steve3184.dungeonstats.commands;
+
+import org.bukkit.ChatColor;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+import top.steve3184.dungeonstats.DungeonStats;
+import top.steve3184.dungeonstats.metrics.Counter;
+import top.steve3184.dungeonstats.metrics.Histogram;
+import top.steve3184.dungeonstats.metrics.Metrics;
+import top.steve3184.dungeonstats.utils.DataManager;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs {@code /dun} queries on a small worker pool against the published snapshot and sends
+ * the formatted lines back on the main thread, so players spamming commands cost the server
+ * tick nothing but the dispatch.
+ *
+ * Queries with the same key for the same snapshot share one computation: concurrent
+ * {@code /dun top kills} from many players are answered from a single result until the next
+ * snapshot is published (or for at most {@value #MAX_SHARE_MILLIS} ms). Players also have a per-player cooldown between queries.
+ */
+public class QueryRunner {
+
+    // 快照很久没变时（例如没人在线），按时间的统计也要更新
+    private static final long MAX_SHARE_MILLIS = 10_000;
+
+    private record Shared(long epoch, long startedAt, CompletableFuture<List<String>> lines) {}
+
+    private final DungeonStats plugin;
+    private final DataManager dataManager;
+    // 查询键 -> 最近一次的结果，同一个快照内直接复用
+    private final Map<String, Shared> shared = new ConcurrentHashMap<>();
+    // 玩家名 -> 上次查询的时间，只在主线程读写
+    private final Map<String, Long> lastQuery = new HashMap<>();
+    private final Histogram queryTime = Metrics.histogram("dungeonstats_command_query_duration_seconds", "Time to answer a /dun query off the main thread");
+    private final Counter coalesced = Metrics.counter("dungeonstats_command_queries_coalesced_total", "/dun queries answered from a result shared with another sender");
+    private final Counter throttled = Metrics.counter("dungeonstats_command_queries_throttled_total", "/dun queries refused because the sender was on cooldown");
+    private ExecutorService pool;
+
+    public QueryRunner(DungeonStats plugin, DataManager dataManager) {
+        this.plugin = plugin;
+        this.dataManager = dataManager;
+    }
+
+    public void start() {
+        stop();
+        int threads = Math.max(1, plugin.getConfig().getInt("commands.threads", 2));
+        AtomicInteger count = new AtomicInteger();
+        pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "DungeonStats-Query-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void stop() {
+        if (pool == null) return;
+        pool.shutdown();
+        try {
+            pool.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        pool = null;
+        shared.clear();
+        lastQuery.clear();
+    }
+
+    /**
+     * Answers a query for {@code sender}. Must be called on the main thread.
+     *
+     * @param key   identifies the result; senders asking for the same key share it
+     * @param query builds the lines to send; runs on a worker thread and may only read the snapshot
+     */
+    public void run(CommandSender sender, String key, Supplier<List<String>> query) {
+        if (sender instanceof Player && onCooldown(sender)) return;
+
+        long epoch = dataManager.getSnapshot().epoch();
+        long now = System.currentTimeMillis();
+        Shared existing = shared.get(key);
+        CompletableFuture<List<String>> lines;
+        if (existing != null && existing.epoch() == epoch && now - existing.startedAt() < MAX_SHARE_MILLIS
+                && !existing.lines().isCompletedExceptionally()) {
+            coalesced.inc();
+            lines = existing.lines();
+        } else {
+            lines = CompletableFuture.supplyAsync(() -> {
+                long start = System.nanoTime();
+                try {
+                    return query.get();
+                } finally {
+                    queryTime.observeSince(start);
+                }
+            }, pool);
+            // 旧快照的结果不会再被复用
+            if (shared.size() > 256) shared.values().removeIf(entry -> entry.epoch() != epoch);
+            shared.put(key, new Shared(epoch, now, lines));
+        }
+
+        lines.whenComplete((result, error) -> plugin.getServer().getScheduler().runTask(plugin, () -> {
+            // 结果出来前玩家可能已经下线
+            if (sender instanceof Player player && !player.isOnline()) return;
+            if (error != null) {
+                plugin.getLogger().severe("Failed to answer /dun query " + key + "!");
+                error.printStackTrace();
+                sender.sendMessage(ChatColor.RED + "An error occurred, please try again later.");
+                return;
+            }
+            result.forEach(sender::sendMessage);
+        }));
+    }
+
+    private boolean onCooldown(CommandSender sender) {
+        long cooldown = plugin.getConfig().getLong("commands.cooldown-ms", 1000);
+        if (cooldown <= 0) return false;
+        long now = System.currentTimeMillis();
+        Long last = lastQuery.get(sender.getName());
+        if (last != null && now - last < cooldown) {
+            throttled.inc();
+            String seconds = String.format("%.1f", (cooldown - (now - last)) / 1000.0);
+            sender.sendMessage(ChatColor.translateAlternateColorCodes('&',
+                    plugin.getConfig().getString("messages.command-cooldown", "&7Please wait {seconds}s before using this command again.")
+                            .replace("{seconds}", seconds)));
+            return true;
+        }
+        lastQuery.put(sender.getName(), now);
+        // 不让表无限增长
+        if (lastQuery.size() > 1024) lastQuery.values().removeIf(time -> now - time >= cooldown);
+        return false;
+    }
+}
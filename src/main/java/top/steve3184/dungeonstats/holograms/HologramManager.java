@@ -7,10 +7,12 @@ import org.bukkit.World;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.entity.Display;
 import org.bukkit.entity.TextDisplay;
-import org.bukkit.scheduler.BukkitTask;
 import top.steve3184.dungeonstats.DungeonStats;
+import top.steve3184.dungeonstats.model.LeaderboardPage;
 import top.steve3184.dungeonstats.model.PlayerStats;
 import top.steve3184.dungeonstats.utils.DataManager;
+import top.steve3184.dungeonstats.utils.MetricRegistry;
+import top.steve3184.dungeonstats.utils.TickScheduler;
 
 import java.util.*;
 import java.util.concurrent.TimeUnit;
@@ -20,15 +22,19 @@ public class HologramManager {
     private final DungeonStats plugin;
     private final DataManager dataManager;
     private final List<TextDisplay> activeHolograms = new ArrayList<>();
-    private final List<String> leaderboardKeys = Arrays.asList("kills", "playtime", "maxLevel");
+    // 每个指标一个排行榜
+    private final List<String> leaderboardKeys = new ArrayList<>();
     private int currentRotationIndex = 0;
 
-    private BukkitTask refreshTask;
-    private BukkitTask rotationTask;
+    private TickScheduler.Job refreshTask;
+    private TickScheduler.Job rotationTask;
 
     public HologramManager(DungeonStats plugin, DataManager dataManager) {
         this.plugin = plugin;
         this.dataManager = dataManager;
+        for (MetricRegistry.Metric metric : plugin.getMetricRegistry().globals()) {
+            leaderboardKeys.add(metric.key());
+        }
     }
 
     public void initialize() {
@@ -68,7 +74,7 @@ public class HologramManager {
         long refreshIntervalSeconds = plugin.getConfig().getLong("holograms.refresh-interval-seconds", 10);
         plugin.getLogger().info("HologramManager: refresh-interval-seconds=" + refreshIntervalSeconds);
         long refreshInterval = refreshIntervalSeconds * 20L;
-        this.refreshTask = plugin.getServer().getScheduler().runTaskTimer(plugin, this::updateAllHolograms, 0L, refreshInterval);
+        this.refreshTask = plugin.getTickScheduler().schedule("hologram-refresh", this::updateAllHolograms, 0L, refreshInterval, true);
         plugin.getLogger().info("HologramManager: Scheduled refresh task with interval ticks=" + refreshInterval);
     }
 
@@ -84,7 +90,8 @@ public class HologramManager {
         long rotationIntervalSeconds = plugin.getConfig().getLong("holograms.single-display.rotation-interval-seconds", 5);
         long rotationInterval = rotationIntervalSeconds * 20L;
         plugin.getLogger().info("HologramManager: Scheduling rotation task for single hologram, interval-seconds=" + rotationIntervalSeconds + ", ticks=" + rotationInterval);
-        this.rotationTask = plugin.getServer().getScheduler().runTaskTimer(plugin, this::rotateSingleHologram, rotationInterval, rotationInterval * 2);
+        // 轮换与刷新都可以推迟到有空余预算的 tick
+        this.rotationTask = plugin.getTickScheduler().schedule("hologram-rotate", this::rotateSingleHologram, rotationInterval, rotationInterval * 2, true);
     }
 
     private void setupMultipleMode() {
@@ -102,6 +109,8 @@ public class HologramManager {
         for (String key : leaderboardKeys) {
             String keyPath = key + ".location";
             boolean containsInSection = section.contains(keyPath);
+            // 配置里声明的指标只在设置了位置时显示
+            if (!containsInSection && plugin.getMetricRegistry().get(key).id() > MetricRegistry.MAX_LEVEL) continue;
             String absolutePath = "holograms.multiple-displays." + keyPath;
             boolean containsAbsolute = plugin.getConfig().contains(absolutePath);
             Object raw = plugin.getConfig().get(absolutePath);
@@ -139,6 +148,11 @@ public class HologramManager {
         currentRotationIndex = (currentRotationIndex + 1) % leaderboardKeys.size();
     }
 
+    /** Redraws the current holograms right away, e.g. after the messages were changed. */
+    public void refresh() {
+        updateAllHolograms();
+    }
+
     private void updateAllHolograms() {
         if (activeHolograms.isEmpty()) {
             plugin.getLogger().fine("HologramManager: updateAllHolograms called but no active holograms present");
@@ -167,16 +181,19 @@ public class HologramManager {
 
     private void updateHologramContent(TextDisplay hologram, String key) {
         plugin.getLogger().fine("HologramManager: updateHologramContent called for key='" + key + "'");
-        List<PlayerStats> topPlayers = dataManager.getTopPlayers(key, 10);
+        MetricRegistry.Metric metric = plugin.getMetricRegistry().get(key);
+        LeaderboardPage page = dataManager.getLeaderboard(key, 0, 10);
+        List<PlayerStats> topPlayers = page.players();
         plugin.getLogger().info("HologramManager: Found topPlayers.size()=" + topPlayers.size() + " for key='" + key + "'");
-        String title = plugin.getConfig().getString("messages.title-" + key.toLowerCase(), "Leaderboard");
+        String title = plugin.getConfig().getString("messages.title-" + key.toLowerCase(),
+                plugin.getConfig().getString("messages.title-metric", "Leaderboard")).replace("{name}", metric.name());
         StringBuilder contentBuilder = new StringBuilder();
         contentBuilder.append(format(title + "\n\n&r"));
 
         for (int i = 0; i < 10; i++) {
             if (i < topPlayers.size()) {
                 PlayerStats stats = topPlayers.get(i);
-                contentBuilder.append(formatRankEntry(i + 1, stats, key));
+                contentBuilder.append(formatRankEntry(i + 1, stats, metric, page.values().get(i)));
             } else {
                 contentBuilder.append("\n"); // 补充空行
             }
@@ -186,7 +203,7 @@ public class HologramManager {
         plugin.getLogger().fine("HologramManager: Hologram text updated for key='" + key + "'");
     }
 
-    private String formatRankEntry(int rank, PlayerStats stats, String key) {
+    private String formatRankEntry(int rank, PlayerStats stats, MetricRegistry.Metric metric, long value) {
         String rankColor;
         switch (rank) {
             case 1 -> rankColor = plugin.getConfig().getString("messages.rank-color-1", "&6");
@@ -195,16 +212,7 @@ public class HologramManager {
             default -> rankColor = plugin.getConfig().getString("messages.rank-color-default", "&7");
         }
 
-        String valueStr;
-        if (key.equals("playtime")) {
-            valueStr = formatSeconds(stats.playtimeSeconds());
-        } else {
-            valueStr = String.valueOf(switch(key) {
-                case "kills" -> stats.kills();
-                case "maxLevel" -> stats.maxLevel();
-                default -> 0;
-            });
-        }
+        String valueStr = metric.duration() ? formatSeconds(value) : String.valueOf(value);
 
         String template = plugin.getConfig().getString("messages.rank-entry", "#{rank} &b{player_name}: &f{value}");
         return format(rankColor + template
@@ -0,0 +1,23 @@
+package top.steve3184.dungeonstats.listeners;
+
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import top.steve3184.dungeonstats.utils.DataManager;
+
+public class JoinListener implements Listener {
+
+    private final DataManager dataManager;
+
+    public JoinListener(DataManager dataManager) {
+        this.dataManager = dataManager;
+    }
+
+    @EventHandler
+    public void onJoin(PlayerJoinEvent event) {
+        // 改名的玩家进服时就更新名字，搜索和查询马上能用新名字
+        Player player = event.getPlayer();
+        dataManager.updateName(player.getUniqueId(), player.getName());
+    }
+}
@@ -5,15 +5,16 @@ import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
 import org.bukkit.event.entity.EntityDeathEvent;
+import top.steve3184.dungeonstats.metrics.Counter;
+import top.steve3184.dungeonstats.metrics.Histogram;
+import top.steve3184.dungeonstats.metrics.Metrics;
 import top.steve3184.dungeonstats.utils.DataManager;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
 public class KillListener implements Listener {
 
     private final DataManager dataManager;
-    private static final Pattern ENEMY_NAME_PATTERN = Pattern.compile("LV(\\d+) .*");
+    private final Counter killsRecorded = Metrics.counter("dungeonstats_kills_recorded_total", "Dungeon enemy kills credited to players");
+    private final Histogram handlerTime = Metrics.histogram("dungeonstats_event_duration_seconds", "Event handler time", "event", "kill");
 
     public KillListener(DataManager dataManager) {
         this.dataManager = dataManager;
@@ -29,9 +30,30 @@ public class KillListener implements Listener {
             return;
         }
 
-        Matcher matcher = ENEMY_NAME_PATTERN.matcher(entity.getCustomName());
-        if (matcher.matches()) {
-            dataManager.incrementKillCount(killer);
+        long start = System.nanoTime();
+        int level = parseEnemyLevel(entity.getCustomName());
+        if (level >= 0) {
+            dataManager.queueKill(killer, level);
+            killsRecorded.inc();
+        }
+        handlerTime.observeSince(start);
+    }
+
+    /**
+     * Reads the level from enemy names like "LV12 Zombie" (the pattern {@code LV(\d+) .*})
+     * without creating a Matcher, since this runs for every kill.
+     *
+     * @return the level, or -1 if the name is not an enemy name
+     */
+    static int parseEnemyLevel(String name) {
+        if (!name.startsWith("LV")) return -1;
+        int i = 2;
+        long level = 0;
+        while (i < name.length() && name.charAt(i) >= '0' && name.charAt(i) <= '9') {
+            level = Math.min(level * 10 + (name.charAt(i) - '0'), Integer.MAX_VALUE);
+            i++;
         }
+        if (i == 2 || i >= name.length() || name.charAt(i) != ' ') return -1;
+        return (int) level;
     }
 }
\ No newline at end of file
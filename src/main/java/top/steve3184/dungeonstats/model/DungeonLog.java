@@ -1,10 +0,0 @@
-package top.steve3184.dungeonstats.model;
-
-public record DungeonLog(
-        int recordId,
-        int maxLevel,
-        int doorsOpened,
-        int enemiesKilled,
-        int bossesDefeated,
-        long durationSeconds
-) {}
\ No newline at end of file
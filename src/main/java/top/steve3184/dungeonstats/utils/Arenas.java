@@ -0,0 +1,68 @@
+package top.steve3184.dungeonstats.utils;
+
+import net.minecraft.resources.ResourceLocation;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * The dungeon instances read from {@code arenas} in config.yml. Each writes its logs to its own
+ * command storage and numbers its runs on its own; kills and playtime count towards the arena
+ * whose world the player is in.
+ */
+public final class Arenas {
+
+    /**
+     * @param storage the command storage the arena's datapack writes its logs to
+     * @param world   the world the arena is in, or empty if kills and playtime are not split by arena
+     */
+    public record Arena(String id, ResourceLocation storage, String world) {}
+
+    private static final Arena MAIN = new Arena("main", ResourceLocation.fromNamespaceAndPath("dun", "log"), "");
+
+    private final List<Arena> arenas;
+
+    private Arenas(List<Arena> arenas) {
+        this.arenas = List.copyOf(arenas);
+    }
+
+    /** Reads the arenas; invalid ones are skipped with an error, and without any the single arena {@code main} is used. */
+    public static Arenas load(ConfigurationSection section, Logger logger) {
+        List<Arena> arenas = new ArrayList<>();
+        if (section != null) {
+            for (String id : section.getKeys(false)) {
+                ConfigurationSection arena = section.getConfigurationSection(id);
+                if (arena == null) continue;
+                if (!id.matches("[A-Za-z0-9][A-Za-z0-9-]*")) {
+                    logger.severe("Skipping arena '" + id + "': arena IDs may only contain letters, digits and '-'.");
+                    continue;
+                }
+                ResourceLocation storage = ResourceLocation.tryParse(arena.getString("storage", ""));
+                if (storage == null) {
+                    logger.severe("Skipping arena '" + id + "': '" + arena.getString("storage", "") + "' is not a storage ID.");
+                    continue;
+                }
+                arenas.add(new Arena(id, storage, arena.getString("world", "")));
+            }
+        }
+        return new Arenas(arenas.isEmpty() ? List.of(MAIN) : arenas);
+    }
+
+    public List<Arena> all() {
+        return arenas;
+    }
+
+    public List<String> ids() {
+        return arenas.stream().map(Arena::id).toList();
+    }
+
+    /** @return index of the arena in {@code world}, or -1 if no arena is there */
+    public int indexOfWorld(String world) {
+        for (int i = 0; i < arenas.size(); i++) {
+            if (!arenas.get(i).world().isEmpty() && arenas.get(i).world().equals(world)) return i;
+        }
+        return -1;
+    }
+}
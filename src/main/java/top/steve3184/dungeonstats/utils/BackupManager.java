@@ -0,0 +1,274 @@
+package top.steve3184.dungeonstats.utils;
+
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+import top.steve3184.dungeonstats.DungeonStats;
+import top.steve3184.dungeonstats.backup.BackupSegment;
+import top.steve3184.dungeonstats.backup.BackupStore;
+import top.steve3184.dungeonstats.metrics.Counter;
+import top.steve3184.dungeonstats.metrics.Histogram;
+import top.steve3184.dungeonstats.metrics.Metrics;
+import top.steve3184.dungeonstats.model.DungeonLog;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Takes scheduled incremental backups and restores them.
+ *
+ * Each backup only holds the players changed and the logs added since the previous one; every
+ * {@code base-every}-th backup is a full base, and older bases are pruned. What to back up is
+ * collected on the main thread in one tick, compressed and written on a backup thread. A base's
+ * logs are only listed by record ID on the main thread and read from the log pages on the
+ * backup thread.
+ * Restoring streams the base and deltas on that thread, writes the data file and log pages and
+ * then reloads them like a startup.
+ */
+public class BackupManager {
+
+    private static final int PAGE_SIZE = 1000;
+
+    /** Nanosecond timings of a restore. */
+    public record RestoreResult(BackupStore.Restored restored, long writeNanos, long loadNanos, long totalNanos) {}
+
+    private final DungeonStats plugin;
+    private final DataManager dataManager;
+    private final Histogram baseTime = Metrics.histogram("dungeonstats_backup_duration_seconds", "Time to write a backup", "type", "base");
+    private final Histogram deltaTime = Metrics.histogram("dungeonstats_backup_duration_seconds", "Time to write a backup", "type", "delta");
+    private final Counter writtenBytes = Metrics.counter("dungeonstats_backup_bytes_total", "Compressed bytes of backups written");
+    private TickScheduler.Job job;
+    private ExecutorService executor;
+    private BackupStore store;
+    private int baseEvery;
+    private int keepBases;
+    // 以下只在主线程读写
+    private long nextSeq;
+    private int deltasSinceBase;
+    private boolean needBase;
+    private int lastFoldedThrough = -1;
+    private boolean restoring;
+
+    public BackupManager(DungeonStats plugin, DataManager dataManager) {
+        this.plugin = plugin;
+        this.dataManager = dataManager;
+    }
+
+    public void start() {
+        stop();
+        if (!plugin.getConfig().getBoolean("backups.enabled", false)) {
+            return;
+        }
+        File directory = new File(plugin.getDataFolder(), plugin.getConfig().getString("backups.directory", "backups"));
+        store = new BackupStore(directory.toPath(), plugin.getLogger());
+        try {
+            nextSeq = store.nextSequence();
+        } catch (IOException e) {
+            plugin.getLogger().severe("Failed to read the backup directory " + directory + "!");
+            e.printStackTrace();
+            store = null;
+            return;
+        }
+        baseEvery = Math.max(1, plugin.getConfig().getInt("backups.base-every", 24));
+        keepBases = Math.max(1, plugin.getConfig().getInt("backups.keep-bases", 3));
+        // 重启后不知道上次备份之后改了什么，先做一次全量
+        needBase = true;
+        dataManager.setBackupTracking(true);
+        executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "DungeonStats-Backup");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(1, plugin.getConfig().getLong("backups.interval-minutes", 15)) * 60 * 20L;
+        job = plugin.getTickScheduler().schedule("backup", () -> backup(false), interval, interval, true);
+        plugin.getLogger().info("Backing up stats to " + directory + " every " + interval / 20 / 60 + " minutes.");
+    }
+
+    /** Writes the changes since the last backup and waits for pending backups to finish. */
+    public void stop() {
+        if (job != null) job.cancel();
+        job = null;
+        dataManager.setBackupTracking(false);
+        if (executor == null) return;
+        // 全量要读全部日志页，关服时等不了那么久，只写增量
+        if (!restoring && !needBase && dataManager.isReady()) submit(false);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        executor = null;
+        store = null;
+    }
+
+    public boolean isEnabled() {
+        return store != null;
+    }
+
+    /**
+     * Backs up the changes since the previous backup, or everything if a base is due.
+     * Must be called on the main thread.
+     *
+     * @return the segment written, or null if nothing changed
+     */
+    public CompletableFuture<BackupStore.Segment> backup(boolean forceBase) {
+        if (store == null) return CompletableFuture.failedFuture(new IllegalStateException("Backups are not enabled."));
+        if (restoring || !dataManager.isReady()) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Stats are loading or being restored."));
+        }
+        return submit(forceBase || needBase || deltasSinceBase + 1 >= baseEvery);
+    }
+
+    private CompletableFuture<BackupStore.Segment> submit(boolean base) {
+        long createdAt = System.currentTimeMillis();
+        BackupSegment.Contents contents = dataManager.drainBackupChanges(nextSeq, base, createdAt, dataManager.rollupsYaml());
+        if (!base && contents.players().isEmpty() && contents.logs().isEmpty() && contents.foldedThrough() == lastFoldedThrough) {
+            return CompletableFuture.completedFuture(null);
+        }
+        // 全量的日志在这里只记下编号，到备份线程里再分页读取
+        int[] logIds = base ? dataManager.getLogRecordIds(contents.foldedThrough()) : null;
+        nextSeq++;
+        lastFoldedThrough = contents.foldedThrough();
+        if (base) {
+            needBase = false;
+            deltasSinceBase = 0;
+        } else {
+            deltasSinceBase++;
+        }
+
+        BackupStore target = store;
+        int keep = keepBases;
+        return CompletableFuture.supplyAsync(() -> {
+            long start = System.nanoTime();
+            try {
+                BackupSegment.Contents complete = !base ? contents : withLogs(contents, readLogs(logIds));
+                BackupStore.Segment segment = target.write(complete);
+                int pruned = base ? target.prune(keep) : 0;
+                (base ? baseTime : deltaTime).observeSince(start);
+                writtenBytes.add(segment.size());
+                plugin.getLogger().info(String.format("Backup #%d (%s): %d players, %d logs, %.1f KB in %.1f ms%s.",
+                        segment.seq(), base ? "base" : "delta", complete.players().size(), complete.logs().size(),
+                        segment.size() / 1024.0, (System.nanoTime() - start) / 1_000_000.0,
+                        pruned > 0 ? ", pruned " + pruned + " old segments" : ""));
+                return segment;
+            } catch (IOException e) {
+                plugin.getLogger().severe("Failed to write backup #" + contents.seq() + "!");
+                e.printStackTrace();
+                // 丢了一段增量，下次从全量重新开始
+                plugin.getServer().getScheduler().runTask(plugin, () -> needBase = true);
+                throw new UncheckedIOException(e);
+            }
+        }, executor);
+    }
+
+    /** @return every backup segment, oldest first; read on the backup thread */
+    public CompletableFuture<List<BackupStore.Segment>> list() {
+        if (store == null) return CompletableFuture.failedFuture(new IllegalStateException("Backups are not enabled."));
+        BackupStore target = store;
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return target.list();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * Replaces the stats with the newest backup taken at or before {@code atOrBefore}. The
+     * current state is saved and backed up first, so a restore can itself be undone. Stats are
+     * unavailable until the restored data is loaded; kills in the meantime are applied on top.
+     * Must be called on the main thread; the future completes on the main thread.
+     */
+    public CompletableFuture<RestoreResult> restore(long atOrBefore) {
+        if (store == null) return CompletableFuture.failedFuture(new IllegalStateException("Backups are not enabled."));
+        if (restoring || !dataManager.isReady()) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Stats are loading or being restored."));
+        }
+        long start = System.nanoTime();
+        dataManager.commitQueued();
+        plugin.saveDataConfig();
+        // 备份线程按顺序执行，这次备份读完日志页之后才会写入恢复的数据
+        submit(needBase);
+        restoring = true;
+        dataManager.suspend();
+
+        BackupStore target = store;
+        MetricRegistry metrics = plugin.getMetricRegistry();
+        File dataFile = plugin.getDataFile();
+        File logDirectory = new File(plugin.getDataFolder(), "logs");
+        CompletableFuture<RestoreResult> result = new CompletableFuture<>();
+        executor.execute(() -> {
+            BackupStore.Restored restored = null;
+            long writeNanos = 0;
+            Throwable failure = null;
+            try {
+                restored = target.restore(metrics, atOrBefore);
+                long writeStart = System.nanoTime();
+                YamlConfiguration data = toDataConfig(metrics, restored);
+                YamlLogPages.saveAtomically(data, dataFile);
+                LogStore.writeAll(new YamlLogPages(logDirectory, plugin.getLogger()), restored.logs());
+                writeNanos = System.nanoTime() - writeStart;
+            } catch (IOException | InvalidConfigurationException e) {
+                // 没写入任何文件时重新加载的就是刚才保存的数据
+                plugin.getLogger().severe("Failed to restore the backup!");
+                e.printStackTrace();
+                failure = e;
+            }
+            BackupStore.Restored finalRestored = restored;
+            long finalWriteNanos = writeNanos;
+            Throwable finalFailure = failure;
+            plugin.getServer().getScheduler().runTask(plugin, () -> {
+                long loadStart = System.nanoTime();
+                dataManager.warmUp(metrics, dataFile, logDirectory).whenComplete((ignored, error) -> {
+                    restoring = false;
+                    needBase = true;
+                    if (finalFailure != null || error != null) {
+                        result.completeExceptionally(finalFailure != null ? finalFailure : error);
+                        return;
+                    }
+                    long end = System.nanoTime();
+                    plugin.getLogger().info(String.format("Restored the backup from %tF %<tT in %.1f ms.",
+                            finalRestored.createdAt(), (end - start) / 1_000_000.0));
+                    result.complete(new RestoreResult(finalRestored, finalWriteNanos, end - loadStart, end - start));
+                });
+            });
+        });
+        return result;
+    }
+
+    // 在备份线程上直接读日志页，不经过主线程
+    private List<DungeonLog> readLogs(int[] logIds) {
+        List<DungeonLog> logs = new ArrayList<>(logIds.length);
+        for (int from = 0; from < logIds.length; from += PAGE_SIZE) {
+            logs.addAll(dataManager.getDungeonLogsById(logIds, from, Math.min(from + PAGE_SIZE, logIds.length)));
+        }
+        return logs;
+    }
+
+    private static BackupSegment.Contents withLogs(BackupSegment.Contents contents, List<DungeonLog> logs) {
+        return new BackupSegment.Contents(contents.seq(), true, contents.createdAt(), contents.metrics(), contents.players(),
+                logs, contents.ingested(), contents.foldedThrough(), contents.rollups());
+    }
+
+    // 恢复出的内容按数据文件的格式写出
+    private static YamlConfiguration toDataConfig(MetricRegistry metrics, BackupStore.Restored restored) throws InvalidConfigurationException {
+        YamlConfiguration rollups = new YamlConfiguration();
+        rollups.loadFromString(restored.rollups());
+        YamlConfiguration data = new YamlConfiguration();
+        DataManager.copyLeaves(rollups, data, "");
+        data.set("rollups.foldedThrough", restored.foldedThrough());
+        ConfigurationSection players = data.createSection("players");
+        restored.players().forEach((uuid, row) -> DataManager.writePlayer(players, metrics, uuid, row));
+        DataManager.writeIngested(data, restored.ingested());
+        return data;
+    }
+}
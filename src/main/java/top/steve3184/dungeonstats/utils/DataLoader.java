@@ -0,0 +1,113 @@
+package top.steve3184.dungeonstats.utils;
+
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Reads the data file and dungeon log pages and builds the in-memory indexes.
+ *
+ * Does not touch the server, so it can run on a worker thread while the server finishes
+ * starting (and outside a server, for benchmarks).
+ */
+public final class DataLoader {
+
+    private static final List<String> ROLLUP_PERIODS = List.of("day", "week");
+
+    public record Loaded(YamlConfiguration config, PlayerStore players, LogStore logs, RunAnalytics analytics,
+                         IngestedRuns ingested, int migratedLogs, long nanos) {}
+
+    private DataLoader() {}
+
+    /**
+     * @param metrics the metrics to read for every player; names missing from the data file are left null
+     */
+    public static Loaded load(MetricRegistry metrics, File dataFile, File logDirectory, Logger logger) throws IOException {
+        long start = System.nanoTime();
+        YamlConfiguration config = YamlConfiguration.loadConfiguration(dataFile);
+        RunAnalytics analytics = new RunAnalytics();
+
+        LogStore logs = LogStore.open(new YamlLogPages(logDirectory, logger), logger, analytics::record);
+        // 旧版本把日志存在 data.yml 里，第一次启动时搬到分页文件
+        int migrated = 0;
+        ConfigurationSection legacyLogs = config.getConfigurationSection("logs");
+        if (legacyLogs != null) {
+            migrated = logs.importLogs(YamlLogPages.readAll(legacyLogs), analytics::record);
+            config.set("logs", null);
+        }
+        for (String period : ROLLUP_PERIODS) {
+            ConfigurationSection rollups = config.getConfigurationSection("rollups." + period);
+            if (rollups == null) continue;
+            for (String key : rollups.getKeys(false)) {
+                analytics.record(RunAggregate.fromMap(rollups.getConfigurationSection(key).getValues(false)));
+            }
+        }
+
+        PlayerStore players = loadPlayers(metrics, config.getConfigurationSection("players"));
+        // 第一次启动时从第 1 赛季开始
+        players.startSeason(Math.max(1, config.getInt("seasons.current", 1)),
+                config.getLong("seasons.startedAt", System.currentTimeMillis()));
+        return new Loaded(config, players, logs, analytics, loadIngested(config, logs, metrics.defaultArena()), migrated, System.nanoTime() - start);
+    }
+
+    private static PlayerStore loadPlayers(MetricRegistry metrics, ConfigurationSection players) {
+        String[] keys = players == null ? new String[0] : players.getKeys(false).toArray(new String[0]);
+        return PlayerStore.load(metrics, keys, i -> {
+            ConfigurationSection section = players.getConfigurationSection(keys[i]);
+            if (section == null) return null;
+            // 每个指标一项，以指标 key 命名，新加的指标在旧数据里没有就是 0
+            long[] values = new long[metrics.size()];
+            for (MetricRegistry.Metric metric : metrics.all()) {
+                values[metric.id()] = section.getLong(metric.key(), 0);
+            }
+            // 本赛季的值放在 season 下面，seasonId 是它们所属的赛季
+            ConfigurationSection season = section.getConfigurationSection("season");
+            long[] seasonValues = null;
+            if (season != null) {
+                seasonValues = new long[metrics.size()];
+                for (MetricRegistry.Metric metric : metrics.all()) {
+                    seasonValues[metric.id()] = season.getLong(metric.key(), 0);
+                }
+            }
+            return new PlayerStore.Row(
+                    values,
+                    section.getLong("lastUpdated", 0),
+                    section.getString("name"),
+                    toArray(section.getIntegerList("killsByLevel")),
+                    section.getInt("seasonId", 0),
+                    seasonValues);
+        });
+    }
+
+    // 旧数据没有按等级的击杀，返回 null
+    private static int[] toArray(List<Integer> counts) {
+        if (counts == null || counts.isEmpty()) return null;
+        int[] result = new int[KillLevels.BANDS];
+        for (int band = 0; band < Math.min(counts.size(), KillLevels.BANDS); band++) {
+            result[band] = counts.get(band);
+        }
+        return result;
+    }
+
+    private static IngestedRuns loadIngested(YamlConfiguration config, LogStore logs, String defaultArena) {
+        if (config.contains("ingestion.runs")) {
+            return IngestedRuns.decode(config.getString("ingestion.runs"), defaultArena);
+        }
+        // 没有竞技场之前的记录编号都属于第一个竞技场
+        if (config.contains("ingestion.recordIds")) {
+            return IngestedRuns.decode(config.getString("ingestion.recordIds"), defaultArena);
+        }
+        // 更旧的数据：已存的日志和已压缩的部分都算作处理过
+        IngestedRuns runs = new IngestedRuns();
+        RecordIdSet ingested = runs.of(defaultArena);
+        ingested.addRange(1, config.getInt("rollups.foldedThrough", 0));
+        for (int id : logs.ids(0)) {
+            ingested.add(id);
+        }
+        return runs;
+    }
+}
@@ -1,135 +1,269 @@
 package top.steve3184.dungeonstats.utils;
 
+import org.bukkit.GameMode;
+import org.bukkit.attribute.Attribute;
 import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.entity.Player;
+import org.bukkit.scoreboard.Scoreboard;
+import org.bukkit.scoreboard.Team;
 import top.steve3184.dungeonstats.DungeonStats;
 import top.steve3184.dungeonstats.model.DungeonLog;
-import top.steve3184.dungeonstats.model.PlayerStats;
+import top.steve3184.dungeonstats.model.OnlinePlayer;
+import top.steve3184.dungeonstats.model.RunRollup;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.temporal.TemporalAdjusters;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
 
-        public class DataManager {
+        /**
+         * Connects the {@link StatsEngine} to the server: loads and saves the data file, reads
+         * online players and queues kills from events. Everything else lives in the engine.
+         */
+        public class DataManager extends StatsEngine {
 
             private final DungeonStats plugin;
+            // 本 tick 内的击杀先合并在这里，tick 结束时统一提交
+            private StatsBatch tickBatch = new StatsBatch();
+
+            private static final List<String> ROLLUP_PERIODS = List.of("day", "week");
+            private static final int NAME_LOOKUP_BATCH = 500;
 
             public DataManager(DungeonStats plugin) {
+                super(plugin.getLogger());
                 this.plugin = plugin;
             }
 
-            public void saveDungeonLog(DungeonLog log) {
-                String path = "logs." + log.recordId();
-                plugin.getDataConfig().set(path + ".maxLevel", log.maxLevel());
-                plugin.getDataConfig().set(path + ".doorsOpened", log.doorsOpened());
-                plugin.getDataConfig().set(path + ".enemiesKilled", log.enemiesKilled());
-                plugin.getDataConfig().set(path + ".bossesDefeated", log.bossesDefeated());
-                plugin.getDataConfig().set(path + ".durationSeconds", log.durationSeconds());
-                // 不在这里保存，由周期性任务统一保存
-            }
-
-            public List<DungeonLog> getDungeonLogs(int limit) {
-                ConfigurationSection logsSection = plugin.getDataConfig().getConfigurationSection("logs");
-                if (logsSection == null) return Collections.emptyList();
-
-                List<DungeonLog> logs = new ArrayList<>();
-                List<String> sortedKeys = logsSection.getKeys(false).stream()
-                        .sorted(Comparator.comparingInt(s -> Integer.parseInt((String) s)).reversed())
-                        .collect(Collectors.toList());
-
-                for (String key : sortedKeys) {
-                    if (limit > 0 && logs.size() >= limit) break;
-                    String path = "logs." + key;
-                    logs.add(new DungeonLog(
-                            Integer.parseInt(key),
-                            plugin.getDataConfig().getInt(path + ".maxLevel"),
-                            plugin.getDataConfig().getInt(path + ".doorsOpened"),
-                            plugin.getDataConfig().getInt(path + ".enemiesKilled"),
-                            plugin.getDataConfig().getInt(path + ".bossesDefeated"),
-                            plugin.getDataConfig().getLong(path + ".durationSeconds")
-                    ));
+            /**
+             * Loads the data file and log pages on a worker thread and builds the indexes there.
+             * Until {@link #isReady()}, queries return nothing and applied batches are queued.
+             *
+             * @return completes on the main thread once the stats are installed
+             */
+            public CompletableFuture<Void> warmUp(MetricRegistry metrics, File dataFile, File logDirectory) {
+                plugin.getLogger().info("Loading stats in the background...");
+                CompletableFuture<Void> installed = new CompletableFuture<>();
+                CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return DataLoader.load(metrics, dataFile, logDirectory, plugin.getLogger());
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }).whenComplete((loaded, error) -> plugin.getServer().getScheduler().runTask(plugin, () -> {
+                    if (error != null) {
+                        // 不标记为就绪，避免用空数据覆盖 data.yml
+                        plugin.getLogger().severe("Failed to load stats! Nothing will be saved until the plugin is restarted.");
+                        error.printStackTrace();
+                        installed.completeExceptionally(error);
+                        return;
+                    }
+                    install(loaded);
+                    installed.complete(null);
+                }));
+                return installed;
+            }
+
+            private void install(DataLoader.Loaded loaded) {
+                plugin.setDataConfig(loaded.config());
+                install(loaded.players(), loaded.logs(), loaded.analytics(), loaded.ingested(),
+                        loadRollups(), loaded.config().getInt("rollups.foldedThrough", 0));
+                plugin.getLogger().info(String.format("Loaded %d players and %d dungeon logs in %.1f ms.",
+                        countPlayers(), countLogs(), loaded.nanos() / 1_000_000.0));
+                if (loaded.migratedLogs() > 0) {
+                    plugin.getLogger().info("Moved " + loaded.migratedLogs() + " dungeon logs from the data file into logs/.");
+                    plugin.saveDataConfig();
                 }
-                return logs;
+                List<UUID> nameless = players().playersWithoutName();
+                if (!nameless.isEmpty()) lookUpNames(players(), nameless, 0);
             }
 
-            public void incrementKillCount(Player player) {
-                String path = "players." + player.getUniqueId() + ".kills";
-                long currentKills = plugin.getDataConfig().getLong(path, 0);
-                plugin.getDataConfig().set(path, currentKills + 1);
+            /**
+             * Asks the server for the names the data file never stored, a batch per tick on the main
+             * thread; found names are saved with the player. Players who join get theirs from
+             * {@link #updateName} anyway.
+             */
+            private void lookUpNames(PlayerStore owner, List<UUID> nameless, int from) {
+                if (players() != owner) return; // 重新加载过，剩下的交给新数据
+                int to = Math.min(from + NAME_LOOKUP_BATCH, nameless.size());
+                for (UUID uuid : nameless.subList(from, to)) {
+                    String name = plugin.getServer().getOfflinePlayer(uuid).getName();
+                    if (name != null) updateName(uuid, name);
+                }
+                if (to < nameless.size()) {
+                    plugin.getTickScheduler().submit("name-lookup", () -> lookUpNames(owner, nameless, to));
+                }
             }
 
-            public void incrementPlayTime(Player player) {
-                String path = "players." + player.getUniqueId() + ".playtime";
-                long currentPlaytime = plugin.getDataConfig().getLong(path, 0);
-                plugin.getDataConfig().set(path, currentPlaytime + 1);
+            /** Writes in-memory changes into the data file configuration and saves changed log pages. */
+            public void flush() throws IOException {
+                if (!isReady()) return;
+                ConfigurationSection existing = plugin.getDataConfig().getConfigurationSection("players");
+                ConfigurationSection section = existing != null ? existing : plugin.getDataConfig().createSection("players");
+                MetricRegistry metrics = players().registry();
+                players().flushTo((uuid, row) -> writePlayer(section, metrics, uuid, row));
+                writeIngested(plugin.getDataConfig(), ingested().encode());
+                writeSeason();
+                logs().flush();
             }
 
-            public void updatePlayerMaxLevel(String playerName, int level) {
-                PlayerStats stats = getPlayerStats(playerName);
-                if (stats == null) return; // Should not happen if player exists
+            /** Stores the {@link IngestedRuns#encode() encoded} run IDs, replacing the record IDs of older versions. */
+            public static void writeIngested(ConfigurationSection data, String ingested) {
+                data.set("ingestion.runs", ingested);
+                data.set("ingestion.recordIds", null);
+            }
 
-                // Inefficient lookup by name, but works for this scope.
-                ConfigurationSection playersSection = plugin.getDataConfig().getConfigurationSection("players");
-                if (playersSection == null) return;
-                for (String uuidStr : playersSection.getKeys(false)) {
-                    String name = plugin.getServer().getOfflinePlayer(UUID.fromString(uuidStr)).getName();
-                    if (playerName.equalsIgnoreCase(name)) {
-                        String path = "players." + uuidStr + ".maxLevel";
-                        int currentMax = plugin.getDataConfig().getInt(path, 0);
-                        if (level > currentMax) {
-                            plugin.getDataConfig().set(path, level);
-                        }
-                        return;
+            /** Writes one player in the data file format; {@code row} holds a value for each of {@code metrics}. */
+            public static void writePlayer(ConfigurationSection players, MetricRegistry metrics, UUID uuid, PlayerStore.Row row) {
+                String path = uuid.toString();
+                for (MetricRegistry.Metric metric : metrics.all()) {
+                    players.set(path + "." + metric.key(), row.values()[metric.id()]);
+                }
+                players.set(path + ".lastUpdated", row.lastUpdated());
+                if (row.name() != null) players.set(path + ".name", row.name());
+                // 一个整数列表，每个等级段一个数
+                players.set(path + ".killsByLevel", row.killsByLevel() == null ? null
+                        : Arrays.stream(row.killsByLevel()).boxed().toList());
+                players.set(path + ".seasonId", row.seasonValues() == null ? null : row.season());
+                players.set(path + ".season", null);
+                if (row.seasonValues() != null) {
+                    for (MetricRegistry.Metric metric : metrics.all()) {
+                        players.set(path + ".season." + metric.key(), row.seasonValues()[metric.id()]);
                     }
                 }
             }
 
-            public PlayerStats getPlayerStats(String playerName) {
-                ConfigurationSection playersSection = plugin.getDataConfig().getConfigurationSection("players");
-                if (playersSection == null) return null;
-
-                for (String uuidStr : playersSection.getKeys(false)) {
-                    UUID uuid = UUID.fromString(uuidStr);
-                    String name = plugin.getServer().getOfflinePlayer(uuid).getName();
-                    if (name != null && playerName.equalsIgnoreCase(name)) {
-                        return new PlayerStats(
-                                name,
-                                plugin.getDataConfig().getLong("players." + uuidStr + ".kills", 0),
-                                plugin.getDataConfig().getLong("players." + uuidStr + ".playtime", 0),
-                                plugin.getDataConfig().getInt("players." + uuidStr + ".maxLevel", 0)
-                        );
+            /** The rollups and seasons sections of the data file as YAML, for backups. */
+            public String rollupsYaml() {
+                YamlConfiguration copy = new YamlConfiguration();
+                for (String path : List.of("rollups", "seasons")) {
+                    ConfigurationSection section = plugin.getDataConfig().getConfigurationSection(path);
+                    if (section != null) {
+                        copyLeaves(section, copy, path + ".");
                     }
                 }
-                return null;
+                return copy.saveToString();
             }
 
-            public List<PlayerStats> getTopPlayers(String key, int limit) {
-                ConfigurationSection playersSection = plugin.getDataConfig().getConfigurationSection("players");
-                if (playersSection == null) return Collections.emptyList();
+            /**
+             * Starts the next season and records it in the data file configuration right away,
+             * so a backup taken before the next save already has it.
+             */
+            @Override
+            public PlayerSnapshot startNextSeason(long now) {
+                PlayerSnapshot ended = super.startNextSeason(now);
+                if (ended != null) writeSeason();
+                return ended;
+            }
 
-                List<PlayerStats> allStats = new ArrayList<>();
-                for (String uuidStr : playersSection.getKeys(false)) {
-                    UUID uuid = UUID.fromString(uuidStr);
-                    String name = plugin.getServer().getOfflinePlayer(uuid).getName();
-                    if (name == null) continue;
-                    allStats.add(new PlayerStats(
-                            name,
-                            plugin.getDataConfig().getLong("players." + uuidStr + ".kills", 0),
-                            plugin.getDataConfig().getLong("players." + uuidStr + ".playtime", 0),
-                            plugin.getDataConfig().getInt("players." + uuidStr + ".maxLevel", 0)
-                    ));
+            private void writeSeason() {
+                plugin.getDataConfig().set("seasons.current", players().season());
+                plugin.getDataConfig().set("seasons.startedAt", players().seasonStartedAt());
+            }
+
+            /** Copies every value below {@code from} into {@code to}, prefixing the paths. */
+            public static void copyLeaves(ConfigurationSection from, ConfigurationSection to, String prefix) {
+                for (String key : from.getKeys(true)) {
+                    Object value = from.get(key);
+                    if (!(value instanceof ConfigurationSection)) to.set(prefix + key, value);
+                }
+            }
+
+            /**
+             * Adds a kill of an enemy of the given level to the batch committed at the end of the tick,
+             * so kill waves cost one apply per tick.
+             */
+            public void queueKill(Player player, int enemyLevel) {
+                tickBatch.addKill(player.getUniqueId(), player.getName(), enemyLevel);
+                int arenaKills = plugin.getMetricRegistry().arenaMetric(MetricRegistry.KILLS,
+                        plugin.getArenas().indexOfWorld(player.getWorld().getName()));
+                if (arenaKills >= 0) tickBatch.add(player.getUniqueId(), player.getName(), arenaKills, 1);
+            }
+
+            /** Applies the kills queued during this tick. Runs every tick on the main thread. */
+            public void commitQueued() {
+                if (tickBatch.isEmpty()) return;
+                StatsBatch batch = tickBatch;
+                tickBatch = new StatsBatch();
+                apply(batch);
+            }
+
+            @Override
+            protected List<OnlinePlayer> collectOnlinePlayers() {
+                Scoreboard scoreboard = plugin.getServer().getScoreboardManager().getMainScoreboard();
+                List<OnlinePlayer> online = new ArrayList<>();
+                for (Player player : plugin.getServer().getOnlinePlayers()) {
+                    String status;
+                    // 旁观模式优先，其次看所在队伍
+                    if (player.getGameMode() == GameMode.SPECTATOR) {
+                        status = "spectator";
+                    } else {
+                        Team team = scoreboard.getEntryTeam(player.getName());
+                        if (team != null) {
+                            switch (team.getName().toLowerCase()) {
+                                case "waiting" -> status = "waiting";
+                                case "default" -> status = "ingame";
+                                default -> status = "unknown"; // 其他队伍名
+                            }
+                        } else {
+                            status = "unknown"; // 没有队伍
+                        }
+                    }
+                    online.add(new OnlinePlayer(player.getName(), status, player.getHealth(),
+                            player.getAttribute(Attribute.GENERIC_ARMOR).getValue()));
                 }
+                return online;
+            }
 
-                Comparator<PlayerStats> comparator = switch (key) {
-                    case "kills" -> Comparator.comparingLong(PlayerStats::kills).reversed();
-                    case "playtime" -> Comparator.comparingLong(PlayerStats::playtimeSeconds).reversed();
-                    case "maxLevel" -> Comparator.comparingInt(PlayerStats::maxLevel).reversed();
-                    default -> null;
-                };
+            /** Folds the given logs into per-period rollups and removes their detail records. */
+            public void foldLogs(int[] recordIds, int from, int to, String periodType, ZoneId zone) {
+                if (!isReady()) return;
+                Map<String, RunAggregate> touched = new HashMap<>();
+                int foldedThrough = foldedThrough();
+                for (int i = from; i < to; i++) {
+                    DungeonLog log = logs().get(recordIds[i]);
+                    if (log == null) continue;
+                    String period = periodKey(log.timestamp(), periodType, zone);
+                    touched.computeIfAbsent(period, key -> {
+                        ConfigurationSection existing = plugin.getDataConfig().getConfigurationSection("rollups." + periodType + "." + key);
+                        return existing == null ? new RunAggregate() : RunAggregate.fromMap(existing.getValues(false));
+                    }).add(log);
+                    logs().remove(log.recordId());
+                    foldedThrough = Math.max(foldedThrough, log.recordId());
+                }
+                for (Map.Entry<String, RunAggregate> entry : touched.entrySet()) {
+                    plugin.getDataConfig().createSection("rollups." + periodType + "." + entry.getKey(), entry.getValue().toMap());
+                }
+                plugin.getDataConfig().set("rollups.foldedThrough", foldedThrough);
+                logsFolded(foldedThrough, loadRollups());
+            }
 
-                if (comparator != null) {
-                    // Sorting is done here. The previous issue was likely a subtle logic error. This is a robust way.
-                    return allStats.stream().sorted(comparator).limit(limit).collect(Collectors.toList());
+            private static String periodKey(long timestamp, String periodType, ZoneId zone) {
+                if (timestamp <= 0) return "unknown";
+                LocalDate date = Instant.ofEpochMilli(timestamp).atZone(zone).toLocalDate();
+                if (periodType.equals("week")) {
+                    date = date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+                }
+                return date.toString();
+            }
+
+            // 从数据文件读取全部汇总，按时间倒序
+            private List<RunRollup> loadRollups() {
+                List<RunRollup> rollups = new ArrayList<>();
+                for (String period : ROLLUP_PERIODS) {
+                    ConfigurationSection section = plugin.getDataConfig().getConfigurationSection("rollups." + period);
+                    if (section == null) continue;
+                    for (String key : section.getKeys(false)) {
+                        rollups.add(RunAggregate.fromMap(section.getConfigurationSection(key).getValues(false)).toRollup(period, key));
+                    }
                 }
-                return Collections.emptyList();
+                rollups.sort(Comparator.comparingInt(RunRollup::lastRecordId).reversed());
+                return rollups;
             }
-        }
\ No newline at end of file
+        }
@@ -0,0 +1,158 @@
+package top.steve3184.dungeonstats.utils;
+
+import com.google.gson.stream.JsonWriter;
+import top.steve3184.dungeonstats.DungeonStats;
+import top.steve3184.dungeonstats.model.DungeonLog;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams players or dungeon runs as NDJSON or CSV, one row at a time.
+ *
+ * Must be called off the main thread. Players are copied into columns on the main thread in a
+ * single tick, so the export is a consistent point-in-time view. Runs never change once stored,
+ * so only their record IDs are captured on the main thread; the rows are then read from the log
+ * pages on the calling thread in fixed-size pages, keeping memory bounded.
+ */
+public class Exporter {
+
+    private static final int PAGE_SIZE = 1000;
+
+    public enum Format { NDJSON, CSV }
+
+    public record Options(Format format, int sinceRecordId, long sinceTime, boolean gzip) {
+
+        /** Reads {@code format}, {@code since}, {@code sinceTime} and {@code gzip} from query-style parameters. */
+        public static Options parse(Map<String, String> params) {
+            Format format = "csv".equalsIgnoreCase(params.get("format")) ? Format.CSV : Format.NDJSON;
+            int since = Integer.parseInt(params.getOrDefault("since", "0"));
+            long sinceTime = Long.parseLong(params.getOrDefault("sinceTime", "0"));
+            boolean gzip = Boolean.parseBoolean(params.getOrDefault("gzip", "false"));
+            return new Options(format, since, sinceTime, gzip);
+        }
+
+        public String fileExtension() {
+            return (format == Format.CSV ? ".csv" : ".ndjson") + (gzip ? ".gz" : "");
+        }
+
+        public String contentType() {
+            return format == Format.CSV ? "text/csv; charset=UTF-8" : "application/x-ndjson; charset=UTF-8";
+        }
+    }
+
+    private final DungeonStats plugin;
+    private final DataManager dataManager;
+
+    public Exporter(DungeonStats plugin, DataManager dataManager) {
+        this.plugin = plugin;
+        this.dataManager = dataManager;
+    }
+
+    /** @return the number of rows written */
+    public long exportPlayers(OutputStream out, Options options) throws IOException {
+        DataManager.PlayerColumns columns = onMainThread(() -> dataManager.snapshotPlayers(options.sinceTime()));
+        try (Writer writer = open(out, options)) {
+            if (options.format() == Format.CSV) {
+                writer.write("uuid,playerName,kills,playtimeSeconds,maxLevel,lastUpdated\n");
+            }
+            for (int i = 0; i < columns.size; i++) {
+                UUID uuid = new UUID(columns.uuidMost[i], columns.uuidLeast[i]);
+                String name = columns.names[i];
+                if (options.format() == Format.CSV) {
+                    writer.write(uuid + "," + csv(name) + "," + columns.kills[i] + "," + columns.playtime[i]
+                            + "," + columns.maxLevel[i] + "," + columns.lastUpdated[i] + "\n");
+                } else {
+                    StringWriter row = new StringWriter(128);
+                    JsonWriter json = new JsonWriter(row);
+                    json.beginObject()
+                            .name("uuid").value(uuid.toString())
+                            .name("playerName").value(name)
+                            .name("kills").value(columns.kills[i])
+                            .name("playtimeSeconds").value(columns.playtime[i])
+                            .name("maxLevel").value(columns.maxLevel[i])
+                            .name("lastUpdated").value(columns.lastUpdated[i])
+                            .endObject();
+                    writer.write(row.toString());
+                    writer.write('\n');
+                }
+            }
+            return columns.size;
+        }
+    }
+
+    /** @return the number of rows written */
+    public long exportRuns(OutputStream out, Options options) throws IOException {
+        int[] recordIds = onMainThread(() -> dataManager.getLogRecordIds(options.sinceRecordId()));
+        long rows = 0;
+        try (Writer writer = open(out, options)) {
+            if (options.format() == Format.CSV) {
+                writer.write("recordId,maxLevel,doorsOpened,enemiesKilled,bossesDefeated,durationSeconds,timestamp,arena,runId\n");
+            }
+            for (int from = 0; from < recordIds.length; from += PAGE_SIZE) {
+                List<DungeonLog> page = dataManager.getDungeonLogsById(recordIds, from, Math.min(from + PAGE_SIZE, recordIds.length));
+                for (DungeonLog log : page) {
+                    if (options.sinceTime() > 0 && log.timestamp() < options.sinceTime()) continue;
+                    if (options.format() == Format.CSV) {
+                        writer.write(log.recordId() + "," + log.maxLevel() + "," + log.doorsOpened() + "," + log.enemiesKilled()
+                                + "," + log.bossesDefeated() + "," + log.durationSeconds() + "," + log.timestamp()
+                                + "," + csv(dataManager.arenaOf(log)) + "," + log.runId() + "\n");
+                    } else {
+                        StringWriter row = new StringWriter(160);
+                        JsonWriter json = new JsonWriter(row);
+                        json.beginObject()
+                                .name("recordId").value(log.recordId())
+                                .name("maxLevel").value(log.maxLevel())
+                                .name("doorsOpened").value(log.doorsOpened())
+                                .name("enemiesKilled").value(log.enemiesKilled())
+                                .name("bossesDefeated").value(log.bossesDefeated())
+                                .name("durationSeconds").value(log.durationSeconds())
+                                .name("timestamp").value(log.timestamp())
+                                .name("arena").value(dataManager.arenaOf(log))
+                                .name("runId").value(log.runId())
+                                .endObject();
+                        writer.write(row.toString());
+                        writer.write('\n');
+                    }
+                    rows++;
+                }
+            }
+        }
+        return rows;
+    }
+
+    private Writer open(OutputStream out, Options options) throws IOException {
+        OutputStream target = options.gzip() ? new GZIPOutputStream(out, 64 * 1024) : out;
+        return new BufferedWriter(new OutputStreamWriter(target, StandardCharsets.UTF_8), 64 * 1024);
+    }
+
+    private <T> T onMainThread(Callable<T> task) throws IOException {
+        try {
+            return plugin.getServer().getScheduler().callSyncMethod(plugin, task).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Export interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to read data for export", e.getCause());
+        }
+    }
+
+    private static String csv(String value) {
+        if (value == null) return "";
+        if (value.contains(",") || value.contains("\"") || value.contains("\n")) {
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+        return value;
+    }
+}
@@ -0,0 +1,68 @@
+package top.steve3184.dungeonstats.utils;
+
+import top.steve3184.dungeonstats.DungeonStats;
+
+import java.time.ZoneId;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the data file bounded by folding old dungeon logs into per-day or per-week rollups.
+ *
+ * Each pass collects the logs outside the retention limits and folds them a batch at a time as
+ * deferrable jobs, so a large backlog is spread over many ticks instead of stalling one.
+ */
+public class LogCompactor {
+
+    private final DungeonStats plugin;
+    private final DataManager dataManager;
+    private TickScheduler.Job job;
+    private boolean running;
+
+    public LogCompactor(DungeonStats plugin, DataManager dataManager) {
+        this.plugin = plugin;
+        this.dataManager = dataManager;
+    }
+
+    public void start() {
+        stop();
+        if (!plugin.getConfig().getBoolean("retention.enabled", false)) {
+            return;
+        }
+        long interval = Math.max(1, plugin.getConfig().getLong("retention.interval-minutes", 60)) * 60 * 20L;
+        job = plugin.getTickScheduler().schedule("log-compaction", this::runPass, 200L, interval, true);
+    }
+
+    public void stop() {
+        if (job != null) job.cancel();
+        job = null;
+        running = false;
+    }
+
+    private void runPass() {
+        if (running || !dataManager.isReady()) return; // 上一轮还没处理完，或数据还没加载
+        int keepRuns = plugin.getConfig().getInt("retention.keep-runs", 1000);
+        int keepDays = plugin.getConfig().getInt("retention.keep-days", 0);
+        if (keepRuns <= 0 && keepDays <= 0) return;
+
+        long keepSince = keepDays > 0 ? System.currentTimeMillis() - TimeUnit.DAYS.toMillis(keepDays) : 0;
+        int[] candidates = dataManager.findCompactionCandidates(keepRuns, keepSince);
+        if (candidates.length == 0) return;
+
+        String periodType = plugin.getConfig().getString("retention.rollup-period", "day").equalsIgnoreCase("week") ? "week" : "day";
+        int batchSize = Math.max(1, plugin.getConfig().getInt("retention.batch-size", 500));
+        running = true;
+        plugin.getLogger().info("Compacting " + candidates.length + " dungeon logs into " + periodType + " rollups.");
+        foldBatch(job, candidates, 0, batchSize, periodType, ZoneId.systemDefault());
+    }
+
+    private void foldBatch(TickScheduler.Job owner, int[] candidates, int from, int batchSize, String periodType, ZoneId zone) {
+        if (job != owner) return; // 已停止或重新启动，剩余的留给下一轮
+        int to = Math.min(from + batchSize, candidates.length);
+        dataManager.foldLogs(candidates, from, to, periodType, zone);
+        if (to < candidates.length) {
+            plugin.getTickScheduler().submit("log-compaction", () -> foldBatch(owner, candidates, to, batchSize, periodType, zone));
+        } else {
+            running = false;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package top.steve3184.dungeonstats.utils;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+import top.steve3184.dungeonstats.DungeonStats;
+import top.steve3184.dungeonstats.metrics.Counter;
+import top.steve3184.dungeonstats.metrics.Metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Moves raw dungeon log pages from the log checker to the data store.
+ *
+ * The main thread offers raw pages of every arena; a pool of worker threads parses them in
+ * parallel, and the main thread applies the results on its next poll in the order the pages
+ * were offered, so record IDs are handed out in that order too. When {@code queue-capacity}
+ * pages are waiting the page is refused, so the caller can leave it in command storage and retry.
+ *
+ * A page taken from command storage is never dropped: restarting the pool on a reload leaves
+ * the pages already taken to finish on the old threads, and pages still unparsed at shutdown
+ * are written to {@value #PENDING_FILE} and offered again on the next start.
+ */
+public class LogIngestor {
+
+    private static final String PENDING_FILE = "pending-logs.yml";
+
+    private final DungeonStats plugin;
+    private final DataManager dataManager;
+    private final File pendingFile;
+    private final Counter refused = Metrics.counter("dungeonstats_log_queue_full_total", "Dungeon log pages left in storage because the parse queue was full");
+
+    private record Page(String arena, String raw, CompletableFuture<LogParser.ParsedResult> parsed) {}
+
+    // 按提交顺序排列，只在主线程读写
+    private final ArrayDeque<Page> pending = new ArrayDeque<>();
+    private int capacity = 1;
+    private ExecutorService parsers;
+
+    public LogIngestor(DungeonStats plugin, DataManager dataManager) {
+        this.plugin = plugin;
+        this.dataManager = dataManager;
+        this.pendingFile = new File(plugin.getDataFolder(), PENDING_FILE);
+    }
+
+    /** Starts a new parser pool, or replaces the running one without waiting for it. */
+    public void start() {
+        retire();
+        capacity = Math.max(1, plugin.getConfig().getInt("log-checker.queue-capacity", 256));
+        int threads = Math.max(1, plugin.getConfig().getInt("log-checker.parser-threads", 2));
+        AtomicInteger number = new AtomicInteger();
+        parsers = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "DungeonStats-LogParser-" + number.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        recoverPending();
+    }
+
+    /**
+     * Stops taking pages, e.g. when the log checker is turned off by a reload. Does not wait:
+     * pages already taken are parsed on the old threads and applied one tick at a time until
+     * none are left.
+     */
+    public void pause() {
+        retire();
+        applyRemaining();
+    }
+
+    /**
+     * Stops the parser threads on shutdown. Pages already taken out of command storage are
+     * applied if their parse finishes within 5 seconds; the rest are saved to be offered again
+     * on the next start.
+     */
+    public void stop() {
+        retire();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        for (Page page : pending) {
+            try {
+                page.parsed().get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                break;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                // applyParsed 会报告
+            }
+        }
+        applyParsed();
+        savePending();
+    }
+
+    // 不等待：已提交的页在旧线程上解析完，仍按顺序留在 pending 里
+    private void retire() {
+        if (parsers == null) return;
+        parsers.shutdown();
+        parsers = null;
+    }
+
+    private void applyRemaining() {
+        if (parsers != null) return; // 又启动了，由日志检查任务接着应用
+        applyParsed();
+        if (!pending.isEmpty()) {
+            plugin.getTickScheduler().submit("log-ingest", this::applyRemaining);
+        }
+    }
+
+    private void savePending() {
+        if (pending.isEmpty()) return;
+        List<Map<String, String>> pages = new ArrayList<>();
+        for (Page page : pending) {
+            pages.add(Map.of("arena", page.arena(), "raw", page.raw()));
+        }
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("pages", pages);
+        try {
+            YamlLogPages.saveAtomically(config, pendingFile);
+            plugin.getLogger().info("Saved " + pages.size() + " unparsed dungeon log pages to " + PENDING_FILE + "; they are ingested on the next start.");
+        } catch (IOException e) {
+            plugin.getLogger().severe("Failed to save " + pages.size() + " unparsed dungeon log pages!");
+            e.printStackTrace();
+        }
+        pending.clear();
+    }
+
+    // 上次关服时没解析完的页排在最前面；已经入库的会按 run ID 去重
+    private void recoverPending() {
+        if (!pendingFile.exists()) return;
+        List<Map<?, ?>> pages = YamlConfiguration.loadConfiguration(pendingFile).getMapList("pages");
+        for (Map<?, ?> page : pages) {
+            Object arena = page.get("arena");
+            Object raw = page.get("raw");
+            if (arena != null && raw != null) submit(arena.toString(), raw.toString());
+        }
+        if (!pendingFile.delete()) {
+            plugin.getLogger().warning("Could not delete " + PENDING_FILE + "; its pages will be offered again next start.");
+        }
+        plugin.getLogger().info("Offered " + pages.size() + " dungeon log pages saved at the last shutdown.");
+    }
+
+    private void submit(String arena, String raw) {
+        pending.add(new Page(arena, raw, CompletableFuture.supplyAsync(() -> LogParser.parse(raw, arena), parsers)));
+    }
+
+    /**
+     * @param arena the arena whose storage the page was read from
+     * @return false if the queue is full and the page was not taken
+     */
+    public boolean offer(String arena, String raw) {
+        if (parsers == null || pending.size() >= capacity) {
+            refused.inc();
+            return false;
+        }
+        submit(arena, raw);
+        return true;
+    }
+
+    /**
+     * Applies the parsed logs on the main thread, stopping at the first page that is still
+     * being parsed. Nothing is applied while the stats are not ready, e.g. during a restore.
+     * @return the number of logs applied
+     */
+    public int applyParsed() {
+        if (!dataManager.isReady()) return 0;
+        int applied = 0;
+        while (!pending.isEmpty() && pending.peek().parsed().isDone()) {
+            LogParser.ParsedResult result;
+            try {
+                result = pending.poll().parsed().get();
+            } catch (InterruptedException | ExecutionException e) {
+                // parse 自己会记录解析失败，这里只会是意外错误
+                plugin.getLogger().severe("Failed to parse a dungeon log!");
+                e.printStackTrace();
+                continue;
+            }
+            if (result != null && dataManager.ingestLog(result)) {
+                plugin.getLogger().info("Parsed Dungeon Log #" + result.dungeonLog.runId() + " of arena "
+                        + dataManager.arenaOf(result.dungeonLog) + " as record #" + result.dungeonLog.recordId());
+                applied++;
+            }
+        }
+        return applied;
+    }
+}
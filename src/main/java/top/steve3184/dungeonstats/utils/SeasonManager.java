@@ -0,0 +1,129 @@
+package top.steve3184.dungeonstats.utils;
+
+import top.steve3184.dungeonstats.DungeonStats;
+import top.steve3184.dungeonstats.season.SeasonArchive;
+import top.steve3184.dungeonstats.season.SeasonArchiveStore;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts seasons, by command or every {@code length-days}, and keeps the archives of finished ones.
+ *
+ * Starting a season only changes the season number on the main thread; the finished season's
+ * leaderboards are sorted from its last snapshot and written to {@code seasons/} on a worker
+ * thread, and become queryable once the archive is done.
+ */
+public class SeasonManager {
+
+    private static final long CHECK_INTERVAL = 60 * 20L;
+
+    private final DungeonStats plugin;
+    private final DataManager dataManager;
+    private TickScheduler.Job job;
+    private ExecutorService executor;
+    private SeasonArchiveStore store;
+    // 只在主线程读写
+    private boolean archiving;
+
+    public SeasonManager(DungeonStats plugin, DataManager dataManager) {
+        this.plugin = plugin;
+        this.dataManager = dataManager;
+    }
+
+    public void start() {
+        stop();
+        File directory = new File(plugin.getDataFolder(), plugin.getConfig().getString("seasons.directory", "seasons"));
+        SeasonArchiveStore target = new SeasonArchiveStore(directory.toPath(), plugin.getLogger());
+        store = target;
+        executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "DungeonStats-Season");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.execute(() -> {
+            try {
+                List<SeasonArchive> archives = target.loadAll();
+                plugin.getServer().getScheduler().runTask(plugin, () -> dataManager.setSeasonArchives(archives));
+            } catch (IOException e) {
+                plugin.getLogger().severe("Failed to read the season archives in " + directory + "!");
+                e.printStackTrace();
+            }
+        });
+        if (plugin.getConfig().getLong("seasons.length-days", 0) > 0) {
+            job = plugin.getTickScheduler().schedule("season-check", this::checkLength, CHECK_INTERVAL, CHECK_INTERVAL, true);
+        }
+    }
+
+    public void stop() {
+        if (job != null) job.cancel();
+        job = null;
+        if (executor == null) return;
+        // 等正在写的归档写完
+        executor.shutdown();
+        try {
+            executor.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        executor = null;
+        store = null;
+    }
+
+    private void checkLength() {
+        if (archiving || !dataManager.isReady()) return;
+        long length = TimeUnit.DAYS.toMillis(plugin.getConfig().getLong("seasons.length-days", 0));
+        if (length > 0 && System.currentTimeMillis() >= dataManager.getSeasonStartedAt() + length) {
+            startNextSeason();
+        }
+    }
+
+    /**
+     * Ends the current season and starts the next one. Must be called on the main thread.
+     * @return the archive of the season that ended, completed on the main thread once it is queryable
+     */
+    public CompletableFuture<SeasonArchive> startNextSeason() {
+        if (executor == null) return CompletableFuture.failedFuture(new IllegalStateException("Seasons are not running."));
+        if (archiving || !dataManager.isReady()) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Stats are loading or the last season is still being archived."));
+        }
+        long now = System.currentTimeMillis();
+        PlayerSnapshot ended = dataManager.startNextSeason(now);
+        archiving = true;
+        plugin.getLogger().info("Season " + ended.season() + " ended, season " + (ended.season() + 1) + " started.");
+
+        int limit = Math.max(1, plugin.getConfig().getInt("seasons.archive-top", 100));
+        SeasonArchiveStore target = store;
+        CompletableFuture<SeasonArchive> result = new CompletableFuture<>();
+        CompletableFuture.supplyAsync(() -> {
+            long start = System.nanoTime();
+            SeasonArchive archive = SeasonArchive.of(ended, now, limit);
+            try {
+                target.write(archive);
+                plugin.getLogger().info(String.format("Archived season %d: %d players, %d entries in %.1f ms.",
+                        archive.season(), archive.players(), archive.entries().size(), (System.nanoTime() - start) / 1_000_000.0));
+            } catch (IOException e) {
+                // 内存里的归档照常提供，只是重启后就没有了
+                plugin.getLogger().severe("Failed to write the archive of season " + archive.season() + "!");
+                e.printStackTrace();
+            }
+            return archive;
+        }, executor).whenComplete((archive, error) -> plugin.getServer().getScheduler().runTask(plugin, () -> {
+            archiving = false;
+            if (error != null) {
+                plugin.getLogger().severe("Failed to archive season " + ended.season() + "!");
+                error.printStackTrace();
+                result.completeExceptionally(error);
+                return;
+            }
+            dataManager.addSeasonArchive(archive);
+            result.complete(archive);
+        }));
+        return result;
+    }
+}
@@ -0,0 +1,260 @@
+package top.steve3184.dungeonstats.utils;
+
+import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.scheduler.BukkitTask;
+import top.steve3184.dungeonstats.metrics.Histogram;
+import top.steve3184.dungeonstats.metrics.Metrics;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the plugin's main-thread jobs under a per-tick time budget.
+ *
+ * Every job is timed and charged to the budget of the tick it runs in. Jobs marked as
+ * deferrable are postponed to a later tick once the budget is used up; the others always
+ * run. A watchdog thread samples the main thread's stack when a job overruns the slow-task
+ * threshold, and the job is then logged with its duration and that stack.
+ */
+public class TickScheduler {
+
+    private static final int MAX_LOGGED_FRAMES = 12;
+
+    private final JavaPlugin plugin;
+    private final Map<String, TaskStats> stats = new LinkedHashMap<>();
+    private final ArrayDeque<Job> deferred = new ArrayDeque<>();
+    private final List<Job> jobs = new ArrayList<>();
+
+    private long budgetNanos;
+    private long slowThresholdNanos;
+    private long usedThisTick;
+    private long ticks;
+    private long overBudgetTicks;
+    private long peakTickNanos;
+    private double averageTickNanos;
+    private BukkitTask tickTask;
+
+    // Written by the main thread, read by the watchdog
+    private volatile Thread mainThread;
+    private volatile String runningTask;
+    private volatile long runningSince;
+    private volatile StackTraceElement[] sampledStack;
+    private Thread watchdog;
+
+    public TickScheduler(JavaPlugin plugin) {
+        this.plugin = plugin;
+    }
+
+    /** Must be called on the main thread, after any {@code cancelTasks} for this plugin. */
+    public void start() {
+        stop();
+        reloadSettings();
+        mainThread = Thread.currentThread();
+        tickTask = plugin.getServer().getScheduler().runTaskTimer(plugin, this::onTick, 1L, 1L);
+
+        watchdog = new Thread(this::watch, "DungeonStats-Watchdog");
+        watchdog.setDaemon(true);
+        watchdog.start();
+    }
+
+    /** Re-reads the budget and slow-task threshold without touching scheduled jobs. */
+    public void reloadSettings() {
+        budgetNanos = TimeUnit.MICROSECONDS.toNanos((long) (plugin.getConfig().getDouble("performance.tick-budget-ms", 5.0) * 1000));
+        slowThresholdNanos = TimeUnit.MICROSECONDS.toNanos((long) (plugin.getConfig().getDouble("performance.slow-task-threshold-ms", 20.0) * 1000));
+    }
+
+    /** Cancels every job and the watchdog. Jobs must be scheduled again after {@link #start()}. */
+    public void stop() {
+        if (tickTask != null) tickTask.cancel();
+        tickTask = null;
+        for (Job job : new ArrayList<>(jobs)) {
+            job.cancel();
+        }
+        deferred.clear();
+        if (watchdog != null) watchdog.interrupt();
+        watchdog = null;
+    }
+
+    /**
+     * Schedules a repeating main-thread job.
+     *
+     * @param deferrable whether the job may be postponed to a later tick when the budget is spent
+     */
+    public Job schedule(String name, Runnable task, long delayTicks, long periodTicks, boolean deferrable) {
+        Job job = new Job(name, task, deferrable);
+        job.bukkitTask = plugin.getServer().getScheduler().runTaskTimer(plugin, job::due, delayTicks, periodTicks);
+        jobs.add(job);
+        return job;
+    }
+
+    /** Runs a one-off deferrable job on the main thread, as soon as there is budget for it. */
+    public void submit(String name, Runnable task) {
+        Job job = new Job(name, task, true);
+        job.oneShot = true;
+        plugin.getServer().getScheduler().runTask(plugin, job::due);
+    }
+
+    private void onTick() {
+        ticks++;
+        peakTickNanos = Math.max(peakTickNanos, usedThisTick);
+        averageTickNanos += (usedThisTick - averageTickNanos) / Math.min(ticks, 1200);
+        if (usedThisTick > budgetNanos) overBudgetTicks++;
+        usedThisTick = 0;
+
+        // Drain work postponed by earlier ticks while budget remains
+        while (!deferred.isEmpty() && usedThisTick < budgetNanos) {
+            Job job = deferred.poll();
+            job.queued = false;
+            if (!job.cancelled) job.run();
+        }
+    }
+
+    private void watch() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                return;
+            }
+            String task = runningTask;
+            long since = runningSince;
+            if (task != null && sampledStack == null && System.nanoTime() - since > slowThresholdNanos) {
+                Thread main = mainThread;
+                StackTraceElement[] stack = main == null ? null : main.getStackTrace();
+                // Only keep the sample if the same job is still running
+                if (task.equals(runningTask) && since == runningSince) {
+                    sampledStack = stack;
+                }
+            }
+        }
+    }
+
+    public synchronized Collection<TaskStats> getTaskStats() {
+        return new ArrayList<>(stats.values());
+    }
+
+    public long getBudgetNanos() { return budgetNanos; }
+    public long getSlowThresholdNanos() { return slowThresholdNanos; }
+    public long getTicks() { return ticks; }
+    public long getOverBudgetTicks() { return overBudgetTicks; }
+    public long getPeakTickNanos() { return peakTickNanos; }
+    public double getAverageTickNanos() { return averageTickNanos; }
+    public int getDeferredCount() { return deferred.size(); }
+
+    private synchronized TaskStats statsFor(String name) {
+        return stats.computeIfAbsent(name, TaskStats::new);
+    }
+
+    public final class Job {
+        private final String name;
+        private final Runnable task;
+        private final boolean deferrable;
+        private final TaskStats taskStats;
+        private BukkitTask bukkitTask;
+        private boolean oneShot;
+        private boolean queued;
+        private boolean cancelled;
+
+        private Job(String name, Runnable task, boolean deferrable) {
+            this.name = name;
+            this.task = task;
+            this.deferrable = deferrable;
+            this.taskStats = statsFor(name);
+        }
+
+        private void due() {
+            if (cancelled) return;
+            if (deferrable && usedThisTick >= budgetNanos) {
+                // A job that is already waiting is not queued twice
+                if (!queued) {
+                    queued = true;
+                    deferred.add(this);
+                    taskStats.deferrals++;
+                }
+                return;
+            }
+            run();
+        }
+
+        private void run() {
+            runningSince = System.nanoTime();
+            sampledStack = null;
+            runningTask = name;
+            try {
+                task.run();
+            } catch (Exception e) {
+                plugin.getLogger().severe("Task '" + name + "' failed: " + e);
+                e.printStackTrace();
+            } finally {
+                long elapsed = System.nanoTime() - runningSince;
+                runningTask = null;
+                usedThisTick += elapsed;
+                taskStats.record(elapsed);
+                if (elapsed > slowThresholdNanos) {
+                    taskStats.slowRuns++;
+                    logSlowTask(elapsed);
+                }
+            }
+        }
+
+        private void logSlowTask(long elapsed) {
+            StringBuilder message = new StringBuilder()
+                    .append("Slow task '").append(name).append("' took ")
+                    .append(String.format("%.2f", elapsed / 1_000_000.0)).append(" ms (threshold ")
+                    .append(String.format("%.2f", slowThresholdNanos / 1_000_000.0)).append(" ms)");
+            StackTraceElement[] stack = sampledStack;
+            if (stack != null) {
+                message.append(", sampled stack:");
+                for (int i = 0; i < Math.min(stack.length, MAX_LOGGED_FRAMES); i++) {
+                    message.append("\n    at ").append(stack[i]);
+                }
+            }
+            plugin.getLogger().warning(message.toString());
+        }
+
+        public void cancel() {
+            cancelled = true;
+            if (bukkitTask != null) bukkitTask.cancel();
+            // Individually cancelled jobs (e.g. on reload) must not pile up
+            jobs.remove(this);
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    public static final class TaskStats {
+        private final String name;
+        private final Histogram histogram;
+        private long runs;
+        private long totalNanos;
+        private long maxNanos;
+        private long deferrals;
+        private long slowRuns;
+
+        private TaskStats(String name) {
+            this.name = name;
+            this.histogram = Metrics.histogram("dungeonstats_task_duration_seconds", "Main-thread time per task run", "task", name);
+        }
+
+        private void record(long nanos) {
+            runs++;
+            totalNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+            histogram.observeNanos(nanos);
+        }
+
+        public String name() { return name; }
+        public long runs() { return runs; }
+        public long totalNanos() { return totalNanos; }
+        public long maxNanos() { return maxNanos; }
+        public long deferrals() { return deferrals; }
+        public long slowRuns() { return slowRuns; }
+    }
+}
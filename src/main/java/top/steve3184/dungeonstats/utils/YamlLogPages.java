@@ -0,0 +1,112 @@
+package top.steve3184.dungeonstats.utils;
+
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+import top.steve3184.dungeonstats.model.DungeonLog;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.logging.Logger;
+
+/** Stores each {@link LogStore} page as {@code <page>.yml} in a directory, keyed by record ID. */
+public class YamlLogPages implements LogStore.PageStorage {
+
+    private final File directory;
+    private final Logger logger;
+
+    public YamlLogPages(File directory, Logger logger) {
+        this.directory = directory;
+        this.logger = logger;
+        directory.mkdirs();
+    }
+
+    @Override
+    public int[] pages() {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(".yml"));
+        if (files == null) return new int[0];
+        int[] pages = new int[files.length];
+        int count = 0;
+        for (File file : files) {
+            String name = file.getName();
+            try {
+                pages[count] = Integer.parseInt(name.substring(0, name.length() - 4));
+                count++;
+            } catch (NumberFormatException e) {
+                logger.warning("Ignoring unexpected file in the log directory: " + name);
+            }
+        }
+        return Arrays.copyOf(pages, count);
+    }
+
+    @Override
+    public Collection<DungeonLog> read(int page) {
+        File file = fileOf(page);
+        if (!file.exists()) return List.of();
+        return readAll(YamlConfiguration.loadConfiguration(file));
+    }
+
+    @Override
+    public void write(int page, Collection<DungeonLog> logs) throws IOException {
+        File file = fileOf(page);
+        if (logs.isEmpty()) {
+            if (file.exists() && !file.delete()) throw new IOException("Could not delete " + file);
+            return;
+        }
+        YamlConfiguration config = new YamlConfiguration();
+        for (DungeonLog log : logs) {
+            String key = String.valueOf(log.recordId());
+            config.set(key + ".maxLevel", log.maxLevel());
+            config.set(key + ".doorsOpened", log.doorsOpened());
+            config.set(key + ".enemiesKilled", log.enemiesKilled());
+            config.set(key + ".bossesDefeated", log.bossesDefeated());
+            config.set(key + ".durationSeconds", log.durationSeconds());
+            config.set(key + ".timestamp", log.timestamp());
+            if (log.arena() != null) config.set(key + ".arena", log.arena());
+            if (log.runId() != log.recordId()) config.set(key + ".runId", log.runId());
+        }
+        saveAtomically(config, file);
+    }
+
+    /**
+     * Saves to a temporary file and moves it over {@code file}, so a crash or a concurrent
+     * backup never sees a half-written file.
+     */
+    public static void saveAtomically(FileConfiguration config, File file) throws IOException {
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        config.save(tmp);
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** Reads logs stored as sections keyed by record ID, the format of both pages and the old data file. */
+    public static List<DungeonLog> readAll(ConfigurationSection logs) {
+        List<DungeonLog> result = new ArrayList<>();
+        for (String key : logs.getKeys(false)) {
+            ConfigurationSection section = logs.getConfigurationSection(key);
+            if (section == null) continue;
+            int recordId = Integer.parseInt(key);
+            result.add(new DungeonLog(
+                    recordId,
+                    section.getInt("maxLevel"),
+                    section.getInt("doorsOpened"),
+                    section.getInt("enemiesKilled"),
+                    section.getInt("bossesDefeated"),
+                    section.getLong("durationSeconds"),
+                    section.getLong("timestamp", 0),
+                    section.getString("arena"),
+                    section.getInt("runId", recordId)
+            ));
+        }
+        return result;
+    }
+
+    private File fileOf(int page) {
+        return new File(directory, page + ".yml");
+    }
+}
@@ -0,0 +1,592 @@
+package top.steve3184.dungeonstats.perf;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpServer;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.YamlConfiguration;
+import top.steve3184.dungeonstats.api.PlayerStatsHandler;
+import top.steve3184.dungeonstats.api.PlayersHandler;
+import top.steve3184.dungeonstats.api.StatsHandler;
+import top.steve3184.dungeonstats.api.TopHandler;
+import top.steve3184.dungeonstats.model.OnlinePlayer;
+import top.steve3184.dungeonstats.utils.DataManager;
+import top.steve3184.dungeonstats.utils.IngestedRuns;
+import top.steve3184.dungeonstats.utils.LogParser;
+import top.steve3184.dungeonstats.utils.LogStore;
+import top.steve3184.dungeonstats.utils.MetricRegistry;
+import top.steve3184.dungeonstats.utils.PlayerStore;
+import top.steve3184.dungeonstats.utils.QuantileSketch;
+import top.steve3184.dungeonstats.utils.RunAnalytics;
+import top.steve3184.dungeonstats.utils.StatsBatch;
+import top.steve3184.dungeonstats.utils.StatsEngine;
+import top.steve3184.dungeonstats.utils.YamlLogPages;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Runs the plugin's main-thread work for simulated days or weeks, to find stalls and memory
+ * growth that only show up after a long time in production.
+ *
+ * Usage: {@code ./gradlew soakSimulator -Pdays=14 -Pplayers=20000 -Ponline=60 -PnewPlayers=500 -Parenas=2 -Pclients=8}
+ *
+ * Every game tick is simulated back to back, with the jobs the plugin schedules at their real
+ * intervals: kill bursts queued as the kill listener does and committed each tick, snapshot
+ * publishing, playtime every second, the log checker offering generated {@code dun:log} pages
+ * to a parser pool and applying them in order, hologram leaderboards, and saving the data file
+ * and log pages every five minutes. Meanwhile {@code clients} threads query the API handlers over
+ * loopback. The population grows by {@code newPlayers} a day and the online players rotate.
+ *
+ * The report has the tick cost distribution overall and per job, the worst ticks with the jobs
+ * that ran in them, and per simulated day the heap after a full GC, the data file and log page
+ * sizes, so two versions can be diffed.
+ */
+public final class SoakSimulator {
+
+    private static final Logger LOGGER = Logger.getLogger("SoakSimulator");
+    private static final int TICKS_PER_DAY = 20 * 60 * 60 * 24;
+    // 和插件的默认间隔一致
+    private static final int PLAYTIME_INTERVAL = 20;
+    private static final int LOG_CHECK_INTERVAL = 100;
+    private static final int HOLOGRAM_INTERVAL = 10 * 20;
+    private static final int SAVE_INTERVAL = 6000;
+    private static final int ROTATE_INTERVAL = 5 * 60 * 20;
+    private static final int WORST_TICKS = 20;
+    private static final List<String> JOBS = List.of("kills", "stats-commit", "snapshot-publish", "playtime-tracker",
+            "log-checker", "hologram-refresh", "data-save");
+
+    private final Random random = new Random(42);
+    private final SoakEngine engine = new SoakEngine();
+    private final MetricRegistry metrics;
+    private final Path directory;
+    private final File dataFile;
+    private final YamlConfiguration data = new YamlConfiguration();
+    private final ExecutorService parsers;
+    private final ArrayDeque<CompletableFuture<LogParser.ParsedResult>> parsing = new ArrayDeque<>();
+
+    private final List<String> population = new ArrayList<>();
+    private final List<Integer> online = new ArrayList<>();
+    private final int[] nextRunId;
+    private StatsBatch tickBatch = new StatsBatch();
+
+    private final QuantileSketch tickMicros = new QuantileSketch();
+    private final Map<String, QuantileSketch> jobMicros = new LinkedHashMap<>();
+    private final Map<String, Long> jobTotalNanos = new LinkedHashMap<>();
+    private final PriorityQueue<WorstTick> worst = new PriorityQueue<>(Comparator.comparingLong(WorstTick::nanos));
+    private long tickTotalNanos;
+    private long runsFinished;
+    private long killsQueued;
+
+    private record WorstTick(long tick, long nanos, Map<String, Long> jobMicros) {}
+
+    /** A StatsEngine that saves like {@link DataManager#flush()}, without a server. */
+    private static final class SoakEngine extends StatsEngine {
+        SoakEngine() {
+            super(LOGGER);
+        }
+
+        void flush(YamlConfiguration data) throws IOException {
+            ConfigurationSection existing = data.getConfigurationSection("players");
+            ConfigurationSection section = existing != null ? existing : data.createSection("players");
+            MetricRegistry registry = players().registry();
+            players().flushTo((uuid, row) -> DataManager.writePlayer(section, registry, uuid, row));
+            DataManager.writeIngested(data, ingested().encode());
+            logs().flush();
+        }
+    }
+
+    private SoakSimulator(MetricRegistry metrics, Path directory, int parserThreads) {
+        this.metrics = metrics;
+        this.directory = directory;
+        this.dataFile = directory.resolve("data.yml").toFile();
+        this.nextRunId = new int[metrics.arenas().size()];
+        this.parsers = Executors.newFixedThreadPool(parserThreads, r -> {
+            Thread thread = new Thread(r, "DungeonStats-LogParser");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (String job : JOBS) {
+            jobMicros.put(job, new QuantileSketch());
+            jobTotalNanos.put(job, 0L);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int days = args.length > 0 ? Integer.parseInt(args[0]) : 14;
+        int players = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+        int onlineCount = args.length > 2 ? Integer.parseInt(args[2]) : 60;
+        int newPlayersPerDay = args.length > 3 ? Integer.parseInt(args[3]) : 500;
+        int arenaCount = args.length > 4 ? Integer.parseInt(args[4]) : 2;
+        int clients = args.length > 5 ? Integer.parseInt(args[5]) : 8;
+        File output = new File(args.length > 6 ? args[6] : "soak-simulator.json");
+        // 每次保存都会打日志，刷屏没有意义
+        Logger.getLogger("").setLevel(Level.WARNING);
+
+        List<String> arenas = new ArrayList<>();
+        for (int i = 1; i <= arenaCount; i++) arenas.add("arena" + i);
+        MetricRegistry metrics = MetricRegistry.builder()
+                .add("runs", "Dungeon Runs", MetricRegistry.Type.COUNTER, MetricRegistry.Source.RUNS, false)
+                .add("bossesDefeated", "Bosses Defeated", MetricRegistry.Type.COUNTER, MetricRegistry.Source.RUN_BOSSES, false)
+                .add("doorsOpened", "Doors Opened", MetricRegistry.Type.COUNTER, MetricRegistry.Source.RUN_DOORS, false)
+                .arenas(arenas)
+                .build();
+
+        Path directory = Files.createTempDirectory("dungeonstats-soak");
+        HttpServer server = null;
+        AtomicBoolean running = new AtomicBoolean(true);
+        ApiClients api = null;
+        try {
+            SoakSimulator simulator = new SoakSimulator(metrics, directory, 2);
+            long start = System.nanoTime();
+            simulator.generate(players, onlineCount);
+            System.out.printf("Generated %d players in %.1f ms, data file %d bytes%n", players,
+                    (System.nanoTime() - start) / 1_000_000.0, simulator.dataFile.length());
+
+            Gson gson = new Gson();
+            server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+            server.createContext("/players", new PlayersHandler(simulator.engine, gson));
+            server.createContext("/stats", new StatsHandler(simulator.engine, gson));
+            server.createContext("/playerstats", new PlayerStatsHandler(simulator.engine, gson));
+            server.createContext("/top", new TopHandler(simulator.engine, gson));
+            // 和插件一样只用一个分发线程
+            server.setExecutor(null);
+            server.start();
+            api = new ApiClients(server.getAddress().getPort(), simulator.population, metrics.arenas(), clients, running);
+
+            List<Map<String, Object>> daily = new ArrayList<>();
+            daily.add(simulator.sample(0, new QuantileSketch(), 0));
+            long wallStart = System.nanoTime();
+            for (int day = 1; day <= days; day++) {
+                QuantileSketch dayTicks = new QuantileSketch();
+                long dayWorst = simulator.runDay(day, onlineCount, newPlayersPerDay, dayTicks);
+                Map<String, Object> sample = simulator.sample(day, dayTicks, dayWorst);
+                daily.add(sample);
+                System.out.printf("day %3d  players %8s  heap %7.1f MB  data.yml %8.1f KB  logs %8.1f KB  tick p99 %5d us  worst %8.1f ms  api %d%n",
+                        day, sample.get("players"), (long) sample.get("heapBytes") / 1048576.0,
+                        (long) sample.get("dataFileBytes") / 1024.0, (long) sample.get("logPageBytes") / 1024.0,
+                        sample.get("tickP99Micros"), dayWorst / 1_000_000.0, api.requests());
+            }
+            long wallNanos = System.nanoTime() - wallStart;
+            running.set(false);
+            api.close();
+
+            Map<String, Object> report = new LinkedHashMap<>();
+            Map<String, Object> config = new LinkedHashMap<>();
+            config.put("days", days);
+            config.put("players", players);
+            config.put("online", onlineCount);
+            config.put("newPlayersPerDay", newPlayersPerDay);
+            config.put("arenas", arenaCount);
+            config.put("clients", clients);
+            config.put("javaVersion", System.getProperty("java.version"));
+            config.put("availableProcessors", Runtime.getRuntime().availableProcessors());
+            report.put("config", config);
+            report.put("wallSeconds", wallNanos / 1_000_000_000.0);
+            report.put("simulatedSecondsPerWallSecond", (double) days * TICKS_PER_DAY / 20 / (wallNanos / 1_000_000_000.0));
+            report.put("ticks", simulator.tickReport());
+            report.put("worstTicks", simulator.worstReport());
+            report.put("daily", daily);
+            report.put("api", api.report());
+
+            String json = new GsonBuilder().setPrettyPrinting().create().toJson(report);
+            if (output.getParentFile() != null) output.getParentFile().mkdirs();
+            Files.writeString(output.toPath(), json, StandardCharsets.UTF_8);
+            System.out.println(json);
+            System.out.println("Report written to " + output.getAbsolutePath());
+        } finally {
+            running.set(false);
+            if (api != null) api.close();
+            if (server != null) server.stop(0);
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+
+    // 初始数据：已有玩家写进 data.yml，然后像插件启动一样从头加载
+    private void generate(int players, int onlineCount) throws IOException {
+        long now = System.currentTimeMillis();
+        PlayerStore store = new PlayerStore(metrics);
+        StatsBatch batch = new StatsBatch();
+        for (int i = 0; i < players; i++) {
+            UUID uuid = uuidOf(population.size());
+            String name = "Player" + population.size();
+            population.add(name);
+            batch.addKills(uuid, name, random.nextInt(50_000));
+            batch.addPlaytime(uuid, name, random.nextInt(1_000_000));
+            batch.raiseMaxLevel(name, random.nextInt(120));
+        }
+        store.apply(batch, now);
+        LogStore logs = LogStore.open(new YamlLogPages(directory.resolve("logs").toFile(), LOGGER), LOGGER, log -> {});
+        engine.install(store, logs, new RunAnalytics(), new IngestedRuns(), List.of(), 0);
+        engine.flush(data);
+        YamlLogPages.saveAtomically(data, dataFile);
+        while (online.size() < Math.min(onlineCount, population.size())) {
+            int player = random.nextInt(population.size());
+            if (!online.contains(player)) online.add(player);
+        }
+        engine.publish(onlinePlayers());
+    }
+
+    /** @return the worst tick of the day in nanoseconds */
+    private long runDay(int day, int onlineCount, int newPlayersPerDay, QuantileSketch dayTicks) throws IOException {
+        long dayWorst = 0;
+        long firstTick = (long) (day - 1) * TICKS_PER_DAY;
+        Map<String, Long> jobs = new LinkedHashMap<>();
+        for (long tick = firstTick; tick < firstTick + TICKS_PER_DAY; tick++) {
+            jobs.clear();
+            long tickStart = System.nanoTime();
+
+            // 击杀事件：每个在线玩家平均十秒清一群怪
+            long start = System.nanoTime();
+            for (int player : online) {
+                if (random.nextInt(200) != 0) continue;
+                int burst = 1 + random.nextInt(random.nextInt(10) == 0 ? 12 : 3);
+                for (int i = 0; i < burst; i++) {
+                    tickBatch.addKill(uuidOf(player), population.get(player), random.nextInt(80));
+                    killsQueued++;
+                }
+            }
+            time(jobs, "kills", start);
+
+            start = System.nanoTime();
+            if (!tickBatch.isEmpty()) {
+                StatsBatch batch = tickBatch;
+                tickBatch = new StatsBatch();
+                engine.apply(batch);
+            }
+            time(jobs, "stats-commit", start);
+
+            if (tick % PLAYTIME_INTERVAL == 0) {
+                start = System.nanoTime();
+                StatsBatch batch = new StatsBatch();
+                for (int player : online) {
+                    batch.addPlaytime(uuidOf(player), population.get(player), 1);
+                    int arena = metrics.arenaMetric(MetricRegistry.PLAYTIME, player % metrics.arenas().size());
+                    if (arena >= 0) batch.add(uuidOf(player), population.get(player), arena, 1);
+                }
+                engine.apply(batch);
+                time(jobs, "playtime-tracker", start);
+            }
+            if (tick % LOG_CHECK_INTERVAL == 0) {
+                start = System.nanoTime();
+                applyParsed();
+                offerFinishedRuns();
+                time(jobs, "log-checker", start);
+            }
+            if (tick % HOLOGRAM_INTERVAL == 0) {
+                start = System.nanoTime();
+                for (MetricRegistry.Metric metric : metrics.globals()) {
+                    engine.getLeaderboard(metric.key(), 0, 10);
+                }
+                time(jobs, "hologram-refresh", start);
+            }
+            if (tick % SAVE_INTERVAL == 0 && tick > 0) {
+                start = System.nanoTime();
+                engine.flush(data);
+                YamlLogPages.saveAtomically(data, dataFile);
+                time(jobs, "data-save", start);
+            }
+
+            start = System.nanoTime();
+            engine.publish(onlinePlayers());
+            time(jobs, "snapshot-publish", start);
+
+            long nanos = System.nanoTime() - tickStart;
+            tickMicros.add(nanos / 1_000);
+            dayTicks.add(nanos / 1_000);
+            tickTotalNanos += nanos;
+            dayWorst = Math.max(dayWorst, nanos);
+            if (worst.size() < WORST_TICKS || nanos > worst.peek().nanos()) {
+                Map<String, Long> micros = new LinkedHashMap<>();
+                jobs.forEach((job, jobNanos) -> micros.put(job, jobNanos / 1_000));
+                worst.add(new WorstTick(tick, nanos, micros));
+                if (worst.size() > WORST_TICKS) worst.poll();
+            }
+
+            // 不计入 tick 的模拟操作：新玩家出现、在线玩家轮换
+            if (tick % ROTATE_INTERVAL == 0) rotate(onlineCount, newPlayersPerDay);
+        }
+        return dayWorst;
+    }
+
+    private void time(Map<String, Long> jobs, String job, long start) {
+        long nanos = System.nanoTime() - start;
+        jobs.put(job, nanos);
+        jobMicros.get(job).add(nanos / 1_000);
+        jobTotalNanos.merge(job, nanos, Long::sum);
+    }
+
+    // 每个竞技场平均 20 分钟结束一局
+    private void offerFinishedRuns() {
+        for (int arena = 0; arena < nextRunId.length; arena++) {
+            if (random.nextInt(20 * 60 * 20 / LOG_CHECK_INTERVAL) != 0) continue;
+            int runId = ++nextRunId[arena];
+            String raw = dungeonLog(runId);
+            String arenaId = metrics.arenas().get(arena);
+            parsing.add(CompletableFuture.supplyAsync(() -> LogParser.parse(raw, arenaId), parsers));
+            runsFinished++;
+        }
+    }
+
+    // 和 LogIngestor 一样按提交顺序应用已经解析完的日志
+    private void applyParsed() {
+        while (!parsing.isEmpty() && parsing.peek().isDone()) {
+            LogParser.ParsedResult result = parsing.poll().join();
+            if (result != null) engine.ingestLog(result);
+        }
+    }
+
+    /** A dungeon log page as the datapack writes it to {@code dun:log}. */
+    private String dungeonLog(int runId) {
+        JsonArray extra = new JsonArray();
+        extra.add(String.valueOf(runId));
+        int party = 1 + random.nextInt(Math.min(4, online.size()));
+        for (int i = 0; i < party; i++) {
+            String name = population.get(online.get(random.nextInt(online.size())));
+            JsonObject details = new JsonObject();
+            details.addProperty("text", name);
+            details.addProperty("insertion", name);
+            JsonArray player = new JsonArray();
+            player.add(random.nextInt(120));
+            player.add(" ");
+            player.add(details);
+            JsonObject block = new JsonObject();
+            block.addProperty("text", "LV");
+            block.add("extra", player);
+            extra.add(block);
+        }
+        // 结尾的固定字段：门、击杀、Boss 分别在倒数第 11、8、5 个，最后是用时
+        extra.add(String.valueOf(random.nextInt(120)));
+        extra.add(" ");
+        extra.add(" ");
+        extra.add(String.valueOf(random.nextInt(400)));
+        extra.add(" ");
+        extra.add(" ");
+        extra.add(String.valueOf(random.nextInt(15)));
+        extra.add(" ");
+        extra.add(" ");
+        extra.add(" ");
+        long seconds = 300 + random.nextInt(4000);
+        JsonArray time = new JsonArray();
+        time.add(String.valueOf(seconds / 3600 % 10));
+        time.add(":");
+        time.add(" ");
+        time.add(String.format("%02d", seconds / 60 % 60));
+        time.add(":");
+        time.add(" ");
+        time.add(String.format("%02d", seconds % 60));
+        JsonObject duration = new JsonObject();
+        duration.addProperty("text", String.valueOf(seconds / 36000));
+        duration.add("extra", time);
+        extra.add(duration);
+        JsonObject root = new JsonObject();
+        root.addProperty("text", "");
+        root.add("extra", extra);
+        return root.toString();
+    }
+
+    private void rotate(int onlineCount, int newPlayersPerDay) {
+        // 每次轮换平均来 newPlayersPerDay / 288 个新玩家，小数部分按概率取整
+        double expected = (double) newPlayersPerDay * ROTATE_INTERVAL / TICKS_PER_DAY;
+        int joining = (int) expected + (random.nextDouble() < expected - (int) expected ? 1 : 0);
+        for (int i = 0; i < joining; i++) {
+            population.add("Player" + population.size());
+            online.set(random.nextInt(online.size()), population.size() - 1);
+        }
+        // 一成在线玩家换成其他老玩家
+        for (int i = 0; i < Math.max(1, onlineCount / 10); i++) {
+            online.set(random.nextInt(online.size()), random.nextInt(population.size()));
+        }
+    }
+
+    private List<OnlinePlayer> onlinePlayers() {
+        List<OnlinePlayer> players = new ArrayList<>(online.size());
+        for (int player : online) {
+            players.add(new OnlinePlayer(population.get(player), "ingame", 20.0, 10.0));
+        }
+        return players;
+    }
+
+    private static UUID uuidOf(int player) {
+        return new UUID(0x44554e47L, player);
+    }
+
+    // 每个模拟日结束时：完整 GC 之后的堆大小和文件大小
+    private Map<String, Object> sample(int day, QuantileSketch dayTicks, long dayWorst) throws IOException {
+        System.gc();
+        long heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        long logBytes;
+        try (Stream<Path> files = Files.walk(directory.resolve("logs"))) {
+            logBytes = files.filter(Files::isRegularFile).mapToLong(file -> file.toFile().length()).sum();
+        }
+        Map<String, Object> sample = new LinkedHashMap<>();
+        sample.put("day", day);
+        sample.put("players", engine.countPlayers());
+        sample.put("logs", engine.countLogs());
+        sample.put("heapBytes", heap);
+        sample.put("dataFileBytes", dataFile.length());
+        sample.put("logPageBytes", logBytes);
+        sample.put("tickP50Micros", dayTicks.quantile(0.50));
+        sample.put("tickP99Micros", dayTicks.quantile(0.99));
+        sample.put("tickP9999Micros", dayTicks.quantile(0.9999));
+        sample.put("worstTickMicros", dayWorst / 1_000);
+        return sample;
+    }
+
+    private Map<String, Object> tickReport() {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("count", tickMicros.count());
+        report.put("meanMicros", tickMicros.count() == 0 ? 0 : tickTotalNanos / 1_000.0 / tickMicros.count());
+        report.put("p50Micros", tickMicros.quantile(0.50));
+        report.put("p99Micros", tickMicros.quantile(0.99));
+        report.put("p9999Micros", tickMicros.quantile(0.9999));
+        report.put("killsQueued", killsQueued);
+        report.put("runsFinished", runsFinished);
+        Map<String, Object> jobs = new LinkedHashMap<>();
+        for (String job : JOBS) {
+            QuantileSketch sketch = jobMicros.get(job);
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("runs", sketch.count());
+            stats.put("totalMillis", jobTotalNanos.get(job) / 1_000_000.0);
+            stats.put("p50Micros", sketch.quantile(0.50));
+            stats.put("p99Micros", sketch.quantile(0.99));
+            stats.put("maxMicros", sketch.quantile(1.0));
+            jobs.put(job, stats);
+        }
+        report.put("jobs", jobs);
+        Map<String, Object> gc = new LinkedHashMap<>();
+        gc.put("collections", ManagementFactory.getGarbageCollectorMXBeans().stream().mapToLong(GarbageCollectorMXBean::getCollectionCount).sum());
+        gc.put("pauseMillis", ManagementFactory.getGarbageCollectorMXBeans().stream().mapToLong(GarbageCollectorMXBean::getCollectionTime).sum());
+        report.put("gc", gc);
+        return report;
+    }
+
+    private List<Map<String, Object>> worstReport() {
+        List<WorstTick> ticks = new ArrayList<>(worst);
+        ticks.sort(Comparator.comparingLong(WorstTick::nanos).reversed());
+        List<Map<String, Object>> report = new ArrayList<>();
+        for (WorstTick tick : ticks) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("day", 1 + tick.tick() / TICKS_PER_DAY);
+            entry.put("tick", tick.tick());
+            entry.put("micros", tick.nanos() / 1_000);
+            entry.put("jobsMicros", tick.jobMicros());
+            report.add(entry);
+        }
+        return report;
+    }
+
+    /** Dashboard-like clients querying the API for the whole run, with a short pause between requests. */
+    private static final class ApiClients {
+        private final HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+        private final String baseUrl;
+        private final List<String> population;
+        private final List<String> arenas;
+        private final ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor();
+        private final QuantileSketch latencyMicros = new QuantileSketch();
+        private long requests;
+        private long errors;
+
+        ApiClients(int port, List<String> population, List<String> arenas, int clients, AtomicBoolean running) {
+            this.baseUrl = "http://127.0.0.1:" + port;
+            // 人数只增不减，读到旧的长度也没关系
+            this.population = population;
+            this.arenas = arenas;
+            for (int i = 0; i < clients; i++) {
+                workers.submit(() -> {
+                    while (running.get()) {
+                        send(nextPath(ThreadLocalRandom.current()));
+                        try {
+                            Thread.sleep(20);
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                });
+            }
+        }
+
+        private String nextPath(ThreadLocalRandom random) {
+            int pick = random.nextInt(100);
+            int players = Math.max(1, population.size() - 100);
+            if (pick < 30) return "/playerstats?name=Player" + random.nextInt(players);
+            if (pick < 55) return "/top?metric=kills&offset=" + random.nextInt(players) + "&limit=50";
+            if (pick < 70) return "/top?metric=runs&arena=" + arenas.get(random.nextInt(arenas.size())) + "&limit=10";
+            if (pick < 90) return "/players";
+            return "/stats?limit=20";
+        }
+
+        private void send(String path) {
+            long start = System.nanoTime();
+            boolean failed;
+            try {
+                HttpResponse<byte[]> response = client.send(HttpRequest.newBuilder(URI.create(baseUrl + path)).GET().build(),
+                        HttpResponse.BodyHandlers.ofByteArray());
+                failed = response.statusCode() >= 400 && response.statusCode() != 404;
+            } catch (IOException e) {
+                failed = true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            synchronized (this) {
+                requests++;
+                if (failed) errors++;
+                latencyMicros.add((System.nanoTime() - start) / 1_000);
+            }
+        }
+
+        synchronized long requests() {
+            return requests;
+        }
+
+        synchronized Map<String, Object> report() {
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("requests", requests);
+            report.put("errors", errors);
+            report.put("p50Micros", latencyMicros.quantile(0.50));
+            report.put("p99Micros", latencyMicros.quantile(0.99));
+            report.put("p999Micros", latencyMicros.quantile(0.999));
+            return report;
+        }
+
+        void close() {
+            workers.shutdownNow();
+        }
+    }
+}
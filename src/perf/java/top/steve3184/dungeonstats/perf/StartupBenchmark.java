@@ -0,0 +1,122 @@
+package top.steve3184.dungeonstats.perf;
+
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.YamlConfiguration;
+import top.steve3184.dungeonstats.utils.DataLoader;
+import top.steve3184.dungeonstats.utils.MetricRegistry;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Measures how long the stats take to load from a synthetic data set.
+ *
+ * Usage: {@code ./gradlew startupBenchmark -Pplayers=1000000 -Pruns=500000}
+ *
+ * Reports three startups: the old layout parsed on the main thread, the first start of the new
+ * version (which moves the logs into page files), and a regular start after that. For the new
+ * version the main thread only hands the load off, so the time it is blocked is reported
+ * separately from the background warm-up.
+ */
+public final class StartupBenchmark {
+
+    private static final Logger LOGGER = Logger.getLogger("StartupBenchmark");
+
+    public static void main(String[] args) throws Exception {
+        int players = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 500_000;
+        Path directory = Files.createTempDirectory("dungeonstats-startup");
+        File dataFile = directory.resolve("data.yml").toFile();
+        File logDirectory = directory.resolve("logs").toFile();
+        try {
+            long start = System.nanoTime();
+            writeLegacyDataFile(dataFile, players, runs);
+            report("generate", System.nanoTime() - start, "bytes", dataFile.length());
+
+            // 旧版本：主线程解析整个 data.yml，再扫描全部日志
+            start = System.nanoTime();
+            YamlConfiguration legacy = YamlConfiguration.loadConfiguration(dataFile);
+            ConfigurationSection logs = legacy.getConfigurationSection("logs");
+            long durationSum = 0;
+            for (String key : logs.getKeys(false)) {
+                durationSum += logs.getLong(key + ".durationSeconds");
+            }
+            report("legacy.mainThread", System.nanoTime() - start, "checksum", durationSum);
+            legacy = null;
+            logs = null;
+            System.gc();
+
+            DataLoader.Loaded migrated = DataLoader.load(MetricRegistry.DEFAULT, dataFile, logDirectory, LOGGER);
+            report("firstStart.warmUp", migrated.nanos(), "migratedLogs", migrated.migratedLogs());
+            start = System.nanoTime();
+            migrated.config().save(dataFile);
+            report("firstStart.save", System.nanoTime() - start, "bytes", dataFile.length());
+            migrated = null;
+            System.gc();
+
+            // 新版本：主线程只负责把加载交给后台线程
+            start = System.nanoTime();
+            CompletableFuture<DataLoader.Loaded> future = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return DataLoader.load(MetricRegistry.DEFAULT, dataFile, logDirectory, LOGGER);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            report("start.mainThread", System.nanoTime() - start, "players", players);
+            DataLoader.Loaded loaded = future.join();
+            report("start.warmUp", loaded.nanos(), "players", loaded.players().size());
+
+            start = System.nanoTime();
+            int[] board = loaded.players().snapshot(null).leaderboard("kills");
+            report("start.firstLeaderboard", System.nanoTime() - start, "entries", board.length);
+            start = System.nanoTime();
+            int found = loaded.logs().newest(10).size();
+            report("start.newestLogs", System.nanoTime() - start, "logs", found);
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+
+    private static void writeLegacyDataFile(File file, int players, int runs) throws IOException {
+        Random random = new Random(42);
+        long now = System.currentTimeMillis();
+        try (BufferedWriter out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            out.write("players:\n");
+            for (int i = 0; i < players; i++) {
+                out.write("  " + new UUID(random.nextLong(), random.nextLong()) + ":\n");
+                out.write("    kills: " + random.nextInt(50_000) + "\n");
+                out.write("    playtime: " + random.nextInt(1_000_000) + "\n");
+                out.write("    maxLevel: " + random.nextInt(120) + "\n");
+                out.write("    lastUpdated: " + (now - random.nextInt(1_000_000_000)) + "\n");
+                out.write("    name: Player" + i + "\n");
+            }
+            out.write("logs:\n");
+            for (int id = 1; id <= runs; id++) {
+                out.write("  '" + id + "':\n");
+                out.write("    maxLevel: " + random.nextInt(120) + "\n");
+                out.write("    doorsOpened: " + random.nextInt(120) + "\n");
+                out.write("    enemiesKilled: " + random.nextInt(400) + "\n");
+                out.write("    bossesDefeated: " + random.nextInt(15) + "\n");
+                out.write("    durationSeconds: " + (300 + random.nextInt(4000)) + "\n");
+                out.write("    timestamp: " + (now - (long) (runs - id) * 60_000) + "\n");
+            }
+        }
+    }
+
+    private static void report(String phase, long nanos, String detail, long value) {
+        System.out.printf("%-24s %10.1f ms   %s=%d%n", phase, nanos / 1_000_000.0, detail, value);
+    }
+}